@@ -43,6 +43,7 @@ const char* SQLException::specific_error_specified_by_user = "Specific error cod
 const char* SQLException::volt_output_buffer_overflow = "V0001";
 const char* SQLException::volt_temp_table_memory_overflow = "V0002";
 const char* SQLException::volt_decimal_serialization_error = "V0003";
+const char* SQLException::volt_temp_table_spill_failure = "V0004";
 
 SQLException::SQLException(std::string sqlState, std::string message) :
     SerializableEEException(VOLT_EE_EXCEPTION_TYPE_SQL, message),
@@ -47,6 +47,7 @@ public:
     static const char* volt_output_buffer_overflow;
     static const char* volt_temp_table_memory_overflow;
     static const char* volt_decimal_serialization_error;
+    static const char* volt_temp_table_spill_failure;
 
     SQLException(std::string sqlState, std::string message);
     SQLException(std::string sqlState, std::string message, VoltEEExceptionType type);
@@ -191,6 +191,7 @@ enum PlanNodeType {
     //
     PLAN_NODE_TYPE_NESTLOOP         = 20,
     PLAN_NODE_TYPE_NESTLOOPINDEX    = 21,
+    PLAN_NODE_TYPE_HASHJOIN         = 22,
 
     //
     // Operator Nodes
@@ -482,7 +483,8 @@ enum TaskType {
     TASK_TYPE_VALIDATE_PARTITIONING = 0,
     TASK_TYPE_GET_DR_TUPLESTREAM_STATE = 1,
     TASK_TYPE_SET_DR_SEQUENCE_NUMBERS = 2,
-    TASK_TYPE_SET_DR_PROTOCOL_VERSION = 3
+    TASK_TYPE_SET_DR_PROTOCOL_VERSION = 3,
+    TASK_TYPE_GET_TEMP_TABLE_SPILL_STATS = 4
 };
 
 
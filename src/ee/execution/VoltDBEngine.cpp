@@ -175,12 +175,17 @@ VoltDBEngine::initialize(int32_t clusterIndex,
                          int32_t drClusterId,
                          int64_t tempTableMemoryLimit,
                          bool createDrReplicatedStream,
-                         int32_t compactionThreshold)
+                         int32_t compactionThreshold,
+                         std::string tempTableSpillDirectory)
 {
     m_clusterIndex = clusterIndex;
     m_siteId = siteId;
     m_partitionId = partitionId;
     m_tempTableMemoryLimit = tempTableMemoryLimit;
+    m_tempTableSpillDirectory = tempTableSpillDirectory;
+    m_tempTableSpilledBytes = 0;
+    m_tempTableReloadedBytes = 0;
+    m_tempTableSpillNanos = 0;
     m_compactionThreshold = compactionThreshold;
 
     // Instantiate our catalog - it will be populated later on by load()
@@ -510,10 +515,31 @@ void VoltDBEngine::resetExecutionMetadata() {
         // invalid plan that can not be converted into plan nodes / executors.
         return;
     }
+    reportTempTableSpill();
     m_currExecutorVec->resetLimitStats();
     m_currExecutorVec = NULL;
 }
 
+void VoltDBEngine::reportTempTableSpill() {
+    const TempTableLimits& limits = m_currExecutorVec->limits();
+    if (limits.getSpilledBytes() == 0 && limits.getReloadedBytes() == 0) {
+        return;
+    }
+    m_tempTableSpilledBytes += limits.getSpilledBytes();
+    m_tempTableReloadedBytes += limits.getReloadedBytes();
+    m_tempTableSpillNanos += limits.getSpillNanos();
+
+    char msg[1024];
+    snprintf(msg, sizeof(msg), "Plan fragment %jd spilled %jd KB of temp tables to %s"
+             " and read back %jd KB, spending %jd ms on the spill files.",
+             (intmax_t)m_currExecutorVec->getFragId(),
+             (intmax_t)(limits.getSpilledBytes() / 1024),
+             m_tempTableSpillDirectory.c_str(),
+             (intmax_t)(limits.getReloadedBytes() / 1024),
+             (intmax_t)(limits.getSpillNanos() / 1000000));
+    LogManager::getThreadLogger(LOGGERID_SQL)->log(LOGLEVEL_INFO, msg);
+}
+
 void VoltDBEngine::serializeException(const SerializableEEException& e) {
     resetReusedResultOutputBuffer();
     e.serialize(getExceptionOutputSerializer());
@@ -1783,6 +1809,12 @@ void VoltDBEngine::executeTask(TaskType taskType, const char* taskParams) {
         m_resultOutput.writeInt(0);
         break;
     }
+    case TASK_TYPE_GET_TEMP_TABLE_SPILL_STATS:
+        m_resultOutput.writeInt(static_cast<int32_t>(3 * sizeof(int64_t)));
+        m_resultOutput.writeLong(m_tempTableSpilledBytes);
+        m_resultOutput.writeLong(m_tempTableReloadedBytes);
+        m_resultOutput.writeLong(m_tempTableSpillNanos / 1000000);
+        break;
     default:
         throwFatalException("Unknown task type %d", taskType);
     }
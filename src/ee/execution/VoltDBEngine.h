@@ -116,7 +116,8 @@ class __attribute__((visibility("default"))) VoltDBEngine {
                         int32_t drClusterId,
                         int64_t tempTableMemoryLimit,
                         bool createDrReplicatedStream,
-                        int32_t compactionThreshold = 95);
+                        int32_t compactionThreshold = 95,
+                        std::string tempTableSpillDirectory = "");
         virtual ~VoltDBEngine();
 
         // ------------------------------------------------------------------
@@ -401,6 +402,11 @@ class __attribute__((visibility("default"))) VoltDBEngine {
             return (m_tempTableMemoryLimit * 3) / 4;
         }
 
+        /** Where temp tables spill past the memory limit, empty when they may not. */
+        const std::string& tempTableSpillDirectory() const {
+            return m_tempTableSpillDirectory;
+        }
+
         int32_t getPartitionId() const {
             return m_partitionId;
         }
@@ -452,6 +458,7 @@ class __attribute__((visibility("default"))) VoltDBEngine {
 
         bool checkTempTableCleanup(ExecutorVector * execsForFrag);
         void resetExecutionMetadata();
+        void reportTempTableSpill();
 
         // -------------------------------------------------
         // Data Members
@@ -476,6 +483,11 @@ class __attribute__((visibility("default"))) VoltDBEngine {
         boost::scoped_ptr<TheHashinator> m_hashinator;
         size_t m_startOfResultBuffer;
         int64_t m_tempTableMemoryLimit;
+        std::string m_tempTableSpillDirectory;
+        // Totals over the fragments this site ran, reported through @Statistics MEMORY
+        int64_t m_tempTableSpilledBytes;
+        int64_t m_tempTableReloadedBytes;
+        int64_t m_tempTableSpillNanos;
 
         /*
          * Catalog delegates hashed by path.
@@ -0,0 +1,504 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This file contains original code and/or modifications of original code.
+ * Any modifications made by VoltDB Inc. are licensed under the following
+ * terms and conditions:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+/* Copyright (C) 2008 by H-Store Project
+ * Brown University
+ * Massachusetts Institute of Technology
+ * Yale University
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+#include "hashjoinexecutor.h"
+
+#include "common/debuglog.h"
+#include "common/common.h"
+#include "common/tabletuple.h"
+#include "common/TupleSchema.h"
+#include "executors/aggregateexecutor.h"
+#include "execution/ProgressMonitorProxy.h"
+#include "expressions/abstractexpression.h"
+#include "storage/table.h"
+#include "storage/tablefactory.h"
+#include "storage/temptable.h"
+#include "storage/tableiterator.h"
+#include "storage/TempTableLimits.h"
+#include "plannodes/hashjoinnode.h"
+#include "plannodes/limitnode.h"
+
+#include "boost/shared_ptr.hpp"
+
+using namespace std;
+using namespace voltdb;
+
+// Rough per entry overhead of a node in the unordered multimap
+static const int HASH_ENTRY_OVERHEAD = 2 * sizeof(TableTuple) + 3 * sizeof(void*);
+
+// Count one more joined tuple of the outer tuple at the given position in a pass
+static void addPassRow(HashJoinExecutor::PassRuns& runs, size_t outerIndex)
+{
+    if ( ! runs.empty() && runs.back().first == outerIndex) {
+        ++runs.back().second;
+    }
+    else {
+        runs.push_back(std::make_pair(outerIndex, 1));
+    }
+}
+
+HashJoinExecutor::~HashJoinExecutor()
+{
+    releaseHashTable();
+    TupleSchema::freeTupleSchema(m_keySchema);
+}
+
+bool HashJoinExecutor::p_init(AbstractPlanNode* abstract_node,
+                              TempTableLimits* limits)
+{
+    VOLT_TRACE("init HashJoin Executor");
+
+    HashJoinPlanNode* node = dynamic_cast<HashJoinPlanNode*>(abstract_node);
+    assert(node);
+
+    // Create output table based on output schema from the plan
+    setTempOutputTable(limits);
+    assert(m_tmpOutputTable);
+    m_limits = limits;
+
+    // NULL tuple for outer join
+    if (node->getJoinType() == JOIN_TYPE_LEFT) {
+        Table* inner_table = node->getInputTable(1);
+        assert(inner_table);
+        m_null_tuple.init(inner_table->schema());
+    }
+
+    // The planner only pairs keys of the same type. Strings are kept out of line
+    // at the maximum length so the values from either side fit whatever size
+    // their expressions report.
+    const std::vector<AbstractExpression*>& outerKeys = node->getOuterHashExpressions();
+    const std::vector<AbstractExpression*>& innerKeys = node->getInnerHashExpressions();
+    assert(outerKeys.size() == innerKeys.size());
+    std::vector<ValueType> keyColumnTypes;
+    std::vector<int32_t> keyColumnSizes;
+    std::vector<bool> keyColumnAllowNull;
+    std::vector<bool> keyColumnInBytes;
+    for (size_t ii = 0; ii < outerKeys.size(); ii++) {
+        ValueType type = innerKeys[ii]->getValueType();
+        keyColumnTypes.push_back(type);
+        if (type == VALUE_TYPE_VARCHAR || type == VALUE_TYPE_VARBINARY) {
+            keyColumnSizes.push_back(TupleSchema::COLUMN_MAX_VALUE_LENGTH);
+            keyColumnInBytes.push_back(true);
+        }
+        else {
+            keyColumnSizes.push_back(std::max(outerKeys[ii]->getValueSize(),
+                                              innerKeys[ii]->getValueSize()));
+            keyColumnInBytes.push_back(false);
+        }
+        keyColumnAllowNull.push_back(true);
+    }
+    TupleSchema::freeTupleSchema(m_keySchema);
+    m_keySchema = TupleSchema::createTupleSchema(keyColumnTypes,
+                                                 keyColumnSizes,
+                                                 keyColumnAllowNull,
+                                                 keyColumnInBytes);
+
+    // Inline aggregation can be serial, partial or hash
+    m_aggExec = voltdb::getInlineAggregateExecutor(m_abstractNode);
+
+    return true;
+}
+
+bool HashJoinExecutor::buildKey(const std::vector<AbstractExpression*>& keyExpressions,
+                                const TableTuple& tuple, bool isInner, TableTuple& key)
+{
+    // Inner keys live as long as the hash table, probe keys only until the next outer tuple
+    Pool* pool = isInner ? &m_memoryPool : &m_probePool;
+    for (size_t ii = 0; ii < keyExpressions.size(); ii++) {
+        NValue value = isInner ? keyExpressions[ii]->eval(NULL, &tuple) :
+                                 keyExpressions[ii]->eval(&tuple, NULL);
+        // NULL never equals anything, so the tuple can't match on this key
+        if (value.isNull()) {
+            return false;
+        }
+        key.setNValueAllocateForObjectCopies(ii, value, pool);
+    }
+    return true;
+}
+
+void HashJoinExecutor::chargeMemory(int64_t bytes)
+{
+    const int64_t poolBytes = m_memoryPool.getAllocatedMemory() + m_probePool.getAllocatedMemory();
+    if (poolBytes > m_poolBytes) {
+        bytes += poolBytes - m_poolBytes;
+        m_poolBytes = poolBytes;
+    }
+    if (bytes <= 0) {
+        return;
+    }
+    m_hashTableBytes += bytes;
+    if (m_limits != NULL) {
+        m_limits->increaseAllocated(static_cast<int>(bytes));
+    }
+}
+
+void HashJoinExecutor::releaseHashTable()
+{
+    m_hashTable.clear();
+    m_memoryPool.purge();
+    m_probePool.purge();
+    if (m_limits != NULL && m_hashTableBytes > 0) {
+        m_limits->reduceAllocated(static_cast<int>(m_hashTableBytes));
+    }
+    m_hashTableBytes = 0;
+    // The chunks the pools keep across executions aren't charged, only what they grow by
+    m_poolBytes = m_memoryPool.getAllocatedMemory() + m_probePool.getAllocatedMemory();
+}
+
+bool HashJoinExecutor::p_execute(const NValueArray &params) {
+    VOLT_DEBUG("executing HashJoin...");
+
+    HashJoinPlanNode* node = dynamic_cast<HashJoinPlanNode*>(m_abstractNode);
+    assert(node);
+    assert(node->getInputTableCount() == 2);
+
+    // output table must be a temp table
+    assert(m_tmpOutputTable);
+
+    Table* outer_table = node->getInputTable();
+    assert(outer_table);
+
+    Table* inner_table = node->getInputTable(1);
+    assert(inner_table);
+
+    VOLT_TRACE ("input table left:\n %s", outer_table->debug().c_str());
+    VOLT_TRACE ("input table right:\n %s", inner_table->debug().c_str());
+
+    AbstractExpression *preJoinPredicate = node->getPreJoinPredicate();
+    AbstractExpression *joinPredicate = node->getJoinPredicate();
+    AbstractExpression *wherePredicate = node->getWherePredicate();
+    const std::vector<AbstractExpression*>& outerKeys = node->getOuterHashExpressions();
+    const std::vector<AbstractExpression*>& innerKeys = node->getInnerHashExpressions();
+
+    // Join type
+    JoinType join_type = node->getJoinType();
+    assert(join_type == JOIN_TYPE_INNER || join_type == JOIN_TYPE_LEFT);
+
+    LimitPlanNode* limit_node = dynamic_cast<LimitPlanNode*>(node->getInlinePlanNode(PLAN_NODE_TYPE_LIMIT));
+    int limit = -1;
+    int offset = -1;
+    if (limit_node) {
+        limit_node->getLimitAndOffsetByReference(params, limit, offset);
+    }
+
+    int outer_cols = outer_table->columnCount();
+    int inner_cols = inner_table->columnCount();
+    TableTuple outer_tuple(node->getInputTable(0)->schema());
+    TableTuple inner_tuple(node->getInputTable(1)->schema());
+    const TableTuple& null_tuple = m_null_tuple.tuple();
+    ProgressMonitorProxy pmp(m_engine, this);
+
+    releaseHashTable();
+    HashTableGuard guard(this);
+
+    // The join runs one pass over the outer table per quarter of the memory
+    // limit it takes to hash the inner tuples, plus a last one for the outer
+    // tuples no pass matched in a left outer join, so a large inner table
+    // doesn't run the query out of temp table memory. Each pass writes its
+    // joined tuples to a temp table of its own, and the passes are merged back
+    // into outer order before the limit, offset and inline aggregation see
+    // them. The tuples of a spilled inner table only stay put until its
+    // iterator moves to the next block, so they are copied next to their keys.
+    TempTable* inner_temp = dynamic_cast<TempTable*>(inner_table);
+    const bool copyInner = inner_temp != NULL && inner_temp->spilledBlockCount() > 0;
+    const int64_t passBytes = (m_limits != NULL && m_limits->getMemoryLimit() > 0) ?
+                              m_limits->getMemoryLimit() / 4 : -1;
+    PoolBackedTupleStorage innerStorage;
+    innerStorage.init(inner_table->schema(), &m_memoryPool);
+    std::vector<bool> outerMatched;
+    std::vector<boost::shared_ptr<TempTable> > passTables;
+    std::vector<PassRuns> passRuns;
+
+    const int keyTupleLength = m_keySchema->tupleLength() + TUPLE_HEADER_SIZE;
+    TableIterator iterator1 = inner_table->iterator();
+    int tuple_ctr = 0;
+    int tuple_skipped = 0;
+
+    TableTuple join_tuple;
+    if (m_aggExec != NULL) {
+        VOLT_TRACE("Init inline aggregate...");
+        const TupleSchema * aggInputSchema = node->getTupleSchemaPreAgg();
+        join_tuple = m_aggExec->p_execute_init(params, &pmp, aggInputSchema, m_tmpOutputTable);
+    } else {
+        join_tuple = m_tmpOutputTable->tempTuple();
+    }
+
+    bool earlyReturned = false;
+    bool onePass = true;
+    bool innerExhausted = false;
+    bool nullExtendOnly = false;
+    while (!earlyReturned && (limit == -1 || tuple_ctr < limit)) {
+        if ( ! innerExhausted) {
+            //
+            // Build: hash every inner tuple with a non-NULL key. Unless they are
+            // copied, the inner table is kept intact until the probe is done
+            // since the hash table points into it.
+            //
+            while (iterator1.next(inner_tuple)) {
+                pmp.countdownProgress();
+                char* storage = reinterpret_cast<char*>(m_memoryPool.allocateZeroes(keyTupleLength));
+                TableTuple key(storage, m_keySchema);
+                if ( ! buildKey(innerKeys, inner_tuple, true, key)) {
+                    continue;
+                }
+                if (copyInner) {
+                    innerStorage.allocateActiveTuple();
+                    TableTuple& copy = innerStorage;
+                    copy.copy(inner_tuple);
+                    m_hashTable.insert(HashJoinMapType::value_type(key, copy));
+                }
+                else {
+                    m_hashTable.insert(HashJoinMapType::value_type(key, inner_tuple));
+                }
+                // The key, its strings and any copy of the inner tuple are in the pool
+                chargeMemory(HASH_ENTRY_OVERHEAD);
+                if (passBytes > 0 && m_hashTableBytes >= passBytes) {
+                    break;
+                }
+            }
+            VOLT_TRACE("hash join built %d entries", (int) m_hashTable.size());
+            innerExhausted = ! iterator1.hasNext();
+            if ( ! innerExhausted) {
+                onePass = false;
+            }
+        }
+        else if ( ! onePass && ! nullExtendOnly && join_type == JOIN_TYPE_LEFT) {
+            nullExtendOnly = true;
+        }
+        else {
+            break;
+        }
+
+        TempTable* passTable = NULL;
+        if ( ! onePass) {
+            const TupleSchema* joinSchema = join_tuple.getSchema();
+            std::vector<std::string> columnNames(joinSchema->columnCount());
+            passTables.push_back(boost::shared_ptr<TempTable>(
+                    TableFactory::getTempTable(node->databaseId(),
+                                               "hashJoinPass",
+                                               TupleSchema::createTupleSchema(joinSchema),
+                                               columnNames,
+                                               m_limits),
+                    TempTableReleaser()));
+            passRuns.push_back(PassRuns());
+            passTable = passTables.back().get();
+        }
+
+        //
+        // Probe: same flow as the nest loop join, with the inner loop running
+        // over the tuples hashed under the outer tuple's key.
+        //
+        char* probeStorage = reinterpret_cast<char*>(m_memoryPool.allocateZeroes(keyTupleLength));
+        TableTuple probe_key(probeStorage, m_keySchema);
+
+        TableIterator iterator0 = onePass ? outer_table->iteratorDeletingAsWeGo() : outer_table->iterator();
+        size_t outerIndex = 0;
+        while ((limit == -1 || tuple_ctr < limit) && iterator0.next(outer_tuple)) {
+            pmp.countdownProgress();
+            const size_t thisOuter = outerIndex++;
+            // The strings of the previous probe key are no longer needed
+            m_probePool.purge();
+
+            join_tuple.setNValues(0, outer_tuple, 0, outer_cols);
+
+            // did this loop body find at least one match for this tuple?
+            bool match = false;
+            if (nullExtendOnly) {
+                match = thisOuter < outerMatched.size() && outerMatched[thisOuter];
+            }
+            // For outer joins if outer tuple fails pre-join predicate
+            // (join expression based on the outer table only)
+            // it can't match any of inner tuples
+            else if ((preJoinPredicate == NULL || preJoinPredicate->eval(&outer_tuple, NULL).isTrue()) &&
+                     buildKey(outerKeys, outer_tuple, false, probe_key)) {
+                chargeMemory(0);
+
+                std::pair<HashJoinMapType::const_iterator, HashJoinMapType::const_iterator> bucket =
+                    m_hashTable.equal_range(probe_key);
+                for (HashJoinMapType::const_iterator it = bucket.first;
+                     it != bucket.second && (limit == -1 || tuple_ctr < limit); ++it) {
+                    pmp.countdownProgress();
+                    inner_tuple = it->second;
+                    // The join predicate includes the key equalities,
+                    // the hash only spares evaluating it against non-matching tuples
+                    if (joinPredicate == NULL || joinPredicate->eval(&outer_tuple, &inner_tuple).isTrue()) {
+                        match = true;
+                        // Filter the joined tuple
+                        if (wherePredicate == NULL || wherePredicate->eval(&outer_tuple, &inner_tuple).isTrue()) {
+                            if (passTable != NULL) {
+                                join_tuple.setNValues(outer_cols, inner_tuple, 0, inner_cols);
+                                passTable->insertTempTuple(join_tuple);
+                                addPassRow(passRuns.back(), thisOuter);
+                                continue;
+                            }
+                            // Check if we have to skip this tuple because of offset
+                            if (tuple_skipped < offset) {
+                                tuple_skipped++;
+                                continue;
+                            }
+                            ++tuple_ctr;
+                            // Matched! Complete the joined tuple with the inner column values.
+                            join_tuple.setNValues(outer_cols, inner_tuple, 0, inner_cols);
+                            if (m_aggExec != NULL) {
+                                if (m_aggExec->p_execute_tuple(join_tuple)) {
+                                    // Get enough rows for LIMIT
+                                    earlyReturned = true;
+                                    break;
+                                }
+                            } else {
+                                m_tmpOutputTable->insertTempTuple(join_tuple);
+                                pmp.countdownProgress();
+                            }
+                        }
+                    }
+                } // END BUCKET LOOP
+            } // END IF PRE JOIN CONDITION AND NON-NULL KEY
+
+            // With several passes, outer tuples are only null extended in the last one
+            if ( ! onePass && ! nullExtendOnly && join_type == JOIN_TYPE_LEFT) {
+                if (thisOuter == outerMatched.size()) {
+                    outerMatched.push_back(match);
+                }
+                else if (match) {
+                    outerMatched[thisOuter] = true;
+                }
+                match = true;
+            }
+
+            //
+            // Left Outer Join
+            //
+            if (join_type == JOIN_TYPE_LEFT && !match && (limit == -1 || tuple_ctr < limit)) {
+                // Still needs to pass the filter
+                if (wherePredicate == NULL || wherePredicate->eval(&outer_tuple, &null_tuple).isTrue()) {
+                    join_tuple.setNValues(outer_cols, null_tuple, 0, inner_cols);
+                    if (passTable != NULL) {
+                        passTable->insertTempTuple(join_tuple);
+                        addPassRow(passRuns.back(), thisOuter);
+                        continue;
+                    }
+                    // Check if we have to skip this tuple because of offset
+                    if (tuple_skipped < offset) {
+                        tuple_skipped++;
+                        continue;
+                    }
+                    ++tuple_ctr;
+                    if (m_aggExec != NULL) {
+                        if (m_aggExec->p_execute_tuple(join_tuple)) {
+                            earlyReturned = true;
+                        }
+                    } else {
+                        m_tmpOutputTable->insertTempTuple(join_tuple);
+                        pmp.countdownProgress();
+                    }
+                }
+            } // END IF LEFT OUTER JOIN
+
+            if (earlyReturned) {
+                // Get enough rows for LIMIT inlined with aggregation
+                break;
+            }
+
+        } // END OUTER WHILE LOOP
+
+        // Make room for the next pass, its joined tuples are only read back in the merge
+        if (passTable != NULL) {
+            passTable->spillFilledBlocks();
+        }
+        releaseHashTable();
+    } // END PASS LOOP
+
+    //
+    // Merge the passes: the joined tuples of the outer tuple that comes
+    // first in any pass go next. Pass tables are read one block at a time.
+    //
+    std::vector<boost::shared_ptr<TableIterator> > passIterators;
+    std::vector<size_t> nextRun(passTables.size(), 0);
+    for (size_t ii = 0; ii < passTables.size(); ++ii) {
+        passIterators.push_back(boost::shared_ptr<TableIterator>(passTables[ii]->makeIterator()));
+    }
+    TableTuple pass_tuple(join_tuple.getSchema());
+    while ( ! passTables.empty() && !earlyReturned && (limit == -1 || tuple_ctr < limit)) {
+        size_t next = passTables.size();
+        for (size_t ii = 0; ii < passTables.size(); ++ii) {
+            if (nextRun[ii] < passRuns[ii].size() &&
+                (next == passTables.size() ||
+                 passRuns[ii][nextRun[ii]].first < passRuns[next][nextRun[next]].first)) {
+                next = ii;
+            }
+        }
+        if (next == passTables.size()) {
+            break;
+        }
+        int count = passRuns[next][nextRun[next]++].second;
+        for (int ii = 0; ii < count && (limit == -1 || tuple_ctr < limit); ++ii) {
+            passIterators[next]->next(pass_tuple);
+            pmp.countdownProgress();
+            // Check if we have to skip this tuple because of offset
+            if (tuple_skipped < offset) {
+                tuple_skipped++;
+                continue;
+            }
+            ++tuple_ctr;
+            if (m_aggExec != NULL) {
+                if (m_aggExec->p_execute_tuple(pass_tuple)) {
+                    earlyReturned = true;
+                    break;
+                }
+            } else {
+                m_tmpOutputTable->insertTempTuple(pass_tuple);
+                pmp.countdownProgress();
+            }
+        }
+    }
+
+    if (m_aggExec != NULL) {
+        m_aggExec->p_execute_finish();
+    }
+
+    cleanupInputTempTable(inner_table);
+    cleanupInputTempTable(outer_table);
+
+    return (true);
+}
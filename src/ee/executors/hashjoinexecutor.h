@@ -0,0 +1,135 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This file contains original code and/or modifications of original code.
+ * Any modifications made by VoltDB Inc. are licensed under the following
+ * terms and conditions:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+/* Copyright (C) 2008 by H-Store Project
+ * Brown University
+ * Massachusetts Institute of Technology
+ * Yale University
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#ifndef HSTOREHASHJOINEXECUTOR_H
+#define HSTOREHASHJOINEXECUTOR_H
+
+#include "common/common.h"
+#include "common/Pool.hpp"
+#include "common/tabletuple.h"
+#include "common/valuevector.h"
+#include "executors/abstractexecutor.h"
+
+#include "boost/unordered_map.hpp"
+
+#include <utility>
+#include <vector>
+
+namespace voltdb {
+
+class AggregateExecutorBase;
+class TempTableLimits;
+
+typedef boost::unordered_multimap<TableTuple,
+                                  TableTuple,
+                                  TableTupleHasher,
+                                  TableTupleEqualityChecker> HashJoinMapType;
+
+/**
+ * Equi-join for inputs without an index on the join key. The inner table is
+ * loaded into a hash table keyed by the inner hash expressions, then each
+ * outer tuple probes it with the outer hash expressions. Probing in outer
+ * order keeps the outer table's ordering and the left outer join, limit and
+ * inline aggregation behavior of the nest loop join. The hash table counts
+ * against the fragment's temp table memory limit. An inner table that spilled
+ * to disk is hashed a part at a time, with one pass over the outer table for
+ * each part.
+ */
+class HashJoinExecutor : public AbstractExecutor {
+    public:
+        /**
+         * Outer tuple positions of the joined tuples of one pass over the
+         * outer table, each with how many in a row came from it.
+         */
+        typedef std::vector<std::pair<size_t, int> > PassRuns;
+
+        HashJoinExecutor(VoltDBEngine *engine, AbstractPlanNode* abstract_node) :
+            AbstractExecutor(engine, abstract_node),
+            m_keySchema(NULL), m_limits(NULL), m_hashTableBytes(0), m_poolBytes(0), m_aggExec(NULL) { }
+        ~HashJoinExecutor();
+    protected:
+        bool p_init(AbstractPlanNode*,
+                    TempTableLimits* limits);
+        bool p_execute(const NValueArray &params);
+
+    private:
+        /** Evaluate the key expressions into the key tuple, false if any key is NULL */
+        bool buildKey(const std::vector<AbstractExpression*>& keyExpressions,
+                      const TableTuple& tuple, bool isInner, TableTuple& key);
+        /** Drop the hash table and give its memory back to the temp table limits */
+        void releaseHashTable();
+        /** Charge the temp table limits for the bytes, plus whatever the pools grew by */
+        void chargeMemory(int64_t bytes);
+
+        /**
+         * Releases the hash table however p_execute exits, including
+         * when the temp table memory limit is exceeded while building it.
+         */
+        struct HashTableGuard {
+            HashTableGuard(HashJoinExecutor* executor) : m_executor(executor) { }
+            ~HashTableGuard() { m_executor->releaseHashTable(); }
+            HashJoinExecutor* m_executor;
+        };
+
+        StandAloneTupleStorage m_null_tuple;
+
+        TupleSchema* m_keySchema;
+        HashJoinMapType m_hashTable;
+        // Key tuples and their out of line strings
+        Pool m_memoryPool;
+        // Out of line strings of the key of the outer tuple being probed
+        Pool m_probePool;
+        TempTableLimits* m_limits;
+        // Bytes charged to m_limits, including m_poolBytes
+        int64_t m_hashTableBytes;
+        // Size of the pools when they were last charged or purged
+        int64_t m_poolBytes;
+
+        AggregateExecutorBase* m_aggExec;
+};
+
+}
+
+#endif
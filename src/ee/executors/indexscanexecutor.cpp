@@ -50,6 +50,7 @@
 #include "common/tabletuple.h"
 #include "common/FatalException.hpp"
 #include "executors/aggregateexecutor.h"
+#include "executors/orderbyexecutor.h"
 #include "execution/ProgressMonitorProxy.h"
 #include "expressions/abstractexpression.h"
 #include "expressions/expressionutil.h"
@@ -60,6 +61,7 @@
 #include "plannodes/projectionnode.h"
 #include "plannodes/limitnode.h"
 #include "plannodes/aggregatenode.h"
+#include "plannodes/orderbynode.h"
 
 #include "storage/table.h"
 #include "storage/tableiterator.h"
@@ -97,6 +99,14 @@ bool IndexScanExecutor::p_init(AbstractPlanNode *abstractNode,
     // Inline aggregation can be serial, partial or hash
     m_aggExec = voltdb::getInlineAggregateExecutor(m_abstractNode);
 
+    // Inline ORDER BY, with its own inline LIMIT, keeps the top tuples of the scan
+    AbstractPlanNode* orderByNode = m_node->getInlinePlanNode(PLAN_NODE_TYPE_ORDERBY);
+    if (orderByNode != NULL) {
+        m_orderByExec = dynamic_cast<OrderByExecutor*>(orderByNode->getExecutor());
+        assert(m_orderByExec != NULL);
+        assert(m_aggExec == NULL);
+    }
+
     //
     // Make sure that we have search keys and that they're not null
     //
@@ -166,17 +176,22 @@ bool IndexScanExecutor::p_execute(const NValueArray &params)
     // INLINE LIMIT
     //
     LimitPlanNode* limit_node = dynamic_cast<LimitPlanNode*>(m_abstractNode->getInlinePlanNode(PLAN_NODE_TYPE_LIMIT));
+    // A limit on the sorted output can not cut the scan short
+    assert(limit_node == NULL || m_orderByExec == NULL);
 
     TableTuple temp_tuple;
     ProgressMonitorProxy pmp(m_engine, this);
+    const TupleSchema * inputSchema = tableIndex->getTupleSchema();
+    if (m_projectionNode != NULL) {
+        inputSchema = m_projectionNode->getOutputTable()->schema();
+    }
     if (m_aggExec != NULL) {
-        const TupleSchema * inputSchema = tableIndex->getTupleSchema();
-        if (m_projectionNode != NULL) {
-            inputSchema = m_projectionNode->getOutputTable()->schema();
-        }
         temp_tuple = m_aggExec->p_execute_init(params, &pmp, inputSchema, m_outputTable);
     } else {
         temp_tuple = m_outputTable->tempTuple();
+        if (m_orderByExec != NULL) {
+            m_orderByExec->p_execute_init(params, &pmp, inputSchema, m_outputTable);
+        }
     }
 
     // Short-circuit an empty scan
@@ -184,6 +199,8 @@ bool IndexScanExecutor::p_execute(const NValueArray &params)
         VOLT_DEBUG ("Empty Index Scan :\n %s", m_outputTable->debug().c_str());
         if (m_aggExec != NULL) {
             m_aggExec->p_execute_finish();
+        } else if (m_orderByExec != NULL) {
+            m_orderByExec->p_execute_finish();
         }
         return true;
     }
@@ -275,6 +292,8 @@ bool IndexScanExecutor::p_execute(const NValueArray &params)
     if (earlyReturnForSearchKeyOutOfRange) {
         if (m_aggExec != NULL) {
             m_aggExec->p_execute_finish();
+        } else if (m_orderByExec != NULL) {
+            m_orderByExec->p_execute_finish();
         }
         return true;
     }
@@ -431,6 +450,8 @@ bool IndexScanExecutor::p_execute(const NValueArray &params)
                     if (m_aggExec->p_execute_tuple(temp_tuple)) {
                         break;
                     }
+                } else if (m_orderByExec != NULL) {
+                    m_orderByExec->p_execute_tuple(temp_tuple);
                 } else {
                     m_outputTable->insertTupleNonVirtual(temp_tuple);
                 }
@@ -441,6 +462,8 @@ bool IndexScanExecutor::p_execute(const NValueArray &params)
                     if (m_aggExec->p_execute_tuple(tuple)) {
                         break;
                     }
+                } else if (m_orderByExec != NULL) {
+                    m_orderByExec->p_execute_tuple(tuple);
                 } else {
                     //
                     // Straight Insert
@@ -454,6 +477,8 @@ bool IndexScanExecutor::p_execute(const NValueArray &params)
 
     if (m_aggExec != NULL) {
         m_aggExec->p_execute_finish();
+    } else if (m_orderByExec != NULL) {
+        m_orderByExec->p_execute_finish();
     }
 
 
@@ -67,6 +67,7 @@ class ProjectionPlanNode;
 class LimitPlanNode;
 
 class AggregateExecutorBase;
+class OrderByExecutor;
 
 class IndexScanExecutor : public AbstractExecutor
 {
@@ -76,6 +77,7 @@ public:
         , m_projector()
         , m_searchKeyBackingStore(NULL)
         , m_aggExec(NULL)
+        , m_orderByExec(NULL)
     {}
     ~IndexScanExecutor();
 
@@ -111,6 +113,7 @@ private:
     char* m_searchKeyBackingStore;
 
     AggregateExecutorBase* m_aggExec;
+    OrderByExecutor* m_orderByExec;
 };
 
 }
@@ -222,6 +222,8 @@ bool MergeReceiveExecutor::p_init(AbstractPlanNode* abstract_node,
                                                          pre_agg_schema,
                                                          column_names,
                                                          limits));
+    // The merge keeps pointers to all the received tuples
+    m_tmpInputTable->disallowSpill();
     return true;
 }
 
@@ -56,6 +56,8 @@
 #include "storage/tableiterator.h"
 #include "storage/tablefactory.h"
 
+#include "boost/shared_ptr.hpp"
+
 #include <algorithm>
 #include <vector>
 
@@ -91,7 +93,11 @@ OrderByExecutor::p_init(AbstractPlanNode* abstract_node,
                                      getInlinePlanNode(PLAN_NODE_TYPE_LIMIT));
     } else {
         assert(node->getChildren().empty());
-        assert(node->getInlinePlanNode(PLAN_NODE_TYPE_LIMIT) == NULL);
+        // Inlined into a MERGE RECEIVE, which applies the limit itself,
+        // or into a scan, with the limit inlined here
+        limit_node =
+            dynamic_cast<LimitPlanNode*>(node->
+                                     getInlinePlanNode(PLAN_NODE_TYPE_LIMIT));
     }
 
 #if defined(VOLT_LOG_LEVEL)
@@ -129,10 +135,40 @@ OrderByExecutor::p_execute(const NValueArray &params)
 
     VOLT_TRACE("Running OrderBy '%s'", m_abstractNode->debug().c_str());
     VOLT_TRACE("Input Table:\n '%s'", input_table->debug().c_str());
-    TableIterator iterator = input_table->iterator();
     TableTuple tuple(input_table->schema());
-    vector<TableTuple> xs;
     ProgressMonitorProxy pmp(m_engine, this);
+
+    if (limit >= 0) {
+        // Top-N: only the first LIMIT + OFFSET tuples are ever held,
+        // so the input can be released as it is read.
+        TableIterator iterator = input_table->iteratorDeletingAsWeGo();
+        p_execute_init(params, &pmp, input_table->schema(), output_table);
+        while (iterator.next(tuple))
+        {
+            pmp.countdownProgress();
+            assert(tuple.isActive());
+            p_execute_tuple(tuple);
+        }
+        p_execute_finish();
+        VOLT_TRACE("Result of OrderBy:\n '%s'", output_table->debug().c_str());
+
+        cleanupInputTempTable(input_table);
+
+        return true;
+    }
+
+    TempTable* spilled_input = dynamic_cast<TempTable*>(input_table);
+    if (spilled_input != NULL && spilled_input->spilledBlockCount() > 0) {
+        externalSort(spilled_input, output_table, offset, &pmp);
+        VOLT_TRACE("Result of OrderBy:\n '%s'", output_table->debug().c_str());
+
+        cleanupInputTempTable(input_table);
+
+        return true;
+    }
+
+    TableIterator iterator = input_table->iterator();
+    vector<TableTuple> xs;
     while (iterator.next(tuple))
     {
         pmp.countdownProgress();
@@ -142,16 +178,8 @@ OrderByExecutor::p_execute(const NValueArray &params)
     VOLT_TRACE("\n***** Input Table PreSort:\n '%s'",
                input_table->debug().c_str());
 
-
-    if (limit >= 0 && xs.begin() + limit + offset < xs.end()) {
-        // partial sort
-        partial_sort(xs.begin(), xs.begin() + limit + offset, xs.end(),
-                AbstractExecutor::TupleComparer(node->getSortExpressions(), node->getSortDirections()));
-    } else {
-        // full sort
-        sort(xs.begin(), xs.end(),
-                AbstractExecutor::TupleComparer(node->getSortExpressions(), node->getSortDirections()));
-    }
+    sort(xs.begin(), xs.end(),
+         AbstractExecutor::TupleComparer(node->getSortExpressions(), node->getSortDirections()));
 
     int tuple_ctr = 0;
     int tuple_skipped = 0;
@@ -183,5 +211,177 @@ OrderByExecutor::p_execute(const NValueArray &params)
     return true;
 }
 
+namespace {
+
+// Orders the runs of an external sort by their next tuples, first on top of the heap
+struct RunHeadComparer {
+    RunHeadComparer(const vector<TableTuple>& heads, const AbstractExecutor::TupleComparer& comp)
+        : m_heads(heads), m_comp(comp)
+    { }
+
+    bool operator()(size_t a, size_t b) const {
+        return m_comp(m_heads[b], m_heads[a]);
+    }
+
+    const vector<TableTuple>& m_heads;
+    const AbstractExecutor::TupleComparer& m_comp;
+};
+
+}
+
+void
+OrderByExecutor::externalSort(TempTable* input_table, TempTable* output_table,
+                              int offset, ProgressMonitorProxy* pmp)
+{
+    OrderByPlanNode* node = static_cast<OrderByPlanNode*>(m_abstractNode);
+    AbstractExecutor::TupleComparer comp(node->getSortExpressions(), node->getSortDirections());
+
+    //
+    // Sort runs of as many tuples as fit in a quarter of the memory limit,
+    // each into a temp table of its own that spills like the input did.
+    //
+    const TupleSchema* schema = input_table->schema();
+    const int64_t tupleLength = schema->tupleLength() + TUPLE_HEADER_SIZE;
+    const size_t runTuples = static_cast<size_t>(
+            max(static_cast<int64_t>(1), input_table->m_limits->getMemoryLimit() / 4 / tupleLength));
+    vector<boost::shared_ptr<TempTable> > runs;
+    vector<TableTuple> run;
+    m_nextTupleStorage.init(schema, &m_memoryPool);
+
+    TableTuple tuple(schema);
+    TableIterator iterator = input_table->iteratorDeletingAsWeGo();
+    bool more = true;
+    while (more) {
+        more = iterator.next(tuple);
+        if (more) {
+            pmp->countdownProgress();
+            m_nextTupleStorage.allocateActiveTuple();
+            TableTuple& copy = m_nextTupleStorage;
+            copy.copy(tuple);
+            run.push_back(copy);
+            if (run.size() < runTuples) {
+                continue;
+            }
+        }
+        if (run.empty()) {
+            continue;
+        }
+        sort(run.begin(), run.end(), comp);
+        boost::shared_ptr<TempTable> runTable(TableFactory::getCopiedTempTable(node->databaseId(),
+                                                                               input_table->name(),
+                                                                               input_table,
+                                                                               input_table->m_limits),
+                                              TempTableReleaser());
+        for (vector<TableTuple>::iterator it = run.begin(); it != run.end(); ++it) {
+            runTable->insertTempTuple(*it);
+        }
+        runTable->spillFilledBlocks();
+        runs.push_back(runTable);
+        run.clear();
+        m_memoryPool.purge();
+    }
+    VOLT_DEBUG("OrderBy sorted %d runs of spilled input", (int)runs.size());
+
+    //
+    // Merge the runs. Each one is only read one block at a time,
+    // so its next tuple stays valid until its iterator moves on.
+    //
+    vector<boost::shared_ptr<TableIterator> > iterators;
+    vector<TableTuple> heads(runs.size(), TableTuple(schema));
+    vector<size_t> heap;
+    for (size_t ii = 0; ii < runs.size(); ++ii) {
+        iterators.push_back(boost::shared_ptr<TableIterator>(runs[ii]->makeIterator()));
+        if (iterators[ii]->next(heads[ii])) {
+            heap.push_back(ii);
+        }
+    }
+    RunHeadComparer runComp(heads, comp);
+    make_heap(heap.begin(), heap.end(), runComp);
+
+    int tuple_skipped = 0;
+    while ( ! heap.empty()) {
+        pop_heap(heap.begin(), heap.end(), runComp);
+        size_t next = heap.back();
+        if (tuple_skipped < offset) {
+            tuple_skipped++;
+        }
+        else {
+            output_table->insertTempTuple(heads[next]);
+            pmp->countdownProgress();
+        }
+        if (iterators[next]->next(heads[next])) {
+            push_heap(heap.begin(), heap.end(), runComp);
+        }
+        else {
+            heap.pop_back();
+        }
+    }
+}
+
+void
+OrderByExecutor::p_execute_init(const NValueArray& params, ProgressMonitorProxy* pmp,
+                                const TupleSchema* schema, TempTable* newTempTable)
+{
+    assert(newTempTable != NULL);
+    m_outputTable = newTempTable;
+    m_pmp = pmp;
+
+    int limit = -1;
+    int offset = 0;
+    if (limit_node != NULL) {
+        limit_node->getLimitAndOffsetByReference(params, limit, offset);
+    }
+    m_limit = limit;
+    m_offset = offset > 0 ? offset : 0;
+
+    m_nextTupleStorage.init(schema, &m_memoryPool);
+    m_heap.clear();
+}
+
+void
+OrderByExecutor::p_execute_tuple(const TableTuple& nextTuple)
+{
+    OrderByPlanNode* node = static_cast<OrderByPlanNode*>(m_abstractNode);
+    AbstractExecutor::TupleComparer comp(node->getSortExpressions(), node->getSortDirections());
+
+    if (m_limit < 0 || static_cast<int64_t>(m_heap.size()) < m_limit + m_offset) {
+        m_nextTupleStorage.allocateActiveTuple();
+        TableTuple& copy = m_nextTupleStorage;
+        copy.copy(nextTuple);
+        m_heap.push_back(copy);
+        push_heap(m_heap.begin(), m_heap.end(), comp);
+    }
+    else if ( ! m_heap.empty() && comp(nextTuple, m_heap.front())) {
+        // The new tuple sorts before the last one kept: it takes over
+        // that tuple's storage and its place in the heap.
+        pop_heap(m_heap.begin(), m_heap.end(), comp);
+        m_heap.back().copy(nextTuple);
+        push_heap(m_heap.begin(), m_heap.end(), comp);
+    }
+}
+
+void
+OrderByExecutor::p_execute_finish()
+{
+    OrderByPlanNode* node = static_cast<OrderByPlanNode*>(m_abstractNode);
+    sort_heap(m_heap.begin(), m_heap.end(),
+              AbstractExecutor::TupleComparer(node->getSortExpressions(), node->getSortDirections()));
+
+    // No more than LIMIT tuples are left once OFFSET are skipped
+    vector<TableTuple>::iterator it = m_heap.begin();
+    it += min(m_offset, static_cast<int64_t>(m_heap.size()));
+    for (; it != m_heap.end(); ++it) {
+        m_outputTable->insertTempTuple(*it);
+        if (m_pmp != NULL) {
+            m_pmp->countdownProgress();
+        }
+    }
+
+    m_heap.clear();
+    m_memoryPool.purge();
+    m_outputTable = NULL;
+    m_pmp = NULL;
+}
+
 OrderByExecutor::~OrderByExecutor() {
 }
@@ -47,32 +47,68 @@
 #define HSTOREORDERBYEXECUTOR_H
 
 #include "common/common.h"
+#include "common/Pool.hpp"
+#include "common/tabletuple.h"
 #include "common/valuevector.h"
 #include "executors/abstractexecutor.h"
 
+#include <vector>
+
 namespace voltdb {
 
     class UndoLog;
     class ReadWriteSet;
     class LimitPlanNode;
+    class TempTable;
+    class ProgressMonitorProxy;
 
     /**
+     * Sorts its input table. With an inline LIMIT only the first
+     * LIMIT + OFFSET tuples in sort order are kept while the input is read,
+     * in a heap with the last of them on top, so the memory used for the
+     * sort does not grow with the input.
+     *
+     * Without a limit, an input table that spilled to disk is sorted in
+     * runs that each fit in memory, written to temp tables of their own,
+     * then merged into the output table.
      *
+     * Inlined into a scan, the scan passes each qualifying tuple to
+     * p_execute_tuple instead of writing it to its output table, and
+     * p_execute_finish writes the sorted result there.
      */
     class OrderByExecutor : public AbstractExecutor {
     public:
         OrderByExecutor(VoltDBEngine *engine, AbstractPlanNode* abstract_node)
-            : AbstractExecutor(engine, abstract_node), limit_node(NULL)
+            : AbstractExecutor(engine, abstract_node), limit_node(NULL),
+              m_outputTable(NULL), m_pmp(NULL), m_limit(-1), m_offset(0)
             { }
         ~OrderByExecutor();
 
+        void p_execute_init(const NValueArray& params, ProgressMonitorProxy* pmp,
+                            const TupleSchema* schema, TempTable* newTempTable);
+        void p_execute_tuple(const TableTuple& nextTuple);
+        void p_execute_finish();
+
     protected:
         bool p_init(AbstractPlanNode* abstract_node,
                     TempTableLimits* limits);
         bool p_execute(const NValueArray &params);
 
     private:
+        void externalSort(TempTable* input_table, TempTable* output_table,
+                          int offset, ProgressMonitorProxy* pmp);
+
         LimitPlanNode *limit_node;
+
+        // State of a streamed sort, between p_execute_init and p_execute_finish
+        TempTable* m_outputTable;
+        ProgressMonitorProxy* m_pmp;
+        PoolBackedTupleStorage m_nextTupleStorage;
+        int64_t m_limit;
+        int64_t m_offset;
+        // Copies of the tuples kept so far, a heap with the last in sort order on top
+        std::vector<TableTuple> m_heap;
+        Pool m_memoryPool;
     };
 
 }
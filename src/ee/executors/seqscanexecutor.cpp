@@ -49,9 +49,11 @@
 #include "common/tabletuple.h"
 #include "common/FatalException.hpp"
 #include "executors/aggregateexecutor.h"
+#include "executors/orderbyexecutor.h"
 #include "execution/ProgressMonitorProxy.h"
 #include "expressions/abstractexpression.h"
 #include "plannodes/aggregatenode.h"
+#include "plannodes/orderbynode.h"
 #include "plannodes/seqscannode.h"
 #include "plannodes/projectionnode.h"
 #include "plannodes/limitnode.h"
@@ -102,6 +104,14 @@ bool SeqScanExecutor::p_init(AbstractPlanNode* abstract_node,
     // Inline aggregation can be serial, partial or hash
     m_aggExec = voltdb::getInlineAggregateExecutor(node);
 
+    // Inline ORDER BY, with its own inline LIMIT, keeps the top tuples of the scan
+    AbstractPlanNode* orderByNode = node->getInlinePlanNode(PLAN_NODE_TYPE_ORDERBY);
+    if (orderByNode != NULL) {
+        m_orderByExec = dynamic_cast<OrderByExecutor*>(orderByNode->getExecutor());
+        assert(m_orderByExec != NULL);
+        assert(m_aggExec == NULL);
+    }
+
     return true;
 }
 
@@ -151,6 +161,8 @@ bool SeqScanExecutor::p_execute(const NValueArray &params) {
     // How nice! We can also cut off our scanning with a nested limit!
     //
     LimitPlanNode* limit_node = dynamic_cast<LimitPlanNode*>(node->getInlinePlanNode(PLAN_NODE_TYPE_LIMIT));
+    // A limit on the sorted output can not cut the scan short
+    assert(limit_node == NULL || m_orderByExec == NULL);
 
     //
     // OPTIMIZATION:
@@ -161,7 +173,7 @@ bool SeqScanExecutor::p_execute(const NValueArray &params) {
     // to do here
     //
     if (node->getPredicate() != NULL || projection_node != NULL ||
-        limit_node != NULL || m_aggExec != NULL)
+        limit_node != NULL || m_aggExec != NULL || m_orderByExec != NULL)
     {
         //
         // Just walk through the table using our iterator and apply
@@ -189,15 +201,19 @@ bool SeqScanExecutor::p_execute(const NValueArray &params) {
 
         ProgressMonitorProxy pmp(m_engine, this);
         TableTuple temp_tuple;
+        const TupleSchema * inputSchema = input_table->schema();
+        if (projection_node != NULL) {
+            inputSchema = projection_node->getOutputTable()->schema();
+        }
         if (m_aggExec != NULL) {
-            const TupleSchema * inputSchema = input_table->schema();
-            if (projection_node != NULL) {
-                inputSchema = projection_node->getOutputTable()->schema();
-            }
             temp_tuple = m_aggExec->p_execute_init(params, &pmp,
                     inputSchema, output_temp_table);
         } else {
             temp_tuple = output_temp_table->tempTuple();
+            if (m_orderByExec != NULL) {
+                m_orderByExec->p_execute_init(params, &pmp,
+                        inputSchema, output_temp_table);
+            }
         }
 
         while ((limit == -1 || tuple_ctr < limit) && iterator.next(tuple))
@@ -235,6 +251,8 @@ bool SeqScanExecutor::p_execute(const NValueArray &params) {
                         if (m_aggExec->p_execute_tuple(temp_tuple)) {
                             break;
                         }
+                    } else if (m_orderByExec != NULL) {
+                        m_orderByExec->p_execute_tuple(temp_tuple);
                     } else {
                         output_temp_table->insertTupleNonVirtual(temp_tuple);
                     }
@@ -245,6 +263,8 @@ bool SeqScanExecutor::p_execute(const NValueArray &params) {
                         if (m_aggExec->p_execute_tuple(tuple)) {
                             break;
                         }
+                    } else if (m_orderByExec != NULL) {
+                        m_orderByExec->p_execute_tuple(tuple);
                     } else {
                         //
                         // Insert the tuple into our output table
@@ -258,6 +278,8 @@ bool SeqScanExecutor::p_execute(const NValueArray &params) {
 
         if (m_aggExec != NULL) {
             m_aggExec->p_execute_finish();
+        } else if (m_orderByExec != NULL) {
+            m_orderByExec->p_execute_finish();
         }
     }
     //* for debug */std::cout << "SeqScanExecutor: node id " << node->getPlanNodeId() <<
@@ -56,12 +56,14 @@ namespace voltdb
     class UndoLog;
     class ReadWriteSet;
     class AggregateExecutorBase;
+    class OrderByExecutor;
 
     class SeqScanExecutor : public AbstractExecutor {
     public:
         SeqScanExecutor(VoltDBEngine *engine, AbstractPlanNode* abstract_node)
             : AbstractExecutor(engine, abstract_node)
             , m_aggExec(NULL)
+            , m_orderByExec(NULL)
         {}
     protected:
         bool p_init(AbstractPlanNode* abstract_node,
@@ -70,6 +72,7 @@ namespace voltdb
 
     private:
         AggregateExecutorBase* m_aggExec;
+        OrderByExecutor* m_orderByExec;
 
     };
 }
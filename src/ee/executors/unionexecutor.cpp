@@ -369,6 +369,18 @@ bool UnionExecutor::p_init(AbstractPlanNode* abstract_node,
                                                           node->getInputTable(0),
                                                           limits));
 
+    // Apart from UNION ALL, the set operations keep pointers to the input tuples
+    if (node->getUnionType() != UNION_TYPE_UNION_ALL) {
+        for (int table_ctr = 0, table_cnt = (int)node->getInputTableCount();
+             table_ctr < table_cnt;
+             ++table_ctr) {
+            TempTable* input_table = dynamic_cast<TempTable*>(node->getInputTable(table_ctr));
+            if (input_table != NULL) {
+                input_table->disallowSpill();
+            }
+        }
+    }
+
     m_setOperator.reset(detail::SetOperator::getSetOperator(node));
     return true;
 }
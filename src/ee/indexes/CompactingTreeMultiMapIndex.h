@@ -341,6 +341,22 @@ class CompactingTreeMultiMapIndex : public TableIndex
         }
     }
 
+    bool moveToRankTuple(int64_t rank, IndexCursor& cursor) const
+    {
+        if (!hasRank) {
+            return false;
+        }
+        cursor.m_forward = true;
+        MapIterator &mapIter = castToIter(cursor);
+        mapIter = m_entries.findRank(rank);
+        if (mapIter.isEnd()) {
+            cursor.m_match.move(NULL);
+            return false;
+        }
+        cursor.m_match.move(const_cast<void*>(mapIter.value()));
+        return true;
+    }
+
     size_t getSize() const { return m_entries.size(); }
 
     int64_t getMemoryEstimate() const
@@ -43,6 +43,7 @@
  * OTHER DEALINGS IN THE SOFTWARE.
  */
 
+#include <algorithm>
 #include <iostream>
 #include "indexes/tableindex.h"
 #include "expressions/abstractexpression.h"
@@ -91,6 +92,10 @@ TableIndex::TableIndex(const TupleSchema *keySchema, const TableIndexScheme &sch
     m_deletes(0),
     m_updates(0),
 
+    m_distinctKeyEstimate(-1),
+    m_distinctKeyEstimateSize(0),
+    m_distinctKeyEstimateChanges(-1),
+
     m_stats(this)
 {}
 
@@ -145,6 +150,70 @@ std::string TableIndex::debug() const
     return (ret);
 }
 
+int64_t TableIndex::getDistinctKeyEstimate()
+{
+    const int64_t size = static_cast<int64_t>(getSize());
+    if (isUniqueIndex() || size == 0) {
+        return size;
+    }
+    // Only countable tree indexes can be walked from a rank, and expression
+    // index keys are not columns of the tuples found in the index.
+    if (m_scheme.type != BALANCED_TREE_INDEX || ! isCountableIndex() ||
+        ! getIndexedExpressions().empty()) {
+        return -1;
+    }
+
+    // The stats tick and every @Statistics INDEX poll ask for the estimate,
+    // so only sample again once enough of the index has changed.
+    const int64_t changes = static_cast<int64_t>(m_inserts) + m_deletes + m_updates;
+    const int64_t changed = changes - m_distinctKeyEstimateChanges;
+    if (m_distinctKeyEstimateChanges < 0 || changed < 0 || changed * 8 >= m_distinctKeyEstimateSize) {
+        m_distinctKeyEstimate = sampleDistinctKeys(size);
+        m_distinctKeyEstimateSize = size;
+        m_distinctKeyEstimateChanges = changes;
+    }
+    return m_distinctKeyEstimate;
+}
+
+int64_t TableIndex::sampleDistinctKeys(int64_t size) const
+{
+    // runs of consecutive entries sampled, spread evenly over the index
+    static const int64_t SAMPLE_RUNS = 32;
+    static const int64_t SAMPLE_RUN_LENGTH = 32;
+
+    // Every key change between neighbouring entries starts a new key, so the
+    // share of neighbours with different keys in the runs, over the whole
+    // index, is the number of distinct keys. Small indexes are walked whole.
+    const std::vector<int> &columnIndices = getColumnIndices();
+    const int64_t runs = size > SAMPLE_RUNS * SAMPLE_RUN_LENGTH ? SAMPLE_RUNS : 1;
+    const int64_t runLength = runs == 1 ? size : SAMPLE_RUN_LENGTH;
+    int64_t pairs = 0;
+    int64_t changes = 0;
+    IndexCursor cursor(getTupleSchema());
+    for (int64_t run = 0; run < runs; ++run) {
+        const int64_t start = 1 + run * (size - runLength) / std::max(runs - 1, static_cast<int64_t>(1));
+        if ( ! moveToRankTuple(start, cursor)) {
+            break;
+        }
+        TableTuple previous = nextValue(cursor);
+        TableTuple tuple;
+        for (int64_t i = 1; i < runLength && ! (tuple = nextValue(cursor)).isNullTuple(); ++i) {
+            ++pairs;
+            for (size_t j = 0; j < columnIndices.size(); ++j) {
+                if (tuple.getNValue(columnIndices[j]).compare(previous.getNValue(columnIndices[j])) != 0) {
+                    ++changes;
+                    break;
+                }
+            }
+            previous = tuple;
+        }
+    }
+    if (pairs == 0) {
+        return 1;
+    }
+    return std::max(static_cast<int64_t>(1), 1 + (size - 1) * changes / pairs);
+}
+
 IndexStats* TableIndex::getIndexStats() {
     return &m_stats;
 }
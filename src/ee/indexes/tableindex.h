@@ -437,6 +437,18 @@ public:
         throwFatalException("Invoked non-countable TableIndex virtual method getCounterLET which has no implementation");
     }
 
+    /**
+     * This function only supports countable tree index. It moves the cursor forward
+     * to the entry of the given rank in ascending key order, counting from 1,
+     * so that nextValue() returns that entry and the ones after it.
+     *
+     * @Return false if the rank is past the last entry.
+     */
+    virtual bool moveToRankTuple(int64_t rank, IndexCursor& cursor) const
+    {
+        throwFatalException("Invoked non-countable TableIndex virtual method moveToRankTuple which has no implementation");
+    }
+
 
     virtual size_t getSize() const = 0;
 
@@ -444,6 +456,16 @@ public:
     // index.
     virtual int64_t getMemoryEstimate() const = 0;
 
+    /**
+     * Estimate the number of distinct keys in the index for the planner.
+     * Unique indexes have one per entry. Non-unique column-only tree
+     * indexes count the key changes in short runs of entries spread
+     * evenly over the whole index. That sample is kept, and only taken
+     * again once the entries inserted, deleted or updated since come to
+     * an eighth of the index. Returns -1 when no estimate is available.
+     */
+    int64_t getDistinctKeyEstimate();
+
     const std::vector<int>& getColumnIndices() const
     {
         return m_scheme.columnIndices;
@@ -527,6 +549,12 @@ protected:
     int m_deletes;
     int m_updates;
 
+    // the last sampled distinct key estimate, the index size and the
+    // counters summed when it was taken, -1 before the first sample
+    int64_t m_distinctKeyEstimate;
+    int64_t m_distinctKeyEstimateSize;
+    int64_t m_distinctKeyEstimateChanges;
+
     // stats
     IndexStats m_stats;
 
@@ -541,6 +569,8 @@ protected:
 
 private:
 
+    int64_t sampleDistinctKeys(int64_t size) const;
+
     // This should always/only be required for unique key indexes used for primary keys.
     virtual TableIndex *cloneEmptyNonCountingTreeIndex() const {
         throwFatalException("Primary key index discovered to be non-unique or missing a cloneEmptyTreeIndex implementation.");
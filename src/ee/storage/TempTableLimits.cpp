@@ -20,7 +20,12 @@
 #include "common/SQLException.h"
 #include "logging/LogManager.h"
 
+#include <cerrno>
 #include <cstdio>
+#include <cstring>
+#include <ctime>
+#include <unistd.h>
+#include <vector>
 
 namespace voltdb {
 
@@ -60,4 +65,68 @@ void TempTableLimits::increaseAllocated(int bytes)
     LogManager::getThreadLogger(LOGGERID_SQL)->log(LOGLEVEL_INFO, msg);
 }
 
+static int64_t nowNanos()
+{
+    struct timespec ts;
+    ::clock_gettime(CLOCK_MONOTONIC, &ts);
+    return static_cast<int64_t>(ts.tv_sec) * 1000000000 + ts.tv_nsec;
+}
+
+static void throwSpillError(const char* action, const std::string& directory)
+{
+    char msg[1024];
+    snprintf(msg, sizeof(msg), "Failed to %s a temp table spill file in %s: %s.  Aborting.",
+             action, directory.c_str(), strerror(errno));
+    throw SQLException(SQLException::volt_temp_table_spill_failure, msg);
+}
+
+int TempTableLimits::createSpillFile() const
+{
+    std::string path = m_spillDirectory + "/temptable-XXXXXX";
+    std::vector<char> name(path.begin(), path.end());
+    name.push_back('\0');
+    int fd = ::mkstemp(&name[0]);
+    if (fd < 0) {
+        throwSpillError("create", m_spillDirectory);
+    }
+    ::unlink(&name[0]);
+    return fd;
+}
+
+void TempTableLimits::writeSpilledBlock(int fd, off_t offset, const char* data, size_t length)
+{
+    int64_t start = nowNanos();
+    size_t written = 0;
+    while (written < length) {
+        ssize_t count = ::pwrite(fd, data + written, length - written, offset + written);
+        if (count < 0) {
+            if (errno == EINTR) {
+                continue;
+            }
+            throwSpillError("write", m_spillDirectory);
+        }
+        written += count;
+    }
+    m_spilledBytes += length;
+    m_spillNanos += nowNanos() - start;
+}
+
+void TempTableLimits::readSpilledBlock(int fd, off_t offset, char* data, size_t length)
+{
+    int64_t start = nowNanos();
+    size_t loaded = 0;
+    while (loaded < length) {
+        ssize_t count = ::pread(fd, data + loaded, length - loaded, offset + loaded);
+        if (count < 0 && errno == EINTR) {
+            continue;
+        }
+        if (count <= 0) {
+            throwSpillError("read", m_spillDirectory);
+        }
+        loaded += count;
+    }
+    m_reloadedBytes += length;
+    m_spillNanos += nowNanos() - start;
+}
+
 } // namespace voltdb
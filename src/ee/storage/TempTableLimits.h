@@ -19,21 +19,35 @@
 #define _EE_STORAGE_TEMPTABLELIMITS_H_
 
 #include <stdint.h>
+#include <string>
+#include <sys/types.h>
 
 namespace voltdb {
 
 /**
  * Track the amount of memory used by temp tables in a plan fragment's executors.
  * Log or throw exceptions based on thresholds.
+ *
+ * With a spill directory, temp tables that would take more than the memory
+ * limit write their full blocks to scratch files there instead, and read
+ * them back as they are scanned. The limit is only enforced for what can't
+ * be spilled. Out of line strings are not spilled: spilled tuples keep
+ * pointing at them in the temp string pool, which stays in memory and is
+ * not counted here.
  */
 class TempTableLimits {
 public:
-    TempTableLimits(int64_t memoryLimit = 1024 * 1024 * 100, int64_t logThreshold = -1)
+    TempTableLimits(int64_t memoryLimit = 1024 * 1024 * 100, int64_t logThreshold = -1,
+                    const std::string& spillDirectory = "")
         : m_currMemoryInBytes(0)
         , m_peakMemoryInBytes(0)
         , m_logThreshold(logThreshold)
         , m_memoryLimit(memoryLimit)
         , m_logLatch(false)
+        , m_spillDirectory(spillDirectory)
+        , m_spilledBytes(0)
+        , m_reloadedBytes(0)
+        , m_spillNanos(0)
     { }
 
     /**
@@ -48,6 +62,34 @@ public:
     int64_t getPeakMemoryInBytes() const { return m_peakMemoryInBytes; }
     void resetPeakMemory() { m_peakMemoryInBytes = m_currMemoryInBytes; }
 
+    /**
+     * True if temp tables may write their full blocks to the spill directory
+     * instead of failing when they would take more than the memory limit.
+     */
+    bool canSpill() const { return m_memoryLimit > 0 && ! m_spillDirectory.empty(); }
+    bool wouldExceed(int bytes) const {
+        return m_memoryLimit > 0 && m_currMemoryInBytes + bytes > m_memoryLimit;
+    }
+    int64_t getMemoryLimit() const { return m_memoryLimit; }
+    const std::string& getSpillDirectory() const { return m_spillDirectory; }
+
+    /**
+     * Create a scratch file for the spilled blocks of one temp table. The file
+     * is unlinked right away so nothing is left behind once it is closed,
+     * whichever way the process ends. Throw a SQLException with the
+     * volt_temp_table_spill_failure state on I/O errors.
+     */
+    int createSpillFile() const;
+    void writeSpilledBlock(int fd, off_t offset, const char* data, size_t length);
+    void readSpilledBlock(int fd, off_t offset, char* data, size_t length);
+
+    /// Bytes written to and read back from spill files, and the time spent
+    /// doing it, during the current execution of this plan fragment.
+    int64_t getSpilledBytes() const { return m_spilledBytes; }
+    int64_t getReloadedBytes() const { return m_reloadedBytes; }
+    int64_t getSpillNanos() const { return m_spillNanos; }
+    void resetSpillStats() { m_spilledBytes = 0; m_reloadedBytes = 0; m_spillNanos = 0; }
+
 private:
     /// The current amount of memory used by temp tables for this plan fragment.
     int64_t m_currMemoryInBytes;
@@ -63,6 +105,11 @@ private:
     /// True if we have already generated a log message for
     /// exceeding the log threshold and not yet dropped below it.
     bool m_logLatch;
+    /// Per-site directory for the spill files. Empty when spilling is off.
+    const std::string m_spillDirectory;
+    int64_t m_spilledBytes;
+    int64_t m_reloadedBytes;
+    int64_t m_spillNanos;
 };
 
 } // namespace voltdb
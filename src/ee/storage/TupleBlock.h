@@ -214,6 +214,16 @@ public:
         m_freeList.clear();
     }
 
+    /**
+     * Mark every tuple slot used, as they were in the full temp table
+     * block whose spilled contents were just read into this one.
+     */
+    inline void resetToFull() {
+        m_activeTuples = m_tuplesPerBlock;
+        m_nextFreeTuple = m_tuplesPerBlock;
+        m_freeList.clear();
+    }
+
     inline uint32_t unusedTupleBoundry() {
         return m_nextFreeTuple;
     }
@@ -268,6 +268,11 @@ inline bool TableIterator::tempNext(TableTuple &out) {
             }
 
             m_currentBlock = *m_tempBlockIterator;
+            if (m_currentBlock == NULL) {
+                // spilled to disk: read it back into a block of its own,
+                // released as soon as the iterator moves past it
+                m_currentBlock = m_table->loadSpilledBlock(m_tempBlockIterator);
+            }
             m_dataPtr = m_currentBlock->address();
             m_blockOffset = 0;
             m_tempBlockIterator++;
@@ -53,13 +53,18 @@ namespace voltdb {
 TempTable::TempTable()
   : Table(TABLE_BLOCKSIZE),
     m_iter(this),
-    m_limits(NULL)
+    m_limits(NULL),
+    m_spilledBlockCount(0),
+    m_spillFd(-1),
+    m_canSpill(true)
 {
     // this happens here because m_data might not be initialized above
     m_iter.reset(m_data.begin());
 }
 
-TempTable::~TempTable() {}
+TempTable::~TempTable() {
+    releaseSpillFile();
+}
 
 // ------------------------------------------------------------------
 // OPERATIONS
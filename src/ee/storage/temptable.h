@@ -48,11 +48,14 @@
 
 #include "table.h"
 #include "common/tabletuple.h"
+#include "common/FatalException.hpp"
 #include "common/ThreadLocalPool.h"
 #include "storage/tableiterator.h"
 #include "storage/TempTableLimits.h"
 #include "storage/TupleBlock.h"
 
+#include <unistd.h>
+
 namespace voltdb {
 
 class TableColumn;
@@ -67,6 +70,12 @@ class TableStats;
  * in TempTable to make it faster, use deleteAllTuples instead.  As
  * there is no deleteTuple, there is no freelist; TempTable does a
  * efficient thing for iterating and deleteAllTuples.
+ *
+ * When its limits allow spilling, a temp table that would take more than
+ * the memory limit writes its full blocks, all but the first, to a scratch
+ * file and leaves NULL in their place. Iterators read a spilled block back
+ * into a block of their own when they reach it, so a tuple of a spilled
+ * table is only valid until its iterator moves to the next block.
  */
 class TempTable : public Table {
     friend class TableFactory;
@@ -120,6 +129,12 @@ class TempTable : public Table {
 
     void deleteAllTuplesNonVirtual(bool freeAllocatedStrings);
 
+    /**
+     * Like deleteAllTuples, and also give back the first block the table
+     * otherwise keeps for reuse, when it is about to be deleted.
+     */
+    void deleteAllTuplesAndBlocks();
+
     /**
      * Uses the pool to do a deep copy of the tuple including allocations
      * for all uninlined columns. Used by CopyOnWriteContext to back up tuples
@@ -138,6 +153,27 @@ class TempTable : public Table {
 
     int64_t tempTableTupleCount() const { return m_tupleCount; }
 
+    /**
+     * Number of blocks currently written out to the spill file.
+     * Callers that keep pointers to the tuples of a table must
+     * not scan it as they would an in-memory one when this is non-zero.
+     */
+    size_t spilledBlockCount() const { return m_spilledBlockCount; }
+
+    /**
+     * Keep every block of this table in memory, for an executor that keeps
+     * pointers to its tuples, even when its limits would allow spilling.
+     */
+    void disallowSpill() { m_canSpill = false; }
+
+    /**
+     * Write out every block but the first, the last one too even if it isn't
+     * full, when the limits allow spilling. For a table that won't be added
+     * to until it is emptied, so that the tables an executor fills one after
+     * the other don't all stay in memory.
+     */
+    void spillFilledBlocks();
+
     // ------------------------------------------------------------------
     // INDEXES
     // ------------------------------------------------------------------
@@ -165,6 +201,9 @@ class TempTable : public Table {
     void nextFreeTuple(TableTuple *tuple);
 
     void freeLastScanedBlock(std::vector<TBPtr>::iterator nextBlockIterator);
+    TBPtr loadSpilledBlock(std::vector<TBPtr>::iterator blockIterator);
+    void spillFullBlocks();
+    void releaseSpillFile();
     std::vector<TBPtr>::iterator getDataEndBlockIterator();
 
     virtual void onSetColumns() {
@@ -174,6 +213,23 @@ class TempTable : public Table {
   private:
     // pointers to chunks of data. Specific to table impl. Don't leak this type.
     std::vector<TBPtr> m_data;
+
+    // Blocks 1 to m_spilledBlockCount are in the spill file, block i at
+    // (i - 1) * m_tableAllocationSize. The file is opened on the first spill.
+    size_t m_spilledBlockCount;
+    int m_spillFd;
+    bool m_canSpill;
+};
+
+/**
+ * Deleter for the temp tables an executor makes for a single execution,
+ * so that their memory is given back to the temp table limits.
+ */
+struct TempTableReleaser {
+    void operator()(TempTable* table) const {
+        table->deleteAllTuplesAndBlocks();
+        delete table;
+    }
 };
 
 inline void TempTable::insertTupleNonVirtualWithDeepCopy(const TableTuple &source, Pool *pool) {
@@ -233,7 +289,7 @@ inline void TempTable::deleteAllTuplesNonVirtual(bool freeAllocatedStrings) {
     m_tupleCount = 0;
     while (m_data.size() > 1) {
         // This block of temp table may have been clean up already
-        // because of delete as we go feature.
+        // because of delete as we go feature, or spilled.
         TBPtr blockPtr = m_data.back();
         m_data.pop_back();
         if (m_limits && blockPtr) {
@@ -245,9 +301,24 @@ inline void TempTable::deleteAllTuplesNonVirtual(bool freeAllocatedStrings) {
     if (!m_data.empty()) {
         m_data[0]->reset();
     }
+    releaseSpillFile();
+}
+
+inline void TempTable::deleteAllTuplesAndBlocks() {
+    deleteAllTuplesNonVirtual(false);
+    if (!m_data.empty()) {
+        m_data.clear();
+        if (m_limits) {
+            m_limits->reduceAllocated(m_tableAllocationSize);
+        }
+    }
 }
 
 inline TBPtr TempTable::allocateNextBlock() {
+    if (m_canSpill && m_limits && m_limits->canSpill() && m_limits->wouldExceed(m_tableAllocationSize)) {
+        spillFullBlocks();
+    }
+
     TBPtr block(new TupleBlock(this, TBBucketPtr()));
     m_data.push_back(block);
 
@@ -265,6 +336,8 @@ inline void TempTable::nextFreeTuple(TableTuple *tuple) {
     }
 
     TBPtr block = m_data.back();
+    // nothing is added once the filled blocks are spilled
+    assert(block != NULL);
     if (!block->hasFreeTuples()) {
         block = allocateNextBlock();
     }
@@ -278,8 +351,8 @@ inline void TempTable::nextFreeTuple(TableTuple *tuple) {
 inline void TempTable::freeLastScanedBlock(std::vector<TBPtr>::iterator nextBlockIterator) {
     if (m_data.begin() != nextBlockIterator) {
         nextBlockIterator--;
-        // somehow we preserve the first block
-        if (m_data.begin() != nextBlockIterator) {
+        // somehow we preserve the first block, and spilled blocks take no memory
+        if (m_data.begin() != nextBlockIterator && *nextBlockIterator != NULL) {
             *nextBlockIterator = NULL;
             if (m_limits) {
                 m_limits->reduceAllocated(m_tableAllocationSize);
@@ -288,6 +361,55 @@ inline void TempTable::freeLastScanedBlock(std::vector<TBPtr>::iterator nextBloc
     }
 }
 
+inline TBPtr TempTable::loadSpilledBlock(std::vector<TBPtr>::iterator blockIterator) {
+    size_t index = blockIterator - m_data.begin();
+    if (index == 0 || index > m_spilledBlockCount) {
+        throwFatalException("Temp table %s has no spilled block %d", m_name.c_str(), (int)index);
+    }
+    TBPtr block(new TupleBlock(this, TBBucketPtr()));
+    m_limits->readSpilledBlock(m_spillFd,
+                               static_cast<off_t>(index - 1) * m_tableAllocationSize,
+                               block->address(),
+                               m_tupleLength * m_tuplesPerBlock);
+    block->resetToFull();
+    return block;
+}
+
+inline void TempTable::spillFullBlocks() {
+    // Every block is full when a new one is needed, or the table is done
+    // being filled. The first one is kept, it is reused once the table is emptied.
+    if (m_data.size() <= m_spilledBlockCount + 1) {
+        return;
+    }
+    if (m_spillFd < 0) {
+        m_spillFd = m_limits->createSpillFile();
+    }
+    for (size_t ii = m_spilledBlockCount + 1; ii < m_data.size(); ++ii) {
+        assert(m_data[ii] != NULL);
+        m_limits->writeSpilledBlock(m_spillFd,
+                                    static_cast<off_t>(ii - 1) * m_tableAllocationSize,
+                                    m_data[ii]->address(),
+                                    m_tupleLength * m_tuplesPerBlock);
+        m_data[ii] = NULL;
+        m_limits->reduceAllocated(m_tableAllocationSize);
+    }
+    m_spilledBlockCount = m_data.size() - 1;
+}
+
+inline void TempTable::spillFilledBlocks() {
+    if (m_canSpill && m_limits && m_limits->canSpill()) {
+        spillFullBlocks();
+    }
+}
+
+inline void TempTable::releaseSpillFile() {
+    if (m_spillFd >= 0) {
+        ::close(m_spillFd);
+        m_spillFd = -1;
+    }
+    m_spilledBlockCount = 0;
+}
+
 }
 
 #endif
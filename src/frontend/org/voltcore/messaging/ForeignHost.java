@@ -23,7 +23,10 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
 import java.util.Set;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -65,11 +68,137 @@ public class ForeignHost {
     private final AtomicInteger m_deadReportsCount = new AtomicInteger(0);
 
     public static final int POISON_PILL = -1;
+    // Destination count of a frame that carries several messages, see MessageBatch
+    public static final int MESSAGE_BATCH = -2;
 
     public static final int CRASH_ALL = 0;
     public static final int CRASH_ME = 1;
     public static final int CRASH_SPECIFIED = 2;
 
+    /*
+     * Messages sent to this host are coalesced into batches that go out as a single frame.
+     * A batch is written once it reaches BATCH_MAX_BYTES, or by the network thread once it
+     * has been open for BATCH_LINGER_NANOS. Set FH_BATCH_MAX_BYTES to 0 to send every message
+     * in its own frame.
+     */
+    static final int BATCH_MAX_BYTES = Integer.getInteger("FH_BATCH_MAX_BYTES", 64 * 1024);
+    static final long BATCH_LINGER_NANOS =
+            TimeUnit.MICROSECONDS.toNanos(Long.getLong("FH_BATCH_LINGER_US", 0));
+    // Hands lingering batches to the network thread at their deadline
+    private static final ScheduledThreadPoolExecutor s_lingerTimer = BATCH_LINGER_NANOS > 0 ?
+            CoreUtils.getScheduledThreadPoolExecutor("Foreign Host Batch Linger", 1, CoreUtils.SMALL_STACK_SIZE) : null;
+
+    // Length prefix, message count (in place of the source HSId) and the batch marker
+    private static final int BATCH_HEADER_SIZE = 4 + 8 + 4;
+    // Standalone frame: length prefix, source HSId and destination count
+    private static final int FRAME_HEADER_SIZE = 4 + 8 + 4;
+    // Batched message: length prefix, source site id and destination count
+    private static final int BATCH_ENTRY_HEADER_SIZE = 4 + 4 + 4;
+
+    private final Object m_batchLock = new Object();
+    private ArrayList<BatchEntry> m_batch = new ArrayList<BatchEntry>();
+    private int m_batchBytes = 0;
+    private boolean m_flushPending = false;
+
+    // Batching counters, guarded by m_batchLock
+    private long m_messagesSent = 0;
+    private long m_framesSent = 0;
+    private long m_batchFramesSent = 0;
+    private long m_bytesSaved = 0;
+
+    /**
+     * A message waiting in a batch. Sources are local sites and destinations are sites
+     * of the remote host, so only their site ids are written.
+     */
+    private static final class BatchEntry {
+        final long sourceHSId;
+        final long destinations[];
+        final VoltMessage message;
+        final int messageSize;
+
+        BatchEntry(long sourceHSId, long destinations[], VoltMessage message, int messageSize) {
+            this.sourceHSId = sourceHSId;
+            this.destinations = destinations;
+            this.message = message;
+            this.messageSize = messageSize;
+        }
+
+        int getSerializedSize() {
+            return BATCH_ENTRY_HEADER_SIZE + 4 * destinations.length + messageSize;
+        }
+    }
+
+    /**
+     * Frame layout for a batch of messages:
+     *   int length, long message count, int MESSAGE_BATCH, followed by each message as
+     *   int length, int source site id, int destination count, int destination site ids[], message
+     */
+    private static final class MessageBatch implements DeferredSerialization {
+        private final ArrayList<BatchEntry> m_entries;
+        private final int m_size;
+
+        MessageBatch(ArrayList<BatchEntry> entries, int size) {
+            m_entries = entries;
+            m_size = size;
+        }
+
+        @Override
+        public void serialize(final ByteBuffer buf) throws IOException {
+            buf.putInt(buf.capacity() - 4);
+            buf.putLong(m_entries.size());
+            buf.putInt(MESSAGE_BATCH);
+            for (BatchEntry entry : m_entries) {
+                buf.putInt(entry.getSerializedSize() - 4);
+                buf.putInt(CoreUtils.getSiteIdFromHSId(entry.sourceHSId));
+                buf.putInt(entry.destinations.length);
+                for (long destination : entry.destinations) {
+                    buf.putInt(CoreUtils.getSiteIdFromHSId(destination));
+                }
+                // Messages expect to be flattened into a buffer sized exactly for them
+                final ByteBuffer messageBuf = buf.duplicate();
+                messageBuf.limit(messageBuf.position() + entry.messageSize);
+                entry.message.flattenToBuffer(messageBuf.slice());
+                buf.position(buf.position() + entry.messageSize);
+            }
+            buf.flip();
+        }
+
+        @Override
+        public void cancel() {
+        }
+
+        @Override
+        public String toString() {
+            return "MessageBatch of " + m_entries.size();
+        }
+
+        @Override
+        public int getSerializedSize() {
+            return m_size;
+        }
+    }
+
+    /*
+     * Runs on the network thread and writes out the open batch. With a linger it is
+     * queued once the first message of the batch has waited BATCH_LINGER_NANOS.
+     */
+    private final Runnable m_flushTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (m_batchLock) {
+                m_flushPending = false;
+                flushBatch();
+            }
+        }
+    };
+
+    private final Runnable m_lingerExpired = new Runnable() {
+        @Override
+        public void run() {
+            m_network.enqueue(m_flushTask);
+        }
+    };
+
     /** ForeignHost's implementation of InputHandler */
     public class FHInputHandler extends VoltProtocolHandler {
 
@@ -197,6 +326,96 @@ public class ForeignHost {
             return;
         }
 
+        if (BATCH_MAX_BYTES > 0) {
+            sendBatched(destinations, message);
+        } else {
+            sendFrame(destinations, message);
+        }
+
+        checkLiveness();
+    }
+
+    /**
+     * Add a message to the open batch. Messages that can't be batched, because they are too
+     * large or aren't between a local site and a site of this host, are sent in their own frame
+     * after the open batch is flushed so that ordering is preserved.
+     */
+    private void sendBatched(final long destinations[], final VoltMessage message) {
+        final int messageSize = message.getSerializedSize();
+        boolean batchable = CoreUtils.getHostIdFromHSId(message.m_sourceHSId) == m_hostMessenger.getHostId();
+        for (int ii = 0; batchable && ii < destinations.length; ii++) {
+            batchable = CoreUtils.getHostIdFromHSId(destinations[ii]) == m_hostId;
+        }
+        final BatchEntry entry = new BatchEntry(message.m_sourceHSId, destinations, message, messageSize);
+        batchable = batchable && BATCH_HEADER_SIZE + entry.getSerializedSize() <= BATCH_MAX_BYTES;
+
+        synchronized (m_batchLock) {
+            if (!batchable) {
+                flushBatch();
+                sendFrame(destinations, message);
+                m_messagesSent++;
+                m_framesSent++;
+                return;
+            }
+
+            if (BATCH_HEADER_SIZE + m_batchBytes + entry.getSerializedSize() > BATCH_MAX_BYTES) {
+                flushBatch();
+            }
+            m_batch.add(entry);
+            m_batchBytes += entry.getSerializedSize();
+
+            if (!m_flushPending) {
+                m_flushPending = true;
+                if (s_lingerTimer == null) {
+                    m_network.enqueue(m_flushTask);
+                } else {
+                    s_lingerTimer.schedule(m_lingerExpired, BATCH_LINGER_NANOS, TimeUnit.NANOSECONDS);
+                }
+            }
+        }
+    }
+
+    /**
+     * Write out the open batch, a batch of one goes out as a regular frame.
+     * Must be called holding m_batchLock.
+     */
+    private void flushBatch() {
+        assert(Thread.holdsLock(m_batchLock));
+        final int count = m_batch.size();
+        if (count == 0) {
+            return;
+        }
+        if (count == 1) {
+            final BatchEntry entry = m_batch.get(0);
+            sendFrame(entry.destinations, entry.message);
+            m_batch.clear();
+        } else {
+            m_network.enqueue(new MessageBatch(m_batch, BATCH_HEADER_SIZE + m_batchBytes));
+            m_batchFramesSent++;
+            for (BatchEntry entry : m_batch) {
+                m_bytesSaved += FRAME_HEADER_SIZE + 8 * entry.destinations.length
+                        + entry.messageSize - entry.getSerializedSize();
+            }
+            m_bytesSaved -= BATCH_HEADER_SIZE;
+            m_batch = new ArrayList<BatchEntry>();
+        }
+        m_messagesSent += count;
+        m_framesSent++;
+        m_batchBytes = 0;
+    }
+
+    /**
+     * Counters for coalescing of messages sent to this host: messages sent, frames sent,
+     * frames that carried more than one message and bytes saved by batch framing.
+     */
+    long[] getBatchingStats() {
+        synchronized (m_batchLock) {
+            return new long[] { m_messagesSent, m_framesSent, m_batchFramesSent, m_bytesSaved };
+        }
+    }
+
+    /** Send a message in a frame of its own */
+    private void sendFrame(final long destinations[], final VoltMessage message) {
         m_network.enqueue(
                 new DeferredSerialization() {
                     @Override
@@ -233,7 +452,9 @@ public class ForeignHost {
                         return len;
                     }
                 });
+    }
 
+    private void checkLiveness() {
         long current_time = EstTime.currentTimeMillis();
         long current_delta = current_time - m_lastMessageMillis.get();
         /*
@@ -344,11 +565,39 @@ public class ForeignHost {
             return;
         }
 
-        recvDests = new long[destCount];
-        for (int i = 0; i < destCount; i++) {
-            recvDests[i] = in.getLong();
+        if (destCount == MESSAGE_BATCH) {
+            final int localHostId = m_hostMessenger.getHostId();
+            final long count = sourceHSId;
+            for (long ii = 0; ii < count; ii++) {
+                final int entryLength = in.getInt();
+                final int entryEnd = in.position() + entryLength;
+                final long entrySourceHSId = CoreUtils.getHSIdFromHostAndSite(m_hostId, in.getInt());
+                final int entryDestCount = in.getInt();
+                recvDests = new long[entryDestCount];
+                for (int i = 0; i < entryDestCount; i++) {
+                    recvDests[i] = CoreUtils.getHSIdFromHostAndSite(localHostId, in.getInt());
+                }
+                // Messages expect a buffer that ends where they do
+                final ByteBuffer messageBuf = in.duplicate();
+                messageBuf.limit(entryEnd);
+                deserializeAndDeliver(entrySourceHSId, recvDests, messageBuf.slice());
+                in.position(entryEnd);
+            }
+        } else {
+            recvDests = new long[destCount];
+            for (int i = 0; i < destCount; i++) {
+                recvDests[i] = in.getLong();
+            }
+            deserializeAndDeliver(sourceHSId, recvDests, in);
         }
 
+        //m_lastMessageMillis = System.currentTimeMillis();
+        m_lastMessageMillis.lazySet(EstTime.currentTimeMillis());
+
+    }
+
+    /** Deserialize a message and deliver it to each of its local destinations */
+    private void deserializeAndDeliver(long sourceHSId, long recvDests[], ByteBuffer in) throws IOException {
         final VoltMessage message =
             m_hostMessenger.getMessageFactory().createMessageFromBuffer(in, sourceHSId);
 
@@ -364,13 +613,9 @@ public class ForeignHost {
             }
         }
 
-        for (int i = 0; i < destCount; i++) {
+        for (int i = 0; i < recvDests.length; i++) {
             deliverMessage( recvDests[i], message);
         }
-
-        //m_lastMessageMillis = System.currentTimeMillis();
-        m_lastMessageMillis.lazySet(EstTime.currentTimeMillis());
-
     }
 
     public void sendPoisonPill(String err, int cause) {
@@ -389,7 +634,11 @@ public class ForeignHost {
         message.put(errBytes);
         message.putInt(cause);
         message.flip();
-        m_network.enqueue(message);
+        // Messages batched before the pill must not arrive after it
+        synchronized (m_batchLock) {
+            flushBatch();
+            m_network.enqueue(message);
+        }
     }
 
     public void updateDeadHostTimeout(int timeout) {
@@ -1180,4 +1180,17 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
         return m_network.getIOStats(interval, picoNetworks);
     }
 
+    /**
+     * Cumulative message batching counters of the connection to each foreign host,
+     * keyed by host id. See ForeignHost.getBatchingStats() for the layout.
+     */
+    public Map<Integer, long[]> getMessageBatchingStats() {
+        final ImmutableMap<Integer, ForeignHost> fhosts = m_foreignHosts;
+        Map<Integer, long[]> retval = new HashMap<Integer, long[]>();
+        for (Map.Entry<Integer, ForeignHost> e : fhosts.entrySet()) {
+            retval.put(e.getKey(), e.getValue().getBatchingStats());
+        }
+        return retval;
+    }
+
 }
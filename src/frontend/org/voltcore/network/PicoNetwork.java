@@ -499,6 +499,14 @@ public class PicoNetwork implements Runnable, Connection, IOStatsIntf
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * Run a task on the network thread
+     */
+    public void enqueue(final Runnable r) {
+        m_tasks.offer(r);
+        m_selector.wakeup();
+    }
+
     public void enqueue(final DeferredSerialization ds) {
         m_tasks.offer(new Runnable() {
             @Override
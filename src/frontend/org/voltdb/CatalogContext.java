@@ -32,6 +32,7 @@ import org.voltdb.catalog.Deployment;
 import org.voltdb.catalog.Procedure;
 import org.voltdb.catalog.SnapshotSchedule;
 import org.voltdb.catalog.Table;
+import org.voltdb.compiler.CollectedEstimates;
 import org.voltdb.compiler.PlannerTool;
 import org.voltdb.compiler.deploymentfile.DeploymentType;
 import org.voltdb.utils.CatalogUtil;
@@ -79,6 +80,13 @@ public class CatalogContext {
      */
     public final PlannerTool m_ptool;
 
+    /*
+     * Table and index sizes reported by the sites for the ad hoc planner.
+     * Fed by every site of this host, thread-safe. Carried over by update()
+     * so its generation keeps counting up for the plan cache of the catalog.
+     */
+    public final CollectedEstimates m_estimates;
+
     // PRIVATE
     private final InMemoryJarfile m_jarfile;
 
@@ -92,6 +100,19 @@ public class CatalogContext {
             byte[] catalogBytes,
             byte[] deploymentBytes,
             int version)
+    {
+        this(transactionId, uniqueId, catalog, catalogBytes, deploymentBytes, version,
+                new CollectedEstimates());
+    }
+
+    private CatalogContext(
+            long transactionId,
+            long uniqueId,
+            Catalog catalog,
+            byte[] catalogBytes,
+            byte[] deploymentBytes,
+            int version,
+            CollectedEstimates estimates)
     {
         m_transactionId = transactionId;
         m_uniqueId = uniqueId;
@@ -134,8 +155,10 @@ public class CatalogContext {
 
         m_defaultProcs = new DefaultProcedureManager(database);
 
+        m_estimates = estimates;
+
         m_jdbc = new JdbcDatabaseMetaDataGenerator(catalog, m_defaultProcs, m_jarfile);
-        m_ptool = new PlannerTool(cluster, database, catalogHash);
+        m_ptool = new PlannerTool(cluster, database, catalogHash, m_estimates);
         catalogVersion = version;
 
         if (procedures != null) {
@@ -186,7 +209,8 @@ public class CatalogContext {
                     newCatalog,
                     bytes,
                     depbytes,
-                    catalogVersion + incValue);
+                    catalogVersion + incValue,
+                    m_estimates);
         return retval;
     }
 
@@ -3009,6 +3009,28 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
         return client_stats;
     }
 
+    /**
+     * Per connection, including the internal adapters, the name of the
+     * connection and its admin mode, outstanding transaction count and the
+     * creation time of its oldest outstanding transaction.
+     */
+    public Map<Long, Pair<String, long[]>> getInFlightStats()
+    {
+        final Map<Long, Pair<String, long[]>> inFlightStats =
+            new HashMap<Long, Pair<String, long[]>>();
+
+        for (Map.Entry<Long, ClientInterfaceHandleManager> e : m_cihm.entrySet()) {
+            final ClientInterfaceHandleManager cihm = e.getValue();
+            inFlightStats.put(
+                    e.getKey(), new Pair<String, long[]>(
+                        cihm.connection.getHostnameOrIP(),
+                        new long[] {cihm.isAdmin ? 1 : 0,
+                                    cihm.getOutstandingTxns(),
+                                    cihm.getOldestOutstandingCreationNanos()}));
+        }
+        return inFlightStats;
+    }
+
     public SnapshotDaemon getSnapshotDaemon() {
         return m_snapshotDaemon;
     }
@@ -21,10 +21,11 @@ import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Deque;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.network.Connection;
@@ -40,6 +41,13 @@ import com.google_voltpatches.common.collect.ImmutableMap.Builder;
  * ordered and completed, we can use the per-partition lists to determine which
  * transactions have been dropped due to faults and potentially report that
  * back to the client.
+ *
+ * Each per-partition list of reads and of writes is guarded by its own lock,
+ * and a handle is generated under the lock of the list it is added to so the
+ * lists stay ordered. The lock is uncontended for client connections, which
+ * are only used from their network thread, and lets the internal adapters
+ * (importers, snapshot daemon, HTTP) create and complete handles for different
+ * partitions concurrently instead of serializing on one monitor.
  */
 public class ClientInterfaceHandleManager
 {
@@ -54,7 +62,7 @@ public class ClientInterfaceHandleManager
     static final long PART_ID_SHIFT = 48;
     static final long SEQNUM_MAX = (1L << PART_ID_SHIFT) - 1L;
 
-    private long m_outstandingTxns;
+    private final AtomicLong m_outstandingTxns = new AtomicLong();
     public final boolean isAdmin;
     public final Connection connection;
     public final ClientInterfaceRepairCallback repairCallback;
@@ -65,11 +73,11 @@ public class ClientInterfaceHandleManager
 
     private HandleGenerator m_shortCircuitHG = new HandleGenerator(SHORT_CIRCUIT_PART_ID);
 
-    private final Map<Long, Iv2InFlight> m_shortCircuitReads = new HashMap<Long, Iv2InFlight>();
+    private final Map<Long, Iv2InFlight> m_shortCircuitReads = new ConcurrentHashMap<Long, Iv2InFlight>();
 
     private static class HandleGenerator
     {
-        private long m_sequence = 0;
+        private final AtomicLong m_sequence = new AtomicLong();
         final private long m_partitionId;
 
         HandleGenerator(int partitionId)
@@ -79,10 +87,8 @@ public class ClientInterfaceHandleManager
 
         public long getNextHandle()
         {
-            if (m_sequence > SEQNUM_MAX) {
-                m_sequence = 0;
-            }
-            return ((m_partitionId << PART_ID_SHIFT) | m_sequence++);
+            // wraps to 0 after SEQNUM_MAX
+            return ((m_partitionId << PART_ID_SHIFT) | (m_sequence.getAndIncrement() & SEQNUM_MAX));
         }
     }
 
@@ -131,8 +137,10 @@ public class ClientInterfaceHandleManager
         }
     }
 
-    private ImmutableMap<Integer, PartitionData> m_partitionStuff =
+    // copied on write under m_partitionStuffLock so lookups don't need a lock
+    private volatile ImmutableMap<Integer, PartitionData> m_partitionStuff =
             new Builder<Integer, PartitionData>().build();
+    private final Object m_partitionStuffLock = new Object();
 
     ClientInterfaceHandleManager(boolean isAdmin, Connection connection, ClientInterfaceRepairCallback repairCallback, AdmissionControlGroup acg)
     {
@@ -152,37 +160,7 @@ public class ClientInterfaceHandleManager
     {
         return new ClientInterfaceHandleManager(isAdmin, connection, callback, acg) {
             @Override
-            synchronized long getHandle(boolean isSinglePartition, int partitionId,
-                    long clientHandle, int messageSize, long creationTimeNanos, String procName, long initiatorHSId,
-                    boolean readOnly, boolean isShortCircuitRead) {
-                return super.getHandle(isSinglePartition, partitionId,
-                        clientHandle, messageSize, creationTimeNanos, procName, initiatorHSId, readOnly, isShortCircuitRead);
-            }
-            @Override
-            synchronized Iv2InFlight findHandle(long ciHandle) {
-                return super.findHandle(ciHandle);
-            }
-            @Override
-            synchronized Iv2InFlight removeHandle(long ciHandle) {
-                return super.removeHandle(ciHandle);
-            }
-            @Override
-            synchronized long getOutstandingTxns() {
-                return super.getOutstandingTxns();
-            }
-            @Override
-            synchronized void freeOutstandingTxns() {
-                super.freeOutstandingTxns();
-            }
-
-            @Override
-            synchronized List<Iv2InFlight> removeHandlesForPartitionAndInitiator(Integer partitionId,
-                    Long initiatorHSId) {
-                return super.removeHandlesForPartitionAndInitiator(partitionId, initiatorHSId);
-            }
-
-            @Override
-            synchronized boolean shouldCheckThreadIdAssertion()
+            boolean shouldCheckThreadIdAssertion()
             {
                 return false;
             }
@@ -214,42 +192,48 @@ public class ClientInterfaceHandleManager
 
         PartitionData partitionStuff = m_partitionStuff.get(partitionId);
         if (partitionStuff == null) {
-            partitionStuff = new PartitionData(partitionId);
-            m_partitionStuff =
-                    new Builder<Integer, PartitionData>().
-                        putAll(m_partitionStuff).
-                        put(partitionId, partitionStuff).build();
+            synchronized (m_partitionStuffLock) {
+                partitionStuff = m_partitionStuff.get(partitionId);
+                if (partitionStuff == null) {
+                    partitionStuff = new PartitionData(partitionId);
+                    m_partitionStuff =
+                            new Builder<Integer, PartitionData>().
+                                putAll(m_partitionStuff).
+                                put(partitionId, partitionStuff).build();
+                }
+            }
         }
 
-        long ciHandle =
-                isShortCircuitRead ? m_shortCircuitHG.getNextHandle() : partitionStuff.m_generator.getNextHandle();
-        Iv2InFlight inFlight =
-                new Iv2InFlight(ciHandle, clientHandle, messageSize, creationTimeNanos, procName, initiatorHSId);
-
+        long ciHandle;
         if (isShortCircuitRead) {
             /*
              * Short circuit reads don't use a handle that is partition specific
              * because ordering doesn't really matter since it isn't used for failure handling
              * because the read is local to this process
              */
-            m_shortCircuitReads.put(ciHandle, inFlight);
+            ciHandle = m_shortCircuitHG.getNextHandle();
+            m_shortCircuitReads.put(ciHandle,
+                    new Iv2InFlight(ciHandle, clientHandle, messageSize, creationTimeNanos, procName, initiatorHSId));
         } else {
             /*
              * Reads are not ordered with writes, writes might block due to command logging
              * so track them separately because they will come back in mixed order
              */
+            final Deque<Iv2InFlight> perPartDeque = readOnly ? partitionStuff.m_reads : partitionStuff.m_writes;
+            synchronized (perPartDeque) {
+                ciHandle = partitionStuff.m_generator.getNextHandle();
+                perPartDeque.offer(
+                        new Iv2InFlight(ciHandle, clientHandle, messageSize, creationTimeNanos, procName, initiatorHSId));
+            }
             if (readOnly) {
                 /*
                  * Encode the read only-ness into the handle
                  */
                 ciHandle = setReadBit(ciHandle);
-                partitionStuff.m_reads.offer(inFlight);
-            } else {
-                partitionStuff.m_writes.offer(inFlight);
             }
         }
 
-        m_outstandingTxns++;
+        m_outstandingTxns.incrementAndGet();
         m_acg.increaseBackpressure(messageSize);
         return ciHandle;
     }
@@ -284,7 +268,7 @@ public class ClientInterfaceHandleManager
         Iv2InFlight inflight = m_shortCircuitReads.remove(ciHandle);
         if (inflight != null) {
             m_acg.reduceBackpressure(inflight.m_messageSize);
-            m_outstandingTxns--;
+            m_outstandingTxns.decrementAndGet();
             return inflight;
         }
 
@@ -301,6 +285,13 @@ public class ClientInterfaceHandleManager
         }
 
         final Deque<Iv2InFlight> perPartDeque = readOnly ? partitionStuff.m_reads : partitionStuff.m_writes;
+        synchronized (perPartDeque) {
+            return findHandle(perPartDeque, partitionId, ciHandle);
+        }
+    }
+
+    private Iv2InFlight findHandle(Deque<Iv2InFlight> perPartDeque, int partitionId, long ciHandle)
+    {
         while (perPartDeque.peekFirst() != null) {
             Iv2InFlight inFlight = perPartDeque.pollFirst();
             if (inFlight.m_ciHandle < ciHandle) {
@@ -318,7 +309,7 @@ public class ClientInterfaceHandleManager
                 errorResponse.flattenToBuffer(buf);
                 buf.flip();
                 connection.writeStream().enqueue(buf);
-                m_outstandingTxns--;
+                m_outstandingTxns.decrementAndGet();
                 m_acg.reduceBackpressure(inFlight.m_messageSize);
             }
             else if (inFlight.m_ciHandle > ciHandle) {
@@ -330,7 +321,7 @@ public class ClientInterfaceHandleManager
             }
             else {
                 m_acg.reduceBackpressure(inFlight.m_messageSize);
-                m_outstandingTxns--;
+                m_outstandingTxns.decrementAndGet();
                 return inFlight;
             }
         }
@@ -353,7 +344,7 @@ public class ClientInterfaceHandleManager
         Iv2InFlight inflight = m_shortCircuitReads.remove(ciHandle);
         if (inflight != null) {
             m_acg.reduceBackpressure(inflight.m_messageSize);
-            m_outstandingTxns--;
+            m_outstandingTxns.decrementAndGet();
             return inflight;
         }
 
@@ -370,20 +361,22 @@ public class ClientInterfaceHandleManager
         }
 
         final Deque<Iv2InFlight> perPartDeque = readOnly ? partitionStuff.m_reads : partitionStuff.m_writes;
-        Iterator<Iv2InFlight> iter = perPartDeque.iterator();
-        while (iter.hasNext()) {
-            Iv2InFlight inFlight = iter.next();
-            if (inFlight.m_ciHandle > ciHandle) {
-                // we've gone too far, this handle doesn't exist
-                tmLog.error("CI clientData lookup for remove missing handle: " + ciHandle
-                        + ". Next expected client data handle is: " + inFlight.m_ciHandle);
-                break;
-            }
-            else if (inFlight.m_ciHandle == ciHandle) {
-                m_acg.reduceBackpressure(inFlight.m_messageSize);
-                m_outstandingTxns--;
-                iter.remove();
-                return inFlight;
+        synchronized (perPartDeque) {
+            Iterator<Iv2InFlight> iter = perPartDeque.iterator();
+            while (iter.hasNext()) {
+                Iv2InFlight inFlight = iter.next();
+                if (inFlight.m_ciHandle > ciHandle) {
+                    // we've gone too far, this handle doesn't exist
+                    tmLog.error("CI clientData lookup for remove missing handle: " + ciHandle
+                            + ". Next expected client data handle is: " + inFlight.m_ciHandle);
+                    break;
+                }
+                else if (inFlight.m_ciHandle == ciHandle) {
+                    m_acg.reduceBackpressure(inFlight.m_messageSize);
+                    m_outstandingTxns.decrementAndGet();
+                    iter.remove();
+                    return inFlight;
+                }
             }
         }
         tmLog.error("Unable to find Client data to remove client interface handle: " + ciHandle);
@@ -393,7 +386,34 @@ public class ClientInterfaceHandleManager
     /** Return a map of ConnectionId::(adminmode, txn count) */
     long getOutstandingTxns()
     {
-        return m_outstandingTxns;
+        return m_outstandingTxns.get();
+    }
+
+    /**
+     * @return the creation time in nanoseconds of the oldest outstanding
+     * transaction, or Long.MAX_VALUE if there is none. The heads of the
+     * per-partition lists are the oldest entries because handles are
+     * created in order.
+     */
+    long getOldestOutstandingCreationNanos()
+    {
+        long oldest = Long.MAX_VALUE;
+        for (PartitionData pd : m_partitionStuff.values()) {
+            oldest = Math.min(oldest, oldestCreationNanos(pd.m_reads));
+            oldest = Math.min(oldest, oldestCreationNanos(pd.m_writes));
+        }
+        for (Iv2InFlight inflight : m_shortCircuitReads.values()) {
+            oldest = Math.min(oldest, inflight.m_creationTimeNanos);
+        }
+        return oldest;
+    }
+
+    private static long oldestCreationNanos(Deque<Iv2InFlight> perPartDeque)
+    {
+        synchronized (perPartDeque) {
+            Iv2InFlight head = perPartDeque.peekFirst();
+            return head == null ? Long.MAX_VALUE : head.m_creationTimeNanos;
+        }
     }
 
     /**
@@ -405,17 +425,21 @@ public class ClientInterfaceHandleManager
     void freeOutstandingTxns() {
         assert(!shouldCheckThreadIdAssertion() || m_expectedThreadId == Thread.currentThread().getId());
         for (PartitionData pd : m_partitionStuff.values()) {
-            for (Iv2InFlight inflight : pd.m_reads) {
-                m_outstandingTxns--;
-                m_acg.reduceBackpressure(inflight.m_messageSize);
+            synchronized (pd.m_reads) {
+                for (Iv2InFlight inflight : pd.m_reads) {
+                    m_outstandingTxns.decrementAndGet();
+                    m_acg.reduceBackpressure(inflight.m_messageSize);
+                }
             }
-            for (Iv2InFlight inflight : pd.m_writes) {
-                m_outstandingTxns--;
-                m_acg.reduceBackpressure(inflight.m_messageSize);
+            synchronized (pd.m_writes) {
+                for (Iv2InFlight inflight : pd.m_writes) {
+                    m_outstandingTxns.decrementAndGet();
+                    m_acg.reduceBackpressure(inflight.m_messageSize);
+                }
             }
         }
         for (Iv2InFlight inflight : m_shortCircuitReads.values()) {
-            m_outstandingTxns--;
+            m_outstandingTxns.decrementAndGet();
             m_acg.reduceBackpressure(inflight.m_messageSize);
         }
     }
@@ -431,17 +455,7 @@ public class ClientInterfaceHandleManager
          * First clear the pending reads
          */
         PartitionData partitionStuff = m_partitionStuff.get(partitionId);
-        Deque<Iv2InFlight> inFlight = partitionStuff.m_reads;
-        Iterator<Iv2InFlight> i = inFlight.iterator();
-        while (i.hasNext()) {
-            Iv2InFlight entry = i.next();
-            if (entry.m_initiatorHSId != initiatorHSId) {
-                i.remove();
-                retval.add(entry);
-                m_outstandingTxns--;
-                m_acg.reduceBackpressure(entry.m_messageSize);
-            }
-        }
+        removeHandlesForInitiator(partitionStuff.m_reads, initiatorHSId, retval);
 
         /*
          * MP short circuit reads can be remote, which necessitate repair
@@ -456,7 +470,7 @@ public class ClientInterfaceHandleManager
                 if (entry.m_initiatorHSId != initiatorHSId) {
                     itr.remove();
                     retval.add(entry);
-                    m_outstandingTxns--;
+                    m_outstandingTxns.decrementAndGet();
                     m_acg.reduceBackpressure(entry.m_messageSize);
                 }
             }
@@ -465,18 +479,24 @@ public class ClientInterfaceHandleManager
         /*
          * Then clear the pending writes
          */
-        inFlight = partitionStuff.m_writes;
-        i = inFlight.iterator();
-        while (i.hasNext()) {
-            Iv2InFlight entry = i.next();
-            if (entry.m_initiatorHSId != initiatorHSId) {
-                i.remove();
-                retval.add(entry);
-                m_outstandingTxns--;
-                m_acg.reduceBackpressure(entry.m_messageSize);
+        removeHandlesForInitiator(partitionStuff.m_writes, initiatorHSId, retval);
+        return retval;
+    }
+
+    private void removeHandlesForInitiator(Deque<Iv2InFlight> inFlight, long initiatorHSId,
+            List<Iv2InFlight> retval) {
+        synchronized (inFlight) {
+            Iterator<Iv2InFlight> i = inFlight.iterator();
+            while (i.hasNext()) {
+                Iv2InFlight entry = i.next();
+                if (entry.m_initiatorHSId != initiatorHSId) {
+                    i.remove();
+                    retval.add(entry);
+                    m_outstandingTxns.decrementAndGet();
+                    m_acg.reduceBackpressure(entry.m_messageSize);
+                }
             }
         }
-        return retval;
     }
 
     // Coward's way out...the thread-safe override of this class will return false for this,
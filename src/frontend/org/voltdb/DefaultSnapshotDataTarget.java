@@ -32,6 +32,7 @@ import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -46,12 +47,13 @@ import org.voltcore.utils.DBBPool;
 import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltdb.messaging.FastSerializer;
 import org.voltdb.sysprocs.saverestore.SnapshotUtil;
-import org.voltdb.utils.CompressionService;
+import org.voltdb.utils.CompressionCodec;
 import org.voltdb.utils.PosixAdvise;
 
 import com.google_voltpatches.common.util.concurrent.Callables;
 import com.google_voltpatches.common.util.concurrent.Futures;
 import com.google_voltpatches.common.util.concurrent.ListenableFuture;
+import com.google_voltpatches.common.util.concurrent.ListenableFutureTask;
 import com.google_voltpatches.common.util.concurrent.ListeningExecutorService;
 import com.google_voltpatches.common.util.concurrent.ListeningScheduledExecutorService;
 import com.google_voltpatches.common.util.concurrent.MoreExecutors;
@@ -86,6 +88,15 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
 
     private volatile long m_bytesWritten = 0;
 
+    /*
+     * Throughput of this target for @SnapshotStatus. Compression time is summed across
+     * the compression threads, write time is only updated by the write thread.
+     */
+    private final CompressionCodec m_codec;
+    private final AtomicLong m_rawBytes = new AtomicLong(0);
+    private final AtomicLong m_compressNanos = new AtomicLong(0);
+    private volatile long m_writeNanos = 0;
+
     private static final Semaphore m_bytesAllowedBeforeSync = new Semaphore((1024 * 1024) * 256);
     private final AtomicInteger m_bytesWrittenSinceLastSync = new AtomicInteger(0);
 
@@ -106,6 +117,34 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
             m_outstandingWriteTasksLock.newCondition();
 
     private static final ListeningExecutorService m_es = CoreUtils.getListeningSingleThreadExecutor("Snapshot write service ");
+
+    /*
+     * Compression and checksumming are CPU bound and run on their own pool so that a snapshot
+     * doesn't compete with the computation service. The single write thread only does IO.
+     */
+    public static final int SNAPSHOT_COMPRESSION_THREADS =
+            Integer.getInteger("SNAPSHOT_COMPRESSION_THREADS", Math.max(2, CoreUtils.availableProcessors() / 2));
+    private static final ListeningExecutorService m_compressionService = MoreExecutors.listeningDecorator(
+            Executors.newFixedThreadPool(SNAPSHOT_COMPRESSION_THREADS,
+                    CoreUtils.getThreadFactory("Snapshot compression service")));
+
+    /*
+     * Codec used when the snapshot request doesn't name one
+     */
+    public static final CompressionCodec DEFAULT_CODEC =
+            CompressionCodec.fromString(System.getProperty("SNAPSHOT_COMPRESSION", "SNAPPY"));
+
+    /*
+     * Readers of version 2 files Snappy decompress every chunk, files with chunks
+     * in any other codec are version 3 so that those readers don't take them
+     */
+    public static final int SNAPPY_FILE_VERSION = 2;
+    public static final int CODEC_FILE_VERSION = 3;
+
+    public static int[] fileVersionForCodec(CompressionCodec codec) {
+        return new int[] { 0, 0, 0,
+                codec == CompressionCodec.SNAPPY ? SNAPPY_FILE_VERSION : CODEC_FILE_VERSION };
+    }
     static final ListeningScheduledExecutorService m_syncService = MoreExecutors.listeningDecorator(
             Executors.newSingleThreadScheduledExecutor(CoreUtils.getThreadFactory("Snapshot sync service")));
 
@@ -163,7 +202,37 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
                 schemaTable,
                 txnId,
                 timestamp,
-                new int[] { 0, 0, 0, 2 });
+                fileVersionForCodec(DEFAULT_CODEC),
+                DEFAULT_CODEC);
+    }
+
+    public DefaultSnapshotDataTarget(
+            final File file,
+            final int hostId,
+            final String clusterName,
+            final String databaseName,
+            final String tableName,
+            final int numPartitions,
+            final boolean isReplicated,
+            final List<Integer> partitionIds,
+            final VoltTable schemaTable,
+            final long txnId,
+            final long timestamp,
+            final CompressionCodec codec) throws IOException {
+        this(
+                file,
+                hostId,
+                clusterName,
+                databaseName,
+                tableName,
+                numPartitions,
+                isReplicated,
+                partitionIds,
+                schemaTable,
+                txnId,
+                timestamp,
+                fileVersionForCodec(codec),
+                codec);
     }
 
     public DefaultSnapshotDataTarget(
@@ -178,11 +247,13 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
             final VoltTable schemaTable,
             final long txnId,
             final long timestamp,
-            int version[]
+            int version[],
+            final CompressionCodec codec
             ) throws IOException {
         String hostname = CoreUtils.getHostnameOrAddress();
         m_file = file;
         m_tableName = tableName;
+        m_codec = codec;
         m_fos = new FileOutputStream(file);
         m_channel = m_fos.getChannel();
         m_needsFinalClose = !isReplicated;
@@ -204,7 +275,8 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
             stringer.key("databaseName").value(databaseName);
             stringer.key("tableName").value(tableName.toUpperCase());
             stringer.key("isReplicated").value(isReplicated);
-            stringer.key("isCompressed").value(true);
+            stringer.key("isCompressed").value(codec != CompressionCodec.NONE);
+            stringer.key("compressionCodec").value(codec.name());
             stringer.key("checksumType").value("CRC32C");
             stringer.key("timestamp").value(timestamp);
             /*
@@ -432,9 +504,9 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
 
         m_outstandingWriteTasks.incrementAndGet();
 
-        Future<BBContainer> compressionTask = null;
+        ListenableFuture<BBContainer> compressionTask = null;
         if (prependLength) {
-            BBContainer cont =
+            final BBContainer cont =
                     DBBPool.allocateDirectAndPool(SnapshotSiteProcessor.m_snapshotBufferCompressedLen);
             //Skip 4-bytes so the partition ID is not compressed
             //That way if we detect a corruption we know what partition is bad
@@ -442,14 +514,14 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
             /*
              * Leave 12 bytes, it's going to be a 4-byte length prefix, a 4-byte partition id,
              * and a 4-byte CRC32C of just the header bytes, in addition to the compressed payload CRC
-             * that is 16 bytes, but 4 of those are done by CompressionService
+             * that is 16 bytes, but 4 of those are done by the compression task
              */
             cont.b().position(12);
-            compressionTask = CompressionService.compressAndCRC32cBufferAsync(tupleData, cont);
+            compressionTask = compressAndCRC32c(tupleData, cont);
         }
         final Future<BBContainer> compressionTaskFinal = compressionTask;
 
-        ListenableFuture<?> writeTask = m_es.submit(new Callable<Object>() {
+        ListenableFutureTask<Object> writeTask = ListenableFutureTask.create(new Callable<Object>() {
             @Override
             public Object call() throws Exception {
                 try {
@@ -466,6 +538,7 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
                         }
                     }
 
+                    final long writeStart = System.nanoTime();
                     final ByteBuffer tupleData = tupleDataCont.b();
                     int totalWritten = 0;
                     if (prependLength) {
@@ -509,6 +582,7 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
                     }
                     m_bytesWritten += totalWritten;
                     m_bytesWrittenSinceLastSync.addAndGet(totalWritten);
+                    m_writeNanos += System.nanoTime() - writeStart;
                 } catch (IOException e) {
                     m_writeException = e;
                     SNAP_LOG.error("Error while attempting to write snapshot data to file " + m_file, e);
@@ -531,9 +605,48 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
                 return null;
             }
         });
+
+        /*
+         * Chunks are self describing so they don't have to land in the file in the order
+         * they were handed in. Only queue the write once the payload is compressed so
+         * the write thread never blocks on one chunk while others are ready to go.
+         */
+        if (compressionTask != null) {
+            compressionTask.addListener(writeTask, m_es);
+        } else {
+            m_es.execute(writeTask);
+        }
         return writeTask;
     }
 
+    /*
+     * Compress the remaining tuple data with this target's codec into the output container
+     * after a 4-byte CRC32C slot, then checksum the compressed bytes into that slot.
+     */
+    private ListenableFuture<BBContainer> compressAndCRC32c(final ByteBuffer inBuffer, final BBContainer outBufferC) {
+        assert(inBuffer.isDirect());
+        assert(outBufferC.b().isDirect());
+        return m_compressionService.submit(new Callable<BBContainer>() {
+            @Override
+            public BBContainer call() throws Exception {
+                final long start = System.nanoTime();
+                final int rawLength = inBuffer.remaining();
+                final ByteBuffer outBuffer = outBufferC.b();
+                //Reserve 4-bytes for the CRC
+                final int crcPosition = outBuffer.position();
+                outBuffer.position(outBuffer.position() + 4);
+                final int crcCalcStart = outBuffer.position();
+                m_codec.compress(inBuffer, outBuffer);
+                final int crc32c =
+                        DBBPool.getCRC32C(outBufferC.address(), crcCalcStart, outBuffer.limit() - crcCalcStart);
+                outBuffer.putInt(crcPosition, crc32c);
+                m_rawBytes.addAndGet(rawLength);
+                m_compressNanos.addAndGet(System.nanoTime() - start);
+                return outBufferC;
+            }
+        });
+    }
+
     @Override
     public ListenableFuture<?> write(final Callable<BBContainer> tupleData, int tableId) {
         return write(tupleData, true);
@@ -544,6 +657,31 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
         return m_bytesWritten;
     }
 
+    public CompressionCodec getCodec() {
+        return m_codec;
+    }
+
+    /**
+     * @return the number of uncompressed tuple bytes handed to this target
+     */
+    public long getRawBytes() {
+        return m_rawBytes.get();
+    }
+
+    /**
+     * @return nanoseconds spent compressing and checksumming, summed over all compression threads
+     */
+    public long getCompressNanos() {
+        return m_compressNanos.get();
+    }
+
+    /**
+     * @return nanoseconds the write thread spent writing this target, including rate limiting
+     */
+    public long getWriteNanos() {
+        return m_writeNanos;
+    }
+
     @Override
     public void setOnCloseHandler(Runnable onClose) {
         m_onCloseHandler = onClose;
@@ -17,15 +17,22 @@
 
 package org.voltdb;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.Principal;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
 
 import javax.security.auth.Subject;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.eclipse.jetty.continuation.Continuation;
@@ -38,6 +45,8 @@ import org.ietf.jgss.GSSException;
 import org.ietf.jgss.GSSManager;
 import org.ietf.jgss.GSSName;
 import org.ietf.jgss.Oid;
+import org.json_voltpatches.JSONException;
+import org.json_voltpatches.JSONWriter;
 import org.voltcore.logging.Level;
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.utils.CoreUtils;
@@ -94,6 +103,9 @@ public class HTTPClientInterface {
     private final ExecutorService m_closeAllExecutor;
 
     public final static int MAX_QUERY_PARAM_SIZE = 2 * 1024 * 1024; // 2MB
+    // Responses whose result tables are smaller than this are not gzipped, -1 disables gzip
+    static final int GZIP_MIN_BYTES = Integer.getInteger("HTTP_JSON_GZIP_MIN_BYTES", 8 * 1024);
+    static final int STREAM_BUFFER_BYTES = 8 * 1024;
     public final static int MAX_FORM_KEYS = 512;
 
     public void setTimeout(int seconds) {
@@ -117,16 +129,10 @@ public class HTTPClientInterface {
 
         @Override
         public void clientCallback(ClientResponse clientResponse) throws Exception {
-            ClientResponseImpl rimpl = (ClientResponseImpl) clientResponse;
-            String msg = rimpl.toJSONString();
-
-            // handle jsonp pattern
-            // http://en.wikipedia.org/wiki/JSON#The_Basic_Idea:_Retrieving_JSON_via_Script_Tags
-            if (m_jsonp != null) {
-                msg = asJsonp(m_jsonp, msg);
-            }
-
-            m_continuation.setAttribute("result", msg);
+            // The response is encoded when the request resumes, streaming it
+            // to the servlet output instead of building a string here.
+            m_continuation.setAttribute("result", clientResponse);
+            m_continuation.setAttribute("jsonp", m_jsonp);
             try {
                 m_continuation.resume();
             } catch (IllegalStateException e) {
@@ -157,6 +163,74 @@ public class HTTPClientInterface {
         return sb.append(jsonp).append("( ").append(msg).append(" )").toString();
     }
 
+    /**
+     * Stream a procedure response to the servlet output as JSON, row by row
+     * from the result tables, gzipped when the client accepts it and the
+     * results are large enough for it to pay off.
+     */
+    static void writeJSONResponse(ClientResponseImpl rimpl, String jsonp,
+            HttpServletRequest request, HttpServletResponse response) throws IOException {
+        OutputStream out = response.getOutputStream();
+        GZIPOutputStream gzip = null;
+        if (GZIP_MIN_BYTES >= 0 && resultBytes(rimpl) >= GZIP_MIN_BYTES) {
+            // the body now depends on the Accept-Encoding of the request,
+            // caches must not hand it to clients that sent another one
+            response.setHeader(HttpHeader.VARY.asString(), HttpHeader.ACCEPT_ENCODING.asString());
+            if (acceptsGzip(request)) {
+                response.setHeader(HttpHeader.CONTENT_ENCODING.asString(), "gzip");
+                gzip = new FastGZIPOutputStream(out);
+                out = gzip;
+            }
+        }
+        Writer writer = new BufferedWriter(
+                new OutputStreamWriter(out, StandardCharsets.UTF_8), STREAM_BUFFER_BYTES);
+        // handle jsonp pattern
+        // http://en.wikipedia.org/wiki/JSON#The_Basic_Idea:_Retrieving_JSON_via_Script_Tags
+        if (jsonp != null) {
+            writer.write(jsonp);
+            writer.write("( ");
+        }
+        try {
+            rimpl.toJSONWriter(new JSONWriter(writer));
+        } catch (JSONException e) {
+            // the writer wraps the IOException of a client that went away
+            Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+            throw new IOException("Failed to serialize a response to JSON", e);
+        }
+        if (jsonp != null) {
+            writer.write(" )");
+        }
+        writer.flush();
+        if (gzip != null) {
+            gzip.finish();
+        }
+        out.flush();
+    }
+
+    /**
+     * Result sets compress well even at the fastest level, and the default
+     * level costs several times the CPU of encoding the JSON.
+     */
+    static class FastGZIPOutputStream extends GZIPOutputStream {
+        FastGZIPOutputStream(OutputStream out) throws IOException {
+            super(out, STREAM_BUFFER_BYTES);
+            def.setLevel(Deflater.BEST_SPEED);
+        }
+    }
+
+    private static boolean acceptsGzip(HttpServletRequest request) {
+        String encoding = request.getHeader(HttpHeader.ACCEPT_ENCODING.asString());
+        return encoding != null && encoding.toLowerCase().contains("gzip");
+    }
+
+    private static long resultBytes(ClientResponseImpl rimpl) {
+        long bytes = 0;
+        for (VoltTable table : rimpl.getResults()) {
+            bytes += table.getSerializedSize();
+        }
+        return bytes;
+    }
+
     private final static void simpleJsonResponse(String jsonp, String message, HttpServletResponse rsp, int code) {
         ClientResponseImpl rimpl = new ClientResponseImpl(
                 ClientResponse.UNEXPECTED_FAILURE, new VoltTable[0], message);
@@ -203,11 +277,11 @@ public class HTTPClientInterface {
         }
 
         final Continuation continuation = ContinuationSupport.getContinuation(request);
-        String result = (String)continuation.getAttribute("result");
+        ClientResponseImpl result = (ClientResponseImpl)continuation.getAttribute("result");
         if (result != null) {
             try {
                 response.setStatus(HttpServletResponse.SC_OK);
-                response.getWriter().print(result);
+                writeJSONResponse(result, (String)continuation.getAttribute("jsonp"), request, response);
                 request.setHandled(true);
             } catch (IllegalStateException | IOException e){
                // Thrown when we shut down the server via the JSON/HTTP (web studio) API
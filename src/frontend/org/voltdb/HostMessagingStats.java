@@ -0,0 +1,94 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.voltdb.VoltTable.ColumnInfo;
+
+/**
+ * Reports one row per connection to another host with how many messages were
+ * coalesced into each frame sent to it, for @Statistics HOSTMESSAGING.
+ */
+public class HostMessagingStats extends StatsSource {
+
+    public enum StatName {
+        REMOTE_HOST_ID,
+        MESSAGES_SENT,
+        FRAMES_SENT,
+        BATCHED_FRAMES,
+        MESSAGES_PER_FRAME,
+        BYTES_SAVED
+    };
+
+    private Map<Integer, long[]> m_counters = new HashMap<Integer, long[]>();
+    // Counters as of the last interval poll, per remote host
+    private final Map<Integer, long[]> m_lastCounters = new HashMap<Integer, long[]>();
+    private boolean m_interval = false;
+
+    public HostMessagingStats() {
+        super(false);
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new ColumnInfo(StatName.REMOTE_HOST_ID.name(), VoltType.INTEGER));
+        columns.add(new ColumnInfo(StatName.MESSAGES_SENT.name(), VoltType.BIGINT));
+        columns.add(new ColumnInfo(StatName.FRAMES_SENT.name(), VoltType.BIGINT));
+        columns.add(new ColumnInfo(StatName.BATCHED_FRAMES.name(), VoltType.BIGINT));
+        columns.add(new ColumnInfo(StatName.MESSAGES_PER_FRAME.name(), VoltType.FLOAT));
+        columns.add(new ColumnInfo(StatName.BYTES_SAVED.name(), VoltType.BIGINT));
+    }
+
+    @Override
+    protected void updateStatsRow(Object rowKey, Object[] rowValues) {
+        final Integer hostId = (Integer) rowKey;
+        long counters[] = m_counters.get(hostId);
+        if (m_interval) {
+            final long current[] = counters;
+            final long last[] = m_lastCounters.get(hostId);
+            if (last != null) {
+                counters = new long[current.length];
+                for (int ii = 0; ii < current.length; ii++) {
+                    counters[ii] = current[ii] - last[ii];
+                }
+            }
+            m_lastCounters.put(hostId, current);
+        }
+
+        rowValues[columnNameToIndex.get(StatName.REMOTE_HOST_ID.name())] = hostId;
+        rowValues[columnNameToIndex.get(StatName.MESSAGES_SENT.name())] = counters[0];
+        rowValues[columnNameToIndex.get(StatName.FRAMES_SENT.name())] = counters[1];
+        rowValues[columnNameToIndex.get(StatName.BATCHED_FRAMES.name())] = counters[2];
+        rowValues[columnNameToIndex.get(StatName.MESSAGES_PER_FRAME.name())] =
+                counters[1] == 0 ? 0.0 : (double) counters[0] / counters[1];
+        rowValues[columnNameToIndex.get(StatName.BYTES_SAVED.name())] = counters[3];
+        super.updateStatsRow(rowKey, rowValues);
+    }
+
+    @Override
+    protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+        m_interval = interval;
+        m_counters = VoltDB.instance().getHostMessenger().getMessageBatchingStats();
+        return new ArrayList<Object>(m_counters.keySet()).iterator();
+    }
+}
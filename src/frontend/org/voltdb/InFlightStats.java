@@ -0,0 +1,89 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.voltcore.utils.Pair;
+import org.voltdb.VoltTable.ColumnInfo;
+
+/**
+ * Reports one row per client connection and internal adapter (importers,
+ * snapshot daemon, HTTP) with its outstanding transactions and how long the
+ * oldest of them has been waiting, for @Statistics INFLIGHT. Unlike LIVECLIENTS
+ * the internal adapters, which have negative connection ids, are included.
+ */
+public class InFlightStats extends StatsSource {
+
+    public enum StatName {
+        CONNECTION_ID,
+        CONNECTION_NAME,
+        ADMIN,
+        OUTSTANDING_TRANSACTIONS,
+        OLDEST_OUTSTANDING_AGE
+    };
+
+    private Map<Long, Pair<String, long[]>> m_inFlight = new HashMap<Long, Pair<String, long[]>>();
+    private long m_nowNanos;
+
+    public InFlightStats() {
+        super(false);
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new ColumnInfo(StatName.CONNECTION_ID.name(), VoltType.BIGINT));
+        columns.add(new ColumnInfo(StatName.CONNECTION_NAME.name(), VoltType.STRING));
+        columns.add(new ColumnInfo(StatName.ADMIN.name(), VoltType.TINYINT));
+        columns.add(new ColumnInfo(StatName.OUTSTANDING_TRANSACTIONS.name(), VoltType.BIGINT));
+        // milliseconds, 0 when nothing is outstanding
+        columns.add(new ColumnInfo(StatName.OLDEST_OUTSTANDING_AGE.name(), VoltType.BIGINT));
+    }
+
+    @Override
+    protected void updateStatsRow(Object rowKey, Object[] rowValues) {
+        final Pair<String, long[]> info = m_inFlight.get(rowKey);
+        final long[] counters = info.getSecond();
+        final long oldest = counters[2];
+
+        rowValues[columnNameToIndex.get(StatName.CONNECTION_ID.name())] = rowKey;
+        rowValues[columnNameToIndex.get(StatName.CONNECTION_NAME.name())] = info.getFirst();
+        rowValues[columnNameToIndex.get(StatName.ADMIN.name())] = counters[0];
+        rowValues[columnNameToIndex.get(StatName.OUTSTANDING_TRANSACTIONS.name())] = counters[1];
+        rowValues[columnNameToIndex.get(StatName.OLDEST_OUTSTANDING_AGE.name())] =
+                oldest == Long.MAX_VALUE ? 0 : Math.max(0, TimeUnit.NANOSECONDS.toMillis(m_nowNanos - oldest));
+        super.updateStatsRow(rowKey, rowValues);
+    }
+
+    @Override
+    protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+        ClientInterface ci = VoltDB.instance().getClientInterface();
+        if (ci == null) {
+            return Collections.emptyIterator();
+        }
+        m_nowNanos = System.nanoTime();
+        m_inFlight = ci.getInFlightStats();
+        return new ArrayList<Object>(m_inFlight.keySet()).iterator();
+    }
+}
@@ -31,6 +31,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.voltcore.logging.Level;
@@ -84,6 +85,10 @@ public class InternalClientResponseAdapter implements Connection, WriteStream {
     private InternalConnectionContext m_context;
     private ProcedureCallback m_uacProccb;
 
+    // Callers blocked in awaitBackPressureRelief(), responses only notify when there are some
+    private final Object m_backPressureLock = new Object();
+    private final AtomicInteger m_backPressureWaiters = new AtomicInteger();
+
     private class InternalCallback implements Callback {
 
         private final ProcedureCallback m_cb;
@@ -144,6 +149,39 @@ public class InternalClientResponseAdapter implements Connection, WriteStream {
         return (m_callbacks.size() > (m_partitionExecutor.size() * MAX_PENDING_TRANSACTIONS_PER_PARTITION));
     }
 
+    /**
+     * Block until responses bring the pending transactions back under the limit,
+     * or the timeout expires.
+     * @return true if there is no backpressure anymore
+     */
+    public boolean awaitBackPressureRelief(long timeoutMillis) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        m_backPressureWaiters.incrementAndGet();
+        try {
+            synchronized (m_backPressureLock) {
+                while (hasBackPressure()) {
+                    final long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    m_backPressureLock.wait(remaining);
+                }
+            }
+            return true;
+        } finally {
+            m_backPressureWaiters.decrementAndGet();
+        }
+    }
+
+    private void removeCallback(long handle) {
+        m_callbacks.remove(handle);
+        if (m_backPressureWaiters.get() > 0 && !hasBackPressure()) {
+            synchronized (m_backPressureLock) {
+                m_backPressureLock.notifyAll();
+            }
+        }
+    }
+
     public ClientInterface getClientInterface() {
         return VoltDB.instance().getClientInterface();
     }
@@ -276,7 +314,7 @@ public class InternalClientResponseAdapter implements Connection, WriteStream {
                         // Supposedly this will never happen and is OK to ignore from stats collection perspective.
                         // Hence it is OK that this is not getting reported to callbacks.
                         m_logger.error("Failed to submit transaction.");
-                        m_callbacks.remove(handle);
+                        removeCallback(handle);
                     }
                     return bval;
                 }
@@ -366,7 +404,7 @@ public class InternalClientResponseAdapter implements Connection, WriteStream {
                     } catch (Exception ex) {
                         m_logger.error("Failed to process callback.", ex);
                     } finally {
-                        m_callbacks.remove(resp.getClientHandle());
+                        removeCallback(resp.getClientHandle());
                     }
                 }
             });
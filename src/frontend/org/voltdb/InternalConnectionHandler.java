@@ -27,7 +27,6 @@ import org.voltdb.catalog.Procedure;
 import org.voltdb.catalog.Table;
 import org.voltdb.client.ClientResponse;
 import org.voltdb.client.ProcedureCallback;
-import org.voltdb.utils.MiscUtils;
 
 /**
  * This class packs the parameters and dispatches the transactions.
@@ -43,6 +42,10 @@ public class InternalConnectionHandler {
     private final AtomicLong m_failedCount = new AtomicLong();
     private final AtomicLong m_submitSuccessCount = new AtomicLong();
     private final InternalClientResponseAdapter m_adapter;
+    private final NullCallback m_nullCallback = new NullCallback();
+
+    // Longest a caller waits for the adapter's backpressure to clear before submitting anyway
+    private static final long MAX_BACKPRESSURE_WAIT_MS = 100;
 
     private AuthSystem.AuthUser m_user;
 
@@ -65,7 +68,7 @@ public class InternalConnectionHandler {
     }
 
     public boolean callProcedure(InternalConnectionContext caller, InternalConnectionStatsCollector statsCollector, String proc, Object... fieldList) {
-        return callProcedure(caller, statsCollector, new NullCallback(), proc, fieldList);
+        return callProcedure(caller, statsCollector, m_nullCallback, proc, fieldList);
     }
 
     public boolean callProcedure(InternalConnectionContext caller, InternalConnectionStatsCollector statsCollector,
@@ -90,7 +93,7 @@ public class InternalConnectionHandler {
         caller.setBackPressure(b);
         if (b) {
             try {
-                Thread.sleep(100);
+                m_adapter.awaitBackPressureRelief(MAX_BACKPRESSURE_WAIT_MS);
             } catch (InterruptedException ex) {
             }
         }
@@ -98,9 +101,9 @@ public class InternalConnectionHandler {
         StoredProcedureInvocation task = new StoredProcedureInvocation();
 
         task.setProcName(proc);
-        task.setParams(fieldList);
         try {
-            task = MiscUtils.roundTripForCL(task);
+            // Serialized once, the same bytes are command logged and dispatched
+            task.setParamsSerialized(fieldList);
             task.setClientHandle(m_adapter.connectionId());
         } catch (Exception e) {
             String fmt = "Cannot invoke procedure %s from streaming interface %s. failed to create task.";
@@ -34,6 +34,9 @@ public class MemoryStats extends StatsSource {
         int indexMem = 0;
         int stringMem = 0;
         long pooledMem = 0;
+        long tempTableSpilled = 0;
+        long tempTableReloaded = 0;
+        long tempTableSpillMillis = 0;
     }
     Map<Long, PartitionMemRow> m_memoryStats = new TreeMap<Long, PartitionMemRow>();
 
@@ -82,6 +85,9 @@ public class MemoryStats extends StatsSource {
         columns.add(new VoltTable.ColumnInfo("POOLEDMEMORY", VoltType.BIGINT));
         columns.add(new VoltTable.ColumnInfo("PHYSICALMEMORY", VoltType.BIGINT));
         columns.add(new VoltTable.ColumnInfo("JAVAMAXHEAP", VoltType.INTEGER));
+        columns.add(new VoltTable.ColumnInfo("TEMPTABLESPILLED", VoltType.BIGINT));
+        columns.add(new VoltTable.ColumnInfo("TEMPTABLERELOADED", VoltType.BIGINT));
+        columns.add(new VoltTable.ColumnInfo("TEMPTABLESPILLTIME", VoltType.BIGINT));
     }
 
     @Override
@@ -95,6 +101,9 @@ public class MemoryStats extends StatsSource {
             totals.indexMem += pmr.indexMem;
             totals.stringMem += pmr.stringMem;
             totals.pooledMem += pmr.pooledMem;
+            totals.tempTableSpilled += pmr.tempTableSpilled;
+            totals.tempTableReloaded += pmr.tempTableReloaded;
+            totals.tempTableSpillMillis += pmr.tempTableSpillMillis;
         }
 
         // get system statistics
@@ -119,6 +128,10 @@ public class MemoryStats extends StatsSource {
         //in kb to make math simpler with other mem values.
         rowValues[columnNameToIndex.get("PHYSICALMEMORY")] = PlatformProperties.getPlatformProperties().ramInMegabytes * 1024;
         rowValues[columnNameToIndex.get("JAVAMAXHEAP")] = Runtime.getRuntime().maxMemory() / 1024;
+        //temp table spill I/O of every fragment run so far, in kb and ms
+        rowValues[columnNameToIndex.get("TEMPTABLESPILLED")] = totals.tempTableSpilled / 1024;
+        rowValues[columnNameToIndex.get("TEMPTABLERELOADED")] = totals.tempTableReloaded / 1024;
+        rowValues[columnNameToIndex.get("TEMPTABLESPILLTIME")] = totals.tempTableSpillMillis;
         super.updateStatsRow(rowKey, rowValues);
     }
 
@@ -128,7 +141,10 @@ public class MemoryStats extends StatsSource {
                                               int tupleAllocatedMem,
                                               int indexMem,
                                               int stringMem,
-                                              long pooledMemory) {
+                                              long pooledMemory,
+                                              long tempTableSpilled,
+                                              long tempTableReloaded,
+                                              long tempTableSpillMillis) {
         PartitionMemRow pmr = new PartitionMemRow();
         pmr.tupleCount = tupleCount;
         pmr.tupleDataMem = tupleDataMem;
@@ -136,6 +152,9 @@ public class MemoryStats extends StatsSource {
         pmr.indexMem = indexMem;
         pmr.stringMem = stringMem;
         pmr.pooledMem = pooledMemory;
+        pmr.tempTableSpilled = tempTableSpilled;
+        pmr.tempTableReloaded = tempTableReloaded;
+        pmr.tempTableSpillMillis = tempTableSpillMillis;
         m_memoryStats.put(siteId, pmr);
     }
 }
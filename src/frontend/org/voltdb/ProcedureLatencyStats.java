@@ -0,0 +1,303 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram_voltpatches.AbstractHistogram;
+import org.HdrHistogram_voltpatches.Histogram;
+import org.HdrHistogram_voltpatches.SingleWriterRecorder;
+import org.voltcore.utils.CompressionStrategySnappy;
+import org.voltdb.VoltTable.ColumnInfo;
+
+/**
+ * Host wide latency histograms of every procedure and of the statements it
+ * runs, for @Statistics PROCEDURELATENCY. Each site's ProcedureRunner records
+ * into single writer recorders of its own, so recording contends with no other
+ * site, and a row merges the recorders of all the sites when it is polled, so
+ * it describes the procedure on the whole host. Each row carries its histogram compressed the
+ * same way as LATENCY so rows from different hosts can be merged with
+ * {@link AbstractHistogram#add(AbstractHistogram)}.
+ *
+ * The EE runs a batch as one unit, so a statement row only covers batches in
+ * which that statement ran alone. Batches of several statements are recorded
+ * together in the {@link #MULTI_STATEMENT_BATCH} row of the procedure.
+ *
+ * Histograms resize to the largest latency they have seen rather than being
+ * allocated for the whole trackable range, and all entries are dropped on
+ * catalog update, like the PROCEDURE statistics, so dropped procedures and
+ * statements don't hold on to them.
+ */
+public class ProcedureLatencyStats extends StatsSource {
+
+    public enum StatName {
+        PROCEDURE,
+        STATEMENT,
+        INVOCATIONS,
+        P50,
+        P95,
+        P99,
+        P999,
+        MAX,
+        HISTOGRAM
+    };
+
+    /** Value of the STATEMENT column for the row covering the whole procedure */
+    public static final String WHOLE_PROCEDURE = "<ALL>";
+    /** Value of the STATEMENT column for the row covering batches of more than one statement */
+    public static final String MULTI_STATEMENT_BATCH = "<BATCH>";
+
+    // microseconds, same range as the initiator latency histograms, longer latencies are clamped
+    private static final long HIGHEST_TRACKABLE = 60L * 60L * 1000000L;
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    /**
+     * What one site recorded for a procedure or statement. Only that site
+     * records into it, the stats thread drains it.
+     */
+    static class SiteRecorder {
+        // Auto resizing, a few KB each for latencies up to a second instead of 25KB for the whole range
+        private final SingleWriterRecorder m_recorder = new SingleWriterRecorder(SIGNIFICANT_DIGITS);
+        private Histogram m_drained = null;
+
+        void record(long nanos) {
+            final long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+            m_recorder.recordValue(Math.max(0, Math.min(micros, HIGHEST_TRACKABLE)));
+        }
+
+        Histogram drain() {
+            m_drained = m_recorder.getIntervalHistogram(m_drained);
+            return m_drained;
+        }
+    }
+
+    /**
+     * One procedure or statement, one row. The stats thread drains the
+     * recorders of all the sites into the cumulative and the
+     * since-last-interval histograms.
+     */
+    static class LatencyEntry {
+        final String m_procedure;
+        final String m_statement;
+        private final List<SiteRecorder> m_sites = new CopyOnWriteArrayList<SiteRecorder>();
+        private final Histogram m_total = new Histogram(SIGNIFICANT_DIGITS);
+        private final Histogram m_sinceInterval = new Histogram(SIGNIFICANT_DIGITS);
+
+        LatencyEntry(String procedure, String statement) {
+            m_procedure = procedure;
+            m_statement = statement;
+        }
+
+        SiteRecorder addSite() {
+            final SiteRecorder site = new SiteRecorder();
+            m_sites.add(site);
+            return site;
+        }
+
+        /**
+         * Fold everything the sites recorded since the previous poll into the
+         * stored histograms and return the one requested. Interval polls reset
+         * the since-last-interval histogram after copying it.
+         */
+        synchronized Histogram poll(boolean interval) {
+            for (SiteRecorder site : m_sites) {
+                final Histogram drained = site.drain();
+                m_total.add(drained);
+                m_sinceInterval.add(drained);
+            }
+            if (interval) {
+                final Histogram retval = m_sinceInterval.copy();
+                m_sinceInterval.reset();
+                return retval;
+            }
+            return m_total.copy();
+        }
+    }
+
+    /**
+     * The rows of one procedure, shared by the sites.
+     */
+    private static class ProcedureEntries {
+        private final String m_procedure;
+        private final LatencyEntry m_whole;
+        private final LatencyEntry m_batch;
+        private final ConcurrentMap<String, LatencyEntry> m_statements =
+                new ConcurrentHashMap<String, LatencyEntry>();
+
+        ProcedureEntries(String procedure) {
+            m_procedure = procedure;
+            m_whole = new LatencyEntry(procedure, WHOLE_PROCEDURE);
+            m_batch = new LatencyEntry(procedure, MULTI_STATEMENT_BATCH);
+        }
+
+        LatencyEntry getStatement(String statement) {
+            LatencyEntry entry = m_statements.get(statement);
+            if (entry == null) {
+                entry = new LatencyEntry(m_procedure, statement);
+                LatencyEntry existing = m_statements.putIfAbsent(statement, entry);
+                if (existing != null) {
+                    entry = existing;
+                }
+            }
+            return entry;
+        }
+
+        void addEntries(List<LatencyEntry> entries) {
+            entries.add(m_whole);
+            entries.add(m_batch);
+            entries.addAll(m_statements.values());
+        }
+    }
+
+    /**
+     * The recorders of one ProcedureRunner, only used from the thread of the
+     * site that runner belongs to.
+     */
+    public static class ProcedureLatency {
+        private final ProcedureEntries m_entries;
+        private final SiteRecorder m_whole;
+        private final SiteRecorder m_batch;
+        private final Map<String, SiteRecorder> m_statements = new HashMap<String, SiteRecorder>();
+
+        private ProcedureLatency(ProcedureEntries entries) {
+            m_entries = entries;
+            m_whole = entries.m_whole.addSite();
+            m_batch = entries.m_batch.addSite();
+        }
+
+        public void recordProcedure(long nanos) {
+            m_whole.record(nanos);
+        }
+
+        /** Time of a batch that ran several statements */
+        public void recordBatch(long nanos) {
+            m_batch.record(nanos);
+        }
+
+        /** Time of a batch in which this statement ran alone */
+        public void recordStatement(String statement, long nanos) {
+            SiteRecorder site = m_statements.get(statement);
+            if (site == null) {
+                site = m_entries.getStatement(statement).addSite();
+                m_statements.put(statement, site);
+            }
+            site.record(nanos);
+        }
+    }
+
+    private final ConcurrentMap<String, ProcedureEntries> m_procedures =
+            new ConcurrentHashMap<String, ProcedureEntries>();
+
+    // the entries and histograms chosen by the last getStatsRowKeyIterator, by row
+    private final List<LatencyEntry> m_entries = new ArrayList<LatencyEntry>();
+    private final List<Histogram> m_polled = new ArrayList<Histogram>();
+
+    public ProcedureLatencyStats() {
+        super(false);
+    }
+
+    /**
+     * Create the recorders of one ProcedureRunner of a procedure. Every runner
+     * gets its own rather than one per site id, because the read-only MP sites
+     * run concurrently under the site id of the MPI.
+     */
+    public ProcedureLatency createProcedureLatency(String procedure) {
+        ProcedureEntries entries = m_procedures.get(procedure);
+        if (entries == null) {
+            entries = new ProcedureEntries(procedure);
+            ProcedureEntries existing = m_procedures.putIfAbsent(procedure, entries);
+            if (existing != null) {
+                entries = existing;
+            }
+        }
+        return new ProcedureLatency(entries);
+    }
+
+    /**
+     * Drop the histograms of every procedure. Called on catalog update, before the
+     * sites load the procedures of the new catalog and ask for fresh ones.
+     */
+    public void clear() {
+        m_procedures.clear();
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new ColumnInfo(StatName.PROCEDURE.name(), VoltType.STRING));
+        columns.add(new ColumnInfo(StatName.STATEMENT.name(), VoltType.STRING));
+        columns.add(new ColumnInfo(StatName.INVOCATIONS.name(), VoltType.BIGINT));
+        // percentiles and max are in microseconds
+        columns.add(new ColumnInfo(StatName.P50.name(), VoltType.BIGINT));
+        columns.add(new ColumnInfo(StatName.P95.name(), VoltType.BIGINT));
+        columns.add(new ColumnInfo(StatName.P99.name(), VoltType.BIGINT));
+        columns.add(new ColumnInfo(StatName.P999.name(), VoltType.BIGINT));
+        columns.add(new ColumnInfo(StatName.MAX.name(), VoltType.BIGINT));
+        columns.add(new ColumnInfo(StatName.HISTOGRAM.name(), VoltType.VARBINARY));
+    }
+
+    @Override
+    protected void updateStatsRow(Object rowKey, Object[] rowValues) {
+        final int row = (Integer)rowKey;
+        final LatencyEntry entry = m_entries.get(row);
+        final Histogram histogram = m_polled.get(row);
+
+        rowValues[columnNameToIndex.get(StatName.PROCEDURE.name())] = entry.m_procedure;
+        rowValues[columnNameToIndex.get(StatName.STATEMENT.name())] = entry.m_statement;
+        rowValues[columnNameToIndex.get(StatName.INVOCATIONS.name())] = histogram.getTotalCount();
+        rowValues[columnNameToIndex.get(StatName.P50.name())] = histogram.getValueAtPercentile(50.0);
+        rowValues[columnNameToIndex.get(StatName.P95.name())] = histogram.getValueAtPercentile(95.0);
+        rowValues[columnNameToIndex.get(StatName.P99.name())] = histogram.getValueAtPercentile(99.0);
+        rowValues[columnNameToIndex.get(StatName.P999.name())] = histogram.getValueAtPercentile(99.9);
+        rowValues[columnNameToIndex.get(StatName.MAX.name())] = histogram.getMaxValue();
+        rowValues[columnNameToIndex.get(StatName.HISTOGRAM.name())] =
+                histogram.toCompressedBytes(CompressionStrategySnappy.INSTANCE);
+        super.updateStatsRow(rowKey, rowValues);
+    }
+
+    @Override
+    protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+        final List<LatencyEntry> all = new ArrayList<LatencyEntry>();
+        for (ProcedureEntries entries : m_procedures.values()) {
+            entries.addEntries(all);
+        }
+
+        m_entries.clear();
+        m_polled.clear();
+        final List<Object> rows = new ArrayList<Object>();
+        for (LatencyEntry entry : all) {
+            final Histogram histogram = entry.poll(interval);
+            // leave out procedures and statements that did not run in this interval
+            if (histogram.getTotalCount() == 0) {
+                continue;
+            }
+            rows.add(m_entries.size());
+            m_entries.add(entry);
+            m_polled.add(histogram);
+        }
+        return rows.iterator();
+    }
+}
@@ -125,6 +125,8 @@ public class ProcedureRunner {
     // per procedure state and catalog info
     //
     protected ProcedureStatsCollector m_statsCollector;
+    // host wide latency histograms of this procedure and its statements
+    protected ProcedureLatencyStats.ProcedureLatency m_latency;
     protected final Procedure m_catProc;
     protected final boolean m_isSysProc;
     protected final boolean m_isSinglePartition;
@@ -208,10 +210,13 @@ public class ProcedureRunner {
 
         m_procedure.init(this);
 
+        m_latency = VoltDB.instance().getStatsAgent().getProcedureLatencyStats()
+                .createProcedureLatency(m_procedureName);
         m_statsCollector = new ProcedureStatsCollector(
                 m_site.getCorrespondingSiteId(),
                 m_site.getCorrespondingPartitionId(),
-                m_catProc);
+                m_catProc,
+                m_latency);
         VoltDB.instance().getStatsAgent().registerStatsSource(
                 StatsSelector.PROCEDURE,
                 site.getCorrespondingSiteId(),
@@ -790,11 +795,24 @@ public class ProcedureRunner {
                         qs.stmt, qs.params, qs.stmt.statementParamJavaTypes);
             }
         }
-        else if (m_isSinglePartition) {
-            results = fastPath(batch);
-        }
         else {
-            results = slowPath(batch, isFinalSQL);
+            final long startTime = System.nanoTime();
+            if (m_isSinglePartition) {
+                results = fastPath(batch);
+            }
+            else {
+                results = slowPath(batch, isFinalSQL);
+            }
+            // The EE runs the batch as one unit, a statement only has a time of its own when it ran alone
+            final long elapsed = System.nanoTime() - startTime;
+            if (elapsed >= 0) {
+                if (batchSize > 1) {
+                    m_latency.recordBatch(elapsed);
+                }
+                else if (batch.get(0).stmt.stmtName != null) {
+                    m_latency.recordStatement(batch.get(0).stmt.stmtName, elapsed);
+                }
+            }
         }
 
         // check expectations
@@ -908,6 +926,7 @@ public class ProcedureRunner {
 
         stmt.isReadOnly = catStmt.getReadonly();
         stmt.isReplicatedTableDML = catStmt.getReplicatedtabledml();
+        stmt.stmtName = catStmt.getTypeName();
 
         stmt.site = m_site;
 
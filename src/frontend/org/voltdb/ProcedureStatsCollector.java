@@ -71,6 +71,11 @@ class ProcedureStatsCollector extends SiteStatsSource {
      */
     private long m_currentStartTime = -1;
 
+    /**
+     * Time the procedure was last started, taken on every invocation for the latency histogram
+     */
+    private long m_latencyStartTime = -1;
+
     /**
      * Count of the number of aborts (user initiated or DB initiated)
      */
@@ -126,22 +131,26 @@ class ProcedureStatsCollector extends SiteStatsSource {
 
     private final Procedure m_catProc;
     private final int m_partitionId;
+    private final ProcedureLatencyStats.ProcedureLatency m_latency;
 
     /**
      * Constructor requires no args because it has access to the enclosing classes members.
      */
-    public ProcedureStatsCollector(long siteId, int partitionId, Procedure catProc) {
+    public ProcedureStatsCollector(long siteId, int partitionId, Procedure catProc,
+            ProcedureLatencyStats.ProcedureLatency latency) {
         super(siteId, false);
         m_partitionId = partitionId;
         m_catProc = catProc;
+        m_latency = latency;
     }
 
     /**
      * Called when a procedure begins executing. Caches the time the procedure starts.
      */
     public final void beginProcedure() {
+        m_latencyStartTime = System.nanoTime();
         if (m_invocations % timeCollectionInterval == 0) {
-            m_currentStartTime = System.nanoTime();
+            m_currentStartTime = m_latencyStartTime;
         }
     }
 
@@ -154,10 +163,17 @@ class ProcedureStatsCollector extends SiteStatsSource {
             boolean failed,
             VoltTable[] results,
             ParameterSet parameterSet) {
+        final long endTime = System.nanoTime();
+        if (m_latencyStartTime > 0) {
+            // Every invocation goes into the histogram so the tail is not sampled away
+            if (endTime >= m_latencyStartTime) {
+                m_latency.recordProcedure(endTime - m_latencyStartTime);
+            }
+            m_latencyStartTime = -1;
+        }
         if (m_currentStartTime > 0) {
             // This is a sampled invocation.
             // Update timings and size statistics.
-            final long endTime = System.nanoTime();
             final long delta = endTime - m_currentStartTime;
             if (delta < 0)
             {
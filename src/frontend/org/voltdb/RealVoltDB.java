@@ -105,6 +105,7 @@ import org.voltdb.dtxn.LatencyHistogramStats;
 import org.voltdb.dtxn.LatencyStats;
 import org.voltdb.dtxn.SiteTracker;
 import org.voltdb.export.ExportManager;
+import org.voltdb.export.ExportStats;
 import org.voltdb.importer.ImportManager;
 import org.voltdb.iv2.BaseInitiator;
 import org.voltdb.iv2.Cartographer;
@@ -709,6 +710,17 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback {
             m_commandLogStats = new CommandLogStats(m_commandLog);
             getStatsAgent().registerStatsSource(StatsSelector.COMMANDLOG, 0, m_commandLogStats);
 
+            getStatsAgent().registerStatsSource(StatsSelector.PLANNERWORKER, 0,
+                    m_asyncCompilerAgent.getWorkerStats());
+            getStatsAgent().registerStatsSource(StatsSelector.HOSTMESSAGING, 0,
+                    new HostMessagingStats());
+            getStatsAgent().registerStatsSource(StatsSelector.EXPORT, 0,
+                    new ExportStats());
+            getStatsAgent().registerStatsSource(StatsSelector.INFLIGHT, 0,
+                    new InFlightStats());
+            getStatsAgent().registerStatsSource(StatsSelector.PROCEDURELATENCY, 0,
+                    getStatsAgent().getProcedureLatencyStats());
+
             /*
              * Initialize the command log on rejoin and join before configuring the IV2
              * initiators.  This will prevent them from receiving transactions
@@ -66,6 +66,9 @@ public class SQLStmt {
 
     boolean inCatalog;
 
+    // name of the catalog statement, null for ad hoc SQL queued by a procedure
+    String stmtName;
+
     // used to clean up plans
     SiteProcedureConnection site;
 
@@ -21,6 +21,7 @@ import java.net.URI;
 
 import org.json_voltpatches.JSONException;
 import org.json_voltpatches.JSONObject;
+import org.voltdb.utils.CompressionCodec;
 
 /**
  * Encapsulate the parameters provided to @SnapshotSave needed to initiate a snapshot.
@@ -209,6 +210,17 @@ public class SnapshotInitiationInfo
             throw new Exception("@SnapshotSave format param is a " + m_format +
                     " and should be one of [\"native\" | \"csv\"]");
         }
+
+        if (jsObj.has("compression")) {
+            if (m_format != SnapshotFormat.NATIVE) {
+                throw new Exception("@SnapshotSave compression param is only supported by native snapshots");
+            }
+            try {
+                CompressionCodec.fromString(jsObj.getString("compression"));
+            } catch (IllegalArgumentException argException) {
+                throw new Exception("@SnapshotSave compression param: " + argException.getMessage());
+            }
+        }
         m_data = (String)params[0];
     }
 
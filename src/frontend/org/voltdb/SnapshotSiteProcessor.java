@@ -34,6 +34,8 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
@@ -64,6 +66,8 @@ import com.google_voltpatches.common.collect.ListMultimap;
 import com.google_voltpatches.common.collect.Lists;
 import com.google_voltpatches.common.collect.Maps;
 import com.google_voltpatches.common.util.concurrent.ListenableFuture;
+import com.google_voltpatches.common.util.concurrent.ListeningExecutorService;
+import com.google_voltpatches.common.util.concurrent.MoreExecutors;
 
 /**
  * Encapsulates the state needed to manage an ongoing snapshot at the
@@ -149,6 +153,31 @@ public class SnapshotSiteProcessor {
      */
     private static final AtomicInteger m_availableSnapshotBuffers = new AtomicInteger(16);
 
+    /**
+     * Closes the targets of replicated tables once the last site writing to one is finished,
+     * so the sites can go back to work while the target syncs. Shared by all the sites of the
+     * host instead of a thread per target, the threads go away between snapshots.
+     */
+    private static final ListeningExecutorService m_replicatedTargetCloser;
+    static {
+        final int threads = Integer.getInteger("SNAPSHOT_REPLICATED_CLOSE_THREADS", 4);
+        final ThreadPoolExecutor closer = new ThreadPoolExecutor(
+                threads, threads,
+                1, TimeUnit.MINUTES,
+                new LinkedBlockingQueue<Runnable>(),
+                CoreUtils.getThreadFactory(null, "Replicated SnapshotDataTarget terminator",
+                                           CoreUtils.SMALL_STACK_SIZE, true, null));
+        closer.allowCoreThreadTimeOut(true);
+        m_replicatedTargetCloser = MoreExecutors.listeningDecorator(closer);
+    }
+
+    /**
+     * Replicated target closes submitted by any site, the snapshot terminator waits for all
+     * of them before it declares the snapshot finished.
+     */
+    private static final ConcurrentLinkedQueue<ListenableFuture<?>> m_replicatedTargetCloses =
+            new ConcurrentLinkedQueue<ListenableFuture<?>>();
+
     /**
      * The last EE out has to shut off the lights. Cache a list
      * of targets in case this EE ends up being the one that needs
@@ -175,6 +204,11 @@ public class SnapshotSiteProcessor {
      */
     private ArrayList<Thread> m_snapshotTargetTerminators = null;
 
+    /**
+     * Replicated target closes submitted by this site, for completeSnapshotWork() to block on.
+     */
+    private ArrayList<ListenableFuture<?>> m_localReplicatedTargetCloses = null;
+
     /**
      * When a buffer is returned to the pool a new snapshot task will be offered to the queue
      * to ensure the EE wakes up and does any potential snapshot work with that buffer
@@ -267,6 +301,7 @@ public class SnapshotSiteProcessor {
                 t.join();
             }
         }
+        waitForReplicatedTargetCloses(m_localReplicatedTargetCloses);
     }
 
 
@@ -386,6 +421,7 @@ public class SnapshotSiteProcessor {
         m_snapshotTableTasks = MiscUtils.sortedArrayListMultimap();
         m_streamers = Maps.newHashMap();
         m_snapshotTargetTerminators = new ArrayList<Thread>();
+        m_localReplicatedTargetCloses = new ArrayList<ListenableFuture<?>>();
         m_extraSnapshotData = extraSnapshotData;
 
         // Table doesn't implement hashCode(), so use the table ID as key
@@ -512,34 +548,55 @@ public class SnapshotSiteProcessor {
     {
         for (final SnapshotTableTask tableTask : tableTasks) {
             /**
-             * Replicated tables are assigned to a single ES on each site and that ES
-             * is responsible for closing the data target. Done in a separate
-             * thread so the EE can continue working.
+             * Replicated tables are assigned to a single ES on each site, or split by hash range
+             * across several of them, and the ES that finishes last is responsible for closing
+             * the data target. Done on the shared closer so the EE can continue working.
              */
             if (tableTask.m_table.getIsreplicated() &&
-                tableTask.m_target.getFormat().canCloseEarly()) {
-                final Thread terminatorThread =
-                    new Thread("Replicated SnapshotDataTarget terminator ") {
-                        @Override
-                        public void run() {
-                            try {
-                                tableTask.m_target.close();
-                            } catch (IOException e) {
-                                m_perSiteLastSnapshotSucceded = false;
-                                throw new RuntimeException(e);
-                            } catch (InterruptedException e) {
-                                m_perSiteLastSnapshotSucceded = false;
-                                throw new RuntimeException(e);
-                            }
-
+                tableTask.m_target.getFormat().canCloseEarly() &&
+                tableTask.finishShard()) {
+                final ListenableFuture<?> close = m_replicatedTargetCloser.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            tableTask.m_target.close();
+                        } catch (IOException e) {
+                            m_perSiteLastSnapshotSucceded = false;
+                            throw new RuntimeException(e);
+                        } catch (InterruptedException e) {
+                            m_perSiteLastSnapshotSucceded = false;
+                            throw new RuntimeException(e);
                         }
-                    };
-                m_snapshotTargetTerminators.add(terminatorThread);
-                terminatorThread.start();
+                    }
+                });
+                m_localReplicatedTargetCloses.add(close);
+                m_replicatedTargetCloses.offer(close);
             }
         }
     }
 
+    /**
+     * Block until the given replicated target closes are done.
+     * @return false if any of them failed
+     */
+    private static boolean waitForReplicatedTargetCloses(Collection<ListenableFuture<?>> closes)
+            throws InterruptedException
+    {
+        boolean succeeded = true;
+        if (closes == null) {
+            return succeeded;
+        }
+        for (ListenableFuture<?> close : closes) {
+            try {
+                close.get();
+            } catch (ExecutionException e) {
+                SNAP_LOG.error("Error closing replicated table snapshot target", e.getCause());
+                succeeded = false;
+            }
+        }
+        return succeeded;
+    }
+
     /*
      * No schedule means don't try and schedule snapshot work because this is a blocking
      * task from completeSnapshotWork. This avoids creating thousands of task objects.
@@ -678,6 +735,19 @@ public class SnapshotSiteProcessor {
                                     return;
                                 }
                             }
+                            // Replicated targets may have been closed by any site of the host
+                            final List<ListenableFuture<?>> replicatedCloses = Lists.newArrayList();
+                            ListenableFuture<?> close;
+                            while ((close = m_replicatedTargetCloses.poll()) != null) {
+                                replicatedCloses.add(close);
+                            }
+                            try {
+                                if (!waitForReplicatedTargetCloses(replicatedCloses)) {
+                                    snapshotSucceeded = false;
+                                }
+                            } catch (InterruptedException e) {
+                                return;
+                            }
                             for (final SnapshotDataTarget t : snapshotTargets) {
                                 try {
                                     t.close();
@@ -868,6 +938,8 @@ public class SnapshotSiteProcessor {
          * Block until the sync has actually occurred in the forked threads.
          * The threads are spawned even in the blocking case to keep it simple.
          */
+        waitForReplicatedTargetCloses(m_localReplicatedTargetCloses);
+        m_localReplicatedTargetCloses = null;
         if (m_snapshotTargetTerminators != null) {
             for (final Thread t : m_snapshotTargetTerminators) {
                 t.join();
@@ -116,6 +116,11 @@ public class SnapshotStatus extends StatsSource {
         columns.add(new ColumnInfo("THROUGHPUT", VoltType.FLOAT));
         columns.add(new ColumnInfo("RESULT", VoltType.STRING));
         columns.add(new ColumnInfo("TYPE", VoltType.STRING));
+        columns.add(new ColumnInfo("COMPRESSION", VoltType.STRING));
+        columns.add(new ColumnInfo("RAW_SIZE", VoltType.BIGINT));
+        columns.add(new ColumnInfo("COMPRESS_TIME", VoltType.BIGINT));
+        columns.add(new ColumnInfo("WRITE_TIME", VoltType.BIGINT));
+        columns.add(new ColumnInfo("COMPRESS_THROUGHPUT", VoltType.FLOAT));
     }
 
     @SuppressWarnings("unchecked")
@@ -145,6 +150,17 @@ public class SnapshotStatus extends StatsSource {
         rowValues[columnNameToIndex.get("THROUGHPUT")] = throughput;
         rowValues[columnNameToIndex.get("RESULT")] = t.error == null ? "SUCCESS" : "FAILURE";
         rowValues[columnNameToIndex.get("TYPE")] = getSnapshotType(s.path);
+        // Per table codec cost, times are in milliseconds and the throughput is
+        // uncompressed megabytes per second of compression thread time
+        double compressThroughput = 0;
+        if (t.compressNanos > 0) {
+            compressThroughput = (t.rawSize / (1024.0 * 1024.0)) / (t.compressNanos / 1000000000.0);
+        }
+        rowValues[columnNameToIndex.get("COMPRESSION")] = t.compression;
+        rowValues[columnNameToIndex.get("RAW_SIZE")] = t.rawSize;
+        rowValues[columnNameToIndex.get("COMPRESS_TIME")] = t.compressNanos / 1000000;
+        rowValues[columnNameToIndex.get("WRITE_TIME")] = t.writeNanos / 1000000;
+        rowValues[columnNameToIndex.get("COMPRESS_THROUGHPUT")] = compressThroughput;
         super.updateStatsRow(rowKey, rowValues);
     }
 
@@ -17,6 +17,8 @@
 
 package org.voltdb;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.voltdb.catalog.Table;
 import org.voltdb.expressions.AbstractExpression;
 
@@ -30,6 +32,12 @@ public class SnapshotTableTask
     public final SnapshotDataFilter m_filters[];
     public final AbstractExpression m_predicate;
     public final boolean m_deleteTuples;
+    /**
+     * Shared by the tasks that each snapshot one hash range of a replicated table
+     * into the same target, null if the table is not split. The task that finishes
+     * last closes the target.
+     */
+    public final AtomicInteger m_pendingShards;
 
     volatile SnapshotDataTarget m_target;
 
@@ -38,11 +46,31 @@ public class SnapshotTableTask
             final SnapshotDataFilter filters[],
             final AbstractExpression predicate,
             final boolean deleteTuples)
+    {
+        this(table, filters, predicate, deleteTuples, null);
+    }
+
+    public SnapshotTableTask(
+            final Table table,
+            final SnapshotDataFilter filters[],
+            final AbstractExpression predicate,
+            final boolean deleteTuples,
+            final AtomicInteger pendingShards)
     {
         m_table = table;
         m_filters = filters;
         m_predicate = predicate;
         m_deleteTuples = deleteTuples;
+        m_pendingShards = pendingShards;
+    }
+
+    /**
+     * @return true if this is the only task writing to its target or the last
+     * of the shards of a replicated table to finish.
+     */
+    boolean finishShard()
+    {
+        return m_pendingShards == null || m_pendingShards.decrementAndGet() == 0;
     }
 
     public void setTarget(SnapshotDataTarget target)
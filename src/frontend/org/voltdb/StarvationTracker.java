@@ -52,6 +52,12 @@ public class StarvationTracker extends SiteStatsSource {
 
     private long m_starvationStartTime;
 
+    /*
+     * Moving average of recent starvation periods, weighted 1/8 toward the newest,
+     * so the site can tell whether work tends to show up again quickly.
+     */
+    private long m_recentStarvationNanos = 0;
+
     private boolean m_interval;
 
     /**
@@ -79,6 +85,15 @@ public class StarvationTracker extends SiteStatsSource {
         m_lastMax = Math.max(m_lastMax, delta);
         m_min = Math.min(m_min, delta);
         m_lastMin = Math.min(m_lastMin, delta);
+        m_recentStarvationNanos += (delta - m_recentStarvationNanos) >> 3;
+    }
+
+    /**
+     * @return the moving average length in nanoseconds of recent starvation periods.
+     * Only meaningful to the thread reporting starvation.
+     */
+    public long getRecentStarvationNanos() {
+        return m_recentStarvationNanos;
     }
 
     @Override
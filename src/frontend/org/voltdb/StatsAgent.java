@@ -38,6 +38,9 @@ public class StatsAgent extends OpsAgent
     private final NonBlockingHashMap<StatsSelector, NonBlockingHashMap<Long, NonBlockingHashSet<StatsSource>>> registeredStatsSources =
             new NonBlockingHashMap<StatsSelector, NonBlockingHashMap<Long, NonBlockingHashSet<StatsSource>>>();
 
+    // Shared by the procedure runners of every site, cleared on catalog update
+    private final ProcedureLatencyStats m_procedureLatencyStats = new ProcedureLatencyStats();
+
     public StatsAgent()
     {
         super("StatsAgent");
@@ -47,6 +50,10 @@ public class StatsAgent extends OpsAgent
         }
     }
 
+    public ProcedureLatencyStats getProcedureLatencyStats() {
+        return m_procedureLatencyStats;
+    }
+
     @Override
     protected void dispatchFinalAggregations(PendingOpsRequest request)
     {
@@ -188,6 +195,7 @@ public class StatsAgent extends OpsAgent
         m_procInfo = getProcInfoSupplier();
         registeredStatsSources.put(StatsSelector.PROCEDURE,
                                    new NonBlockingHashMap<Long, NonBlockingHashSet<StatsSource>>());
+        m_procedureLatencyStats.clear();
     }
 
     @Override
@@ -427,6 +435,24 @@ public class StatsAgent extends OpsAgent
         case IMPORTER:
             stats = collectStats(StatsSelector.IMPORTER, interval);
             break;
+        case PLANNERWORKER:
+            stats = collectStats(StatsSelector.PLANNERWORKER, interval);
+            break;
+        case PLANNERCACHE:
+            stats = collectStats(StatsSelector.PLANNERCACHE, interval);
+            break;
+        case HOSTMESSAGING:
+            stats = collectStats(StatsSelector.HOSTMESSAGING, interval);
+            break;
+        case EXPORT:
+            stats = collectStats(StatsSelector.EXPORT, interval);
+            break;
+        case INFLIGHT:
+            stats = collectStats(StatsSelector.INFLIGHT, interval);
+            break;
+        case PROCEDURELATENCY:
+            stats = collectStats(StatsSelector.PROCEDURELATENCY, interval);
+            break;
         default:
             // Should have been successfully groomed in collectStatsImpl().  Log something
             // for our information but let the null check below return harmlessly
@@ -579,13 +605,7 @@ public class StatsAgent extends OpsAgent
         if (!firstSource.isEEStats())
             columns = firstSource.getColumnSchema().toArray(new VoltTable.ColumnInfo[0]);
         else {
-            final VoltTable table = firstSource.getStatsTable();
-            if (table == null)
-                return null;
-            columns = new VoltTable.ColumnInfo[table.getColumnCount()];
-            for (int i = 0; i < columns.length; i++)
-                columns[i] = new VoltTable.ColumnInfo(table.getColumnName(i),
-                        table.getColumnType(i));
+            columns = firstSource.getStatsTableSchema();
         }
 
         // Append to previous results if provided.
@@ -606,14 +626,7 @@ public class StatsAgent extends OpsAgent
                  * statistics
                  */
                 if (ss.isEEStats()) {
-                    final VoltTable table = ss.getStatsTable();
-                    // this table can be null during recovery, at least
-                    if (table != null) {
-                        while (table.advanceRow()) {
-                            resultTable.add(table);
-                        }
-                        table.resetRowPosition();
-                    }
+                    ss.appendStatsTable(resultTable);
                 } else {
                     Object statsRows[][] = ss.getStatsRows(interval, now);
                     for (Object[] row : statsRows) {
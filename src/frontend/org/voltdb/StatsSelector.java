@@ -54,5 +54,11 @@ public enum StatsSelector {
     CPU,            // Return CPU Stats
 
     COMMANDLOG,     // return number of outstanding bytes and txns on this node
-    IMPORTER
+    IMPORTER,
+    PLANNERWORKER,  // queue depth and planning latency of each ad hoc planner thread
+    PLANNERCACHE,   // hit/miss/eviction counts of the ad hoc plan caches
+    HOSTMESSAGING,  // coalescing of messages sent to each other host
+    EXPORT,         // backlog of each export stream on this node
+    INFLIGHT,       // outstanding transactions of each connection, including internal adapters
+    PROCEDURELATENCY // latency percentiles of each procedure and its statements
 }
@@ -15,10 +15,12 @@
  * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
  */
 package org.voltdb;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 
+import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltdb.VoltTable.ColumnInfo;
 
 /**
@@ -37,6 +39,9 @@ public abstract class StatsSource {
     //Volatile for safe publication of the table objects
     private volatile VoltTable m_table = null;
 
+    //Pooled buffer backing m_table when it came from the EE's pooled stats path, guarded by this
+    private BBContainer m_tableContainer = null;
+
     /**
      * Column schema for statistical result rows
      */
@@ -140,14 +145,48 @@ public abstract class StatsSource {
 
     /**
      * For some sources like TableStats, they use VoltTable to keep track of
-     * statistics. This method will return it directly.
+     * statistics. This method will return it directly. A table backed by a pooled
+     * buffer is copied, use {@link #appendStatsTable(VoltTable)} to poll without one.
      *
      * @return If the return value is null, you should fall back to using
      *         getStatsRows()
      */
     public VoltTable getStatsTable() {
-        //Create a view for thread safety even though stats are retrieved single threaded right now
-        return new VoltTable(m_table.getBuffer(), true);
+        synchronized (this) {
+            if (m_tableContainer == null) {
+                //Create a view for thread safety even though stats are retrieved single threaded right now
+                return new VoltTable(m_table.getBuffer(), true);
+            }
+            /*
+             * A pooled buffer is returned to the pool as soon as the next table is set,
+             * so hand the reader a heap copy it can keep instead of a view
+             */
+            final ByteBuffer pooled = m_table.getBuffer();
+            final ByteBuffer copy = ByteBuffer.allocate(pooled.remaining());
+            copy.put(pooled);
+            copy.flip();
+            return new VoltTable(copy, true);
+        }
+    }
+
+    /**
+     * Schema of the table set with setStatsTable.
+     */
+    public synchronized VoltTable.ColumnInfo[] getStatsTableSchema() {
+        return m_table.getTableSchema();
+    }
+
+    /**
+     * Append the rows of the table set with setStatsTable to result. The table is
+     * read in place under the lock that keeps its pooled buffer from being recycled,
+     * so polling copies the rows into the result and nothing else.
+     */
+    public synchronized void appendStatsTable(VoltTable result) {
+        m_table.resetRowPosition();
+        while (m_table.advanceRow()) {
+            result.add(m_table);
+        }
+        m_table.resetRowPosition();
     }
 
     /**
@@ -158,7 +197,26 @@ public abstract class StatsSource {
      *            The VoltTable which contains the statistics.
      */
     public void setStatsTable(VoltTable statsTable) {
+        setStatsTable(statsTable, null);
+    }
+
+    /**
+     * Sets the VoltTable which contains the statistics when the table is backed by
+     * a pooled buffer. This source takes ownership of the container and discards it
+     * when the table is replaced or reset.
+     *
+     * @param statsTable
+     *            The VoltTable which contains the statistics.
+     * @param container
+     *            The container backing the table, or null if it is on the heap.
+     */
+    public synchronized void setStatsTable(VoltTable statsTable, BBContainer container) {
+        final BBContainer previous = m_tableContainer;
         m_table = statsTable;
+        m_tableContainer = container;
+        if (previous != null) {
+            previous.discard();
+        }
     }
 
     /**
@@ -167,7 +225,7 @@ public abstract class StatsSource {
      * clients to reset the tracking table without having to build an empty stats table and call setStatsTable()
      */
     public void resetStatsTable() {
-        m_table = new VoltTable(columns.toArray(new ColumnInfo[columns.size()]));
+        setStatsTable(new VoltTable(columns.toArray(new ColumnInfo[columns.size()])), null);
     }
 
     private Long now = System.currentTimeMillis();
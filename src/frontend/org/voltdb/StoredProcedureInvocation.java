@@ -129,6 +129,33 @@ public class StoredProcedureInvocation implements JSONString {
         serializedParams = null;
     }
 
+    /**
+     * Convert and serialize the parameters right away. The invocation ends up in the same
+     * state as one read off the wire, ready for command logging and dispatch, without the
+     * round trip of the whole invocation through a buffer that MiscUtils.roundTripForCL does.
+     */
+    public void setParamsSerialized(final Object... parameters) throws IOException {
+        ParameterSet pset = ParameterSet.fromArrayWithCopy(parameters);
+        int serializedSize = pset.getSerializedSize();
+        if ((pset.size() > 0) && (serializedSize <= 2)) {
+            throw new IllegalStateException(String.format("Parameter set for invocation " +
+                    "%s doesn't have the proper size (currently = %s)",
+                    getProcName(), serializedSize));
+        }
+        ByteBuffer buf = ByteBuffer.allocate(serializedSize);
+        pset.flattenToBuffer(buf);
+        buf.flip();
+        serializedParams = buf;
+        // the procedure sees the deserialized copy, the same as on command log replay
+        final ByteBuffer duplicate = buf.duplicate();
+        params = new FutureTask<ParameterSet>(new Callable<ParameterSet>() {
+            @Override
+            public ParameterSet call() throws Exception {
+                return ParameterSet.fromByteBuffer(duplicate);
+            }
+        });
+    }
+
     public ProcedureInvocationType getType() {
         return type;
     }
@@ -42,6 +42,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.locks.LockSupport;
 
 import javax.security.auth.Subject;
@@ -92,8 +93,8 @@ class Distributer {
     //Selector and connection handling, does all work in blocking selection thread
     private final VoltNetworkPool m_network;
 
-    // Temporary until a distribution/affinity algorithm is written
-    private int m_nextConnection = 0;
+    // Round-robin cursor for invocations that can't be routed by client affinity
+    private final AtomicInteger m_nextConnection = new AtomicInteger(0);
 
     private final boolean m_useMultipleThreads;
     private final boolean m_useClientAffinity;
@@ -115,18 +116,105 @@ class Distributer {
         }
     }
 
-    private final Map<Integer, NodeConnection> m_partitionMasters = new HashMap<Integer, NodeConnection>();
-    private final Map<Integer, NodeConnection[]> m_partitionReplicas = new HashMap<Integer, NodeConnection[]>();
+    /**
+     * Immutable view of everything queue() needs to pick a connection: the live connections,
+     * the partition masters and replicas, the hashinator and procedure partitioning. queue()
+     * reads the current instance without locking. Changes are made by building a new instance
+     * while holding the Distributer monitor and publishing it through m_routing.
+     */
+    private static final class RoutingTable {
+        static final RoutingTable EMPTY = new RoutingTable(
+                new NodeConnection[0],
+                null,
+                Collections.<Integer, NodeConnection>emptyMap(),
+                Collections.<Integer, NodeConnection[]>emptyMap(),
+                Collections.<String, Procedure>emptyMap());
+
+        final NodeConnection[] connections;
+        //This is the instance of the Hashinator we picked from TOPO used only for client affinity.
+        final HashinatorLite hashinator;
+        final Map<Integer, NodeConnection> partitionMasters;
+        final Map<Integer, NodeConnection[]> partitionReplicas;
+        final Map<String, Procedure> procedureInfo;
+
+        private RoutingTable(NodeConnection[] connections,
+                HashinatorLite hashinator,
+                Map<Integer, NodeConnection> partitionMasters,
+                Map<Integer, NodeConnection[]> partitionReplicas,
+                Map<String, Procedure> procedureInfo) {
+            this.connections = connections;
+            this.hashinator = hashinator;
+            this.partitionMasters = partitionMasters;
+            this.partitionReplicas = partitionReplicas;
+            this.procedureInfo = procedureInfo;
+        }
+
+        RoutingTable withConnections(List<NodeConnection> newConnections) {
+            return new RoutingTable(newConnections.toArray(new NodeConnection[newConnections.size()]),
+                    hashinator, partitionMasters, partitionReplicas, procedureInfo);
+        }
+
+        RoutingTable withTopology(HashinatorLite newHashinator,
+                Map<Integer, NodeConnection> newMasters,
+                Map<Integer, NodeConnection[]> newReplicas) {
+            return new RoutingTable(connections, newHashinator,
+                    Collections.unmodifiableMap(newMasters),
+                    Collections.unmodifiableMap(newReplicas),
+                    procedureInfo);
+        }
+
+        RoutingTable withProcedures(Map<String, Procedure> newProcedureInfo) {
+            return new RoutingTable(connections, hashinator, partitionMasters, partitionReplicas,
+                    Collections.unmodifiableMap(newProcedureInfo));
+        }
+    }
+
+    /**
+     * Affinity routing counters for one partition. queue() is called concurrently by every
+     * application thread sharing the client, so the counts are striped by thread across
+     * separate cache lines and only summed when a stats snapshot is requested.
+     */
+    static final class AffinityCounters {
+        private static final int STRIPES =
+                Math.min(64, Integer.highestOneBit(Math.max(1, CoreUtils.availableProcessors()) * 2 - 1));
+        // Eight longs per stripe so that each stripe sits on its own cache line
+        private static final int STRIPE_WIDTH = 8;
+
+        static final int AFFINITY_WRITES = 0;
+        static final int RR_WRITES = 1;
+        static final int AFFINITY_READS = 2;
+        static final int RR_READS = 3;
+
+        private final AtomicLongArray m_counts = new AtomicLongArray(STRIPES * STRIPE_WIDTH);
+
+        void increment(int counter) {
+            final int stripe = (int)(Thread.currentThread().getId() & (STRIPES - 1));
+            m_counts.incrementAndGet(stripe * STRIPE_WIDTH + counter);
+        }
+
+        private long sum(int counter) {
+            long total = 0;
+            for (int stripe = 0; stripe < STRIPES; stripe++) {
+                total += m_counts.get(stripe * STRIPE_WIDTH + counter);
+            }
+            return total;
+        }
+
+        ClientAffinityStats snapshot(int partitionId) {
+            return new ClientAffinityStats(partitionId,
+                    sum(AFFINITY_WRITES), sum(RR_WRITES), sum(AFFINITY_READS), sum(RR_READS));
+        }
+    }
+
+    private volatile RoutingTable m_routing = RoutingTable.EMPTY;
+    // Only consulted while rebuilding the routing table, guarded by the Distributer monitor
     private final Map<Integer, NodeConnection> m_hostIdToConnection = new HashMap<Integer, NodeConnection>();
-    private final Map<String, Procedure> m_procedureInfo = new HashMap<String, Procedure>();
-    //This is the instance of the Hashinator we picked from TOPO used only for client affinity.
-    private HashinatorLite m_hashinator = null;
     //This is a global timeout that will be used if a per-procedure timeout is not provided with the procedure call.
     private final long m_procedureCallTimeoutNanos;
     private static final long MINIMUM_LONG_RUNNING_SYSTEM_CALL_TIMEOUT_MS = 30 * 60 * 1000; // 30 minutes
     private final long m_connectionResponseTimeoutNanos;
-    private final Map<Integer, ClientAffinityStats> m_clientAffinityStats =
-        new HashMap<Integer, ClientAffinityStats>();
+    private final ConcurrentMap<Integer, AffinityCounters> m_clientAffinityStats =
+        new ConcurrentHashMap<Integer, AffinityCounters>();
 
     public final RateLimiter m_rateLimiter = new RateLimiter();
 
@@ -679,7 +767,7 @@ class Distributer {
                 /*
                  * Repair all cluster topology data with the node connection removed
                  */
-                Iterator<Map.Entry<Integer, NodeConnection>> i = m_partitionMasters.entrySet().iterator();
+                Iterator<Map.Entry<Integer, NodeConnection>> i = m_hostIdToConnection.entrySet().iterator();
                 while (i.hasNext()) {
                     Map.Entry<Integer, NodeConnection> entry = i.next();
                     if (entry.getValue() == this) {
@@ -687,41 +775,29 @@ class Distributer {
                     }
                 }
 
-                i = m_hostIdToConnection.entrySet().iterator();
-                while (i.hasNext()) {
-                    Map.Entry<Integer, NodeConnection> entry = i.next();
-                    if (entry.getValue() == this) {
-                        i.remove();
+                final RoutingTable routing = m_routing;
+                Map<Integer, NodeConnection> masters = new HashMap<Integer, NodeConnection>();
+                for (Map.Entry<Integer, NodeConnection> entry : routing.partitionMasters.entrySet()) {
+                    if (entry.getValue() != this) {
+                        masters.put(entry.getKey(), entry.getValue());
                     }
                 }
 
-                Iterator<Map.Entry<Integer, NodeConnection[]>> i2 = m_partitionReplicas.entrySet().iterator();
-                List<Pair<Integer, NodeConnection[]>> entriesToRewrite = new ArrayList<Pair<Integer, NodeConnection[]>>();
-                while (i2.hasNext()) {
-                    Map.Entry<Integer, NodeConnection[]> entry = i2.next();
+                Map<Integer, NodeConnection[]> replicas = new HashMap<Integer, NodeConnection[]>();
+                for (Map.Entry<Integer, NodeConnection[]> entry : routing.partitionReplicas.entrySet()) {
+                    ArrayList<NodeConnection> survivors = new ArrayList<NodeConnection>();
                     for (NodeConnection nc : entry.getValue()) {
-                        if (nc == this) {
-                            entriesToRewrite.add(Pair.of(entry.getKey(), entry.getValue()));
+                        if (nc != this) {
+                            survivors.add(nc);
                         }
                     }
-                }
-
-                for (Pair<Integer, NodeConnection[]> entry : entriesToRewrite) {
-                    m_partitionReplicas.remove(entry.getFirst());
-                    NodeConnection survivors[] = new NodeConnection[entry.getSecond().length - 1];
-                    if (survivors.length == 0) {
-                        break;
+                    if (!survivors.isEmpty()) {
+                        replicas.put(entry.getKey(), survivors.toArray(new NodeConnection[survivors.size()]));
                     }
-                    int zz = 0;
-                    for (int ii = 0; ii < entry.getSecond().length; ii++) {
-                        if (entry.getSecond()[ii] != this) {
-                            survivors[zz++] = entry.getSecond()[ii];
-                        }
-                    }
-                    m_partitionReplicas.put(entry.getFirst(), survivors);
                 }
 
                 m_connections.remove(this);
+                m_routing = routing.withConnections(m_connections).withTopology(routing.hashinator, masters, replicas);
                 //Notify listeners that a connection has been lost
                 for (ClientStatusListenerExt s : m_listeners) {
                     s.connectionLost(
@@ -931,6 +1007,7 @@ class Distributer {
             m_buildString = (String)socketChannelAndInstanceIdAndBuildString[2];
 
             m_connections.add(cxn);
+            m_routing = m_routing.withConnections(m_connections);
         }
 
         if (m_useClientAffinity) {
@@ -1027,118 +1104,130 @@ class Distributer {
 
         NodeConnection cxn = null;
         boolean backpressure = true;
+        boolean routedByAffinity = false;
 
         /*
-         * Synchronization is necessary to ensure that m_connections is not modified
-         * as well as to ensure that backpressure is reported correctly
+         * Routing works from an immutable snapshot of the connections and topology
+         * so the common path doesn't need the Distributer monitor
          */
-        synchronized (this) {
-            final int totalConnections = m_connections.size();
-
-            if (totalConnections == 0) {
-                throw new NoConnectionsException("No connections.");
-            }
+        final RoutingTable routing = m_routing;
+        if (routing.connections.length == 0) {
+            throw new NoConnectionsException("No connections.");
+        }
 
-            /*
-             * Check if the master for the partition is known. No back pressure check to ensure correct
-             * routing, but backpressure will be managed anyways. This is where we guess partition based on client
-             * affinity and known topology (hashinator initialized).
-             */
-            if (m_useClientAffinity && (m_hashinator != null)) {
-                final Procedure procedureInfo = m_procedureInfo.get(invocation.getProcName());
-                Integer hashedPartition = -1;
-
-                if (procedureInfo != null) {
-                    hashedPartition = Constants.MP_INIT_PID;
-                    if (( ! procedureInfo.multiPart) &&
-                        // User may have passed too few parameters to allow dispatching.
-                        // Avoid an indexing error here to fall through to the proper ProcCallException.
-                            (procedureInfo.partitionParameter < invocation.getPassedParamCount())) {
-                        hashedPartition = m_hashinator.getHashedPartitionForParameter(
-                                procedureInfo.partitionParameterType,
-                                invocation.getPartitionParamValue(procedureInfo.partitionParameter));
-                    }
-                    /*
-                     * If the procedure is read only and single part, load balance across replicas
-                     */
-                    if (!procedureInfo.multiPart && procedureInfo.readOnly) {
-                        NodeConnection partitionReplicas[] = m_partitionReplicas.get(hashedPartition);
-                        if (partitionReplicas != null && partitionReplicas.length > 0) {
-                            cxn = partitionReplicas[ThreadLocalRandom.current().nextInt(partitionReplicas.length)];
-                            if (cxn.hadBackPressure()) {
-                                //See if there is one without backpressure, make sure it's still connected
-                                for (NodeConnection nc : partitionReplicas) {
-                                    if (!nc.hadBackPressure() && nc.m_isConnected) {
-                                        cxn = nc;
-                                        break;
-                                    }
+        /*
+         * Check if the master for the partition is known. No back pressure check to ensure correct
+         * routing, but backpressure will be managed anyways. This is where we guess partition based on client
+         * affinity and known topology (hashinator initialized).
+         */
+        if (m_useClientAffinity && (routing.hashinator != null)) {
+            final Procedure procedureInfo = routing.procedureInfo.get(invocation.getProcName());
+            Integer hashedPartition = -1;
+
+            if (procedureInfo != null) {
+                hashedPartition = Constants.MP_INIT_PID;
+                if (( ! procedureInfo.multiPart) &&
+                    // User may have passed too few parameters to allow dispatching.
+                    // Avoid an indexing error here to fall through to the proper ProcCallException.
+                        (procedureInfo.partitionParameter < invocation.getPassedParamCount())) {
+                    hashedPartition = routing.hashinator.getHashedPartitionForParameter(
+                            procedureInfo.partitionParameterType,
+                            invocation.getPartitionParamValue(procedureInfo.partitionParameter));
+                }
+                /*
+                 * If the procedure is read only and single part, load balance across replicas
+                 */
+                if (!procedureInfo.multiPart && procedureInfo.readOnly) {
+                    NodeConnection partitionReplicas[] = routing.partitionReplicas.get(hashedPartition);
+                    if (partitionReplicas != null && partitionReplicas.length > 0) {
+                        cxn = partitionReplicas[ThreadLocalRandom.current().nextInt(partitionReplicas.length)];
+                        if (cxn.hadBackPressure()) {
+                            //See if there is one without backpressure, make sure it's still connected
+                            for (NodeConnection nc : partitionReplicas) {
+                                if (!nc.hadBackPressure() && nc.m_isConnected) {
+                                    cxn = nc;
+                                    break;
                                 }
                             }
-                            if (!cxn.hadBackPressure() || ignoreBackpressure) {
-                                backpressure = false;
-                            }
                         }
-                    } else {
-                        /*
-                         * Writes have to go to the master
-                         */
-                        cxn = m_partitionMasters.get(hashedPartition);
-                        if (cxn != null && !cxn.hadBackPressure() || ignoreBackpressure) {
+                        if (!cxn.hadBackPressure() || ignoreBackpressure) {
                             backpressure = false;
                         }
                     }
+                } else {
+                    /*
+                     * Writes have to go to the master
+                     */
+                    cxn = routing.partitionMasters.get(hashedPartition);
+                    if (cxn != null && !cxn.hadBackPressure() || ignoreBackpressure) {
+                        backpressure = false;
+                    }
                 }
-                if (cxn != null && !cxn.m_isConnected) {
-                    // Would be nice to log something here
-                    // Client affinity picked a connection that was actually disconnected.  Reset to null
-                    // and let the round-robin choice pick a connection
-                    cxn = null;
-                }
-                ClientAffinityStats stats = m_clientAffinityStats.get(hashedPartition);
-                if (stats == null) {
-                    stats = new ClientAffinityStats(hashedPartition, 0, 0, 0, 0);
-                    m_clientAffinityStats.put(hashedPartition, stats);
+            }
+            if (cxn != null && !cxn.m_isConnected) {
+                // Would be nice to log something here
+                // Client affinity picked a connection that was actually disconnected.  Reset to null
+                // and let the round-robin choice pick a connection
+                cxn = null;
+            }
+            AffinityCounters stats = m_clientAffinityStats.get(hashedPartition);
+            if (stats == null) {
+                stats = new AffinityCounters();
+                AffinityCounters existing = m_clientAffinityStats.putIfAbsent(hashedPartition, stats);
+                if (existing != null) {
+                    stats = existing;
                 }
-                if (cxn != null) {
-                    if (procedureInfo != null && procedureInfo.readOnly) {
-                        stats.addAffinityRead();
-                    }
-                    else {
-                        stats.addAffinityWrite();
-                    }
+            }
+            if (cxn != null) {
+                routedByAffinity = true;
+                if (procedureInfo != null && procedureInfo.readOnly) {
+                    stats.increment(AffinityCounters.AFFINITY_READS);
                 }
-                // account these here because we lose the partition ID and procedure info once we
-                // bust out of this scope.
                 else {
-                    if (procedureInfo != null && procedureInfo.readOnly) {
-                        stats.addRrRead();
-                    }
-                    else {
-                        stats.addRrWrite();
-                    }
+                    stats.increment(AffinityCounters.AFFINITY_WRITES);
                 }
             }
-            if (cxn == null) {
-                for (int i=0; i < totalConnections; ++i) {
-                    cxn = m_connections.get(Math.abs(++m_nextConnection % totalConnections));
-                    if (!cxn.hadBackPressure() || ignoreBackpressure) {
-                        // serialize and queue the invocation
-                        backpressure = false;
-                        break;
-                    }
+            // account these here because we lose the partition ID and procedure info once we
+            // bust out of this scope.
+            else {
+                if (procedureInfo != null && procedureInfo.readOnly) {
+                    stats.increment(AffinityCounters.RR_READS);
+                }
+                else {
+                    stats.increment(AffinityCounters.RR_WRITES);
                 }
             }
+        }
+        if (cxn == null) {
+            cxn = nextRoundRobinConnection(routing.connections, ignoreBackpressure);
+            backpressure = (cxn == null);
+        }
 
-            if (backpressure) {
-                cxn = null;
-                for (ClientStatusListenerExt s : m_listeners) {
-                    s.backpressure(true);
+        if (backpressure) {
+            /*
+             * Synchronization is necessary to ensure that backpressure is reported correctly.
+             * The write stream reports the end of backpressure under the Distributer monitor,
+             * so repeat the check while holding it to avoid reporting backpressure after it
+             * has already ended (a lost wakeup).
+             */
+            synchronized (this) {
+                if (routedByAffinity) {
+                    backpressure = cxn.hadBackPressure();
+                } else {
+                    cxn = nextRoundRobinConnection(m_routing.connections, false);
+                    backpressure = (cxn == null);
+                }
+                if (backpressure) {
+                    cxn = null;
+                    for (ClientStatusListenerExt s : m_listeners) {
+                        s.backpressure(true);
+                    }
                 }
             }
         }
 
         /*
-         * Do the heavy weight serialization outside the synchronized block.
+         * Do the heavy weight serialization without holding the Distributer monitor.
          * createWork synchronizes on an individual connection which allows for more concurrency
          */
         if (cxn != null) {
@@ -1154,6 +1243,22 @@ class Distributer {
         return !backpressure;
     }
 
+    /**
+     * Pick the next connection in round-robin order, skipping connections with backpressure.
+     * @return The connection or null if every connection has backpressure
+     */
+    private NodeConnection nextRoundRobinConnection(NodeConnection[] connections, boolean ignoreBackpressure) {
+        final int totalConnections = connections.length;
+        for (int i = 0; i < totalConnections; ++i) {
+            final int next = m_nextConnection.incrementAndGet() & Integer.MAX_VALUE;
+            NodeConnection cxn = connections[next % totalConnections];
+            if (!cxn.hadBackPressure() || ignoreBackpressure) {
+                return cxn;
+            }
+        }
+        return null;
+    }
+
     /**
      * Shutdown the VoltNetwork allowing the Ports to close and free resources
      * like memory pools
@@ -1246,11 +1351,9 @@ class Distributer {
     Map<Integer, ClientAffinityStats> getAffinityStatsSnapshot()
     {
         Map<Integer, ClientAffinityStats> retval = new HashMap<Integer, ClientAffinityStats>();
-        // these get modified under this lock in queue()
-        synchronized(this) {
-            for (Entry<Integer, ClientAffinityStats> e : m_clientAffinityStats.entrySet()) {
-                retval.put(e.getKey(), (ClientAffinityStats)e.getValue().clone());
-            }
+        // counters are updated concurrently by queue(), so each sum is only a point-in-time estimate
+        for (Entry<Integer, AffinityCounters> e : m_clientAffinityStats.entrySet()) {
+            retval.put(e.getKey(), e.getValue().snapshot(e.getKey()));
         }
         return retval;
     }
@@ -1288,11 +1391,12 @@ class Distributer {
 
         //In future let TOPO return cooked bytes when cooked and we use correct recipe
         boolean cooked = false;
+        final HashinatorLite hashinator;
         if (tables.length == 1) {
             //Just in case the new client connects to the old version of Volt that only returns 1 topology table
             // We're going to get the MPI back in this table, so subtract it out from the number of partitions.
             int numPartitions = vt.getRowCount() - 1;
-            m_hashinator = new HashinatorLite(numPartitions); // legacy only
+            hashinator = new HashinatorLite(numPartitions); // legacy only
         } else {
             //Second table contains the hash function
             boolean advanced = tables[1].advanceRow();
@@ -1301,13 +1405,13 @@ class Distributer {
                                    "performance will be lower because transactions can't be routed at this client");
                 return;
             }
-            m_hashinator = new HashinatorLite(
+            hashinator = new HashinatorLite(
                     HashinatorLiteType.valueOf(tables[1].getString("HASHTYPE")),
                     tables[1].getVarbinary("HASHCONFIG"),
                     cooked);
         }
-        m_partitionMasters.clear();
-        m_partitionReplicas.clear();
+        Map<Integer, NodeConnection> masters = new HashMap<Integer, NodeConnection>();
+        Map<Integer, NodeConnection[]> replicas = new HashMap<Integer, NodeConnection[]>();
         // The MPI's partition ID is 16383 (MpInitiator.MP_INIT_PID), so we shouldn't inadvertently
         // hash to it.  Go ahead and include it in the maps, we can use it at some point to
         // route MP transactions directly to the MPI node.
@@ -1322,17 +1426,18 @@ class Distributer {
                     connections.add(m_hostIdToConnection.get(hostId));
                 }
             }
-            m_partitionReplicas.put(partition, connections.toArray(new NodeConnection[0]));
+            replicas.put(partition, connections.toArray(new NodeConnection[0]));
 
             Integer leaderHostId = Integer.valueOf(vt.getString("Leader").split(":")[0]);
             if (m_hostIdToConnection.containsKey(leaderHostId)) {
-                m_partitionMasters.put(partition, m_hostIdToConnection.get(leaderHostId));
+                masters.put(partition, m_hostIdToConnection.get(leaderHostId));
             }
         }
+        m_routing = m_routing.withTopology(hashinator, masters, replicas);
     }
 
     private void updateProcedurePartitioning(VoltTable vt) {
-        m_procedureInfo.clear();
+        Map<String, Procedure> procedureInfo = new HashMap<String, Procedure>();
         while (vt.advanceRow()) {
             try {
                 //Data embedded in JSON object in remarks column
@@ -1344,11 +1449,11 @@ class Distributer {
                     int partitionParameter = jsObj.getInt(Constants.JSON_PARTITION_PARAMETER);
                     int partitionParameterType =
                         jsObj.getInt(Constants.JSON_PARTITION_PARAMETER_TYPE);
-                    m_procedureInfo.put(procedureName,
+                    procedureInfo.put(procedureName,
                             new Procedure(false,readOnly, partitionParameter, partitionParameterType));
                 } else {
                     // Multi Part procedure JSON descriptors omit the partitionParameter
-                    m_procedureInfo.put(procedureName, new Procedure(true, readOnly, Procedure.PARAMETER_NONE,
+                    procedureInfo.put(procedureName, new Procedure(true, readOnly, Procedure.PARAMETER_NONE,
                                 Procedure.PARAMETER_NONE));
                 }
 
@@ -1356,6 +1461,7 @@ class Distributer {
                 e.printStackTrace();
             }
         }
+        m_routing = m_routing.withProcedures(procedureInfo);
     }
 
     /**
@@ -1365,7 +1471,7 @@ class Distributer {
      * @return
      */
     public boolean isHashinatorInitialized() {
-        return (m_hashinator != null);
+        return (m_routing.hashinator != null);
     }
 
     /**
@@ -1376,17 +1482,19 @@ class Distributer {
      * @return
      */
     public long getPartitionForParameter(byte typeValue, Object value) {
-        if (m_hashinator == null) {
+        final HashinatorLite hashinator = m_routing.hashinator;
+        if (hashinator == null) {
             return -1;
         }
-        return m_hashinator.getHashedPartitionForParameter(typeValue, value);
+        return hashinator.getHashedPartitionForParameter(typeValue, value);
     }
 
     public HashinatorLiteType getHashinatorType() {
-        if (m_hashinator == null) {
+        final HashinatorLite hashinator = m_routing.hashinator;
+        if (hashinator == null) {
             return HashinatorLiteType.LEGACY;
         }
-        return m_hashinator.getConfigurationType();
+        return hashinator.getConfigurationType();
     }
 
     private ByteBuffer serializeSPI(ProcedureInvocation pi) throws IOException {
@@ -20,7 +20,6 @@ package org.voltdb.client.VoltBulkLoader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -77,13 +76,77 @@ public class PerPartitionTable {
     // Upsert Mode Flag
     final byte m_upsert;
 
+    /*
+     * Batches are cut at a serialized size rather than a row count so wide tables don't
+     * make huge requests and narrow ones don't make tiny ones. The size is tuned by
+     * a BatchSizer from the throughput of recent round trips.
+     */
+    static final int MIN_BATCH_BYTES = 16 * 1024;
+    static final int MAX_BATCH_BYTES = 8 * 1024 * 1024;
+    final BatchSizer m_batchSizer = new BatchSizer();
+
+    /**
+     * Hill climbs the batch size on measured throughput. Every EPOCH_BATCHES round trips
+     * the byte rate of the epoch is compared with the previous one, and the size keeps
+     * moving a quarter up or down while that pays off: up while a larger batch buys at
+     * least MIN_GAIN more throughput, down while a smaller one costs less than that.
+     * Otherwise it turns around. A fixed per call latency, however large, only moves
+     * the point where growing stops paying off, it doesn't pin the size to either bound,
+     * and a change in latency or bandwidth shows up as a change in throughput and turns
+     * the size around.
+     */
+    static class BatchSizer {
+        static final int INITIAL_BATCH_BYTES = 256 * 1024;
+        static final int EPOCH_BATCHES = 4;
+        static final double STEP = 1.25;
+        static final double MIN_GAIN = 0.05;
+
+        private volatile int m_target = INITIAL_BATCH_BYTES;
+        private boolean m_growing = true;
+        private long m_epochBytes = 0;
+        private long m_epochNanos = 0;
+        private int m_epochBatches = 0;
+        //Bytes per nanosecond of the previous epoch, 0 before the first one
+        private double m_lastRate = 0;
+
+        int target() {
+            return m_target;
+        }
+
+        synchronized void recordRoundTrip(int bytes, long nanos) {
+            m_epochBytes += bytes;
+            m_epochNanos += Math.max(nanos, 1);
+            if (++m_epochBatches < EPOCH_BATCHES) {
+                return;
+            }
+            final double rate = m_epochBytes / (double) m_epochNanos;
+            m_epochBytes = 0;
+            m_epochNanos = 0;
+            m_epochBatches = 0;
+
+            if (m_lastRate != 0) {
+                final boolean paidOff = m_growing ? rate >= m_lastRate * (1 + MIN_GAIN)
+                                                  : rate > m_lastRate * (1 - MIN_GAIN);
+                if (!paidOff) {
+                    m_growing = !m_growing;
+                }
+            }
+            m_lastRate = rate;
+            final long target = (long) (m_growing ? m_target * STEP : m_target / STEP);
+            m_target = (int) Math.max(MIN_BATCH_BYTES, Math.min(MAX_BATCH_BYTES, target));
+        }
+    }
+
     // Callback for batch submissions to the Client. A failed request submits the entire
     // batch of rows to m_failedQueue for row by row processing on m_failureProcessor.
     class PartitionProcedureCallback implements ProcedureCallback {
         final List<VoltBulkLoaderRow> m_batchRowList;
+        final int m_batchBytes;
+        final long m_startNanos = System.nanoTime();
 
-        PartitionProcedureCallback(List<VoltBulkLoaderRow> batchRowList) {
+        PartitionProcedureCallback(List<VoltBulkLoaderRow> batchRowList, int batchBytes) {
             m_batchRowList = batchRowList;
+            m_batchBytes = batchBytes;
         }
 
         // Called by Client to inform us of the status of the bulk insert.
@@ -103,6 +166,7 @@ public class PerPartitionTable {
                 });
             }
             else {
+                m_batchSizer.recordRoundTrip(m_batchBytes, System.nanoTime() - m_startNanos);
                 m_batchRowList.get(0).m_loader.m_outstandingRowCount.addAndGet(-1 * m_batchRowList.size());
                 m_batchRowList.get(0).m_loader.m_loaderCompletedCnt.addAndGet(m_batchRowList.size());
             }
@@ -171,7 +235,9 @@ public class PerPartitionTable {
         return m_es.submit(new Callable<Boolean>() {
             @Override
             public Boolean call() throws Exception {
-                loadTable(buildTable(), table);
+                do {
+                    loadTable(buildTable(), table);
+                } while (!m_partitionRowQueue.isEmpty());
                 return true;
             }
         });
@@ -223,12 +289,15 @@ public class PerPartitionTable {
         }
     }
 
+    /**
+     * Move queued rows into the reused table until it reaches the batch byte target
+     * or the queue runs out.
+     */
     private PartitionProcedureCallback buildTable() {
         ArrayList<VoltBulkLoaderRow> buf = new ArrayList<VoltBulkLoaderRow>(m_minBatchTriggerSize);
-        m_partitionRowQueue.drainTo(buf, m_minBatchTriggerSize);
-        ListIterator<VoltBulkLoaderRow> it = buf.listIterator();
-        while (it.hasNext()) {
-            VoltBulkLoaderRow currRow = it.next();
+        final int byteTarget = m_batchSizer.target();
+        VoltBulkLoaderRow currRow;
+        while (table.getSerializedSize() < byteTarget && (currRow = m_partitionRowQueue.poll()) != null) {
             VoltBulkLoader loader = currRow.m_loader;
             Object row_args[];
             row_args = new Object[currRow.m_rowData.length];
@@ -241,13 +310,13 @@ public class PerPartitionTable {
             } catch (VoltTypeException e) {
                 loader.generateError(currRow.m_rowHandle, currRow.m_rowData, e.getMessage());
                 loader.m_outstandingRowCount.decrementAndGet();
-                it.remove();
                 continue;
             }
             table.addRow(row_args);
+            buf.add(currRow);
         }
 
-        return new PartitionProcedureCallback(buf);
+        return new PartitionProcedureCallback(buf, table.getSerializedSize());
     }
 
     private void loadTable(ProcedureCallback callback, VoltTable toSend) throws Exception {
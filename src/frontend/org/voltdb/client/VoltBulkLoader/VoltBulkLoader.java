@@ -54,6 +54,10 @@ import org.voltdb.client.ClientResponse;
  * failures, relative to other threads operating on the same table, that thread
  * should be isolated a different process. If failed rows are a common problem,
  * throughput can also be improved by using multiple instances of VoltBulkLoader.
+ *
+ * The batch size starts a partition sending once that many rows are queued for it.
+ * The rows are then sent in bulk inserts whose serialized size adapts to the observed
+ * round trip time, so a bulk insert may carry more or fewer rows than the batch size.
  */
 public class VoltBulkLoader {
     private static final VoltLogger loaderLog = new VoltLogger("LOADER");
@@ -18,12 +18,9 @@
 package org.voltdb.compiler;
 
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.voltdb.common.Constants;
 import org.voltdb.planner.BoundPlan;
@@ -31,6 +28,8 @@ import org.voltdb.utils.Encoder;
 
 import com.google_voltpatches.common.cache.Cache;
 import com.google_voltpatches.common.cache.CacheBuilder;
+import com.google_voltpatches.common.cache.CacheStats;
+import com.google_voltpatches.common.cache.Weigher;
 
 /**
  * Keep a cache two level cache of plans generated by the Ad Hoc
@@ -43,6 +42,10 @@ import com.google_voltpatches.common.cache.CacheBuilder;
  * statement mapped to core parameterized plans. These parameterized
  * plans need parameter values and sql literals in order to be
  * actually used.
+ *
+ * Both levels are segmented, concurrent caches with approximate LRU
+ * eviction, so lookups from many threads do not serialize on one monitor.
+ * Hit, miss and eviction counts are reported by @Statistics PLANNERCACHE.
  */
 public class AdHocCompilerCache implements Serializable {
     private static final long serialVersionUID = 1L;
@@ -77,38 +80,46 @@ public class AdHocCompilerCache implements Serializable {
     // PER-INSTANCE AWESOMEC CACHING CODE
     //////////////////////////////////////////////////////////////////////////
 
+    // Default cache bounds, overridable with system properties. When a byte bound
+    // is set (> 0) the corresponding cache is bounded by estimated plan bytes
+    // instead of by entry count.
+    static final int DEFAULT_LITERAL_ENTRIES = Integer.getInteger("ADHOC_LITERAL_CACHE_ENTRIES", 1000);
+    static final int DEFAULT_CORE_ENTRIES = Integer.getInteger("ADHOC_CORE_CACHE_ENTRIES", 1000);
+    static final long DEFAULT_LITERAL_BYTES = Long.getLong("ADHOC_LITERAL_CACHE_BYTES", 0);
+    static final long DEFAULT_CORE_BYTES = Long.getLong("ADHOC_CORE_CACHE_BYTES", 0);
+
+    // Number of independently locked segments in each cache. Lookups from
+    // different ClientInterface and planner threads mostly land in different segments.
+    static final int CONCURRENCY_LEVEL = 16;
+
     // cache sizes determined at construction time
     final int MAX_LITERAL_ENTRIES;
     final int MAX_CORE_ENTRIES;
+    final long MAX_LITERAL_BYTES;
+    final long MAX_CORE_BYTES;
 
     /** cache of literals to full plans */
-    final Map<String, AdHocPlannedStatement> m_literalCache;
+    final Cache<String, AdHocPlannedStatement> m_literalCache;
     /** cache of parameterized plan descriptions to one or more core parameterized plans,
      *  each plan optionally has its own requirements for which parameters need to be bound
-     *  to what values to enable its specialized (expression-indexed) plan. */
-    final Map<String, List<BoundPlan> > m_coreCache;
-
-    // placeholder stats used during development that may/may not survive
-    long m_literalHits = 0;
-    long m_literalQueries = 0;
-    long m_literalInsertions = 0;
-    long m_literalEvictions = 0;
-    long m_planHits = 0;
-    long m_planQueries = 0;
-    long m_planInsertions = 0;
-    long m_planEvictions = 0;
-
-    /** {@see this#startPeriodicStatsPrinting() } */
-    Timer m_statsTimer = null;
+     *  to what values to enable its specialized (expression-indexed) plan.
+     *  The variant lists are copy-on-write so that readers never see them mid-update. */
+    final Cache<String, List<BoundPlan> > m_coreCache;
+
+    // Insertions are not tracked by the guava cache stats, so count them here.
+    final AtomicLong m_literalInsertions = new AtomicLong(0);
+    final AtomicLong m_planInsertions = new AtomicLong(0);
+
+    // Generation of the table estimates the cached plans were costed with
+    final AtomicLong m_estimatesGeneration = new AtomicLong(0);
 
     /**
      * Constructor with default cache sizes.
      */
     private AdHocCompilerCache() {
-        this(1000, 1000);
+        this(DEFAULT_LITERAL_ENTRIES, DEFAULT_CORE_ENTRIES, DEFAULT_LITERAL_BYTES, DEFAULT_CORE_BYTES);
     }
 
-
     /**
      * Constructor with specific cache sizes is only called directly for testing.
      *
@@ -116,77 +127,70 @@ public class AdHocCompilerCache implements Serializable {
      * @param maxCoreEntries cache size for parameterized plans
      */
     AdHocCompilerCache(int maxLiteralEntries, int maxCoreEntries) {
+        this(maxLiteralEntries, maxCoreEntries, 0, 0);
+    }
+
+    /**
+     * Constructor with specific cache sizes and optional byte bounds.
+     *
+     * @param maxLiteralEntries cache size for literals
+     * @param maxCoreEntries cache size for parameterized plans
+     * @param maxLiteralBytes if > 0, bound the literal cache by estimated bytes instead
+     * @param maxCoreBytes if > 0, bound the parameterized plan cache by estimated bytes instead
+     */
+    AdHocCompilerCache(int maxLiteralEntries, int maxCoreEntries, long maxLiteralBytes, long maxCoreBytes) {
         MAX_LITERAL_ENTRIES = maxLiteralEntries;
         MAX_CORE_ENTRIES = maxCoreEntries;
+        MAX_LITERAL_BYTES = maxLiteralBytes;
+        MAX_CORE_BYTES = maxCoreBytes;
+
+        // approximate (per segment) LRU caches
+        CacheBuilder<Object, Object> literalBuilder =
+                CacheBuilder.newBuilder().concurrencyLevel(CONCURRENCY_LEVEL).recordStats();
+        if (MAX_LITERAL_BYTES > 0) {
+            m_literalCache = literalBuilder.maximumWeight(MAX_LITERAL_BYTES)
+                    .weigher(new Weigher<String, AdHocPlannedStatement>() {
+                        @Override
+                        public int weigh(String sql, AdHocPlannedStatement plan) {
+                            return estimateBytes(sql) + plan.getSerializedSize();
+                        }
+                    }).build();
+        }
+        else {
+            m_literalCache = literalBuilder.maximumSize(MAX_LITERAL_ENTRIES).build();
+        }
 
-        // an LRU cache map
-        m_literalCache = new LinkedHashMap<String, AdHocPlannedStatement>(MAX_LITERAL_ENTRIES * 2, .75f, true) {
-            private static final long serialVersionUID = 1L;
-
-            // This method is called just after a new entry has been added
-            @Override
-            public boolean removeEldestEntry(Map.Entry<String, AdHocPlannedStatement> eldest) {
-                if (size() > MAX_LITERAL_ENTRIES) {
-                    ++m_literalEvictions;
-                    return true;
-                }
-                return false;
-            }
-        };
-
-        // an LRU cache map
-        m_coreCache = new LinkedHashMap<String, List<BoundPlan> >(MAX_CORE_ENTRIES * 2, .75f, true) {
-            private static final long serialVersionUID = 1L;
-
-            // This method is called just after a new entry has been added
-            @Override
-            public boolean removeEldestEntry(Map.Entry<String, List<BoundPlan> > eldest) {
-                if (size() > MAX_CORE_ENTRIES) {
-                    ++m_planEvictions;
-                    return true;
-                }
-                return false;
-            }
-        };
+        CacheBuilder<Object, Object> coreBuilder =
+                CacheBuilder.newBuilder().concurrencyLevel(CONCURRENCY_LEVEL).recordStats();
+        if (MAX_CORE_BYTES > 0) {
+            m_coreCache = coreBuilder.maximumWeight(MAX_CORE_BYTES)
+                    .weigher(new Weigher<String, List<BoundPlan> >() {
+                        @Override
+                        public int weigh(String parsedToken, List<BoundPlan> boundVariants) {
+                            int size = estimateBytes(parsedToken);
+                            for (BoundPlan boundPlan : boundVariants) {
+                                size += boundPlan.m_core.getSerializedSize();
+                            }
+                            return size;
+                        }
+                    }).build();
+        }
+        else {
+            m_coreCache = coreBuilder.maximumSize(MAX_CORE_ENTRIES).build();
+        }
     }
 
-    /**
-     * Stats printing method used during development.
-     * Probably shouldn't live past real stats integration.
-     */
-    synchronized void printStats() {
-        String line1 = String.format("CACHE STATS - Literals: Hits %d/%d (%.1f%%), Inserts %d Evictions %d\n",
-                m_literalHits, m_literalQueries, (m_literalHits * 100.0) / m_literalQueries,
-                m_literalInsertions, m_literalEvictions);
-        String line2 = String.format("CACHE STATS - Plans:    Hits %d/%d (%.1f%%), Inserts %d Evictions %d\n",
-                m_planHits, m_planQueries, (m_planHits * 100.0) /m_planQueries,
-                m_planInsertions, m_planEvictions);
-
-        System.out.print(line1 + line2);
-        System.out.flush();
-
-        // reset these
-        m_literalHits = 0;
-        m_literalQueries = 0;
-        m_literalInsertions = 0;
-        m_literalEvictions = 0;
-        m_planHits = 0;
-        m_planQueries = 0;
-        m_planInsertions = 0;
-        m_planEvictions = 0;
+    private static int estimateBytes(String str) {
+        // object and array headers plus two bytes per char
+        return 40 + 2 * str.length();
     }
 
     /**
      * @param sql SQL literal
      * @return full, ready-to-go plan
      */
-    public synchronized AdHocPlannedStatement getWithSQL(String sql) {
-        ++m_literalQueries;
-        AdHocPlannedStatement retval = m_literalCache.get(sql);
-        if (retval != null) {
-            ++m_literalHits;
-        }
-        return retval;
+    public AdHocPlannedStatement getWithSQL(String sql) {
+        return m_literalCache.getIfPresent(sql);
     }
 
     /**
@@ -194,13 +198,26 @@ public class AdHocCompilerCache implements Serializable {
      * SQL statement
      * @return A CorePlan that needs parameter values to run.
      */
-    public synchronized List<BoundPlan> getWithParsedToken(String parsedToken) {
-        ++m_planQueries;
-        List<BoundPlan> retval = m_coreCache.get(parsedToken);
-        if (retval != null) {
-            ++m_planHits;
+    public List<BoundPlan> getWithParsedToken(String parsedToken) {
+        return m_coreCache.getIfPresent(parsedToken);
+    }
+
+    /**
+     * Drop every cached plan the first time a newer generation of the table
+     * estimates is seen, so the statements get planned again with it. Every
+     * planner of the catalog shares this cache and reports the generation it
+     * plans with, only the first of them to see a new one clears the cache.
+     */
+    public void invalidatePlansBefore(long estimatesGeneration) {
+        long current = m_estimatesGeneration.get();
+        while (estimatesGeneration > current) {
+            if (m_estimatesGeneration.compareAndSet(current, estimatesGeneration)) {
+                m_literalCache.invalidateAll();
+                m_coreCache.invalidateAll();
+                return;
+            }
+            current = m_estimatesGeneration.get();
         }
-        return retval;
     }
 
     /**
@@ -221,12 +238,12 @@ public class AdHocCompilerCache implements Serializable {
      * @param hasUserQuestionMarkParameters is user provided parameterized query
      * @param hasAutoParameterizedException is the auto parameterized query has parameter exception
      */
-    public synchronized void put(String sql,
-                                 String parsedToken,
-                                 AdHocPlannedStatement planIn,
-                                 String[] extractedLiterals,
-                                 boolean hasUserQuestionMarkParameters,
-                                 boolean hasAutoParameterizedException)
+    public void put(String sql,
+                    String parsedToken,
+                    AdHocPlannedStatement planIn,
+                    String[] extractedLiterals,
+                    boolean hasUserQuestionMarkParameters,
+                    boolean hasAutoParameterizedException)
     {
         assert(sql != null);
         assert(parsedToken != null);
@@ -238,26 +255,27 @@ public class AdHocCompilerCache implements Serializable {
         // it means that a query can not be both user parameterized query and auto parameterized query.
         assert(!hasUserQuestionMarkParameters || !hasAutoParameterizedException);
 
-        // uncomment this to get some raw stdout cache performance stats every 5s
-        //startPeriodicStatsPrinting();
-
         // deal with L2 cache
         if (! hasAutoParameterizedException) {
             BoundPlan matched = null;
             BoundPlan unmatched = new BoundPlan(planIn.core, planIn.parameterBindings(extractedLiterals));
             // deal with the parameterized plan cache first
-            List<BoundPlan> boundVariants = m_coreCache.get(parsedToken);
+            List<BoundPlan> boundVariants = m_coreCache.asMap().get(parsedToken);
             if (boundVariants == null) {
-                boundVariants = new ArrayList<BoundPlan>();
-                m_coreCache.put(parsedToken, boundVariants);
-                // Note that there is an edge case in which more than one plan is getting counted as one
-                // "plan insertion". This only happens when two different plans arose from the same parameterized
-                // query (token) because one invocation used the correct constants to trigger an expression index and
-                // another invocation did not.  These are not counted separately (which would have to happen below
-                // after each call to boundVariants.add) because they are not evicted separately.
-                // It seems saner to use consistent units when counting insertions vs. evictions.
-                ++m_planInsertions;
-            } else {
+                List<BoundPlan> newVariants = new CopyOnWriteArrayList<BoundPlan>();
+                boundVariants = m_coreCache.asMap().putIfAbsent(parsedToken, newVariants);
+                if (boundVariants == null) {
+                    boundVariants = newVariants;
+                    // Note that there is an edge case in which more than one plan is getting counted as one
+                    // "plan insertion". This only happens when two different plans arose from the same parameterized
+                    // query (token) because one invocation used the correct constants to trigger an expression index and
+                    // another invocation did not.  These are not counted separately (which would have to happen below
+                    // after each call to boundVariants.add) because they are not evicted separately.
+                    // It seems saner to use consistent units when counting insertions vs. evictions.
+                    m_planInsertions.incrementAndGet();
+                }
+            }
+            synchronized (boundVariants) {
                 for (BoundPlan boundPlan : boundVariants) {
                     if (boundPlan.equals(unmatched)) {
                         matched = boundPlan;
@@ -272,20 +290,23 @@ public class AdHocCompilerCache implements Serializable {
                         plan.setBoundConstants(matched.m_constants);
                     }
                 }
-            }
-            if (matched == null) {
-                // Don't count insertions (of possibly repeated tokens) here
-                //  -- see the comment above where only UNIQUE token insertions are being counted, instead.
-                boundVariants.add(unmatched);
+                else {
+                    // Don't count insertions (of possibly repeated tokens) here
+                    //  -- see the comment above where only UNIQUE token insertions are being counted, instead.
+                    boundVariants.add(unmatched);
+                    if (MAX_CORE_BYTES > 0) {
+                        // re-weigh the entry now that it holds another variant
+                        m_coreCache.asMap().replace(parsedToken, boundVariants, boundVariants);
+                    }
+                }
             }
         }
 
         // then deal with the L1 cache
         if (! hasUserQuestionMarkParameters) {
-            AdHocPlannedStatement cachedPlan = m_literalCache.get(sql);
+            AdHocPlannedStatement cachedPlan = m_literalCache.asMap().putIfAbsent(sql, plan);
             if (cachedPlan == null) {
-                m_literalCache.put(sql, plan);
-                ++m_literalInsertions;
+                m_literalInsertions.incrementAndGet();
             }
             else {
                 assert(cachedPlan.equals(plan));
@@ -293,28 +314,12 @@ public class AdHocCompilerCache implements Serializable {
         }
     }
 
-    /**
-     * Start a timer that prints cache stats to the console every 5s.
-     * Used for development until we get better stats integration.
-     */
-    public void startPeriodicStatsPrinting() {
-        if (m_statsTimer == null) {
-            m_statsTimer = new Timer();
-            m_statsTimer.scheduleAtFixedRate(new TimerTask() {
-                @Override
-                public void run() {
-                    printStats();
-                }
-            }, 5000, 5000);
-        }
-    }
-
     /**
      * Return the number of items in the literal cache.
      * @return  literal cache size as a count
      */
     public int getLiteralCacheSize() {
-        return m_literalCache.size();
+        return (int) m_literalCache.size();
     }
 
     /**
@@ -322,6 +327,28 @@ public class AdHocCompilerCache implements Serializable {
      * @return  core cache size as a count
      */
     public int getCoreCacheSize() {
-        return m_coreCache.size();
+        return (int) m_coreCache.size();
+    }
+
+    /**
+     * @return hit, miss and eviction counts for the literal cache
+     */
+    public CacheStats getLiteralCacheStats() {
+        return m_literalCache.stats();
+    }
+
+    /**
+     * @return hit, miss and eviction counts for the core (parameterized) cache
+     */
+    public CacheStats getCoreCacheStats() {
+        return m_coreCache.stats();
+    }
+
+    public long getLiteralInsertions() {
+        return m_literalInsertions.get();
+    }
+
+    public long getCoreInsertions() {
+        return m_planInsertions.get();
     }
 }
@@ -0,0 +1,146 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.compiler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+
+import org.voltdb.CatalogContext;
+import org.voltdb.StatsSource;
+import org.voltdb.VoltDB;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+
+import com.google_voltpatches.common.cache.CacheStats;
+
+/**
+ * Reports hit, miss, insertion and eviction counts of both levels of the
+ * ad hoc plan cache for the current catalog, for @Statistics PLANNERCACHE.
+ */
+public class AdHocCompilerCacheStats extends StatsSource {
+
+    public enum CacheLevel {
+        LITERAL,
+        CORE
+    }
+
+    public enum StatName {
+        CACHE_LEVEL,
+        ENTRIES,
+        HITS,
+        MISSES,
+        INSERTIONS,
+        EVICTIONS
+    };
+
+    private boolean m_interval = false;
+
+    // Baselines for interval stats, reset when the catalog (and so the cache) changes
+    private AdHocCompilerCache m_lastCache = null;
+    private CacheStats m_lastLiteralStats = new CacheStats(0, 0, 0, 0, 0, 0);
+    private CacheStats m_lastCoreStats = new CacheStats(0, 0, 0, 0, 0, 0);
+    private long m_lastLiteralInsertions = 0;
+    private long m_lastCoreInsertions = 0;
+
+    public AdHocCompilerCacheStats() {
+        super(false);
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new ColumnInfo(StatName.CACHE_LEVEL.name(), VoltType.STRING));
+        columns.add(new ColumnInfo(StatName.ENTRIES.name(), VoltType.INTEGER));
+        columns.add(new ColumnInfo(StatName.HITS.name(), VoltType.BIGINT));
+        columns.add(new ColumnInfo(StatName.MISSES.name(), VoltType.BIGINT));
+        columns.add(new ColumnInfo(StatName.INSERTIONS.name(), VoltType.BIGINT));
+        columns.add(new ColumnInfo(StatName.EVICTIONS.name(), VoltType.BIGINT));
+    }
+
+    private AdHocCompilerCache getCurrentCache() {
+        CatalogContext context = VoltDB.instance().getCatalogContext();
+        if (context == null) {
+            return null;
+        }
+        AdHocCompilerCache cache = AdHocCompilerCache.getCacheForCatalogHash(context.getCatalogHash());
+        if (cache != m_lastCache) {
+            m_lastCache = cache;
+            m_lastLiteralStats = new CacheStats(0, 0, 0, 0, 0, 0);
+            m_lastCoreStats = new CacheStats(0, 0, 0, 0, 0, 0);
+            m_lastLiteralInsertions = 0;
+            m_lastCoreInsertions = 0;
+        }
+        return cache;
+    }
+
+    @Override
+    protected void updateStatsRow(Object rowKey, Object[] rowValues) {
+        CacheLevel level = (CacheLevel) rowKey;
+        AdHocCompilerCache cache = m_lastCache;
+        CacheStats stats;
+        long insertions;
+        int entries;
+        if (level == CacheLevel.LITERAL) {
+            entries = cache.getLiteralCacheSize();
+            stats = cache.getLiteralCacheStats();
+            insertions = cache.getLiteralInsertions();
+            if (m_interval) {
+                CacheStats current = stats;
+                stats = current.minus(m_lastLiteralStats);
+                m_lastLiteralStats = current;
+                long currentInsertions = insertions;
+                insertions -= m_lastLiteralInsertions;
+                m_lastLiteralInsertions = currentInsertions;
+            }
+        }
+        else {
+            entries = cache.getCoreCacheSize();
+            stats = cache.getCoreCacheStats();
+            insertions = cache.getCoreInsertions();
+            if (m_interval) {
+                CacheStats current = stats;
+                stats = current.minus(m_lastCoreStats);
+                m_lastCoreStats = current;
+                long currentInsertions = insertions;
+                insertions -= m_lastCoreInsertions;
+                m_lastCoreInsertions = currentInsertions;
+            }
+        }
+        rowValues[columnNameToIndex.get(StatName.CACHE_LEVEL.name())] = level.name();
+        rowValues[columnNameToIndex.get(StatName.ENTRIES.name())] = entries;
+        rowValues[columnNameToIndex.get(StatName.HITS.name())] = stats.hitCount();
+        rowValues[columnNameToIndex.get(StatName.MISSES.name())] = stats.missCount();
+        rowValues[columnNameToIndex.get(StatName.INSERTIONS.name())] = insertions;
+        rowValues[columnNameToIndex.get(StatName.EVICTIONS.name())] = stats.evictionCount();
+        super.updateStatsRow(rowKey, rowValues);
+    }
+
+    @Override
+    protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+        m_interval = interval;
+        if (getCurrentCache() == null) {
+            return Collections.emptyIterator();
+        }
+        ArrayList<Object> levels = new ArrayList<Object>();
+        for (CacheLevel level : CacheLevel.values()) {
+            levels.add(level);
+        }
+        return levels.iterator();
+    }
+}
@@ -0,0 +1,85 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.compiler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.voltdb.StatsSource;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+import org.voltdb.compiler.AsyncCompilerAgent.PlannerWorker;
+
+/**
+ * Reports one row per ad hoc planner worker thread with its current
+ * queue depth and planning latency, for @Statistics PLANNERWORKER.
+ * The PLAN_TIME columns cover whole work items, cache hits included, while
+ * the FULL_PLAN columns only cover statements the planner had to plan.
+ */
+public class AdHocPlannerWorkerStats extends StatsSource {
+
+    public enum StatName {
+        WORKER_ID,
+        QUEUE_DEPTH,
+        INVOCATIONS,
+        REJECTED,
+        PLAN_TIME_MIN,
+        PLAN_TIME_MAX,
+        PLAN_TIME_AVG,
+        FULL_PLANS,
+        FULL_PLAN_TIME_MAX,
+        FULL_PLAN_TIME_AVG
+    };
+
+    private final PlannerWorker[] m_workers;
+    private boolean m_interval = false;
+
+    public AdHocPlannerWorkerStats(PlannerWorker[] workers) {
+        super(false);
+        m_workers = workers;
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new ColumnInfo(StatName.WORKER_ID.name(), VoltType.INTEGER));
+        columns.add(new ColumnInfo(StatName.QUEUE_DEPTH.name(), VoltType.INTEGER));
+        columns.add(new ColumnInfo(StatName.INVOCATIONS.name(), VoltType.BIGINT));
+        columns.add(new ColumnInfo(StatName.REJECTED.name(), VoltType.BIGINT));
+        columns.add(new ColumnInfo(StatName.PLAN_TIME_MIN.name(), VoltType.BIGINT));
+        columns.add(new ColumnInfo(StatName.PLAN_TIME_MAX.name(), VoltType.BIGINT));
+        columns.add(new ColumnInfo(StatName.PLAN_TIME_AVG.name(), VoltType.BIGINT));
+        columns.add(new ColumnInfo(StatName.FULL_PLANS.name(), VoltType.BIGINT));
+        columns.add(new ColumnInfo(StatName.FULL_PLAN_TIME_MAX.name(), VoltType.BIGINT));
+        columns.add(new ColumnInfo(StatName.FULL_PLAN_TIME_AVG.name(), VoltType.BIGINT));
+    }
+
+    @Override
+    protected void updateStatsRow(Object rowKey, Object[] rowValues) {
+        PlannerWorker worker = (PlannerWorker) rowKey;
+        worker.populateStats(m_interval, columnNameToIndex, rowValues);
+        super.updateStatsRow(rowKey, rowValues);
+    }
+
+    @Override
+    protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+        m_interval = interval;
+        return Arrays.asList((Object[]) m_workers).iterator();
+    }
+}
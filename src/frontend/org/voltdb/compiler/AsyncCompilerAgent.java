@@ -20,11 +20,13 @@ package org.voltdb.compiler;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang3.StringUtils;
 import org.voltcore.logging.VoltLogger;
@@ -52,23 +54,193 @@ public class AsyncCompilerAgent {
     private static final VoltLogger hostLog = new VoltLogger("HOST");
     private static final VoltLogger adhocLog = new VoltLogger("ADHOC");
 
-    // if more than this amount of work is queued, reject new work
+    // if more than this amount of work is queued on a planner worker, reject new work
     static public final int MAX_QUEUE_DEPTH = 250;
 
+    // number of ad hoc planner worker threads, each with its own planner and HSQL session
+    static public final int PLANNER_THREADS =
+        Integer.getInteger("ADHOC_PLANNER_THREADS", Math.min(4, Math.max(1, CoreUtils.availableProcessors() / 4)));
+
     // accept work via this mailbox
     Mailbox m_mailbox;
 
     public AsyncCompilerAgent(LicenseApi licenseApi) {
+        this(licenseApi, PLANNER_THREADS);
+    }
+
+    public AsyncCompilerAgent(LicenseApi licenseApi, int plannerThreads) {
+        if (plannerThreads < 1) {
+            throw new IllegalArgumentException("Must specify > 0 planner threads");
+        }
         m_helper = new AsyncCompilerAgentHelper(licenseApi);
+        m_workers = new PlannerWorker[plannerThreads];
+        for (int i = 0; i < plannerThreads; i++) {
+            m_workers[i] = new PlannerWorker(i);
+        }
+        m_workerStats = new AdHocPlannerWorkerStats(m_workers);
     }
 
     // The helper for catalog updates, back after its exclusive three year tour
     // of Europe, Scandinavia, and the sub-continent.
     final AsyncCompilerAgentHelper m_helper;
 
-    // do work in this executor service
-    final ListeningExecutorService m_es =
-        CoreUtils.getBoundedSingleThreadExecutor("Ad Hoc Planner", MAX_QUEUE_DEPTH);
+    // do work on these planner threads. Catalog changes always go to the first
+    // worker so that they stay serialized with respect to each other.
+    final PlannerWorker[] m_workers;
+    private final AdHocPlannerWorkerStats m_workerStats;
+
+    // The planner owned by the current worker thread, along with the planner
+    // from the catalog context it was cloned for. Rebuilt when the catalog changes.
+    private static final class ThreadPlanner {
+        final PlannerTool m_source;
+        final PlannerTool m_ptool;
+        ThreadPlanner(PlannerTool source, PlannerTool ptool) {
+            m_source = source;
+            m_ptool = ptool;
+        }
+    }
+    private final ThreadLocal<ThreadPlanner> m_threadPlanner = new ThreadLocal<ThreadPlanner>();
+
+    /**
+     * A single ad hoc planner thread with its own bounded work queue.
+     * Tracks queue depth and planning latency for @Statistics PLANNERWORKER.
+     */
+    static class PlannerWorker {
+        final int m_workerId;
+        final ListeningExecutorService m_es;
+        // submitted work that has not finished yet, including the running task
+        final AtomicInteger m_outstanding = new AtomicInteger(0);
+
+        private long m_invocations = 0;
+        private long m_lastInvocations = 0;
+        private long m_rejected = 0;
+        private long m_lastRejected = 0;
+        private long m_totalPlanningTime = 0;
+        private long m_lastTotalPlanningTime = 0;
+        private long m_minPlanningTime = Long.MAX_VALUE;
+        private long m_maxPlanningTime = Long.MIN_VALUE;
+        private long m_lastMinPlanningTime = Long.MAX_VALUE;
+        private long m_lastMaxPlanningTime = Long.MIN_VALUE;
+        // time spent in QueryPlanner.plan() by statements that missed the plan caches
+        private long m_fullPlans = 0;
+        private long m_lastFullPlans = 0;
+        private long m_totalFullPlanningTime = 0;
+        private long m_lastTotalFullPlanningTime = 0;
+        private long m_maxFullPlanningTime = 0;
+        private long m_lastMaxFullPlanningTime = 0;
+
+        // the worker whose thread is running, so the planner can report to it
+        private static final ThreadLocal<PlannerWorker> s_current = new ThreadLocal<PlannerWorker>();
+
+        PlannerWorker(int workerId) {
+            m_workerId = workerId;
+            m_es = CoreUtils.getBoundedSingleThreadExecutor("Ad Hoc Planner - " + workerId, MAX_QUEUE_DEPTH);
+        }
+
+        void submit(final Runnable work) {
+            m_outstanding.incrementAndGet();
+            try {
+                m_es.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        final long start = System.nanoTime();
+                        s_current.set(PlannerWorker.this);
+                        try {
+                            work.run();
+                        }
+                        finally {
+                            s_current.remove();
+                            recordPlanningTime(System.nanoTime() - start);
+                            m_outstanding.decrementAndGet();
+                        }
+                    }
+                });
+            }
+            catch (RejectedExecutionException rejected) {
+                m_outstanding.decrementAndGet();
+                recordRejection();
+                throw rejected;
+            }
+        }
+
+        private synchronized void recordPlanningTime(long delta) {
+            m_invocations++;
+            if (delta >= 0) {
+                m_totalPlanningTime += delta;
+                m_minPlanningTime = Math.min(delta, m_minPlanningTime);
+                m_maxPlanningTime = Math.max(delta, m_maxPlanningTime);
+                m_lastMinPlanningTime = Math.min(delta, m_lastMinPlanningTime);
+                m_lastMaxPlanningTime = Math.max(delta, m_lastMaxPlanningTime);
+            }
+        }
+
+        private synchronized void recordRejection() {
+            m_rejected++;
+        }
+
+        /**
+         * Record the time the planner took for a statement that was not found in the
+         * plan caches. Ignored when the calling thread is not a planner worker.
+         */
+        static void recordFullPlanningTime(long delta) {
+            final PlannerWorker worker = s_current.get();
+            if (worker != null && delta >= 0) {
+                worker.addFullPlanningTime(delta);
+            }
+        }
+
+        private synchronized void addFullPlanningTime(long delta) {
+            m_fullPlans++;
+            m_totalFullPlanningTime += delta;
+            m_maxFullPlanningTime = Math.max(delta, m_maxFullPlanningTime);
+            m_lastMaxFullPlanningTime = Math.max(delta, m_lastMaxFullPlanningTime);
+        }
+
+        synchronized void populateStats(boolean interval, Map<String, Integer> columnNameToIndex, Object[] rowValues) {
+            long invocations = m_invocations;
+            long rejected = m_rejected;
+            long totalPlanningTime = m_totalPlanningTime;
+            long minPlanningTime = m_minPlanningTime;
+            long maxPlanningTime = m_maxPlanningTime;
+            long fullPlans = m_fullPlans;
+            long totalFullPlanningTime = m_totalFullPlanningTime;
+            long maxFullPlanningTime = m_maxFullPlanningTime;
+            if (interval) {
+                invocations = m_invocations - m_lastInvocations;
+                m_lastInvocations = m_invocations;
+                rejected = m_rejected - m_lastRejected;
+                m_lastRejected = m_rejected;
+                totalPlanningTime = m_totalPlanningTime - m_lastTotalPlanningTime;
+                m_lastTotalPlanningTime = m_totalPlanningTime;
+                minPlanningTime = m_lastMinPlanningTime;
+                maxPlanningTime = m_lastMaxPlanningTime;
+                m_lastMinPlanningTime = Long.MAX_VALUE;
+                m_lastMaxPlanningTime = Long.MIN_VALUE;
+                fullPlans = m_fullPlans - m_lastFullPlans;
+                m_lastFullPlans = m_fullPlans;
+                totalFullPlanningTime = m_totalFullPlanningTime - m_lastTotalFullPlanningTime;
+                m_lastTotalFullPlanningTime = m_totalFullPlanningTime;
+                maxFullPlanningTime = m_lastMaxFullPlanningTime;
+                m_lastMaxFullPlanningTime = 0;
+            }
+            if (invocations == 0) {
+                minPlanningTime = 0;
+                maxPlanningTime = 0;
+            }
+            rowValues[columnNameToIndex.get(AdHocPlannerWorkerStats.StatName.WORKER_ID.name())] = m_workerId;
+            rowValues[columnNameToIndex.get(AdHocPlannerWorkerStats.StatName.QUEUE_DEPTH.name())] = m_outstanding.get();
+            rowValues[columnNameToIndex.get(AdHocPlannerWorkerStats.StatName.INVOCATIONS.name())] = invocations;
+            rowValues[columnNameToIndex.get(AdHocPlannerWorkerStats.StatName.REJECTED.name())] = rejected;
+            rowValues[columnNameToIndex.get(AdHocPlannerWorkerStats.StatName.PLAN_TIME_MIN.name())] = minPlanningTime;
+            rowValues[columnNameToIndex.get(AdHocPlannerWorkerStats.StatName.PLAN_TIME_MAX.name())] = maxPlanningTime;
+            rowValues[columnNameToIndex.get(AdHocPlannerWorkerStats.StatName.PLAN_TIME_AVG.name())] =
+                invocations == 0 ? 0L : totalPlanningTime / invocations;
+            rowValues[columnNameToIndex.get(AdHocPlannerWorkerStats.StatName.FULL_PLANS.name())] = fullPlans;
+            rowValues[columnNameToIndex.get(AdHocPlannerWorkerStats.StatName.FULL_PLAN_TIME_MAX.name())] = maxFullPlanningTime;
+            rowValues[columnNameToIndex.get(AdHocPlannerWorkerStats.StatName.FULL_PLAN_TIME_AVG.name())] =
+                fullPlans == 0 ? 0L : totalFullPlanningTime / fullPlans;
+        }
+    }
 
     // Enable debug hooks when the "asynccompilerdebug" sys prop is set to "true" or "yes".
     private final static MiscUtils.BooleanSystemProperty DEBUG_MODE =
@@ -82,10 +254,73 @@ public class AsyncCompilerAgent {
     // intended for integration test use. finish planning what's in
     // the queue and terminate the TPE.
     public void shutdown() throws InterruptedException {
-        if (m_es != null) {
-            m_es.shutdown();
-            m_es.awaitTermination(120, TimeUnit.SECONDS);
+        for (PlannerWorker worker : m_workers) {
+            worker.m_es.shutdown();
+        }
+        for (PlannerWorker worker : m_workers) {
+            worker.m_es.awaitTermination(120, TimeUnit.SECONDS);
+        }
+    }
+
+    public int getPlannerThreadCount() {
+        return m_workers.length;
+    }
+
+    public AdHocPlannerWorkerStats getWorkerStats() {
+        return m_workerStats;
+    }
+
+    /**
+     * Catalog changes, including ad hoc DDL, go to the first worker. Everything
+     * else goes to the worker with the least outstanding work.
+     */
+    PlannerWorker pickWorker(Object payload) {
+        if (payload instanceof CatalogChangeWork) {
+            return m_workers[0];
+        }
+        if (payload instanceof AdHocPlannerWork) {
+            String[] sqlStatements = ((AdHocPlannerWork) payload).sqlStatements;
+            if (sqlStatements != null) {
+                for (String stmt : sqlStatements) {
+                    if (SQLLexer.isComment(stmt) || stmt.trim().isEmpty()) {
+                        continue;
+                    }
+                    if (SQLLexer.extractDDLToken(stmt) != null) {
+                        return m_workers[0];
+                    }
+                    break;
+                }
+            }
+        }
+        PlannerWorker leastLoaded = m_workers[0];
+        for (int i = 1; i < m_workers.length; i++) {
+            if (m_workers[i].m_outstanding.get() < leastLoaded.m_outstanding.get()) {
+                leastLoaded = m_workers[i];
+            }
+        }
+        return leastLoaded;
+    }
+
+    /**
+     * Get the planner owned by the calling worker thread for the given catalog,
+     * creating a fresh planner (and HSQL session) when the catalog has changed.
+     */
+    PlannerTool getPlannerTool(CatalogContext context) {
+        ThreadPlanner planner = m_threadPlanner.get();
+        if (planner == null || planner.m_source != context.m_ptool) {
+            PlannerTool ptool;
+            if (m_workers.length == 1) {
+                // with a single worker there is no need to pay for another HSQL session
+                ptool = context.m_ptool;
+            }
+            else {
+                ptool = new PlannerTool(context.cluster, context.database, context.getCatalogHash(),
+                                        context.m_estimates);
+            }
+            planner = new ThreadPlanner(context.m_ptool, ptool);
+            m_threadPlanner.set(planner);
         }
+        return planner.m_ptool;
     }
 
     public void createMailbox(final HostMessenger hostMessenger, final long hsId) {
@@ -100,7 +335,7 @@ public class AsyncCompilerAgent {
             @Override
             public void deliver(final VoltMessage message) {
                 try {
-                    m_es.submit(new Runnable() {
+                    pickWorker(((LocalObjectMessage)message).payload).submit(new Runnable() {
                         @Override
                         public void run() {
                             handleMailboxMessage(message);
@@ -313,7 +548,7 @@ public class AsyncCompilerAgent {
     }
 
     public void compileAdHocPlanForProcedure(final AdHocPlannerWork apw) {
-        m_es.submit(new Runnable() {
+        pickWorker(apw).submit(new Runnable() {
             @Override
             public void run(){
                 apw.completionHandler.onCompletion(compileAdHocPlan(apw));
@@ -354,7 +589,7 @@ public class AsyncCompilerAgent {
             context = VoltDB.instance().getCatalogContext();
         }
 
-        final PlannerTool ptool = context.m_ptool;
+        final PlannerTool ptool = getPlannerTool(context);
 
         List<String> errorMsgs = new ArrayList<String>();
         List<AdHocPlannedStatement> stmts = new ArrayList<AdHocPlannedStatement>();
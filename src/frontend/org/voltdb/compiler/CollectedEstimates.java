@@ -0,0 +1,190 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.compiler;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.voltdb.VoltTable;
+import org.voltdb.compiler.DatabaseEstimates.IndexEstimates;
+import org.voltdb.compiler.DatabaseEstimates.TableEstimates;
+
+/**
+ * Table and index sizes reported by the sites of this host, turned into
+ * {@link DatabaseEstimates} for the ad hoc planner. Sites report the TABLE and
+ * INDEX statistics of a stats tick once per refresh interval, and the estimates
+ * are rebuilt from the latest reports at most once per refresh interval. Counts are per
+ * partition, the largest any site reported, which is the unit the plan node
+ * costing already works in.
+ *
+ * When a table's row count moves more than the replan factor away from the
+ * count the cached plans were costed with, the generation is bumped so the
+ * planners drop their cached ad hoc plans and plan the statements again.
+ */
+public class CollectedEstimates {
+
+    // How often the estimates are rebuilt from the site reports, and so how often sites need to report
+    public static final long REFRESH_INTERVAL_MS = Long.getLong("PLANNER_ESTIMATES_REFRESH_MS", 10000);
+    // How many times larger or smaller a table must get before cached plans are replanned
+    static final int REPLAN_FACTOR = Integer.getInteger("PLANNER_ESTIMATES_REPLAN_FACTOR", 2);
+    // Tables this small never force a replan, whatever the factor
+    static final long REPLAN_MIN_TUPLES = Integer.getInteger("PLANNER_ESTIMATES_REPLAN_MIN_TUPLES", 1000);
+
+    // latest report of each site: table name -> tuple count
+    private final ConcurrentMap<Long, Map<String, Long>> m_tableCounts =
+            new ConcurrentHashMap<Long, Map<String, Long>>();
+    // latest report of each site: table name -> index name -> { entries, distinct keys }
+    private final ConcurrentMap<Long, Map<String, Map<String, long[]>>> m_indexCounts =
+            new ConcurrentHashMap<Long, Map<String, Map<String, long[]>>>();
+
+    private DatabaseEstimates m_estimates = new DatabaseEstimates();
+    private long m_lastRefresh = 0;
+    // the row counts the current generation of plans was costed with
+    private Map<String, Long> m_plannedCounts = new HashMap<String, Long>();
+    private volatile long m_generation = 0;
+
+    /**
+     * Record the TABLE statistics of one site. Leaves the row position of
+     * the table where it found it, at the start.
+     */
+    public void updateTableStats(long siteId, VoltTable stats) {
+        final Map<String, Long> counts = new HashMap<String, Long>();
+        while (stats.advanceRow()) {
+            counts.put(stats.getString("TABLE_NAME"), stats.getLong("TUPLE_COUNT"));
+        }
+        stats.resetRowPosition();
+        m_tableCounts.put(siteId, counts);
+    }
+
+    /**
+     * Record the INDEX statistics of one site. Leaves the row position of
+     * the table where it found it, at the start.
+     */
+    public void updateIndexStats(long siteId, VoltTable stats) {
+        final Map<String, Map<String, long[]>> counts = new HashMap<String, Map<String, long[]>>();
+        while (stats.advanceRow()) {
+            final String table = stats.getString("TABLE_NAME");
+            Map<String, long[]> indexes = counts.get(table);
+            if (indexes == null) {
+                indexes = new HashMap<String, long[]>();
+                counts.put(table, indexes);
+            }
+            indexes.put(stats.getString("INDEX_NAME"),
+                        new long[] { stats.getLong("ENTRY_COUNT"), stats.getLong("DISTINCT_KEY_ESTIMATE") });
+        }
+        stats.resetRowPosition();
+        m_indexCounts.put(siteId, counts);
+    }
+
+    /**
+     * Get estimates to plan one statement with. Tables no site has reported
+     * yet get the default estimates. The caller owns the returned instance.
+     */
+    public DatabaseEstimates getEstimates() {
+        return getEstimates(System.currentTimeMillis());
+    }
+
+    synchronized DatabaseEstimates getEstimates(long now) {
+        if (now - m_lastRefresh >= REFRESH_INTERVAL_MS) {
+            m_lastRefresh = now;
+            refresh();
+        }
+        return new DatabaseEstimates(m_estimates);
+    }
+
+    /**
+     * Bumped every time the estimates moved far enough from the ones the
+     * cached plans were costed with that they should be planned again.
+     */
+    public long getGeneration() {
+        return m_generation;
+    }
+
+    private void refresh() {
+        final DatabaseEstimates estimates = new DatabaseEstimates();
+        for (Map<String, Long> counts : m_tableCounts.values()) {
+            for (Entry<String, Long> e : counts.entrySet()) {
+                final long count = e.getValue();
+                TableEstimates table = estimates.tables.get(e.getKey());
+                if (table == null) {
+                    table = new TableEstimates();
+                    table.maxTuples = count;
+                    table.minTuples = count;
+                    estimates.tables.put(e.getKey(), table);
+                }
+                else {
+                    table.maxTuples = Math.max(table.maxTuples, count);
+                    table.minTuples = Math.min(table.minTuples, count);
+                }
+            }
+        }
+
+        for (Map<String, Map<String, long[]>> counts : m_indexCounts.values()) {
+            for (Entry<String, Map<String, long[]>> e : counts.entrySet()) {
+                final TableEstimates table = estimates.tables.get(e.getKey());
+                if (table == null) {
+                    continue;
+                }
+                for (Entry<String, long[]> indexCounts : e.getValue().entrySet()) {
+                    final long[] values = indexCounts.getValue();
+                    IndexEstimates index = table.indexes.get(indexCounts.getKey());
+                    if (index == null) {
+                        index = new IndexEstimates();
+                        index.entries = values[0];
+                        index.distinctKeys = values[1];
+                        table.indexes.put(indexCounts.getKey(), index);
+                    }
+                    else {
+                        index.entries = Math.max(index.entries, values[0]);
+                        index.distinctKeys = Math.max(index.distinctKeys, values[1]);
+                    }
+                }
+            }
+        }
+
+        m_estimates = estimates;
+        if (shouldReplan(estimates)) {
+            final Map<String, Long> planned = new HashMap<String, Long>();
+            for (Entry<String, TableEstimates> e : estimates.tables.entrySet()) {
+                planned.put(e.getKey(), e.getValue().maxTuples);
+            }
+            m_plannedCounts = planned;
+            ++m_generation;
+        }
+    }
+
+    private boolean shouldReplan(DatabaseEstimates estimates) {
+        final long defaultTuples = new TableEstimates().maxTuples;
+        for (Entry<String, TableEstimates> e : estimates.tables.entrySet()) {
+            final Long plannedObj = m_plannedCounts.get(e.getKey());
+            // plans costed before the table was first reported used the defaults
+            final long planned = plannedObj == null ? defaultTuples : plannedObj;
+            final long observed = e.getValue().maxTuples;
+            if (Math.max(planned, observed) < REPLAN_MIN_TUPLES) {
+                continue;
+            }
+            if (observed >= planned * REPLAN_FACTOR || planned >= observed * REPLAN_FACTOR) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -22,14 +22,38 @@ import java.util.HashMap;
 
 public class DatabaseEstimates {
 
+    public static class IndexEstimates {
+        public long entries;
+        // -1 when the index can't estimate its distinct keys
+        public long distinctKeys = -1;
+    }
+
     public static class TableEstimates {
         public long maxTuples = 1000000;
         public long minTuples = 100000;
         public ArrayList<ScalarValueHints> valueHints = new ArrayList<ScalarValueHints>();
+        // Only filled in from the statistics collected from running sites
+        public HashMap<String, IndexEstimates> indexes = new HashMap<String, IndexEstimates>();
+
+        public IndexEstimates getEstimatesForIndex(String indexName) {
+            return indexes.get(indexName);
+        }
     }
 
     HashMap<String, TableEstimates> tables = new HashMap<String, TableEstimates>();
 
+    public DatabaseEstimates() {
+    }
+
+    /**
+     * Copy the table estimates of another instance so defaults filled in
+     * while planning don't leak back into it. The TableEstimates themselves
+     * are shared and must be treated as read only.
+     */
+    public DatabaseEstimates(DatabaseEstimates other) {
+        tables.putAll(other.tables);
+    }
+
     public TableEstimates getEstimatesForTable(String tableName) {
         if (tables.containsKey(tableName) == false)
             tables.put(tableName, new TableEstimates());
@@ -54,19 +54,32 @@ public class PlannerTool {
     private final HSQLInterface m_hsql;
     private final byte[] m_catalogHash;
     private final AdHocCompilerCache m_cache;
+    private final CollectedEstimates m_estimates;
     private static PlannerStatsCollector m_plannerStats;
 
     private static final int AD_HOC_JOINED_TABLE_LIMIT = 5;
 
     public PlannerTool(final Cluster cluster, final Database database, byte[] catalogHash)
+    {
+        this(cluster, database, catalogHash, new CollectedEstimates());
+    }
+
+    /**
+     * @param estimates the table and index sizes collected from the sites,
+     * ad hoc statements are costed with them instead of the default estimates
+     */
+    public PlannerTool(final Cluster cluster, final Database database, byte[] catalogHash,
+            CollectedEstimates estimates)
     {
         assert(cluster != null);
         assert(database != null);
+        assert(estimates != null);
 
         m_database = database;
         m_cluster = cluster;
         m_catalogHash = catalogHash;
         m_cache = AdHocCompilerCache.getCacheForCatalogHash(catalogHash);
+        m_estimates = estimates;
 
         // LOAD HSQL
         m_hsql = HSQLInterface.loadHsqldb();
@@ -89,7 +102,7 @@ public class PlannerTool {
 
         hostLog.debug("hsql loaded");
 
-        // Create and register a singleton planner stats collector, if this is the first time.
+        // Create and register singleton planner and plan cache stats collectors, if this is the first time.
         if (m_plannerStats == null) {
             synchronized (this.getClass()) {
                 if (m_plannerStats == null) {
@@ -98,6 +111,7 @@ public class PlannerTool {
                     if (statsAgent != null) {
                         m_plannerStats = new PlannerStatsCollector(-1);
                         statsAgent.registerStatsSource(StatsSelector.PLANNER, -1, m_plannerStats);
+                        statsAgent.registerStatsSource(StatsSelector.PLANNERCACHE, -1, new AdHocCompilerCacheStats());
                     }
                 }
             }
@@ -167,6 +181,11 @@ public class PlannerTool {
             // remove any spaces or newlines
             String sql = sqlIn.trim();
 
+            // Replan everything once the tables have grown or shrunk far from
+            // the sizes the cached plans were costed with.
+            DatabaseEstimates estimates = m_estimates.getEstimates();
+            m_cache.invalidatePlansBefore(m_estimates.getGeneration());
+
             // No caching for forced single partition or forced multi partition SQL,
             // since these options potentially get different plans that may be invalid
             // or sub-optimal in other contexts. Likewise, plans cached from other contexts
@@ -194,7 +213,6 @@ public class PlannerTool {
             //////////////////////
 
             TrivialCostModel costModel = new TrivialCostModel();
-            DatabaseEstimates estimates = new DatabaseEstimates();
             QueryPlanner planner = new QueryPlanner(
                     sql, "PlannerTool", "PlannerToolProc", m_cluster, m_database,
                     partitioning, m_hsql, estimates, true,
@@ -264,6 +282,7 @@ public class PlannerTool {
 
                 // If not caching or there was no cache hit, do the expensive full planning.
                 plan = planner.plan();
+                AsyncCompilerAgent.PlannerWorker.recordFullPlanningTime(planner.getPlanningTimeNanos());
                 assert(plan != null);
                 if (plan != null && plan.getStatementPartitioning() != null) {
                     partitioning = plan.getStatementPartitioning();
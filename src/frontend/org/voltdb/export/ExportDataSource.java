@@ -24,8 +24,11 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Semaphore;
@@ -105,6 +108,18 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
     private volatile boolean m_closed = false;
     private volatile boolean m_mastershipAccepted = false;
 
+    /*
+     * Backlog gauges for @Statistics EXPORT, written on m_es and read from the stats thread.
+     * m_pushTimes holds the end USO and push time of every pushed buffer not yet acked,
+     * data recovered from disk is dated to when this source was created.
+     */
+    private final ArrayDeque<long[]> m_pushTimes = new ArrayDeque<long[]>();
+    private long m_recoveredBacklogMillis = 0;
+    private volatile long m_backlogBytes = 0;
+    private volatile int m_backlogBuffers = 0;
+    private volatile long m_oldestPendingMillis = 0;
+    private volatile long m_lastSyncNanos = 0;
+
     /**
      * Create a new data source.
      * @param db
@@ -291,6 +306,10 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
         m_endOfStream = !isContinueingGeneration;
 
         m_committedBuffers = new StreamBlockQueue(overflowPath, nonce);
+        if (!m_committedBuffers.isEmpty()) {
+            m_recoveredBacklogMillis = System.currentTimeMillis();
+        }
+        updateBacklogGauges();
 
         // compute the number of bytes necessary to hold one bit per
         // schema column
@@ -298,6 +317,23 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
         m_es = CoreUtils.getListeningExecutorService("ExportDataSource gen " + m_generation + " table " + m_tableName + " partition " + m_partitionId, 1);
     }
 
+    /*
+     * Only called from m_es, or the constructor
+     */
+    private void updateBacklogGauges() throws IOException {
+        m_backlogBytes = m_committedBuffers.sizeInBytes();
+        m_backlogBuffers = m_committedBuffers.blockCount();
+        if (m_backlogBuffers == 0) {
+            m_pushTimes.clear();
+            m_recoveredBacklogMillis = 0;
+            m_oldestPendingMillis = 0;
+        } else if (m_recoveredBacklogMillis != 0) {
+            m_oldestPendingMillis = m_recoveredBacklogMillis;
+        } else if (!m_pushTimes.isEmpty()) {
+            m_oldestPendingMillis = m_pushTimes.peek()[1];
+        }
+    }
+
     public synchronized void updateAckMailboxes(final Pair<Mailbox, ImmutableList<Long>> ackMailboxes) {
         m_ackMailboxRefs.set( ackMailboxes);
     }
@@ -327,6 +363,10 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
         }
         m_lastReleaseOffset = releaseOffset;
         m_firstUnpolledUso = Math.max(m_firstUnpolledUso, lastUso);
+        while (!m_pushTimes.isEmpty() && m_pushTimes.peek()[0] <= releaseOffset) {
+            m_pushTimes.poll();
+        }
+        updateBacklogGauges();
     }
 
     public String getDatabase() {
@@ -423,6 +463,10 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
     }
 
 
+    /**
+     * Exact queued bytes, blocks until the pending work of this source is done. Use
+     * {@link #getBacklogBytes()} where a recent value is good enough.
+     */
     public long sizeInBytes() {
         try {
             return m_es.submit(new Callable<Long>() {
@@ -439,6 +483,28 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
         }
     }
 
+    public long getBacklogBytes() {
+        return m_backlogBytes;
+    }
+
+    public int getBacklogBuffers() {
+        return m_backlogBuffers;
+    }
+
+    /**
+     * @return when the oldest unacked buffer was pushed, 0 if there is none
+     */
+    public long getOldestPendingMillis() {
+        return m_oldestPendingMillis;
+    }
+
+    /**
+     * @return how long the last fsync of the overflow took to complete, including waiting for its group
+     */
+    public long getLastSyncNanos() {
+        return m_lastSyncNanos;
+    }
+
     private void pushExportBufferImpl(
             long uso,
             ByteBuffer buffer,
@@ -493,6 +559,8 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
                                     deleted.set(true);
                                 }
                             }, uso, false));
+                    m_pushTimes.offer(new long[] { uso + (buffer.capacity() - 8), System.currentTimeMillis() });
+                    updateBacklogGauges();
                 } catch (IOException e) {
                     exportLog.error(e);
                     if (!deleted.get()) {
@@ -585,6 +653,7 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
             public void run() {
                 try {
                     m_committedBuffers.truncateToTxnId(txnId, m_nullArrayLength);
+                    updateBacklogGauges();
                     if (m_committedBuffers.isEmpty() && m_endOfStream) {
                         if (m_pollFuture != null) {
                             m_pollFuture.set(null);
@@ -601,25 +670,49 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
         }));
     }
 
-    private class SyncRunnable implements Runnable {
+    /*
+     * Writes the in memory buffers to the overflow on m_es, the fsync itself
+     * is left to ExportSyncService so this source can keep accepting buffers
+     */
+    private class SyncRunnable implements Callable<ListenableFuture<?>> {
         private final boolean m_nofsync;
         SyncRunnable(final boolean nofsync) {
             this.m_nofsync = nofsync;
         }
 
         @Override
-        public void run() {
+        public ListenableFuture<?> call() {
             try {
-                m_committedBuffers.sync(m_nofsync);
+                m_committedBuffers.sync(true);
+                if (!m_nofsync) {
+                    final List<FileChannel> channels = m_committedBuffers.prepareSync();
+                    return ExportSyncService.instance().sync(channels, new Runnable() {
+                        @Override
+                        public void run() {
+                            m_committedBuffers.syncCompleted(channels);
+                        }
+                    });
+                }
             } catch (IOException e) {
                 exportLog.error("failed to sync export overflow", e);
             }
+            return Futures.immediateFuture(null);
         }
     }
 
     public ListenableFuture<?> sync(final boolean nofsync) {
         try {
-            return m_es.submit(new SyncRunnable(nofsync));
+            final long start = System.nanoTime();
+            final ListenableFuture<?> fut = Futures.dereference(m_es.submit(new SyncRunnable(nofsync)));
+            if (!nofsync) {
+                fut.addListener(new Runnable() {
+                    @Override
+                    public void run() {
+                        m_lastSyncNanos = System.nanoTime() - start;
+                    }
+                }, CoreUtils.SAMETHREADEXECUTOR);
+            }
+            return fut;
         } catch (RejectedExecutionException e) {
             exportLog.error("Error scheduling export buffer sync", e);
         }
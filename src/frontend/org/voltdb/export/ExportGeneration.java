@@ -27,6 +27,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -86,9 +87,10 @@ public class ExportGeneration implements Generation {
      * poll() and ack() Export data from the execution engines. Data sources
      * are configured by the Export manager at initialization time.
      * partitionid : <tableid : datasource>.
+     * Concurrent because @Statistics iterates them while export and catalog updates change them.
      */
     private final Map<Integer, Map<String, ExportDataSource>> m_dataSourcesByPartition
-            =        new HashMap<Integer, Map<String, ExportDataSource>>();
+            =        new ConcurrentHashMap<Integer, Map<String, ExportDataSource>>();
     @Override
     public Map<Integer, Map<String, ExportDataSource>> getDataSourceByPartition() {
         return m_dataSourcesByPartition;
@@ -631,7 +633,7 @@ public class ExportGeneration implements Generation {
                 " bytes " + source.sizeInBytes());
         Map<String, ExportDataSource> dataSourcesForPartition = m_dataSourcesByPartition.get(source.getPartitionId());
         if (dataSourcesForPartition == null) {
-            dataSourcesForPartition = new HashMap<String, ExportDataSource>();
+            dataSourcesForPartition = new ConcurrentHashMap<String, ExportDataSource>();
             m_dataSourcesByPartition.put(source.getPartitionId(), dataSourcesForPartition);
         } else {
             if (dataSourcesForPartition.get(source.getSignature()) != null) {
@@ -649,7 +651,7 @@ public class ExportGeneration implements Generation {
     public void addDataSource(ExportDataSource source) {
         Map<String, ExportDataSource> dataSourcesForPartition = m_dataSourcesByPartition.get(source.getPartitionId());
         if (dataSourcesForPartition == null) {
-            dataSourcesForPartition = new HashMap<String, ExportDataSource>();
+            dataSourcesForPartition = new ConcurrentHashMap<String, ExportDataSource>();
             m_dataSourcesByPartition.put(source.getPartitionId(), dataSourcesForPartition);
         }
         dataSourcesForPartition.put(source.getSignature(), source);
@@ -667,7 +669,7 @@ public class ExportGeneration implements Generation {
             try {
                 Map<String, ExportDataSource> dataSourcesForPartition = m_dataSourcesByPartition.get(partition);
                 if (dataSourcesForPartition == null) {
-                    dataSourcesForPartition = new HashMap<String, ExportDataSource>();
+                    dataSourcesForPartition = new ConcurrentHashMap<String, ExportDataSource>();
                     m_dataSourcesByPartition.put(partition, dataSourcesForPartition);
                 }
                 Column partColumn = table.getPartitioncolumn();
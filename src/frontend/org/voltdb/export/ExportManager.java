@@ -20,6 +20,7 @@ package org.voltdb.export;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -289,6 +290,7 @@ public class ExportManager
     {
         ExportManager em = new ExportManager(myHostId, catalogContext, messenger, partitions);
         CatalogMap<Connector> connectors = getConnectors(catalogContext);
+        ExportSyncService.instance().start();
 
         m_self = em;
         if (hasEnabledConnectors(connectors)) {
@@ -341,6 +343,10 @@ public class ExportManager
         return m_self;
     }
 
+    public Collection<ExportGeneration> getGenerations() {
+        return m_generations.values();
+    }
+
     public static void setInstanceForTest(ExportManager self) {
         m_self = self;
     }
@@ -618,6 +624,11 @@ public class ExportManager
             proc.shutdown();
         }
         m_generations.clear();
+        try {
+            ExportSyncService.instance().shutdown();
+        } catch (InterruptedException e) {
+            exportLog.warn("Interrupted waiting for export overflow syncs to complete", e);
+        }
     }
 
     public static long getQueuedExportBytes(int partitionId, String signature) {
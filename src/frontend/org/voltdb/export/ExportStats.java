@@ -0,0 +1,93 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.export;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.voltdb.StatsSource;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+
+/**
+ * Reports one row per export data source on this host with the bytes and buffers
+ * waiting to be acked, how long the oldest of them has been waiting and how long
+ * the last fsync of its overflow took, for @Statistics EXPORT.
+ */
+public class ExportStats extends StatsSource {
+
+    public enum StatName {
+        PARTITION_ID,
+        SOURCE_NAME,
+        GENERATION,
+        BACKLOG_BYTES,
+        BACKLOG_BUFFERS,
+        OLDEST_PENDING_AGE,
+        LAST_SYNC_TIME
+    };
+
+    public ExportStats() {
+        super(false);
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new ColumnInfo(StatName.PARTITION_ID.name(), VoltType.INTEGER));
+        columns.add(new ColumnInfo(StatName.SOURCE_NAME.name(), VoltType.STRING));
+        columns.add(new ColumnInfo(StatName.GENERATION.name(), VoltType.BIGINT));
+        columns.add(new ColumnInfo(StatName.BACKLOG_BYTES.name(), VoltType.BIGINT));
+        columns.add(new ColumnInfo(StatName.BACKLOG_BUFFERS.name(), VoltType.INTEGER));
+        columns.add(new ColumnInfo(StatName.OLDEST_PENDING_AGE.name(), VoltType.BIGINT));
+        columns.add(new ColumnInfo(StatName.LAST_SYNC_TIME.name(), VoltType.BIGINT));
+    }
+
+    @Override
+    protected void updateStatsRow(Object rowKey, Object[] rowValues) {
+        ExportDataSource source = (ExportDataSource) rowKey;
+        final long oldestPending = source.getOldestPendingMillis();
+        rowValues[columnNameToIndex.get(StatName.PARTITION_ID.name())] = source.getPartitionId();
+        rowValues[columnNameToIndex.get(StatName.SOURCE_NAME.name())] = source.getTableName();
+        rowValues[columnNameToIndex.get(StatName.GENERATION.name())] = source.getGeneration();
+        rowValues[columnNameToIndex.get(StatName.BACKLOG_BYTES.name())] = source.getBacklogBytes();
+        rowValues[columnNameToIndex.get(StatName.BACKLOG_BUFFERS.name())] = source.getBacklogBuffers();
+        rowValues[columnNameToIndex.get(StatName.OLDEST_PENDING_AGE.name())] =
+                oldestPending == 0 ? 0 : Math.max(0, System.currentTimeMillis() - oldestPending);
+        rowValues[columnNameToIndex.get(StatName.LAST_SYNC_TIME.name())] =
+                TimeUnit.NANOSECONDS.toMillis(source.getLastSyncNanos());
+        super.updateStatsRow(rowKey, rowValues);
+    }
+
+    @Override
+    protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+        ExportManager manager = ExportManager.instance();
+        if (manager == null) {
+            return Collections.emptyIterator();
+        }
+        ArrayList<Object> sources = new ArrayList<Object>();
+        for (ExportGeneration generation : manager.getGenerations()) {
+            for (Map<String, ExportDataSource> partitionSources : generation.getDataSourceByPartition().values()) {
+                sources.addAll(partitionSources.values());
+            }
+        }
+        return sources.iterator();
+    }
+}
@@ -0,0 +1,190 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.export;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.CoreUtils;
+
+import com.google_voltpatches.common.util.concurrent.Futures;
+import com.google_voltpatches.common.util.concurrent.ListenableFuture;
+import com.google_voltpatches.common.util.concurrent.SettableFuture;
+
+/**
+ * Group commit for export overflow. Data sources hand over the channels of their dirty
+ * segments and go back to accepting buffers, a single thread forces everything that was
+ * requested while the previous round of fsyncs was running and completes all of those
+ * requests together. A channel requested by several data sources is only forced once per round.
+ *
+ * The thread runs between {@link #start()} and {@link #shutdown()}, which follow the
+ * ExportManager. Requests made while it isn't running are forced by the caller.
+ */
+public class ExportSyncService {
+
+    private static final VoltLogger exportLog = new VoltLogger("EXPORT");
+
+    private static final ExportSyncService m_instance = new ExportSyncService();
+
+    public static ExportSyncService instance() {
+        return m_instance;
+    }
+
+    private static class SyncRequest {
+        final List<FileChannel> m_channels;
+        final Runnable m_onSynced;
+        final SettableFuture<Object> m_future = SettableFuture.create();
+        SyncRequest(List<FileChannel> channels, Runnable onSynced) {
+            m_channels = channels;
+            m_onSynced = onSynced;
+        }
+    }
+
+    //Queued by shutdown(), the thread exits once it has completed the requests ahead of it
+    private static final SyncRequest POISON = new SyncRequest(Collections.<FileChannel>emptyList(), null);
+
+    private final LinkedBlockingQueue<SyncRequest> m_requests = new LinkedBlockingQueue<SyncRequest>();
+    private Thread m_thread;
+
+    private final Runnable m_syncTask = new Runnable() {
+        @Override
+        public void run() {
+            final List<SyncRequest> round = new ArrayList<SyncRequest>();
+            boolean done = false;
+            while (!done) {
+                try {
+                    round.add(m_requests.take());
+                } catch (InterruptedException e) {
+                    //Interrupting a force closes the channel, nothing interrupts this thread on purpose
+                    continue;
+                }
+                m_requests.drainTo(round);
+                done = round.remove(POISON);
+                syncRound(round);
+                round.clear();
+            }
+        }
+    };
+
+    private ExportSyncService() {}
+
+    /**
+     * Start the sync thread, a no-op if it is already running.
+     */
+    public synchronized void start() {
+        if (m_thread == null) {
+            m_thread = CoreUtils.getThreadFactory("Export Overflow Sync").newThread(m_syncTask);
+            m_thread.start();
+        }
+    }
+
+    /**
+     * Complete the outstanding requests and stop the sync thread.
+     */
+    public synchronized void shutdown() throws InterruptedException {
+        if (m_thread == null) {
+            return;
+        }
+        m_requests.offer(POISON);
+        m_thread.join();
+        m_thread = null;
+    }
+
+    public ListenableFuture<?> sync(List<FileChannel> channels) {
+        return sync(channels, null);
+    }
+
+    /**
+     * Force the channels on the sync thread.
+     * @param onSynced run on the sync thread once all of the channels are forced, may be null
+     * @return a future that completes once all of them are forced, or fails with the first error
+     */
+    public ListenableFuture<?> sync(List<FileChannel> channels, Runnable onSynced) {
+        if (channels.isEmpty()) {
+            return Futures.immediateFuture(null);
+        }
+        SyncRequest request = new SyncRequest(channels, onSynced);
+        synchronized (this) {
+            if (m_thread != null) {
+                m_requests.offer(request);
+                return request.m_future;
+            }
+        }
+        syncRound(Collections.singletonList(request));
+        return request.m_future;
+    }
+
+    private void syncRound(List<SyncRequest> round) {
+        try {
+            forceRound(round);
+        } catch (Throwable t) {
+            //Don't leave anyone waiting on a round that didn't finish, the thread moves on to the next one
+            exportLog.error("Failed to sync export overflow", t);
+            for (SyncRequest request : round) {
+                request.m_future.setException(t);
+            }
+        }
+    }
+
+    private static void forceRound(List<SyncRequest> round) {
+        final Map<FileChannel, IOException> forced = new IdentityHashMap<FileChannel, IOException>();
+        for (SyncRequest request : round) {
+            for (FileChannel fc : request.m_channels) {
+                if (forced.containsKey(fc)) {
+                    continue;
+                }
+                IOException failure = null;
+                try {
+                    fc.force(true);
+                } catch (ClosedChannelException e) {
+                    //Closing the segment forced it, see PBDRegularSegment.close()
+                } catch (IOException e) {
+                    failure = e;
+                }
+                forced.put(fc, failure);
+            }
+        }
+
+        for (SyncRequest request : round) {
+            IOException failure = null;
+            for (FileChannel fc : request.m_channels) {
+                if (forced.get(fc) != null) {
+                    failure = forced.get(fc);
+                    break;
+                }
+            }
+            if (failure == null) {
+                if (request.m_onSynced != null) {
+                    request.m_onSynced.run();
+                }
+                request.m_future.set(null);
+            } else {
+                exportLog.error("Failed to sync export overflow", failure);
+                request.m_future.setException(failure);
+            }
+        }
+    }
+}
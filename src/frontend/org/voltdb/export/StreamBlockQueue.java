@@ -19,9 +19,11 @@ package org.voltdb.export;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.utils.DBBPool.BBContainer;
@@ -58,9 +60,21 @@ public class StreamBlockQueue {
 
     private final String m_nonce;
 
+    /**
+     * USO bytes waiting in the persistent deque, kept up to date on every offer, push and poll
+     * so sizing the queue doesn't have to open every overflow segment
+     */
+    private long m_persistentSizeInBytes;
+
     public StreamBlockQueue(String path, String nonce) throws java.io.IOException {
         m_persistentDeque = new PersistentBinaryDeque( nonce, new VoltFile(path), exportLog);
         m_nonce = nonce;
+        m_persistentSizeInBytes = persistentDequeSizeInBytes();
+    }
+
+    //Subtract USO from on disk size
+    private long persistentDequeSizeInBytes() throws IOException {
+        return m_persistentDeque.sizeInBytes() - (StreamBlock.HEADER_SIZE * m_persistentDeque.getNumObjects());
     }
 
     public boolean isEmpty() throws IOException {
@@ -98,6 +112,7 @@ public class StreamBlockQueue {
             StreamBlock block = new StreamBlock( fcont,
                 uso,
                 true);
+            m_persistentSizeInBytes -= block.totalUso();
 
             //Optionally store a reference to the block in the in memory deque
             if (!actuallyPoll) {
@@ -195,11 +210,13 @@ public class StreamBlockQueue {
         //Already have two blocks, put it in the deque
         if (m_memoryDeque.size() > 1) {
             m_persistentDeque.offer(streamBlock.asBBContainer());
+            m_persistentSizeInBytes += streamBlock.totalUso();
         } else {
             //Don't offer into the memory deque if there is anything waiting to be
             //polled out of the persistent deque. Check the persistent deque
             if (pollPersistentDeque(false) != null) {
                m_persistentDeque.offer( streamBlock.asBBContainer());
+               m_persistentSizeInBytes += streamBlock.totalUso();
             } else {
             //Persistent deque is empty put this in memory
                m_memoryDeque.offer(streamBlock);
@@ -223,6 +240,7 @@ public class StreamBlockQueue {
                 }
                 m_memoryDeque.poll();
                 buffersToPush.offer(sb.asBBContainer());
+                m_persistentSizeInBytes += sb.totalUso();
             }
 
             if (!buffersToPush.isEmpty()) {
@@ -242,14 +260,36 @@ public class StreamBlockQueue {
         }
     }
 
+    /**
+     * Collect the overflow files with unsynced writes, to be forced by the caller
+     * without blocking this queue. Call {@link #sync(boolean)} with nofsync first
+     * so the in memory blocks are among them.
+     */
+    public List<FileChannel> prepareSync() throws IOException {
+        return m_persistentDeque.prepareSync();
+    }
+
+    /**
+     * Report that the channels returned by {@link #prepareSync()} were forced.
+     */
+    public void syncCompleted(List<FileChannel> channels) {
+        m_persistentDeque.syncCompleted(channels);
+    }
+
     public long sizeInBytes() throws IOException {
         long memoryBlockUsage = 0;
         for (StreamBlock b : m_memoryDeque) {
             memoryBlockUsage += b.unreleasedSize(); //Use only unreleased size, but throw in the USO
                                                     //to make book keeping consistent when flushed to disk
         }
-        //Subtract USO from on disk size
-        return memoryBlockUsage + m_persistentDeque.sizeInBytes() - (8 * m_persistentDeque.getNumObjects());
+        return memoryBlockUsage + m_persistentSizeInBytes;
+    }
+
+    /**
+     * @return the number of blocks in memory and in the persistent deque
+     */
+    public int blockCount() {
+        return m_memoryDeque.size() + m_persistentDeque.getNumObjects();
     }
 
     public void close() throws IOException {
@@ -315,6 +355,7 @@ public class StreamBlockQueue {
             return null;
         }
         });
+        m_persistentSizeInBytes = persistentDequeSizeInBytes();
     }
 
 
@@ -23,9 +23,16 @@ import java.io.IOException;
 import java.net.URI;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.atomic.AtomicReference;
 
 import kafka.api.ConsumerMetadataRequest;
@@ -51,16 +58,25 @@ import kafka.message.MessageAndOffset;
 import kafka.network.BlockingChannel;
 
 import org.voltcore.logging.Level;
+import org.voltcore.utils.CoreUtils;
 import org.voltdb.client.ClientResponse;
 import org.voltdb.client.ProcedureCallback;
 import org.voltdb.importclient.ImportBaseException;
 import org.voltdb.importclient.kafka.KafkaStreamImporterConfig.HostAndPort;
 import org.voltdb.importer.AbstractImporter;
 import org.voltdb.importer.Invocation;
+import org.voltdb.importer.formatter.AbstractFormatterFactory;
 import org.voltdb.importer.formatter.Formatter;
 
+import com.google_voltpatches.common.base.Throwables;
+
 /**
  * Implementation that imports from a Kafka topic. This is for a single partition of a Kafka topic.
+ *
+ * With -DKAFKA_IMPORT_PIPELINED=true the next fetch is issued as soon as the offset after the current
+ * message set is known, so it is in flight while the current set is decoded and dispatched. Records are
+ * then decoded on KAFKA_IMPORT_DECODE_THREADS threads, each with its own formatter, and still submitted
+ * in offset order.
  */
 public class KafkaTopicPartitionImporter extends AbstractImporter
 {
@@ -77,10 +93,24 @@ public class KafkaTopicPartitionImporter extends AbstractImporter
     private final AtomicReference<BlockingChannel> m_offsetManager = new AtomicReference<BlockingChannel>();
     private SimpleConsumer m_consumer = null;
     private final TopicAndPartition m_topicAndPartition;
-    private final Gap m_gapTracker = new Gap(Integer.getInteger("KAFKA_IMPORT_GAP_LEAD", 32_768));
+    private final Gap m_gapTracker = new Gap(Integer.getInteger("KAFKA_IMPORT_GAP_LEAD", 32_768)) {
+        @Override
+        void commitPointMoved(long from, long to) {
+            warn(null, "Gap tracker moving topic commit point from %d to %d for " + m_topicAndPartition, from, to);
+        }
+    };
     private final KafkaStreamImporterConfig m_config;
     private HostAndPort m_coordinator;
 
+    private static final boolean PIPELINED = Boolean.getBoolean("KAFKA_IMPORT_PIPELINED");
+    private static final int DECODE_THREADS = Math.max(1, Integer.getInteger("KAFKA_IMPORT_DECODE_THREADS", 2));
+    //Pipelined mode only, the fetch for the next message set and the offset it starts at
+    private ExecutorService m_fetchExecutor;
+    private ExecutorService m_decodeExecutor;
+    private ThreadLocal<Formatter<String>> m_decodeFormatter;
+    private Future<FetchResponse> m_prefetch;
+    private long m_prefetchOffset = -1;
+
     public KafkaTopicPartitionImporter(KafkaStreamImporterConfig config)
     {
         m_config = config;
@@ -352,12 +382,127 @@ public class KafkaTopicPartitionImporter extends AbstractImporter
                 );
     }
 
+    private FetchResponse fetch(long offset) {
+        //Build fetch request of we have a valid offset and not too many are pending.
+        FetchRequest req = new FetchRequestBuilder().clientId(KafkaStreamImporterConfig.CLIENT_ID)
+                .addFetch(m_topicAndPartition.topic(),
+                        m_topicAndPartition.partition(), offset, m_config.getFetchSize())
+                        .build();
+        return m_consumer.fetch(req);
+    }
+
+    /*
+     * Issue the fetch for the next message set on the fetch thread, only the fetch thread
+     * uses the consumer until takeFetch() waits for the response
+     */
+    private void prefetch(final long offset) {
+        m_prefetchOffset = offset;
+        m_prefetch = m_fetchExecutor.submit(new Callable<FetchResponse>() {
+            @Override
+            public FetchResponse call() throws Exception {
+                return fetch(offset);
+            }
+        });
+    }
+
+    /*
+     * Use the prefetched response if it starts at the offset wanted, otherwise fetch
+     * now. An error from the prefetch is only reported if its response would have been used.
+     */
+    private FetchResponse takeFetch(long offset) throws Exception {
+        final Future<FetchResponse> prefetch = m_prefetch;
+        m_prefetch = null;
+        if (prefetch != null) {
+            try {
+                FetchResponse response = prefetch.get();
+                if (m_prefetchOffset == offset) {
+                    return response;
+                }
+            } catch (ExecutionException e) {
+                if (m_prefetchOffset == offset) {
+                    Throwables.propagateIfInstanceOf(e.getCause(), Exception.class);
+                    throw Throwables.propagate(e.getCause());
+                }
+            }
+        }
+        return fetch(offset);
+    }
+
+    private static String payloadString(MessageAndOffset messageAndOffset) {
+        ByteBuffer payload = messageAndOffset.message().payload();
+        return new String(payload.array(),payload.arrayOffset(),payload.limit(),StandardCharsets.UTF_8);
+    }
+
+    /*
+     * Split the message set in one chunk per decode thread, the chunks come back in offset order
+     */
+    private List<Future<Object[][]>> decode(final List<MessageAndOffset> messages) {
+        List<Future<Object[][]>> chunks = new ArrayList<Future<Object[][]>>();
+        final int chunkSize = (messages.size() + DECODE_THREADS - 1) / DECODE_THREADS;
+        for (int start = 0; start < messages.size(); start += chunkSize) {
+            final List<MessageAndOffset> chunk = messages.subList(start, Math.min(messages.size(), start + chunkSize));
+            chunks.add(m_decodeExecutor.submit(new Callable<Object[][]>() {
+                @Override
+                public Object[][] call() throws Exception {
+                    final Formatter<String> formatter = m_decodeFormatter.get();
+                    Object[][] params = new Object[chunk.size()][];
+                    for (int ii = 0; ii < params.length; ii++) {
+                        params[ii] = formatter.transform(payloadString(chunk.get(ii)));
+                    }
+                    return params;
+                }
+            }));
+        }
+        return chunks;
+    }
+
+    //A record that fails to decode fails the fetcher, the same as decoding in line
+    private static Object[][] unwrap(Future<Object[][]> chunk) throws Exception {
+        try {
+            return chunk.get();
+        } catch (ExecutionException e) {
+            Throwables.propagateIfInstanceOf(e.getCause(), Exception.class);
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    /*
+     * Submit a decoded record and move the fetch offset past it
+     * @return false if the importer is stopping
+     */
+    private boolean submit(MessageAndOffset messageAndOffset, Object[] params, AtomicLong cbcnt) {
+        Invocation invocation = new Invocation(m_config.getProcedure(), params);
+        TopicPartitionInvocationCallback cb = new TopicPartitionInvocationCallback(
+                messageAndOffset.nextOffset(), cbcnt, m_gapTracker, m_dead,
+                invocation);
+        if (!callProcedure(invocation, cb)) {
+            if (isDebugEnabled()) {
+                debug(null, "Failed to process Invocation possibly bad data: " + payloadString(messageAndOffset));
+            }
+            m_gapTracker.commit(messageAndOffset.offset());
+        }
+        m_currentOffset.set(messageAndOffset.nextOffset());
+        return shouldRun();
+    }
+
     @Override
     protected void accept() {
         info(null, "Starting partition fetcher for " + m_topicAndPartition);
         long submitCount = 0;
         AtomicLong cbcnt = new AtomicLong(0);
         Formatter<String> formatter = (Formatter<String>) m_config.getFormatterFactory().create();
+        if (PIPELINED) {
+            m_fetchExecutor = CoreUtils.getSingleThreadExecutor("Kafka fetch " + m_topicAndPartition);
+            m_decodeExecutor = Executors.newFixedThreadPool(DECODE_THREADS,
+                    CoreUtils.getThreadFactory("Kafka decode " + m_topicAndPartition));
+            final AbstractFormatterFactory factory = m_config.getFormatterFactory();
+            m_decodeFormatter = new ThreadLocal<Formatter<String>>() {
+                @Override
+                protected Formatter<String> initialValue() {
+                    return (Formatter<String>) factory.create();
+                }
+            };
+        }
         try {
             //Start with the starting leader.
             resetLeader();
@@ -390,14 +535,9 @@ public class KafkaTopicPartitionImporter extends AbstractImporter
                     info(null, "Starting offset for " + m_topicAndPartition + " is " + m_currentOffset.get());
                 }
                 long currentFetchCount = 0;
-                //Build fetch request of we have a valid offset and not too many are pending.
-                FetchRequest req = new FetchRequestBuilder().clientId(KafkaStreamImporterConfig.CLIENT_ID)
-                        .addFetch(m_topicAndPartition.topic(),
-                                m_topicAndPartition.partition(), m_currentOffset.get(), m_config.getFetchSize())
-                                .build();
                 FetchResponse fetchResponse = null;
                 try {
-                    fetchResponse = m_consumer.fetch(req);
+                    fetchResponse = takeFetch(m_currentOffset.get());
                     if (fetchResponse == null) {
                         sleepCounter = backoffSleep(sleepCounter);
                         continue;
@@ -430,31 +570,45 @@ public class KafkaTopicPartitionImporter extends AbstractImporter
                     continue;
                 }
                 sleepCounter = 1;
-                for (MessageAndOffset messageAndOffset : fetchResponse.messageSet(m_topicAndPartition.topic(), m_topicAndPartition.partition())) {
-                    //You may be catchin up so dont sleep.
-                    currentFetchCount++;
-                    long currentOffset = messageAndOffset.offset();
-                    //if currentOffset is less means we have already pushed it and also check pending queue.
-                    if (currentOffset < m_currentOffset.get()) {
-                        continue;
+                if (PIPELINED) {
+                    List<MessageAndOffset> messages = new ArrayList<MessageAndOffset>();
+                    for (MessageAndOffset messageAndOffset : fetchResponse.messageSet(m_topicAndPartition.topic(), m_topicAndPartition.partition())) {
+                        currentFetchCount++;
+                        //if currentOffset is less means we have already pushed it and also check pending queue.
+                        if (messageAndOffset.offset() >= m_currentOffset.get()) {
+                            messages.add(messageAndOffset);
+                        }
                     }
-                    ByteBuffer payload = messageAndOffset.message().payload();
-
-                    String line = new String(payload.array(),payload.arrayOffset(),payload.limit(),StandardCharsets.UTF_8);
-                    Invocation invocation = new Invocation(m_config.getProcedure(), formatter.transform(line));
-                    TopicPartitionInvocationCallback cb = new TopicPartitionInvocationCallback(
-                            messageAndOffset.nextOffset(), cbcnt, m_gapTracker, m_dead,
-                            invocation);
-                    if (!callProcedure(invocation, cb)) {
-                        if (isDebugEnabled()) {
-                            debug(null, "Failed to process Invocation possibly bad data: " + line);
+                    if (!messages.isEmpty()) {
+                        prefetch(messages.get(messages.size() - 1).nextOffset());
+                    }
+                    List<Future<Object[][]>> decoded = decode(messages);
+                    int index = 0;
+                    for (Future<Object[][]> chunk : decoded) {
+                        for (Object[] params : unwrap(chunk)) {
+                            submitCount++;
+                            if (!submit(messages.get(index++), params, cbcnt)) {
+                                break;
+                            }
+                        }
+                        if (!shouldRun()) {
+                            break;
                         }
-                        m_gapTracker.commit(currentOffset);
                     }
-                    submitCount++;
-                    m_currentOffset.set(messageAndOffset.nextOffset());
-                    if (!shouldRun()) {
-                        break;
+                }
+                else {
+                    for (MessageAndOffset messageAndOffset : fetchResponse.messageSet(m_topicAndPartition.topic(), m_topicAndPartition.partition())) {
+                        //You may be catchin up so dont sleep.
+                        currentFetchCount++;
+                        long currentOffset = messageAndOffset.offset();
+                        //if currentOffset is less means we have already pushed it and also check pending queue.
+                        if (currentOffset < m_currentOffset.get()) {
+                            continue;
+                        }
+                        submitCount++;
+                        if (!submit(messageAndOffset, formatter.transform(payloadString(messageAndOffset)), cbcnt)) {
+                            break;
+                        }
                     }
                 }
                 if (!shouldRun()) {
@@ -473,6 +627,11 @@ public class KafkaTopicPartitionImporter extends AbstractImporter
         } catch (Exception ex) {
             error(ex, "Failed to start topic partition fetcher for " + m_topicAndPartition);
         } finally {
+            if (PIPELINED) {
+                m_prefetch = null;
+                m_fetchExecutor.shutdownNow();
+                m_decodeExecutor.shutdownNow();
+            }
             commitOffset();
             KafkaStreamImporterConfig.closeConsumer(m_consumer);
             m_consumer = null;
@@ -544,21 +703,29 @@ public class KafkaTopicPartitionImporter extends AbstractImporter
         return true;
     }
 
-    final class Gap {
-        long c = 0;
-        long s = -1L;
-        final long [] lag;
+    /*
+     * Tracks the highest offset below which every submitted message was acked. Each slot of the
+     * ring holds the last offset acked into it, so offset x is acked when lag[x % length] == x.
+     * Submits and resets come from the fetcher thread, acks from any callback thread, and the
+     * commit point only moves forward by CAS so concurrent acks never block each other.
+     */
+    static class Gap {
+        final AtomicLong c = new AtomicLong(0);
+        volatile long s = -1L;
+        final AtomicLongArray lag;
 
         Gap(int leeway) {
             if (leeway <= 0) {
                 throw new IllegalArgumentException("leeways is zero or negative");
             }
-            lag = new long[leeway];
+            lag = new AtomicLongArray(leeway);
         }
 
-        synchronized void submit(long offset) {
+        void submit(long offset) {
             if (s == -1L && offset >= 0) {
-                lag[idx(offset)] = c = s = offset;
+                lag.set(idx(offset), offset);
+                c.set(offset);
+                s = offset;
             }
             if (offset > s) {
                 s = offset;
@@ -566,33 +733,53 @@ public class KafkaTopicPartitionImporter extends AbstractImporter
         }
 
         private final int idx(long offset) {
-            return (int)(offset % lag.length);
+            return (int)(offset % lag.length());
         }
 
-        synchronized void resetTo(long offset) {
+        void resetTo(long offset) {
             if (offset < 0) {
                 throw new IllegalArgumentException("offset is negative");
             }
-            lag[idx(offset)] = s = c = offset;
+            lag.set(idx(offset), offset);
+            c.set(offset);
+            s = offset;
         }
 
-        synchronized long commit(long offset) {
-            if (offset <= s && offset > c) {
-                int ggap = (int)Math.min(lag.length, offset-c);
-                if (ggap == lag.length) {
-                    warn(
-                              null, "Gap tracker moving topic commit point from %d to %d for "
-                              + m_topicAndPartition, c, (offset - lag.length + 1)
-                            );
-                    c = offset - lag.length + 1;
-                    lag[idx(c)] = c;
+        long commit(long offset) {
+            long commit = c.get();
+            if (offset <= s && offset > commit) {
+                //Too far ahead of the commit point to fit in the ring, give up on the oldest offsets
+                while (offset - commit >= lag.length()) {
+                    final long moved = offset - lag.length() + 1;
+                    if (c.compareAndSet(commit, moved)) {
+                        commitPointMoved(commit, moved);
+                        lag.set(idx(moved), moved);
+                        commit = moved;
+                        break;
+                    }
+                    commit = c.get();
+                }
+                if (offset <= commit) {
+                    //Acked late, after another ack gave up on it
+                    return commit;
                 }
-                lag[idx(offset)] = offset;
-                while (ggap > 0 && lag[idx(c)]+1 == lag[idx(c+1)]) {
-                    ++c;
+                lag.set(idx(offset), offset);
+                //Whoever sees the next offset acked moves the commit point past it
+                while (lag.get(idx(commit + 1)) == commit + 1 && commit + 1 <= s) {
+                    if (c.compareAndSet(commit, commit + 1)) {
+                        ++commit;
+                    } else {
+                        commit = c.get();
+                    }
                 }
             }
-            return c;
+            return c.get();
+        }
+
+        /*
+         * Called when an ack too far ahead of the commit point gives up on the offsets before it
+         */
+        void commitPointMoved(long from, long to) {
         }
     }
 
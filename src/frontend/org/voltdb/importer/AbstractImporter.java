@@ -54,6 +54,7 @@ public abstract class AbstractImporter
     private ImporterServerAdapter m_importServerAdapter;
     private volatile boolean m_stopping;
     private AtomicInteger m_backPressureCount = new AtomicInteger(0);
+    private final Object m_backPressureLock = new Object();
 
     protected AbstractImporter() {
         m_logger = new VoltLogger(getName());
@@ -117,15 +118,15 @@ public abstract class AbstractImporter
     {
         int count = m_backPressureCount.get();
         if (count > 0) {
-            try { // increase sleep time exponentially to a max of 128ms
-                if (count > 7) {
-                    Thread.sleep(128);
-                } else {
-                    Thread.sleep(1<<count);
+            try { // increase wait time exponentially to a max of 128ms, cut short when back pressure clears
+                synchronized (m_backPressureLock) {
+                    if (m_backPressureCount.get() > 0) {
+                        m_backPressureLock.wait(count > 7 ? 128 : 1<<count);
+                    }
                 }
             } catch(InterruptedException e) {
                 if (m_logger.isDebugEnabled()) {
-                    m_logger.debug("Sleep for back pressure interrupted", e);
+                    m_logger.debug("Wait for back pressure interrupted", e);
                 }
             }
         }
@@ -140,8 +141,10 @@ public abstract class AbstractImporter
     {
         if (hasBackPressure) {
             m_backPressureCount.incrementAndGet();
-        } else {
-            m_backPressureCount.set(0);
+        } else if (m_backPressureCount.getAndSet(0) > 0) {
+            synchronized (m_backPressureLock) {
+                m_backPressureLock.notifyAll();
+            }
         }
     }
 
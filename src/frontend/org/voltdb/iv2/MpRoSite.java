@@ -17,6 +17,7 @@
 
 package org.voltdb.iv2;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Future;
@@ -293,11 +294,15 @@ public class MpRoSite implements Runnable, SiteProcedureConnection
     {
         initialize();
 
+        final ArrayList<SiteTasker> batch = new ArrayList<SiteTasker>(Site.SITE_TASK_BATCH_SIZE);
         try {
             while (m_shouldContinue) {
                 // Normal operation blocks the site thread on the sitetasker queue.
-                SiteTasker task = m_scheduler.take();
-                task.run(getSiteProcedureConnection());
+                m_scheduler.takeBatch(batch, Site.SITE_TASK_BATCH_SIZE);
+                for (int ii = 0; ii < batch.size() && m_shouldContinue; ii++) {
+                    batch.get(ii).run(getSiteProcedureConnection());
+                }
+                batch.clear();
             }
         }
         catch (OutOfMemoryError e)
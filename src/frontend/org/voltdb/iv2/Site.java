@@ -20,6 +20,7 @@ package org.voltdb.iv2;
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Deque;
 import java.util.HashSet;
@@ -34,6 +35,7 @@ import org.voltcore.logging.VoltLogger;
 import org.voltcore.messaging.TransactionInfoBaseMessage;
 import org.voltcore.utils.CoreUtils;
 import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltcore.utils.EstTime;
 import org.voltcore.utils.Pair;
 import org.voltdb.BackendTarget;
@@ -76,6 +78,7 @@ import org.voltdb.catalog.Database;
 import org.voltdb.catalog.Deployment;
 import org.voltdb.catalog.Procedure;
 import org.voltdb.catalog.Table;
+import org.voltdb.compiler.CollectedEstimates;
 import org.voltdb.dtxn.SiteTracker;
 import org.voltdb.dtxn.TransactionState;
 import org.voltdb.dtxn.UndoAction;
@@ -106,6 +109,9 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
     private static final double m_taskLogReplayRatio =
             Double.valueOf(System.getProperty("TASKLOG_REPLAY_RATIO", "0.6"));
 
+    // Most tasks taken from the queue per wakeup once the site is running
+    static final int SITE_TASK_BATCH_SIZE = Math.max(1, Integer.getInteger("SITE_TASK_BATCH_SIZE", 16));
+
     // Set to false trigger shutdown.
     volatile boolean m_shouldContinue = true;
 
@@ -151,6 +157,10 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
     final TableStats m_tableStats;
     final IndexStats m_indexStats;
     final MemoryStats m_memStats;
+    // Bytes spilled, bytes read back and ms spent on temp table spill files, refilled every stats tick
+    private final long[] m_tempTableSpillStats = new long[3];
+    // When this site last reported its table and index counts to the ad hoc planner's estimates
+    private long m_lastEstimatesReport = 0;
 
     // Each execution site manages snapshot using a SnapshotSiteProcessor
     private SnapshotSiteProcessor m_snapshotter;
@@ -581,16 +591,22 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
         m_startupConfig = null; // release the serializableCatalog.
         //Maintain a minimum ratio of task log (unrestricted) to live (restricted) transactions
         final MinimumRatioMaintainer mrm = new MinimumRatioMaintainer(m_taskLogReplayRatio);
+        final ArrayList<SiteTasker> batch = new ArrayList<SiteTasker>(SITE_TASK_BATCH_SIZE);
         try {
             while (m_shouldContinue) {
                 if (m_rejoinState == kStateRunning) {
-                    // Normal operation blocks the site thread on the sitetasker queue.
-                    SiteTasker task = m_scheduler.take();
-                    if (task instanceof TransactionTask) {
-                        m_currentTxnId = ((TransactionTask)task).getTxnId();
-                        m_lastTxnTime = EstTime.currentTimeMillis();
+                    // Normal operation blocks the site thread on the sitetasker queue,
+                    // taking whatever else is ready along with the first task.
+                    m_scheduler.takeBatch(batch, SITE_TASK_BATCH_SIZE);
+                    for (int ii = 0; ii < batch.size() && m_shouldContinue; ii++) {
+                        final SiteTasker task = batch.get(ii);
+                        if (task instanceof TransactionTask) {
+                            m_currentTxnId = ((TransactionTask)task).getTxnId();
+                            m_lastTxnTime = EstTime.currentTimeMillis();
+                        }
+                        task.run(getSiteProcedureConnection());
                     }
-                    task.run(getSiteProcedureConnection());
+                    batch.clear();
                 } else if (m_rejoinState == kStateReplayingRejoin) {
                     // Rejoin operation poll and try to do some catchup work. Tasks
                     // are responsible for logging any rejoin work they might have.
@@ -1030,6 +1046,13 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
                 tableIds[i++] = table.getRelativeIndex();
             }
 
+            // The planner rebuilds its estimates at most once per refresh interval,
+            // so copying the counts out for it on every tick would only churn the heap
+            final boolean reportEstimates = time - m_lastEstimatesReport >= CollectedEstimates.REFRESH_INTERVAL_MS;
+            if (reportEstimates) {
+                m_lastEstimatesReport = time;
+            }
+
             // data to aggregate
             long tupleCount = 0;
             int tupleDataMem = 0;
@@ -1037,9 +1060,11 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
             int indexMem = 0;
             int stringMem = 0;
 
-            // update table stats
-            final VoltTable[] s1 =
-                m_ee.getStats(StatsSelector.TABLE, tableIds, false, time);
+            // update table stats, the pooled results are handed off to the stats sources
+            // so this periodic collection doesn't churn the Java heap
+            final Pair<BBContainer, VoltTable[]> r1 =
+                m_ee.getPooledStats(StatsSelector.TABLE, tableIds, false, time);
+            final VoltTable[] s1 = r1 == null ? null : r1.getSecond();
             if ((s1 != null) && (s1.length > 0)) {
                 VoltTable stats = s1[0];
                 assert(stats != null);
@@ -1058,17 +1083,24 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
                 }
                 stats.resetRowPosition();
 
-                m_tableStats.setStatsTable(stats);
+                if (reportEstimates) {
+                    m_context.m_estimates.updateTableStats(m_siteId, stats);
+                }
+                m_tableStats.setStatsTable(stats, r1.getFirst());
             }
             else {
+                if (r1 != null) {
+                    r1.getFirst().discard();
+                }
                 // the EE returned no table stats, which means there are no tables.
                 // Need to ensure the cached stats are cleared to reflect that
                 m_tableStats.resetStatsTable();
             }
 
             // update index stats
-            final VoltTable[] s2 =
-                m_ee.getStats(StatsSelector.INDEX, tableIds, false, time);
+            final Pair<BBContainer, VoltTable[]> r2 =
+                m_ee.getPooledStats(StatsSelector.INDEX, tableIds, false, time);
+            final VoltTable[] s2 = r2 == null ? null : r2.getSecond();
             if ((s2 != null) && (s2.length > 0)) {
                 VoltTable stats = s2[0];
                 assert(stats != null);
@@ -1081,9 +1113,15 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
                 }
                 stats.resetRowPosition();
 
-                m_indexStats.setStatsTable(stats);
+                if (reportEstimates) {
+                    m_context.m_estimates.updateIndexStats(m_siteId, stats);
+                }
+                m_indexStats.setStatsTable(stats, r2.getFirst());
             }
             else {
+                if (r2 != null) {
+                    r2.getFirst().discard();
+                }
                 // the EE returned no index stats, which means there are no indexes.
                 // Need to ensure the cached stats are cleared to reflect that
                 m_indexStats.resetStatsTable();
@@ -1091,13 +1129,17 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
 
             // update the rolled up memory statistics
             if (m_memStats != null) {
+                m_ee.getTempTableSpillStats(m_tempTableSpillStats);
                 m_memStats.eeUpdateMemStats(m_siteId,
                                             tupleCount,
                                             tupleDataMem,
                                             tupleAllocatedMem,
                                             indexMem,
                                             stringMem,
-                                            m_ee.getThreadLocalPoolAllocations());
+                                            m_ee.getThreadLocalPoolAllocations(),
+                                            m_tempTableSpillStats[0],
+                                            m_tempTableSpillStats[1],
+                                            m_tempTableSpillStats[2]);
             }
         }
     }
@@ -17,7 +17,9 @@
 
 package org.voltdb.iv2;
 
+import java.util.Collection;
 import java.util.concurrent.LinkedTransferQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.voltcore.utils.CoreUtils;
 import org.voltdb.StarvationTracker;
@@ -25,6 +27,16 @@ import org.voltdb.StarvationTracker;
 /** SiteTaskerScheduler orders SiteTaskers for execution. */
 public class SiteTaskerQueue
 {
+    /*
+     * Upper bound on how long an idle site spins before parking. The actual spin is
+     * adapted to how long the site has recently had to wait for work, so a busy site
+     * spins across the short gaps between transactions and an idle one parks right away.
+     * The default of 0 parks as soon as the queue is empty, as sites always have.
+     * QUEUE_SPIN_MICROS, if set, is a fixed spin and turns the adaptive policy off.
+     */
+    static final long MAX_SPIN_NANOS =
+            TimeUnit.MICROSECONDS.toNanos(Integer.getInteger("SITE_QUEUE_SPIN_MICROS", 0));
+
     private final LinkedTransferQueue<SiteTasker> m_tasks = new LinkedTransferQueue<SiteTasker>();
     private StarvationTracker m_starvationTracker;
 
@@ -43,12 +55,57 @@ public class SiteTaskerQueue
             return task;
         }
         try {
-            return CoreUtils.queueSpinTake(m_tasks);
+            if (CoreUtils.QUEUE_SPIN_MICROSECONDS > 0) {
+                return CoreUtils.queueSpinTake(m_tasks);
+            }
+            return spinThenTake(spinNanos());
         } finally {
             m_starvationTracker.endStarvation();
         }
     }
 
+    /**
+     * Block until at least one task is available, then move it and up to
+     * maxTasks - 1 more ready tasks into batch, in queue order.
+     * @return the number of tasks added to batch
+     */
+    public int takeBatch(Collection<? super SiteTasker> batch, int maxTasks) throws InterruptedException
+    {
+        assert(maxTasks > 0);
+        batch.add(take());
+        if (maxTasks == 1) {
+            return 1;
+        }
+        return 1 + m_tasks.drainTo(batch, maxTasks - 1);
+    }
+
+    /*
+     * Spin for up to twice the recent average wait when that is within the spin
+     * budget. Waits longer than the budget are not worth burning a core on.
+     */
+    private long spinNanos()
+    {
+        final long recent = m_starvationTracker.getRecentStarvationNanos();
+        if (recent > MAX_SPIN_NANOS) {
+            return 0;
+        }
+        return Math.min(MAX_SPIN_NANOS, Math.max(recent * 2, MAX_SPIN_NANOS / 8));
+    }
+
+    private SiteTasker spinThenTake(long spinNanos) throws InterruptedException
+    {
+        if (spinNanos > 0) {
+            final long start = System.nanoTime();
+            do {
+                final SiteTasker task = m_tasks.poll();
+                if (task != null) {
+                    return task;
+                }
+            } while (System.nanoTime() - start < spinNanos);
+        }
+        return m_tasks.take();
+    }
+
     // Non-blocking poll on the site tasker queue.
     public SiteTasker poll()
     {
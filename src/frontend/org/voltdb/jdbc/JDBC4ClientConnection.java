@@ -21,7 +21,10 @@ import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.net.UnknownHostException;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
@@ -37,6 +40,7 @@ import org.voltdb.client.BatchTimeoutOverrideType;
 import org.voltdb.client.NoConnectionsException;
 import org.voltdb.client.ProcCallException;
 import org.voltdb.client.ProcedureCallback;
+import org.voltdb.jdbc.JDBC4Statement.VoltSQL;
 
 /**
  * Provides a high-level wrapper around the core {@link Client} class to provide performance
@@ -79,6 +83,21 @@ public class JDBC4ClientConnection implements Closeable {
      */
     protected long defaultAsyncTimeout = 60000;
 
+    /**
+     * Most recently prepared SQL of every JDBC connection sharing this client, parsed once.
+     * The parsed query is immutable, each PreparedStatement keeps its own parameters.
+     */
+    static final int PREPARED_CACHE_SIZE = Integer.getInteger("voltdb.jdbc.preparedcachesize", 1024);
+    private final Map<String, VoltSQL> preparedQueries =
+            new LinkedHashMap<String, VoltSQL>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, VoltSQL> eldest) {
+                    return size() > PREPARED_CACHE_SIZE;
+                }
+            };
+
     /**
      * Creates a new native client wrapper from the given parameters (internal use only).
      *
@@ -199,6 +218,29 @@ public class JDBC4ClientConnection implements Closeable {
         return this.createClientAndConnect();
     }
 
+    /**
+     * Get the parsed form of SQL passed to prepareStatement(), parsing it only the first time
+     * any connection sharing this client prepares it.
+     *
+     * @param sql
+     *            the SQL of the prepared statement.
+     * @return the parsed query, shared and never modified.
+     * @throws SQLException if the SQL can't be parsed.
+     */
+    VoltSQL getPreparedQuery(String sql) throws SQLException {
+        synchronized (this.preparedQueries) {
+            VoltSQL query = this.preparedQueries.get(sql);
+            if (query != null) {
+                return query;
+            }
+        }
+        VoltSQL query = VoltSQL.parseSQL(sql);
+        synchronized (this.preparedQueries) {
+            this.preparedQueries.put(sql, query);
+        }
+        return query;
+    }
+
     /**
      * Used by the pool to indicate a new thread/user is using a specific connection, helping the
      * pool determine when new connections need to be created.
@@ -359,6 +401,43 @@ public class JDBC4ClientConnection implements Closeable {
         }
     }
 
+    /**
+     * Executes a procedure asynchronously with a client side timeout, then calls the provided
+     * user callback with the server response, or a timeout response, upon completion.
+     *
+     * @param callback
+     *            the user-specified callback to call with the server response upon execution
+     *            completion.
+     * @param timeout
+     *            the client side timeout of the call.
+     * @param unit
+     *            the unit of the timeout, seconds when null.
+     * @param procedure
+     *            the name of the procedure to call.
+     * @param parameters
+     *            the list of parameters to pass to the procedure.
+     * @return the result of the submission false if the client connection was terminated and unable
+     *         to post the request to the server, true otherwise.
+     */
+    public boolean executeAsync(ProcedureCallback callback, long timeout, TimeUnit unit,
+            String procedure, Object... parameters)
+            throws NoConnectionsException, IOException
+    {
+        ClientImpl currentClient = this.getClient();
+        if (unit == null) {
+            unit = TimeUnit.SECONDS;
+        }
+        try {
+            return currentClient.callProcedureWithClientTimeout(
+                    new TrackingCallback(this, procedure, callback),
+                    BatchTimeoutOverrideType.NO_TIMEOUT, procedure, timeout, unit, parameters);
+        }
+        catch (NoConnectionsException e) {
+            this.dropClient(currentClient);
+            throw e;
+        }
+    }
+
     /**
      * Executes a procedure asynchronously, returning a Future that can be used by the caller to
      * wait upon completion before processing the server response.
@@ -48,8 +48,7 @@ public class JDBC4PreparedStatement extends JDBC4Statement implements java.sql.P
     JDBC4PreparedStatement(JDBC4Connection connection, String sql) throws SQLException
     {
         super(connection);
-        VoltSQL query = VoltSQL.parseSQL(sql);
-        this.Query = query;
+        this.Query = connection.NativeConnection.getPreparedQuery(sql);
         this.parameters = this.Query.getParameterArray();
         this.parameterMetaData = new JDBC4ParameterMetaData(this, this.Query.getParameterCount()); // to be replaced with actual param count (!)
     }
@@ -67,7 +66,7 @@ public class JDBC4PreparedStatement extends JDBC4Statement implements java.sql.P
         }
         else
         {
-            query = VoltSQL.parseSQL(sql);
+            query = connection.NativeConnection.getPreparedQuery(sql);
         }
         this.Query = query;
         this.parameters = this.Query.getParameterArray();
@@ -29,12 +29,14 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import org.voltdb.VoltTable;
 import org.voltdb.VoltType;
 import org.voltdb.client.ClientResponse;
 import org.voltdb.client.ProcCallException;
+import org.voltdb.client.ProcedureCallback;
 import org.voltdb.parser.JDBCParser;
 import org.voltdb.parser.SQLLexer;
 import org.voltdb.parser.JDBCParser.ParsedCall;
@@ -126,24 +128,7 @@ public class JDBC4Statement implements java.sql.Statement
             {
                 ClientResponse response = e.getClientResponse();
                 if (response != null) {
-                    // Map response status to specific JDBC exception, mostly GENERAL_ERROR except
-                    // for connection problems.
-                    switch (response.getStatus()) {
-                    case ClientResponse.CONNECTION_LOST:
-                        throw SQLError.get(e, SQLError.CONNECTION_CLOSED, "CONNECTION_LOST", e.getMessage());
-                    case ClientResponse.CONNECTION_TIMEOUT:
-                        throw SQLError.get(e, SQLError.CONNECTION_FAILURE, "CONNECTION_TIMEOUT", e.getMessage());
-                    case ClientResponse.SERVER_UNAVAILABLE:
-                        throw SQLError.get(e, SQLError.CONNECTION_FAILURE, "CONNECTION_UNAVAILABLE", e.getMessage());
-                    case ClientResponse.USER_ABORT:
-                        throw SQLError.get(e, SQLError.GENERAL_ERROR, "USER_ABORT", e.getMessage());
-                    case ClientResponse.UNEXPECTED_FAILURE:
-                        throw SQLError.get(e, SQLError.GENERAL_ERROR, "UNEXPECTED_FAILURE", e.getMessage());
-                    case ClientResponse.GRACEFUL_FAILURE:
-                        throw SQLError.get(e, SQLError.GENERAL_ERROR, "GRACEFUL_FAILURE", e.getMessage());
-                    default:
-                        throw SQLError.get(e, SQLError.GENERAL_ERROR, String.format("status=%d", (int)response.getStatus()), e.getMessage());
-                    }
+                    throw toSQLException(e, response, e.getMessage());
                 } else {
                     throw SQLError.get(e, SQLError.GENERAL_ERROR, e.getMessage());
                 }
@@ -154,6 +139,54 @@ public class JDBC4Statement implements java.sql.Statement
             }
         }
 
+        /**
+         * Submit this query without waiting for its response, which is handed to the callback.
+         * Failed responses are not turned into exceptions here, see {@link #toSQLException}.
+         */
+        protected void executeAsync(JDBC4ClientConnection connection, long timeout, TimeUnit queryTimeOutUnit,
+                ProcedureCallback callback) throws SQLException {
+            try
+            {
+                boolean queued;
+                if (this.type == TYPE_EXEC) {
+                    queued = connection.executeAsync(callback, timeout, queryTimeOutUnit, this.sql[0], this.parameters);
+                } else {
+                    queued = connection.executeAsync(callback, timeout, queryTimeOutUnit, "@AdHoc", this.sql[0]);
+                }
+                if (!queued) {
+                    throw SQLError.get(SQLError.CONNECTION_CLOSED);
+                }
+            }
+            catch(IOException e)
+            {
+                throw SQLError.get(e, SQLError.CONNECTION_FAILURE, e.getMessage());
+            }
+        }
+
+        /**
+         * Map a failed response status to a specific JDBC exception, mostly GENERAL_ERROR except
+         * for connection problems.
+         */
+        static SQLException toSQLException(Throwable cause, ClientResponse response, String message)
+        {
+            switch (response.getStatus()) {
+            case ClientResponse.CONNECTION_LOST:
+                return SQLError.get(cause, SQLError.CONNECTION_CLOSED, "CONNECTION_LOST", message);
+            case ClientResponse.CONNECTION_TIMEOUT:
+                return SQLError.get(cause, SQLError.CONNECTION_FAILURE, "CONNECTION_TIMEOUT", message);
+            case ClientResponse.SERVER_UNAVAILABLE:
+                return SQLError.get(cause, SQLError.CONNECTION_FAILURE, "CONNECTION_UNAVAILABLE", message);
+            case ClientResponse.USER_ABORT:
+                return SQLError.get(cause, SQLError.GENERAL_ERROR, "USER_ABORT", message);
+            case ClientResponse.UNEXPECTED_FAILURE:
+                return SQLError.get(cause, SQLError.GENERAL_ERROR, "UNEXPECTED_FAILURE", message);
+            case ClientResponse.GRACEFUL_FAILURE:
+                return SQLError.get(cause, SQLError.GENERAL_ERROR, "GRACEFUL_FAILURE", message);
+            default:
+                return SQLError.get(cause, SQLError.GENERAL_ERROR, String.format("status=%d", (int)response.getStatus()), message);
+            }
+        }
+
         public static boolean isUpdateResult(VoltTable table)
         {
             return ((table.getColumnName(0).length() == 0 || table.getColumnName(0).equals("modified_tuples"))&& table.getRowCount() == 1 && table.getColumnCount() == 1 && table.getColumnType(0) == VoltType.BIGINT);
@@ -421,6 +454,10 @@ public class JDBC4Statement implements java.sql.Statement
             return new int[0];
         }
 
+        if (sourceConnection.pipelineBatch && batch.size() > 1) {
+            return executePipelinedBatch();
+        }
+
         int[] updateCounts = new int[batch.size()];
         // keep a running total of update counts
         int runningUpdateCount = 0;
@@ -453,6 +490,79 @@ public class JDBC4Statement implements java.sql.Statement
         return updateCounts;
     }
 
+    /**
+     * Submit every command of the batch before waiting for any response, so the batch costs
+     * about one round trip instead of one per command. All the commands run even if one fails,
+     * in which case the BatchUpdateException has a count, or EXECUTE_FAILED, for each of them.
+     * Commands sent to different partitions, and ad hoc commands that are planned concurrently,
+     * may run in a different order than they were added, which is why this is only used when
+     * the connection sets {@link JDBC4Connection#PIPELINE_BATCH}.
+     */
+    private int[] executePipelinedBatch() throws SQLException
+    {
+        final int size = batch.size();
+        final ClientResponse[] responses = new ClientResponse[size];
+        final CountDownLatch outstanding = new CountDownLatch(size);
+        int[] updateCounts = new int[size];
+        SQLException failure = null;
+
+        int submitted = 0;
+        try {
+            try {
+                for (; submitted < size; submitted++) {
+                    final int index = submitted;
+                    batch.get(index).executeAsync(
+                            sourceConnection.NativeConnection,
+                            this.m_timeout,
+                            sourceConnection.queryTimeOutUnit,
+                            new ProcedureCallback() {
+                                @Override
+                                public void clientCallback(ClientResponse response) {
+                                    responses[index] = response;
+                                    outstanding.countDown();
+                                }
+                            });
+                }
+            } catch (SQLException x) {
+                failure = x;
+                for (int i = submitted; i < size; i++) {
+                    outstanding.countDown();
+                }
+            }
+            try {
+                outstanding.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw SQLError.get(e, SQLError.GENERAL_ERROR, e.getMessage());
+            }
+        } finally {
+            clearBatch();
+        }
+
+        // keep a running total of update counts
+        int runningUpdateCount = 0;
+        for (int i = 0; i < size; i++) {
+            final ClientResponse response = responses[i];
+            if (response == null) {
+                // never submitted
+                updateCounts[i] = EXECUTE_FAILED;
+            } else if (response.getStatus() != ClientResponse.SUCCESS) {
+                updateCounts[i] = EXECUTE_FAILED;
+                if (failure == null) {
+                    failure = VoltSQL.toSQLException(null, response, response.getStatusString());
+                }
+            } else {
+                updateCounts[i] = (int) response.getResults()[0].fetchRow(0).getLong(0);
+                runningUpdateCount += updateCounts[i];
+            }
+        }
+        if (failure != null) {
+            throw new BatchUpdateException(updateCounts, failure);
+        }
+        setCurrentResult(null, runningUpdateCount);
+        return updateCounts;
+    }
+
     protected ResultSet executeQuery(VoltSQL query) throws SQLException
     {
         setCurrentResult(query.execute(this.sourceConnection.NativeConnection, this.m_timeout, this.sourceConnection.queryTimeOutUnit), -1);
@@ -29,6 +29,7 @@ import org.voltcore.logging.Level;
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.utils.CoreUtils;
 import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltcore.utils.Pair;
 import org.voltdb.PlannerStatsCollector;
 import org.voltdb.PlannerStatsCollector.CacheUse;
@@ -59,7 +60,8 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
         VALIDATE_PARTITIONING(0),
         GET_DR_TUPLESTREAM_STATE(1),
         SET_DR_SEQUENCE_NUMBERS(2),
-        SET_DR_PROTOCOL_VERSION(3);
+        SET_DR_PROTOCOL_VERSION(3),
+        GET_TEMP_TABLE_SPILL_STATS(4);
 
         private TaskType(int taskId) {
             this.taskId = taskId;
@@ -628,6 +630,28 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
             boolean interval,
             Long now);
 
+    /**
+     * Same as {@link #getStats} except that the result tables may be backed by a buffer
+     * from the DBBPool rather than the Java heap, so periodic stats collection doesn't
+     * generate garbage. The caller owns the returned container and must discard it once
+     * it, and every view of the result tables, is no longer in use.
+     * @return The container backing the tables and the results tables, or null on failure.
+     */
+    public Pair<BBContainer, VoltTable[]> getPooledStats(
+            StatsSelector selector,
+            int locators[],
+            boolean interval,
+            Long now)
+    {
+        final VoltTable results[] = getStats(selector, locators, interval, now);
+        if (results == null) {
+            return null;
+        }
+        return Pair.of(DBBPool.dummyWrapBB(EMPTY_STATS_BUFFER), results);
+    }
+
+    private static final ByteBuffer EMPTY_STATS_BUFFER = ByteBuffer.allocate(0);
+
     /**
      * Instruct the EE to start/stop its profiler.
      */
@@ -718,6 +742,19 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
 
     public abstract ByteBuffer getParamBufferForExecuteTask(int requiredCapacity);
 
+    /**
+     * Fill counters with the bytes written to temp table spill files, the bytes
+     * read back from them and the milliseconds spent on them since the EE started.
+     * Engines that can read the reply in place override this so that polling it
+     * every stats tick does not allocate.
+     */
+    public void getTempTableSpillStats(long[] counters) throws EEException {
+        ByteBuffer totals = ByteBuffer.wrap(executeTask(TaskType.GET_TEMP_TABLE_SPILL_STATS, ByteBuffer.allocate(0)));
+        counters[0] = totals.getLong();
+        counters[1] = totals.getLong();
+        counters[2] = totals.getLong();
+    }
+
     /*
      * Declare the native interface. Structurally, in Java, it would be cleaner to
      * declare this in ExecutionEngineJNI.java. However, that would necessitate multiple
@@ -750,6 +787,7 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
      * @param partitionId id of partitioned assigned to this EE
      * @param hostId id of the host this EE is running on
      * @param hostname name of the host this EE is running on
+     * @param tempTableSpillDirectory where temp tables spill past the memory limit, empty if they may not
      * @return error code
      */
     protected native int nativeInitialize(
@@ -762,7 +800,8 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
             int drClusterId,
             long tempTableMemory,
             boolean createDrReplicatedStream,
-            int compactionThreshold);
+            int compactionThreshold,
+            byte tempTableSpillDirectory[]);
 
     /**
      * Sets (or re-sets) all the shared direct byte buffers in the EE.
@@ -17,11 +17,13 @@
 
 package org.voltdb.jni;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.List;
 
 import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.CoreUtils;
 import org.voltcore.utils.DBBPool;
 import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltcore.utils.Pair;
@@ -62,6 +64,16 @@ public class ExecutionEngineJNI extends ExecutionEngine {
      */
     public static final int EE_COMPACTION_THRESHOLD;
 
+    /*
+     * Directory where each site gets a scratch directory for the temp table blocks of
+     * queries that go past the temp table memory limit. The blocks are written there and
+     * read back as they are needed instead of the query failing. Unset, they fail.
+     * Only the tuples themselves are spilled. Out of line strings and varbinary values
+     * stay in memory, where they are not counted against the limit either.
+     */
+    public static final String EE_TEMP_TABLE_SPILL_DIRECTORY =
+            System.getProperty("EE_TEMP_TABLE_SPILL_DIRECTORY", "");
+
     /** java.util.logging logger. */
     private static final VoltLogger LOG = new VoltLogger("HOST");
 
@@ -120,6 +132,26 @@ public class ExecutionEngineJNI extends ExecutionEngine {
             final int tempTableMemory,
             final HashinatorConfig hashinatorConfig,
             final boolean createDrReplicatedStream)
+    {
+        this(clusterIndex, siteId, partitionId, hostId, hostname, drClusterId, tempTableMemory,
+             hashinatorConfig, createDrReplicatedStream, EE_TEMP_TABLE_SPILL_DIRECTORY);
+    }
+
+    /**
+     * initialize the native Engine object, with temp tables spilling under
+     * the given directory, or not at all if it is empty.
+     */
+    public ExecutionEngineJNI(
+            final int clusterIndex,
+            final long siteId,
+            final int partitionId,
+            final int hostId,
+            final String hostname,
+            final int drClusterId,
+            final int tempTableMemory,
+            final HashinatorConfig hashinatorConfig,
+            final boolean createDrReplicatedStream,
+            final String tempTableSpillDirectory)
     {
         // base class loads the volt shared library.
         super(siteId, partitionId);
@@ -135,6 +167,16 @@ public class ExecutionEngineJNI extends ExecutionEngine {
         pointer = nativeCreate(System.getProperty("java.vm.vendor")
                                .toLowerCase().contains("sun microsystems"));
         nativeSetLogLevels(pointer, EELoggers.getLogLevels());
+        String spillDirectory = "";
+        if (!tempTableSpillDirectory.isEmpty()) {
+            File siteDirectory = new File(tempTableSpillDirectory,
+                    "host" + hostId + "_site" + CoreUtils.getSiteIdFromHSId(siteId));
+            if (!siteDirectory.isDirectory() && !siteDirectory.mkdirs()) {
+                VoltDB.crashLocalVoltDB("EE_TEMP_TABLE_SPILL_DIRECTORY " + tempTableSpillDirectory +
+                        " is not valid, could not create " + siteDirectory, false, null);
+            }
+            spillDirectory = siteDirectory.getAbsolutePath();
+        }
         int errorCode =
             nativeInitialize(
                     pointer,
@@ -146,7 +188,8 @@ public class ExecutionEngineJNI extends ExecutionEngine {
                     drClusterId,
                     tempTableMemory * 1024 * 1024,
                     createDrReplicatedStream,
-                    EE_COMPACTION_THRESHOLD);
+                    EE_COMPACTION_THRESHOLD,
+                    getStringBytes(spillDirectory));
         checkErrorCode(errorCode);
 
         setupPsetBuffer(256 * 1024); // 256k seems like a reasonable per-ee number (but is totally pulled from my a**)
@@ -466,6 +509,57 @@ public class ExecutionEngineJNI extends ExecutionEngine {
         }
     }
 
+    /**
+     * Retrieve a set of statistics without copying each result table onto the Java heap.
+     * The serialized results are moved out of the shared output buffer with a single bulk
+     * copy into a buffer from the DBBPool and the tables are sliced from that buffer.
+     * The caller must discard the returned container once it is done with the tables.
+     */
+    @Override
+    public Pair<BBContainer, VoltTable[]> getPooledStats(
+            final StatsSelector selector,
+            final int locators[],
+            final boolean interval,
+            final Long now)
+    {
+        //Clear is destructive, do it before the native call
+        deserializer.clear();
+        final int numResults = nativeGetStats(pointer, selector.ordinal(), locators, interval, now);
+        if (numResults == -1) {
+            throwExceptionForError(ERRORCODE_ERROR);
+        }
+
+        BBContainer container = null;
+        try {
+            final ByteBuffer buf = fallbackBuffer == null ? deserializer.buffer() : fallbackBuffer;
+            final int totalLength = buf.getInt();
+            container = DBBPool.allocateDirectAndPool(totalLength);
+            final ByteBuffer pooled = container.b();
+            final ByteBuffer source = buf.slice();
+            source.limit(totalLength);
+            pooled.put(source);
+            pooled.flip();
+
+            final VoltTable results[] = new VoltTable[numResults];
+            for (int ii = 0; ii < numResults; ii++) {
+                final int len = pooled.getInt();
+                final ByteBuffer tableBacking = pooled.slice();
+                tableBacking.limit(len);
+                pooled.position(pooled.position() + len);
+                results[ii] = PrivateVoltTableFactory.createVoltTableFromBuffer(tableBacking, true);
+            }
+            return Pair.of(container, results);
+        } catch (final RuntimeException ex) {
+            if (container != null) {
+                container.discard();
+            }
+            LOG.error("Failed to deserialze result table for getStats" + ex);
+            throw new EEException(ERRORCODE_WRONG_SERIALIZED_BYTES);
+        } finally {
+            fallbackBuffer = null;
+        }
+    }
+
     @Override
     public void toggleProfiler(final int toggle) {
         nativeToggleProfiler(pointer, toggle);
@@ -645,6 +739,25 @@ public class ExecutionEngineJNI extends ExecutionEngine {
         return null;
     }
 
+    @Override
+    public void getTempTableSpillStats(long[] counters) throws EEException {
+        try {
+            psetBuffer.putLong(0, TaskType.GET_TEMP_TABLE_SPILL_STATS.taskId);
+
+            //Clear is destructive, do it before the native call
+            deserializer.clear();
+            final int errorCode = nativeExecuteTask(pointer);
+            checkErrorCode(errorCode);
+            // Read the three longs where the EE wrote them, past the length of the reply
+            deserializer.readInt();
+            counters[0] = deserializer.readLong();
+            counters[1] = deserializer.readLong();
+            counters[2] = deserializer.readLong();
+        } catch (IOException e) {
+            Throwables.propagate(e);
+        }
+    }
+
     @Override
     public ByteBuffer getParamBufferForExecuteTask(int requiredCapacity) {
         clearPsetAndEnsureCapacity(8 + requiredCapacity);
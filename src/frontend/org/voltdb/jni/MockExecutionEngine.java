@@ -233,6 +233,14 @@ public class MockExecutionEngine extends ExecutionEngine {
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public void getTempTableSpillStats(long[] counters) {
+        // nothing is ever spilled
+        counters[0] = 0;
+        counters[1] = 0;
+        counters[2] = 0;
+    }
+
     @Override
     public ByteBuffer getParamBufferForExecuteTask(int requiredCapacity) {
         throw new UnsupportedOperationException();
@@ -66,10 +66,33 @@ public abstract class AbstractParsedStmt {
 
     protected String m_contentDeterminismMessage = null;
 
-     // Internal statement counter
-    public static int NEXT_STMT_ID = 0;
-    // Internal parameter counter
-    public static int NEXT_PARAMETER_ID = 0;
+    // Internal statement and parameter counters. These are thread-confined so
+    // that independent planners can run concurrently in the ad hoc planner pool.
+    private static final class IdCounters {
+        int m_nextStmtId = 0;
+        int m_nextParameterId = 0;
+    }
+    private static final ThreadLocal<IdCounters> m_idCounters = new ThreadLocal<IdCounters>() {
+        @Override
+        protected IdCounters initialValue() {
+            return new IdCounters();
+        }
+    };
+
+    /**
+     * @return the next unique statement id for the statement being planned on this thread.
+     */
+    public static int nextStmtId() {
+        return m_idCounters.get().m_nextStmtId++;
+    }
+
+    /**
+     * @return the next unique parameter id for the statement being planned on this thread.
+     */
+    public static int nextParameterId() {
+        return m_idCounters.get().m_nextParameterId++;
+    }
+
     // The unique id to identify the statement
     public int m_stmtId;
 
@@ -176,7 +199,7 @@ public abstract class AbstractParsedStmt {
            throw new RuntimeException("Unexpected Element: " + stmtTypeElement.name);
        }
        // Set the unique id
-       retval.m_stmtId = NEXT_STMT_ID++;
+       retval.m_stmtId = nextStmtId();
        return retval;
    }
 
@@ -211,8 +234,9 @@ public abstract class AbstractParsedStmt {
             Database db, String joinOrder) {
 
         // reset the statement counters
-        NEXT_STMT_ID = 0;
-        NEXT_PARAMETER_ID = 0;
+        IdCounters counters = m_idCounters.get();
+        counters.m_nextStmtId = 0;
+        counters.m_nextParameterId = 0;
         AbstractParsedStmt retval = getParsedStmt(stmtTypeElement, paramValues, db);
 
         parse(retval, sql, stmtTypeElement, db, joinOrder);
@@ -473,7 +497,7 @@ public abstract class AbstractParsedStmt {
         }
 
         // This is a TVE from the correlated expression
-        int paramIdx = NEXT_PARAMETER_ID++;
+        int paramIdx = nextParameterId();
         ParameterValueExpression pve = new ParameterValueExpression(paramIdx, expr);
         m_parameterTveMap.put(paramIdx, expr);
         return pve;
@@ -833,13 +857,13 @@ public abstract class AbstractParsedStmt {
     protected AbstractExpression replaceExpressionsWithPve(AbstractExpression expr) {
         assert(expr != null);
         if (expr instanceof TupleValueExpression) {
-            int paramIdx = NEXT_PARAMETER_ID++;
+            int paramIdx = nextParameterId();
             ParameterValueExpression pve = new ParameterValueExpression(paramIdx, expr);
             m_parameterTveMap.put(paramIdx, expr);
             return pve;
         }
         if (expr instanceof AggregateExpression) {
-            int paramIdx = NEXT_PARAMETER_ID++;
+            int paramIdx = nextParameterId();
             ParameterValueExpression pve = new ParameterValueExpression(paramIdx, expr);
             // Disallow aggregation of parent columns in a subquery.
             // except the case HAVING AGG(T1.C1) IN (SELECT T2.C2 ...)
@@ -1134,8 +1158,9 @@ public abstract class AbstractParsedStmt {
                 m_paramsByIndex.put(index, pve);
             }
         }
-        if (max_parameter_id >= NEXT_PARAMETER_ID) {
-            NEXT_PARAMETER_ID = (int)max_parameter_id + 1;
+        IdCounters counters = m_idCounters.get();
+        if (max_parameter_id >= counters.m_nextParameterId) {
+            counters.m_nextParameterId = (int)max_parameter_id + 1;
         }
     }
 
@@ -0,0 +1,339 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.planner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.voltdb.compiler.DatabaseEstimates;
+import org.voltdb.compiler.DatabaseEstimates.TableEstimates;
+import org.voltdb.expressions.AbstractExpression;
+import org.voltdb.expressions.ExpressionUtil;
+import org.voltdb.expressions.TupleValueExpression;
+import org.voltdb.planner.parseinfo.BranchNode;
+import org.voltdb.planner.parseinfo.JoinNode;
+import org.voltdb.planner.parseinfo.StmtTableScan;
+import org.voltdb.planner.parseinfo.StmtTargetTableScan;
+import org.voltdb.types.ExpressionType;
+import org.voltdb.types.JoinType;
+
+/**
+ * Picks a join order for statements joining too many tables to plan every
+ * permutation of them. Each inner join sub-tree is reordered into the left-deep
+ * order with the smallest sum of estimated intermediate result sizes, found by
+ * dynamic programming over the subsets of its tables. The best cost of joining
+ * each subset is memoized so every subset is costed once. Sub-trees with more
+ * tables than that is affordable for are ordered greedily instead, always
+ * joining the table that adds the least cost next. Outer join sub-trees keep
+ * the order they were written in.
+ *
+ * The estimates are deliberately cheap: the table sizes from the
+ * {@link DatabaseEstimates}, reduced by the same 0.1 per equality filter and
+ * sqrt(0.1) per other filter that IndexScanPlanNode credits indexed columns,
+ * and equi-joins assumed to match keys of the smaller table. The chosen order
+ * is then planned and costed in full like any other.
+ */
+public class JoinOrderEnumerator {
+
+    // Inner joins of up to this many tables are ordered by dynamic programming,
+    // which costs 2^N subsets, larger ones greedily
+    static final int MAX_DYNAMIC_PROGRAMMING_TABLES =
+            Math.min(Integer.getInteger("PLANNER_MAX_DP_JOIN_TABLES", 14), 20);
+    // Relation sets are bit masks
+    private static final int MAX_ORDERED_TABLES = Long.SIZE - 1;
+
+    private static final double EQUALITY_SELECTIVITY = 0.1;
+    private static final double RANGE_SELECTIVITY = Math.sqrt(0.1);
+
+    /**
+     * A filter referencing more than one of the relations being ordered.
+     */
+    private static class JoinPredicate {
+        // bit per relation the filter references
+        final long m_relations;
+        final double m_selectivity;
+        // an equality between two relations, joinable with an index or hash lookup
+        final boolean m_isEquiJoin;
+
+        JoinPredicate(long relations, double selectivity, boolean isEquiJoin) {
+            m_relations = relations;
+            m_selectivity = selectivity;
+            m_isEquiJoin = isEquiJoin;
+        }
+    }
+
+    private final DatabaseEstimates m_estimates;
+
+    // counters for the planner log, over every sub-tree ordered
+    private int m_tablesOrdered = 0;
+    private long m_subsetsCosted = 0;
+    private boolean m_usedGreedy = false;
+
+    // per sub-tree state
+    private double[] m_rows;
+    private List<JoinPredicate> m_predicates;
+
+    public JoinOrderEnumerator(DatabaseEstimates estimates) {
+        assert(estimates != null);
+        m_estimates = estimates;
+    }
+
+    /**
+     * Build a copy of the join tree with its inner joins reordered.
+     */
+    public JoinNode chooseJoinOrder(JoinNode joinTree) {
+        // Remember the tables under every branch, the outer join sub-trees
+        // are replaced by placeholders once the tree is split up
+        Map<Integer, List<StmtTableScan>> scansById = new HashMap<Integer, List<StmtTableScan>>();
+        for (JoinNode node : joinTree.generateAllNodesJoinOrder()) {
+            if (node instanceof BranchNode) {
+                List<StmtTableScan> scans = new ArrayList<StmtTableScan>();
+                for (JoinNode leaf : node.generateLeafNodesJoinOrder()) {
+                    scans.add(leaf.getTableScan());
+                }
+                scansById.put(node.getId(), scans);
+            }
+        }
+
+        JoinNode clonedTree = (JoinNode) joinTree.clone();
+        List<JoinNode> subTrees = clonedTree.extractSubTrees();
+        List<JoinNode> orderedSubTrees = new ArrayList<JoinNode>();
+        for (JoinNode subTree : subTrees) {
+            if (subTree instanceof BranchNode && ((BranchNode)subTree).getJoinType() == JoinType.INNER) {
+                List<JoinNode> tableNodes = orderInnerJoin(subTree, scansById);
+                orderedSubTrees.add(SelectSubPlanAssembler.reconstructInnerJoinTree(
+                        subTree.getId(), subTree.getAllFilters(), tableNodes));
+            }
+            else {
+                orderedSubTrees.add(subTree);
+            }
+        }
+        return JoinNode.reconstructJoinTreeFromSubTrees(orderedSubTrees);
+    }
+
+    /**
+     * Describe the work done, for the planner log.
+     */
+    public String getSummary() {
+        return String.format("%d tables ordered %s, %d subsets costed",
+                m_tablesOrdered, m_usedGreedy ? "greedily" : "by dynamic programming", m_subsetsCosted);
+    }
+
+    private List<JoinNode> orderInnerJoin(JoinNode subTree, Map<Integer, List<StmtTableScan>> scansById) {
+        List<JoinNode> leaves = subTree.generateLeafNodesJoinOrder();
+        final int relationCount = leaves.size();
+        if (relationCount > MAX_ORDERED_TABLES) {
+            return leaves;
+        }
+        m_tablesOrdered += relationCount;
+
+        // Size up every relation, a placeholder for an outer join sub-tree
+        // counts as its largest table
+        Map<String, Integer> relationByAlias = new HashMap<String, Integer>();
+        double[] baseRows = new double[relationCount];
+        for (int i = 0; i < relationCount; ++i) {
+            JoinNode leaf = leaves.get(i);
+            List<StmtTableScan> scans;
+            if (leaf.getTableScan() != null) {
+                scans = Collections.singletonList(leaf.getTableScan());
+            }
+            else {
+                scans = scansById.get(-leaf.getId());
+                assert(scans != null);
+            }
+            for (StmtTableScan scan : scans) {
+                relationByAlias.put(scan.getTableAlias(), i);
+                baseRows[i] = Math.max(baseRows[i], getTableRows(scan));
+            }
+        }
+
+        // Apply the filters of a single relation to its size, keep the others for joining
+        m_rows = baseRows.clone();
+        m_predicates = new ArrayList<JoinPredicate>();
+        for (AbstractExpression expr : ExpressionUtil.uncombineAny(subTree.getAllFilters())) {
+            long relations = 0;
+            for (TupleValueExpression tve : ExpressionUtil.getTupleValueExpressions(expr)) {
+                Integer relation = relationByAlias.get(tve.getTableAlias());
+                if (relation != null) {
+                    relations |= 1L << relation;
+                }
+            }
+            if (relations == 0) {
+                continue;
+            }
+            boolean isEquality = expr.getExpressionType() == ExpressionType.COMPARE_EQUAL;
+            if (Long.bitCount(relations) == 1) {
+                int relation = Long.numberOfTrailingZeros(relations);
+                m_rows[relation] = Math.max(1.0, m_rows[relation] *
+                        (isEquality ? EQUALITY_SELECTIVITY : RANGE_SELECTIVITY));
+            }
+            else if (isEquality && Long.bitCount(relations) == 2) {
+                // assume the values of the smaller table are keys the other one matches
+                int first = Long.numberOfTrailingZeros(relations);
+                int second = Long.SIZE - 1 - Long.numberOfLeadingZeros(relations);
+                double keys = Math.max(1.0, Math.min(baseRows[first], baseRows[second]));
+                m_predicates.add(new JoinPredicate(relations, 1.0 / keys, true));
+            }
+            else {
+                m_predicates.add(new JoinPredicate(relations,
+                        isEquality ? EQUALITY_SELECTIVITY : RANGE_SELECTIVITY, false));
+            }
+        }
+
+        List<Integer> order;
+        if (relationCount <= MAX_DYNAMIC_PROGRAMMING_TABLES) {
+            order = orderByDynamicProgramming(relationCount);
+        }
+        else {
+            m_usedGreedy = true;
+            order = orderGreedily(relationCount);
+        }
+
+        List<JoinNode> tableNodes = new ArrayList<JoinNode>();
+        for (int relation : order) {
+            tableNodes.add(leaves.get(relation));
+        }
+        return tableNodes;
+    }
+
+    private double getTableRows(StmtTableScan scan) {
+        if (scan instanceof StmtTargetTableScan) {
+            String tableName = ((StmtTargetTableScan)scan).getTargetTable().getTypeName();
+            return Math.max(1.0, m_estimates.getEstimatesForTable(tableName).maxTuples);
+        }
+        // the same guess SeqScanPlanNode makes for a subquery
+        return new TableEstimates().minTuples;
+    }
+
+    /**
+     * Combined selectivity of the join predicates that become applicable when
+     * the relation is joined to the given set of relations.
+     */
+    private double getJoinSelectivity(long joined, int relation) {
+        final long bit = 1L << relation;
+        final long all = joined | bit;
+        double selectivity = 1.0;
+        for (JoinPredicate predicate : m_predicates) {
+            if ((predicate.m_relations & bit) != 0 && (predicate.m_relations & ~all) == 0) {
+                selectivity *= predicate.m_selectivity;
+            }
+        }
+        return selectivity;
+    }
+
+    /**
+     * Cost of reading the relation to join it to the rows of the given set:
+     * once when an equality connects them, for each row otherwise.
+     */
+    private double getAccessCost(long joined, double joinedRows, int relation) {
+        final long bit = 1L << relation;
+        final long all = joined | bit;
+        for (JoinPredicate predicate : m_predicates) {
+            if (predicate.m_isEquiJoin &&
+                    (predicate.m_relations & bit) != 0 && (predicate.m_relations & ~all) == 0) {
+                return m_rows[relation];
+            }
+        }
+        return joinedRows * m_rows[relation];
+    }
+
+    private List<Integer> orderByDynamicProgramming(int relationCount) {
+        final int setCount = 1 << relationCount;
+        // the rows produced by joining each set, whatever the order
+        final double[] rows = new double[setCount];
+        // the lowest cost of joining each set, and the relation joined last to get it
+        final double[] cost = new double[setCount];
+        final int[] last = new int[setCount];
+
+        for (int set = 1; set < setCount; ++set) {
+            ++m_subsetsCosted;
+            if (Integer.bitCount(set) == 1) {
+                int relation = Integer.numberOfTrailingZeros(set);
+                rows[set] = m_rows[relation];
+                cost[set] = m_rows[relation];
+                last[set] = relation;
+                continue;
+            }
+            int lowest = Integer.numberOfTrailingZeros(set);
+            int rest = set & ~(1 << lowest);
+            rows[set] = Math.max(1.0, rows[rest] * m_rows[lowest] * getJoinSelectivity(rest, lowest));
+
+            cost[set] = Double.MAX_VALUE;
+            // on ties the relation written last is joined last, keeping the written order
+            for (int relation = relationCount - 1; relation >= 0; --relation) {
+                if ((set & (1 << relation)) == 0) {
+                    continue;
+                }
+                int joined = set & ~(1 << relation);
+                double candidate = cost[joined] + getAccessCost(joined, rows[joined], relation) + rows[set];
+                if (candidate < cost[set]) {
+                    cost[set] = candidate;
+                    last[set] = relation;
+                }
+            }
+        }
+
+        LinkedList<Integer> order = new LinkedList<Integer>();
+        for (int set = setCount - 1; set != 0; set &= ~(1 << last[set])) {
+            order.addFirst(last[set]);
+        }
+        return order;
+    }
+
+    private List<Integer> orderGreedily(int relationCount) {
+        List<Integer> order = new ArrayList<Integer>();
+        // start from the smallest relation
+        int first = 0;
+        for (int relation = 1; relation < relationCount; ++relation) {
+            if (m_rows[relation] < m_rows[first]) {
+                first = relation;
+            }
+        }
+        order.add(first);
+        long joined = 1L << first;
+        double joinedRows = m_rows[first];
+
+        while (order.size() < relationCount) {
+            int best = -1;
+            double bestCost = Double.MAX_VALUE;
+            double bestRows = 0;
+            for (int relation = 0; relation < relationCount; ++relation) {
+                if ((joined & (1L << relation)) != 0) {
+                    continue;
+                }
+                ++m_subsetsCosted;
+                double rows = Math.max(1.0, joinedRows * m_rows[relation] * getJoinSelectivity(joined, relation));
+                double candidate = getAccessCost(joined, joinedRows, relation) + rows;
+                if (candidate < bestCost) {
+                    best = relation;
+                    bestCost = candidate;
+                    bestRows = rows;
+                }
+            }
+            order.add(best);
+            joined |= 1L << best;
+            joinedRows = bestRows;
+        }
+        return order;
+    }
+
+}
@@ -1257,6 +1257,14 @@ public class ParsedSelectStmt extends AbstractParsedStmt {
         return m_joinOrder != null || m_hasLargeNumberOfTableJoins;
     }
 
+    /**
+     * True when no join order was given and there are too many tables to try
+     * every permutation, getJoinOrder then holds the FROM clause order.
+     */
+    public boolean hasLargeNumberOfTableJoins() {
+        return m_hasLargeNumberOfTableJoins;
+    }
+
     public ArrayList<JoinNode> getJoinOrder() {
         return m_joinOrderList;
     }
@@ -20,10 +20,12 @@ package org.voltdb.planner;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.hsqldb_voltpatches.HSQLInterface;
 import org.hsqldb_voltpatches.HSQLInterface.HSQLParseException;
 import org.hsqldb_voltpatches.VoltXMLElement;
+import org.voltcore.logging.VoltLogger;
 import org.voltdb.ParameterSet;
 import org.voltdb.VoltType;
 import org.voltdb.catalog.Cluster;
@@ -73,11 +75,18 @@ public class QueryPlanner {
 
     // generated by plan(...)
     boolean m_hasExceptionWhenParameterized = false;
+    long m_planningTimeNanos = 0;
+    String m_joinOrderSummary = null;
 
     static boolean m_debuggingStaticModeToRetryOnError = true;
 
     public static String UPSERT_TAG = "isUpsert";
 
+    private static final VoltLogger compileLog = new VoltLogger("COMPILE");
+
+    // Statements taking longer than this to plan are logged at info level, the others at debug
+    static final long SLOW_PLANNING_THRESHOLD_MS = Long.getLong("PLANNER_SLOW_PLANNING_MS", 1000);
+
     /**
      * Initialize planner with physical schema info and a reference to HSQLDB parser.
      *
@@ -243,6 +252,48 @@ public class QueryPlanner {
      * @throws PlanningErrorException on failure.
      */
     public CompiledPlan plan() throws PlanningErrorException {
+        final long startNanos = System.nanoTime();
+        try {
+            return planStatement();
+        }
+        finally {
+            m_planningTimeNanos = System.nanoTime() - startNanos;
+            logPlanningTime();
+        }
+    }
+
+    private void logPlanningTime() {
+        final long millis = TimeUnit.NANOSECONDS.toMillis(m_planningTimeNanos);
+        final boolean slow = millis >= SLOW_PLANNING_THRESHOLD_MS;
+        if ( ! slow && ! compileLog.isDebugEnabled()) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append("Planning ");
+        if (m_procName != null && m_stmtName != null) {
+            sb.append(m_procName).append('.').append(m_stmtName).append(' ');
+        }
+        sb.append("took ").append(millis).append(" ms");
+        if (m_joinOrderSummary != null) {
+            sb.append(" (").append(m_joinOrderSummary).append(')');
+        }
+        sb.append(": ").append(getOriginalSql());
+        if (slow) {
+            compileLog.info(sb.toString());
+        }
+        else {
+            compileLog.debug(sb.toString());
+        }
+    }
+
+    /**
+     * @return How long the last call to plan() took, in nanoseconds.
+     */
+    public long getPlanningTimeNanos() {
+        return m_planningTimeNanos;
+    }
+
+    private CompiledPlan planStatement() throws PlanningErrorException {
         // reset any error message
         m_recentErrorMsg = null;
 
@@ -362,6 +413,7 @@ public class QueryPlanner {
                 (PlanSelector) m_planSelector.clone());
         // find the plan with minimal cost
         CompiledPlan bestPlan = assembler.getBestCostPlan(parsedStmt);
+        m_joinOrderSummary = assembler.getJoinOrderSummary();
 
         // This processing of bestPlan outside/after getBestCostPlan
         // allows getBestCostPlan to be called both here and
@@ -25,21 +25,30 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import org.voltdb.catalog.Cluster;
 import org.voltdb.catalog.Database;
+import org.voltdb.catalog.Deployment;
+import org.voltdb.catalog.Systemsettings;
+import org.voltdb.compiler.DatabaseEstimates;
+import org.voltdb.compiler.DatabaseEstimates.TableEstimates;
 import org.voltdb.expressions.AbstractExpression;
+import org.voltdb.expressions.AbstractSubqueryExpression;
 import org.voltdb.expressions.ExpressionUtil;
 import org.voltdb.expressions.TupleValueExpression;
 import org.voltdb.planner.parseinfo.BranchNode;
 import org.voltdb.planner.parseinfo.JoinNode;
 import org.voltdb.planner.parseinfo.StmtSubqueryScan;
 import org.voltdb.planner.parseinfo.StmtTableScan;
+import org.voltdb.planner.parseinfo.StmtTargetTableScan;
 import org.voltdb.planner.parseinfo.SubqueryLeafNode;
 import org.voltdb.plannodes.AbstractJoinPlanNode;
 import org.voltdb.plannodes.AbstractPlanNode;
 import org.voltdb.plannodes.AbstractReceivePlanNode;
+import org.voltdb.plannodes.HashJoinPlanNode;
 import org.voltdb.plannodes.IndexScanPlanNode;
 import org.voltdb.plannodes.NestLoopIndexPlanNode;
 import org.voltdb.plannodes.NestLoopPlanNode;
+import org.voltdb.types.ExpressionType;
 import org.voltdb.types.JoinType;
 import org.voltdb.utils.PermutationGenerator;
 
@@ -60,17 +69,47 @@ public class SelectSubPlanAssembler extends SubPlanAssembler {
     /** The list of all possible join orders, assembled by queueAllJoinOrders */
     private ArrayDeque<JoinNode> m_joinOrders = new ArrayDeque<JoinNode>();
 
+    /** How the join order was picked when there were too many tables to permute, or null */
+    private String m_joinOrderSummary = null;
+
+    /** Table sizes to cost the join choices with */
+    private final DatabaseEstimates m_estimates;
+
+    /** Hash joins are planned only with PLANNER_HASH_JOIN=true, read as each join is planned */
+    static final String HASH_JOIN_PROPERTY = "PLANNER_HASH_JOIN";
+
+    // Cost of hashing an inner row relative to reading it in a scan
+    static final double HASH_BUILD_COST = 2.0;
+    // Rough bytes the EE spends on each hashed inner row: key tuple, strings and table entry
+    static final long HASH_ENTRY_BYTES = 128;
+    // Temp table memory limit when the catalog has no deployment, the EE's default
+    private static final long DEFAULT_TEMP_TABLE_MEMORY = 100L * 1024 * 1024;
+
     /**
      *
      * @param db The catalog's Database object.
      * @param selectStmt The parsed and dissected statement object describing the sql to execute.
      * @param partitioning in/out param first element is partition key value, forcing a single-partition statement if non-null,
      * second may be an inferred partition key if no explicit single-partitioning was specified
+     * @param estimates table sizes to order joins of too many tables to permute by
      */
-    SelectSubPlanAssembler(Database db, ParsedSelectStmt selectStmt, StatementPartitioning partitioning)
+    SelectSubPlanAssembler(Database db, ParsedSelectStmt selectStmt, StatementPartitioning partitioning,
+            DatabaseEstimates estimates)
     {
         super(db, selectStmt, partitioning);
+        m_estimates = estimates;
         if (selectStmt.hasJoinOrder()) {
+            if (selectStmt.hasLargeNumberOfTableJoins()) {
+                // Too many tables to try every permutation. Lead with the order the
+                // enumerator estimates to be cheapest, the FROM clause order follows.
+                JoinOrderEnumerator enumerator = new JoinOrderEnumerator(estimates);
+                JoinNode chosen = enumerator.chooseJoinOrder(m_parsedStmt.m_joinTree);
+                m_joinOrderSummary = enumerator.getSummary();
+                if ( ! chosen.generateTableJoinOrder().equals(
+                        selectStmt.getJoinOrder().get(0).generateTableJoinOrder())) {
+                    m_joinOrders.add(chosen);
+                }
+            }
             // If a join order was provided or large number of tables join
             m_joinOrders.addAll(selectStmt.getJoinOrder());
         } else {
@@ -79,6 +118,10 @@ public class SelectSubPlanAssembler extends SubPlanAssembler {
         }
     }
 
+    String getJoinOrderSummary() {
+        return m_joinOrderSummary;
+    }
+
     /**
      * Compute every permutation of the list of involved tables and put them in a deque.
      * TODO(XIN): takes at least 3.3% cpu of planner. Optimize it when possible.
@@ -151,25 +194,34 @@ public class SelectSubPlanAssembler extends SubPlanAssembler {
             // the original tables. Get a list of the leaf nodes(tables) to permute them
             List<JoinNode> tableNodes = subTree.generateLeafNodesJoinOrder();
             List<List<JoinNode>> joinOrders = PermutationGenerator.generatePurmutations(tableNodes);
-            List<JoinNode> newTrees = new ArrayList<JoinNode>();
-            for (List<JoinNode> joinOrder: joinOrders) {
-                newTrees.add(JoinNode.reconstructJoinTreeFromTableNodes(joinOrder));
-            }
             //Collect all the join/where conditions to reassign them later
             AbstractExpression combinedWhereExpr = subTree.getAllFilters();
-            for (JoinNode newTree : newTrees) {
-                if (combinedWhereExpr != null) {
-                    newTree.setWhereExpression((AbstractExpression)combinedWhereExpr.clone());
-                }
-                // The new tree root node id must match the original one to be able to reconnect the
-                // subtrees
-                newTree.setId(subTree.getId());
-                treePermutations.add(newTree);
+            for (List<JoinNode> joinOrder: joinOrders) {
+                treePermutations.add(reconstructInnerJoinTree(subTree.getId(), combinedWhereExpr, joinOrder));
             }
         }
         return treePermutations;
     }
 
+    /**
+     * Rebuild an inner join sub-tree joining its tables in the given order.
+     *
+     * @param subTreeId the id of the sub-tree root
+     * @param combinedWhereExpr all the join and where conditions of the sub-tree, or null
+     * @param tableNodes the tables of the sub-tree in join order
+     */
+    static JoinNode reconstructInnerJoinTree(int subTreeId, AbstractExpression combinedWhereExpr,
+            List<JoinNode> tableNodes) {
+        JoinNode newTree = JoinNode.reconstructJoinTreeFromTableNodes(tableNodes);
+        if (combinedWhereExpr != null) {
+            newTree.setWhereExpression((AbstractExpression)combinedWhereExpr.clone());
+        }
+        // The new tree root node id must match the original one to be able to reconnect the
+        // subtrees
+        newTree.setId(subTreeId);
+        return newTree;
+    }
+
     /**
      * Pull a join order out of the join orders deque, compute all possible plans
      * for that join order, then append them to the computed plans deque.
@@ -573,7 +625,7 @@ public class SelectSubPlanAssembler extends SubPlanAssembler {
 
         AbstractJoinPlanNode ajNode = null;
         if (canHaveNLJ) {
-            NestLoopPlanNode nljNode = new NestLoopPlanNode();
+            AbstractJoinPlanNode nljNode = null;
             // get all the clauses that join the applicable two tables
             ArrayList<AbstractExpression> joinClauses = innerAccessPath.joinExprs;
             if (innerPlan instanceof IndexScanPlanNode) {
@@ -598,6 +650,21 @@ public class SelectSubPlanAssembler extends SubPlanAssembler {
                 // the inner node ONLY, that can not be pushed down.
                 joinClauses.addAll(innerAccessPath.otherExprs);
             }
+            // With no index on the inner side to drive the join, equalities between
+            // the outer and the inner rows can be answered from a hash table
+            // of the inner rows instead of rescanning them for every outer row,
+            // when the outer side has enough rows to pay for building it.
+            if (Boolean.getBoolean(HASH_JOIN_PROPERTY) && ! (innerPlan instanceof IndexScanPlanNode) &&
+                    isHashJoinCheaper(getEstimatedRows(joinNode.getLeftNode()),
+                                      getEstimatedRows(innerJoinNode),
+                                      getTempTableMemoryLimit())) {
+                nljNode = getHashJoinNode(joinNode.getLeftNode().generateTableJoinOrder(),
+                                          innerJoinNode.generateTableJoinOrder(),
+                                          joinClauses);
+            }
+            if (nljNode == null) {
+                nljNode = new NestLoopPlanNode();
+            }
             nljNode.setJoinPredicate(ExpressionUtil.combine(joinClauses));
 
             // combine the tails plan graph with the new head node
@@ -644,6 +711,142 @@ public class SelectSubPlanAssembler extends SubPlanAssembler {
         return ajNode;
     }
 
+    /**
+     * Build a hash join node keyed on the equalities in the join clauses that
+     * compare an expression of outer columns to an expression of inner columns
+     * of the same type. The clauses are left as they are, they still make up
+     * the join predicate of the node.
+     *
+     * @param outerTableAliases The tables of the outer side of the join.
+     * @param innerTableAliases The tables of the inner side of the join.
+     * @param joinClauses The clauses joining the outer and the inner side.
+     * @return A HashJoinPlanNode without children or predicates,
+     * or null if none of the join clauses can be used as a hash key.
+     */
+    private static HashJoinPlanNode getHashJoinNode(Collection<String> outerTableAliases,
+                                                    Collection<String> innerTableAliases,
+                                                    List<AbstractExpression> joinClauses)
+    {
+        HashJoinPlanNode hjNode = null;
+        for (AbstractExpression expr : joinClauses) {
+            if (expr.getExpressionType() != ExpressionType.COMPARE_EQUAL) {
+                continue;
+            }
+            AbstractExpression left = expr.getLeft();
+            AbstractExpression right = expr.getRight();
+            if (left.getValueType() != right.getValueType() || ! isHashableKey(left)) {
+                continue;
+            }
+            AbstractExpression outerExpr;
+            AbstractExpression innerExpr;
+            if (referencesOnlyTables(left, outerTableAliases) &&
+                    referencesOnlyTables(right, innerTableAliases)) {
+                outerExpr = left;
+                innerExpr = right;
+            }
+            else if (referencesOnlyTables(left, innerTableAliases) &&
+                    referencesOnlyTables(right, outerTableAliases)) {
+                outerExpr = right;
+                innerExpr = left;
+            }
+            else {
+                continue;
+            }
+            if (hjNode == null) {
+                hjNode = new HashJoinPlanNode();
+            }
+            hjNode.addHashExpressions(outerExpr, innerExpr);
+        }
+        return hjNode;
+    }
+
+    /**
+     * Compare the cost of a nested loop join, which reads the inner rows once
+     * per outer row, to that of a hash join, which hashes the inner rows and
+     * reads the outer rows once for every part of the inner rows the EE can
+     * hash in a quarter of its temp table memory.
+     *
+     * @param outerRows estimated rows of the outer side
+     * @param innerRows estimated rows of the inner side
+     * @param memoryLimit temp table memory limit in bytes, 0 or less for none
+     * @return true if the hash join is estimated to read fewer rows
+     */
+    static boolean isHashJoinCheaper(double outerRows, double innerRows, long memoryLimit) {
+        double passes = 1.0;
+        if (memoryLimit > 0) {
+            passes = Math.max(1.0, Math.ceil(innerRows * HASH_ENTRY_BYTES / (memoryLimit / 4.0)));
+        }
+        final double nestLoopCost = outerRows * innerRows;
+        final double hashJoinCost = innerRows * HASH_BUILD_COST + outerRows * passes;
+        return hashJoinCost < nestLoopCost;
+    }
+
+    /**
+     * Estimated rows of a join tree: the size of a table, and for a join the
+     * larger of its sides, as if the equi-join matched keys of the smaller one.
+     */
+    private double getEstimatedRows(JoinNode joinNode) {
+        if (joinNode instanceof BranchNode) {
+            return Math.max(getEstimatedRows(((BranchNode)joinNode).getLeftNode()),
+                            getEstimatedRows(((BranchNode)joinNode).getRightNode()));
+        }
+        StmtTableScan scan = joinNode.getTableScan();
+        if (scan instanceof StmtTargetTableScan) {
+            String tableName = ((StmtTargetTableScan)scan).getTargetTable().getTypeName();
+            return Math.max(1.0, m_estimates.getEstimatesForTable(tableName).maxTuples);
+        }
+        // the same guess SeqScanPlanNode makes for a subquery
+        return new TableEstimates().minTuples;
+    }
+
+    private long getTempTableMemoryLimit() {
+        Deployment deployment = ((Cluster) m_db.getParent()).getDeployment().get("deployment");
+        if (deployment == null) {
+            return DEFAULT_TEMP_TABLE_MEMORY;
+        }
+        Systemsettings settings = deployment.getSystemsettings().get("systemsettings");
+        if (settings == null || settings.getTemptablemaxsize() <= 0) {
+            return DEFAULT_TEMP_TABLE_MEMORY;
+        }
+        return settings.getTemptablemaxsize() * 1024L * 1024L;
+    }
+
+    private static boolean isHashableKey(AbstractExpression expr) {
+        if (expr.getValueType() == null) {
+            return false;
+        }
+        switch (expr.getValueType()) {
+        case TINYINT:
+        case SMALLINT:
+        case INTEGER:
+        case BIGINT:
+        case DECIMAL:
+        case TIMESTAMP:
+        case STRING:
+        case VARBINARY:
+            return ! expr.hasAnySubexpressionOfClass(AbstractSubqueryExpression.class);
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * @return true if the expression references at least one column
+     * and all its columns belong to the given tables.
+     */
+    private static boolean referencesOnlyTables(AbstractExpression expr, Collection<String> tableAliases) {
+        List<TupleValueExpression> tves = ExpressionUtil.getTupleValueExpressions(expr);
+        if (tves.isEmpty()) {
+            return false;
+        }
+        for (TupleValueExpression tve : tves) {
+            if ( ! tableAliases.contains(tve.getTableAlias())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * A method to filter out single-TVE expressions.
      *
@@ -74,7 +74,13 @@ public class InlineAggregation extends MicroOptimization {
         if (child.getPlanNodeType() != PlanNodeType.SEQSCAN &&
             child.getPlanNodeType() != PlanNodeType.INDEXSCAN &&
             child.getPlanNodeType() != PlanNodeType.NESTLOOP &&
-            child.getPlanNodeType() != PlanNodeType.NESTLOOPINDEX) {
+            child.getPlanNodeType() != PlanNodeType.NESTLOOPINDEX &&
+            child.getPlanNodeType() != PlanNodeType.HASHJOIN) {
+            return plan;
+        }
+
+        // The scan's inline ORDER BY would have to feed the aggregate
+        if (child.getInlinePlanNode(PlanNodeType.ORDERBY) != null) {
             return plan;
         }
 
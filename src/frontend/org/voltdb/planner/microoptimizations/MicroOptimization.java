@@ -41,7 +41,7 @@ public abstract class MicroOptimization {
             plan.rootPlanGraph = planGraph;
         }
         finally {
-            // Avoid leaking a long-term reference from static optimizations
+            // Avoid leaking a long-term reference from the optimization
             // to a large parsed statement structure.
             m_parsedStmt = null;
         }
@@ -24,10 +24,16 @@ import org.voltdb.plannodes.AbstractPlanNode;
 import org.voltdb.plannodes.AbstractScanPlanNode;
 import org.voltdb.plannodes.AggregatePlanNode;
 import org.voltdb.plannodes.LimitPlanNode;
+import org.voltdb.plannodes.OrderByPlanNode;
 import org.voltdb.plannodes.ProjectionPlanNode;
+import org.voltdb.plannodes.SeqScanPlanNode;
+import org.voltdb.types.PlanNodeType;
 
 public class PushdownLimits extends MicroOptimization {
 
+    /** ORDER BY ... LIMIT is inlined into scans only with PLANNER_ORDER_BY_INTO_SCAN=true */
+    static final String ORDER_BY_INTO_SCAN_PROPERTY = "PLANNER_ORDER_BY_INTO_SCAN";
+
     @Override
     protected AbstractPlanNode recursivelyApply(AbstractPlanNode plan)
     {
@@ -38,6 +44,8 @@ public class PushdownLimits extends MicroOptimization {
         //     where that child is an AbstractScanPlanNode
         //     disconnect the LimitPlanNode
         //     and inline the LimitPlanNode in to the AbstractScanPlanNode
+        //     likewise inline OrderByPlanNodes with an inline limit
+        //     in to a SeqScanPlanNode child
 
         ArrayList<AbstractPlanNode> children = new ArrayList<AbstractPlanNode>();
         for (int i = 0; i < plan.getChildCount(); i++)
@@ -51,6 +59,10 @@ public class PushdownLimits extends MicroOptimization {
             plan.addAndLinkChild(child);
         }
 
+        if (plan instanceof OrderByPlanNode && Boolean.getBoolean(ORDER_BY_INTO_SCAN_PROPERTY)) {
+            return pushOrderByIntoScan((OrderByPlanNode)plan);
+        }
+
         if ( ! (plan instanceof LimitPlanNode)) {
             return plan;
         }
@@ -70,6 +82,10 @@ public class PushdownLimits extends MicroOptimization {
             if (AggregatePlanNode.getInlineAggregationNode(child) != null) {
                 return plan;
             }
+            // nor an inline ORDER BY, whose top tuples are only known after the scan
+            if (child.getInlinePlanNode(PlanNodeType.ORDERBY) != null) {
+                return plan;
+            }
 
             plan.clearChildren();
             child.clearParents();
@@ -118,4 +134,34 @@ public class PushdownLimits extends MicroOptimization {
 
     }
 
+    /**
+     * An ORDER BY with an inline LIMIT over a sequential scan only needs to
+     * see each qualifying tuple once and keep the first LIMIT + OFFSET of them.
+     * Inline it, with its LIMIT, into the scan so the EE sorts the tuples as
+     * they are scanned instead of materializing the whole scan output first.
+     */
+    private static AbstractPlanNode pushOrderByIntoScan(OrderByPlanNode orderBy) {
+        if (orderBy.getInlinePlanNode(PlanNodeType.LIMIT) == null) {
+            return orderBy;
+        }
+        if (orderBy.getChildCount() != 1) {
+            return orderBy;
+        }
+        AbstractPlanNode child = orderBy.getChild(0);
+        // Only sequential scans. An index scan gets an inline ORDER BY only
+        // when ScanDeterminizer later replaces such a sequential scan.
+        if ( ! (child instanceof SeqScanPlanNode)) {
+            return orderBy;
+        }
+        if (AggregatePlanNode.getInlineAggregationNode(child) != null ||
+                child.getInlinePlanNode(PlanNodeType.LIMIT) != null) {
+            return orderBy;
+        }
+
+        orderBy.clearChildren();
+        child.clearParents();
+        child.addInlinePlanNode(orderBy);
+        return child;
+    }
+
 }
@@ -42,6 +42,8 @@ import org.voltdb.types.JoinType;
 public abstract class JoinNode implements Cloneable {
     // Node id. Must be unique within a given tree
     protected int m_id;
+    // Id of an intermediate node of a rebuilt tree that no parsed node has
+    private static final int INTERMEDIATE_NODE_ID = -Integer.MAX_VALUE;
     // Join expression associated with this node
     protected AbstractExpression m_joinExpr = null;
     // Additional filter expression (WHERE) associated with this node
@@ -325,9 +327,11 @@ public abstract class JoinNode implements Cloneable {
                 root = node;
             } else {
                 // We only care about the root node id to be able to reconnect the sub-trees
-                // The intermediate node id can be anything. For the final root node its id
-                // will be set later to the original tree's root id
-                root = new BranchNode(-node.m_id, JoinType.INNER, root, node);
+                // The intermediate node id can be anything but the id of a sub-tree root,
+                // which the node taking the place of that sub-tree carries negated.
+                // For the final root node its id will be set later to the original tree's root id
+                int id = (node.m_id < 0) ? INTERMEDIATE_NODE_ID : -node.m_id;
+                root = new BranchNode(id, JoinType.INNER, root, node);
             }
         }
         return root;
@@ -399,6 +399,20 @@ public abstract class AbstractScanPlanNode extends AbstractPlanNode {
             limit.m_outputSchema = m_outputSchema.clone();
             limit.m_hasSignificantOutputSchema = false; // It's just another cheap knock-off
         }
+        // An inline ORDER BY sorts the scan output, it and its inline limit
+        // have the same schema as the scan.
+        OrderByPlanNode orderBy = (OrderByPlanNode)getInlinePlanNode(PlanNodeType.ORDERBY);
+        if (orderBy != null)
+        {
+            orderBy.resolveSortIndexesUsingSchema(m_outputSchema);
+            orderBy.m_outputSchema = m_outputSchema.clone();
+            orderBy.m_hasSignificantOutputSchema = false;
+            AbstractPlanNode orderByLimit = orderBy.getInlinePlanNode(PlanNodeType.LIMIT);
+            if (orderByLimit != null) {
+                orderByLimit.m_outputSchema = m_outputSchema.clone();
+                orderByLimit.m_hasSignificantOutputSchema = false;
+            }
+        }
         // Resolve subquery expression indexes
         Collection<AbstractExpression> exprs = findAllExpressionsOfClass(AbstractSubqueryExpression.class);
         for (AbstractExpression expr: exprs) {
@@ -333,6 +333,12 @@ public class IndexScanPlanNode extends AbstractScanPlanNode {
         if (agg != null && agg.getPlanNodeType() == PlanNodeType.HASHAGGREGATE) {
             return false;
         }
+        // An inline ORDER BY decides the order instead of the index
+        OrderByPlanNode orderBy = (OrderByPlanNode)getInlinePlanNode(PlanNodeType.ORDERBY);
+        if (orderBy != null) {
+            return orderBy.getSortExpressions().equals(sortExpressions) &&
+                    orderBy.getSortDirections().equals(sortDirections);
+        }
 
         // Verify that all sortDirections match
         for(SortDirectionType sortDirection : sortDirections) {
@@ -601,7 +607,17 @@ public class IndexScanPlanNode extends AbstractScanPlanNode {
             // Using a factor of 0.1 per FULLY covered (equality-filtered) column,
             // the effective scale factor for a single PARTIALLY covered (range-filtered) column
             // comes to SQRT(0.1) which is just under 32% FTW!
-            tuplesToRead += (int) (tableEstimates.maxTuples * 0.90 * Math.pow(0.10, keyWidth));
+            //
+            // When the sites have reported how many distinct keys the index holds, use the
+            // selectivity that implies instead, spread evenly over the indexed columns, so
+            // a skewed index with few distinct keys loses to a more selective one.
+            double columnSelectivity = 0.10;
+            DatabaseEstimates.IndexEstimates indexEstimates =
+                    tableEstimates.getEstimatesForIndex(m_catalogIndex.getTypeName());
+            if (indexEstimates != null && indexEstimates.distinctKeys > 0) {
+                columnSelectivity = Math.pow(indexEstimates.distinctKeys, -1.0 / colCount);
+            }
+            tuplesToRead += (int) (tableEstimates.maxTuples * 0.90 * Math.pow(columnSelectivity, keyWidth));
 
             // With all this discounting, make sure that any non-"covering unique" index scan costs more
             // than any "covering unique" one, no matter how many indexed column filters get piled on.
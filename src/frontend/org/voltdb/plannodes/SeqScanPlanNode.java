@@ -70,7 +70,13 @@ public class SeqScanPlanNode extends AbstractScanPlanNode {
 
     @Override
     public boolean isOutputOrdered (List<AbstractExpression> sortExpressions, List<SortDirectionType> sortDirections) {
-        return false;
+        // Only an inline ORDER BY sorts the scan output
+        OrderByPlanNode orderBy = (OrderByPlanNode)getInlinePlanNode(PlanNodeType.ORDERBY);
+        if (orderBy == null) {
+            return false;
+        }
+        return orderBy.getSortExpressions().equals(sortExpressions) &&
+                orderBy.getSortDirections().equals(sortDirections);
     }
 
     private static final TableEstimates SUBQUERY_TABLE_ESTIMATES_HACK = new TableEstimates();
@@ -83,6 +89,7 @@ public class SeqScanPlanNode extends AbstractScanPlanNode {
             // all parent plans have the same best cost plan for the sub-query
             m_estimatedProcessedTupleCount = SUBQUERY_TABLE_ESTIMATES_HACK.minTuples;
             m_estimatedOutputTupleCount = SUBQUERY_TABLE_ESTIMATES_HACK.minTuples;
+            addInlineOrderByCost();
             return;
         }
         Table target = ((StmtTargetTableScan)m_tableScan).getTargetTable();
@@ -101,6 +108,15 @@ public class SeqScanPlanNode extends AbstractScanPlanNode {
         // here to make sure that SeqScanPlanNode never gains an unfair advantage over IndexScanPlanNode.
         m_estimatedProcessedTupleCount = tableEstimates.maxTuples;
         m_estimatedOutputTupleCount = tableEstimates.maxTuples;
+        addInlineOrderByCost();
+    }
+
+    // An inline ORDER BY processes every tuple of the scan output,
+    // costed as if it was still a separate ORDER BY node.
+    private void addInlineOrderByCost() {
+        if (getInlinePlanNode(PlanNodeType.ORDERBY) != null) {
+            m_estimatedProcessedTupleCount += m_estimatedOutputTupleCount;
+        }
     }
 
     @Override
@@ -19,6 +19,7 @@ package org.voltdb.rejoin;
 
 import org.voltcore.messaging.VoltMessage;
 import org.voltdb.exceptions.SerializableException;
+import org.voltdb.utils.CompressionCodec;
 
 /**
  * Base class for reading and writing snapshot streams over the network.
@@ -30,7 +31,7 @@ public abstract class StreamSnapshotBase {
     public static final int contentOffset = tableIdOffset + 4;
 
     public static interface MessageFactory {
-        public VoltMessage makeDataMessage(long targetId, byte[] data);
+        public VoltMessage makeDataMessage(long targetId, CompressionCodec codec, byte[] data);
 
         public boolean isAckEOS(VoltMessage msg);
         public long getAckTargetId(VoltMessage msg);
@@ -40,9 +41,9 @@ public abstract class StreamSnapshotBase {
 
     public static class DefaultMessageFactory implements MessageFactory {
         @Override
-        public VoltMessage makeDataMessage(long targetId, byte[] data)
+        public VoltMessage makeDataMessage(long targetId, CompressionCodec codec, byte[] data)
         {
-            return new RejoinDataMessage(targetId, data);
+            return new RejoinDataMessage(targetId, codec, data);
         }
 
         @Override
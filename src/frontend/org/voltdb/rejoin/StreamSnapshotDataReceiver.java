@@ -28,7 +28,6 @@ import org.voltcore.messaging.VoltMessage;
 import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltcore.utils.Pair;
 import org.voltdb.SnapshotSiteProcessor;
-import org.voltdb.utils.CompressionService;
 import org.voltdb.utils.FixedDBBPool;
 
 /**
@@ -122,7 +121,7 @@ implements Runnable {
                     compressionBuffer.put(data);
                     compressionBuffer.flip();
                     int uncompressedSize =
-                            CompressionService.decompressBuffer(
+                            dataMsg.getCodec().decompress(
                                     compressionBuffer,
                                     messageBuffer);
                     messageBuffer.limit(uncompressedSize);
@@ -19,12 +19,17 @@ package org.voltdb.rejoin;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.TreeMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -40,6 +45,7 @@ import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltdb.SnapshotDataTarget;
 import org.voltdb.SnapshotFormat;
 import org.voltdb.VoltDB;
+import org.voltdb.utils.CompressionCodec;
 import org.voltdb.utils.CompressionService;
 
 import com.google_voltpatches.common.base.Preconditions;
@@ -65,6 +71,15 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
     public final static long DEFAULT_WRITE_TIMEOUT_MS = m_rejoinDeathTestMode ? 10000 : Long.getLong("REJOIN_WRITE_TIMEOUT_MS", 60000);
     final static long WATCHDOG_PERIOS_S = 5;
 
+    // codec used to compress the blocks sent to the rejoining node
+    public final static CompressionCodec REJOIN_CODEC =
+            CompressionCodec.fromString(System.getProperty("REJOIN_COMPRESSION", "SNAPPY"));
+    // number of threads compressing blocks ahead of the sender thread
+    final static int COMPRESSION_THREADS = Math.max(1, Integer.getInteger("REJOIN_COMPRESSION_THREADS",
+            Math.min(4, CoreUtils.availableProcessors() / 2)));
+    // compressed bytes that may be sent but not yet acked, summed over all targets of a sender
+    final static long WINDOW_BYTES = Long.getLong("REJOIN_WINDOW_BYTES", 64L * 1024 * 1024);
+
     // schemas for all the tables on this partition
     private final Map<Integer, byte[]> m_schemas = new HashMap<Integer, byte[]>();
     // HSId of the destination mailbox
@@ -83,8 +98,11 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
 
     // number of sent, but un-acked buffers
     final AtomicInteger m_outstandingWorkCount = new AtomicInteger(0);
-    // map of sent, but un-acked buffers, packaged up a bit
-    private final TreeMap<Integer, SendWork> m_outstandingWork = new TreeMap<Integer, SendWork>();
+    // map of sent, but un-acked buffers, packaged up a bit. Concurrent so acks don't
+    // contend with the site thread producing blocks.
+    private final ConcurrentSkipListMap<Integer, SendWork> m_outstandingWork =
+            new ConcurrentSkipListMap<Integer, SendWork>();
+    private final long m_startTime = System.currentTimeMillis();
 
     int m_blockIndex = 0;
     private final AtomicReference<Runnable> m_onCloseHandler = new AtomicReference<Runnable>(null);
@@ -137,6 +155,13 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
         // A listenable future used to notify a listener when this buffer is discarded
         final SettableFuture<Boolean> m_future;
 
+        // Compressed form of the message, produced by the sender's compression pool
+        Future<byte[]> m_compressed;
+        int m_rawBytes;
+        // Sender to return the window bytes to when the sent block is discarded
+        private SnapshotSender m_windowOwner;
+        private int m_windowBytes;
+
         /**
          * Creates an empty send work to terminate the sender thread
          */
@@ -169,48 +194,67 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
                 m_message.discard();
                 m_message = null;
             }
+            if (m_windowOwner != null) {
+                m_windowOwner.releaseWindow(m_windowBytes);
+                m_windowOwner = null;
+            }
         }
 
         /**
-         * Compress the data in the BBContainer provided, then package it up in
-         * a RejoinDataMessage instance, and finally hand it off to the messaging
-         * subsystem.
+         * Compress the data in the BBContainer, called on a compression thread.
+         * Synchronized so the buffer can't be discarded while it is being read.
+         * @return the compressed block, or null if the work was already discarded
          */
-        protected int send(Mailbox mb, MessageFactory msgFactory, BBContainer message) throws IOException {
-            final ByteBuffer messageBuffer = message.b();
-            if (messageBuffer.isDirect()) {
-                byte[] data = CompressionService.compressBuffer(messageBuffer);
-                mb.send(m_destHSId, msgFactory.makeDataMessage(m_targetId, data));
-
-                if (rejoinLog.isTraceEnabled()) {
-                    rejoinLog.trace("Sending direct buffer");
-                }
-
-                return data.length;
-            } else {
-                byte compressedBytes[] =
-                    CompressionService.compressBytes(
+        synchronized byte[] compress(CompressionCodec codec) throws IOException {
+            if (m_message == null) {
+                return null;
+            }
+            final ByteBuffer messageBuffer = m_message.b();
+            m_rawBytes = messageBuffer.remaining();
+            if (codec == CompressionCodec.SNAPPY) {
+                if (messageBuffer.isDirect()) {
+                    return CompressionService.compressBuffer(messageBuffer);
+                } else {
+                    return CompressionService.compressBytes(
                             messageBuffer.array(), messageBuffer.position(),
                             messageBuffer.remaining());
-
-                mb.send(m_destHSId, msgFactory.makeDataMessage(m_targetId, compressedBytes));
-
-                if (rejoinLog.isTraceEnabled()) {
-                    rejoinLog.trace("Sending heap buffer");
                 }
-
-                return compressedBytes.length;
             }
+            final ByteBuffer output = ByteBuffer.allocate(codec.maxCompressedLength(messageBuffer.remaining()));
+            final int length = codec.compress(messageBuffer, output);
+            return length == output.capacity() ? output.array() : Arrays.copyOf(output.array(), length);
         }
 
-        public synchronized int doWork(Mailbox mb, MessageFactory msgFactory) throws Exception {
+        /**
+         * Package up the compressed block in a RejoinDataMessage instance and
+         * hand it off to the messaging subsystem. The sent bytes count against
+         * the sender's window until the block is acked and discarded.
+         */
+        public synchronized int doWork(Mailbox mb, MessageFactory msgFactory, SnapshotSender sender,
+                                       byte[] data) throws Exception {
             // this work has already been discarded
-            if (m_message == null) {
+            if (m_message == null || data == null) {
                 return 0;
             }
 
             try {
-                return send(mb, msgFactory, m_message);
+                // The sender acquired the window for these bytes, discarding this work returns them
+                m_windowOwner = sender;
+                m_windowBytes = data.length;
+                try {
+                    mb.send(m_destHSId, msgFactory.makeDataMessage(m_targetId, sender.m_codec, data));
+                } catch (Exception e) {
+                    // Never sent so never acked, return the bytes now
+                    m_windowOwner = null;
+                    sender.releaseWindow(data.length);
+                    throw e;
+                }
+
+                if (rejoinLog.isTraceEnabled()) {
+                    rejoinLog.trace("Sending " + (m_message.b().isDirect() ? "direct" : "heap") + " buffer");
+                }
+
+                return data.length;
             } finally {
                 // Buffers are only discarded after they are acked. Discarding them here would cause the sender to
                 // generate too much work for the receiver.
@@ -238,10 +282,16 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
     class Watchdog implements Runnable {
 
         final long m_bytesWrittenSinceConstruction;
+        final long m_rawBytesWrittenSinceConstruction;
         final long m_writeTimeout;
 
         Watchdog(long bytesWritten, long writeTimout) {
+            this(bytesWritten, 0, writeTimout);
+        }
+
+        Watchdog(long bytesWritten, long rawBytesWritten, long writeTimout) {
             m_bytesWrittenSinceConstruction = bytesWritten;
+            m_rawBytesWrittenSinceConstruction = rawBytesWritten;
             m_writeTimeout = writeTimout;
         }
 
@@ -252,10 +302,16 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
             }
 
             long bytesWritten = 0;
+            long rawBytesWritten = 0;
             try {
                 bytesWritten = m_sender.m_bytesSent.get(m_targetId).get();
-                rejoinLog.info(String.format("While sending rejoin data to site %s, %d bytes have been sent in the past %s seconds.",
-                        CoreUtils.hsIdToString(m_destHSId), bytesWritten - m_bytesWrittenSinceConstruction, WATCHDOG_PERIOS_S));
+                rawBytesWritten = m_sender.m_rawBytesSent.get(m_targetId).get();
+                final long rawDelta = rawBytesWritten - m_rawBytesWrittenSinceConstruction;
+                rejoinLog.info(String.format("While sending rejoin data to site %s, %d bytes have been sent in the past %s seconds " +
+                        "(%.1f MB/s of table data, %d blocks awaiting acks, %d bytes in flight on this node, %d ms waiting for acks).",
+                        CoreUtils.hsIdToString(m_destHSId), bytesWritten - m_bytesWrittenSinceConstruction, WATCHDOG_PERIOS_S,
+                        rawDelta / (1024.0 * 1024.0) / WATCHDOG_PERIOS_S, m_outstandingWorkCount.get(),
+                        m_sender.getInFlightBytes(), TimeUnit.NANOSECONDS.toMillis(m_sender.m_windowStallNanos.get())));
 
                 checkTimeout(m_writeTimeout);
                 if (m_writeFailed.get() != null) {
@@ -265,7 +321,8 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
                 rejoinLog.error("Stream snapshot watchdog thread threw an exception", t);
             } finally {
                 // schedule to run again
-                VoltDB.instance().scheduleWork(new Watchdog(bytesWritten, m_writeTimeout), WATCHDOG_PERIOS_S, -1, TimeUnit.SECONDS);
+                VoltDB.instance().scheduleWork(new Watchdog(bytesWritten, rawBytesWritten, m_writeTimeout),
+                        WATCHDOG_PERIOS_S, -1, TimeUnit.SECONDS);
             }
         }
     }
@@ -274,7 +331,7 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
      * Called by the watchdog from the periodic work thread to check if the
      * oldest unacked block is older than the timeout interval.
      */
-    private synchronized void checkTimeout(final long timeoutMs) {
+    private void checkTimeout(final long timeoutMs) {
         final Entry<Integer, SendWork> oldest = m_outstandingWork.firstEntry();
         if (oldest != null) {
             final long now = System.currentTimeMillis();
@@ -310,33 +367,47 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
     }
 
     /**
-     * Synchronized method to handle the arrival of an Ack.
+     * Handle the arrival of an Ack. An ack for work that was already cleared
+     * after a failure is ignored.
      * @param blockIndex The index of the block that is being acked.
      */
     @Override
-    public synchronized void receiveAck(int blockIndex) {
+    public void receiveAck(int blockIndex) {
         rejoinLog.trace("Received block ack for index " + String.valueOf(blockIndex));
 
-        m_outstandingWorkCount.decrementAndGet();
         SendWork work = m_outstandingWork.remove(blockIndex);
+        if (work != null) {
+            m_outstandingWorkCount.decrementAndGet();
 
-        // releases the BBContainers and cleans up
-        work.discard();
+            // releases the BBContainers and cleans up
+            work.discard();
+        }
     }
 
     /**
-     * Thread that runs send work (sending snapshot blocks). One per node
+     * Thread that runs send work (sending snapshot blocks). One per node.
+     * Blocks are compressed on a pool of threads as soon as they are offered,
+     * and sent in the order they were offered once compressed, so a schema
+     * always arrives before the data of its table.
      */
     public static class SnapshotSender implements Runnable {
         private final Mailbox m_mb;
         private final MessageFactory m_msgFactory;
         private final LinkedBlockingQueue<SendWork> m_workQueue;
         private final AtomicInteger m_expectedEOFs;
+        final CompressionCodec m_codec;
+        private final ExecutorService m_compressionPool;
 
         final Map<Long, AtomicLong> m_bytesSent;
+        final Map<Long, AtomicLong> m_rawBytesSent;
         final Map<Long, AtomicLong> m_worksSent;
         volatile Exception m_lastException = null;
 
+        // Compressed bytes sent but not yet acked, bounded by WINDOW_BYTES
+        private final Object m_windowLock = new Object();
+        private long m_inFlightBytes = 0;
+        final AtomicLong m_windowStallNanos = new AtomicLong();
+
         public SnapshotSender(Mailbox mb)
         {
             this(mb, new DefaultMessageFactory());
@@ -349,7 +420,11 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
             m_msgFactory = msgFactory;
             m_workQueue = new LinkedBlockingQueue<SendWork>();
             m_expectedEOFs = new AtomicInteger();
+            m_codec = REJOIN_CODEC;
+            m_compressionPool = Executors.newFixedThreadPool(COMPRESSION_THREADS,
+                    CoreUtils.getThreadFactory("Stream Snapshot Compression"));
             m_bytesSent = Collections.synchronizedMap(new HashMap<Long, AtomicLong>());
+            m_rawBytesSent = Collections.synchronizedMap(new HashMap<Long, AtomicLong>());
             m_worksSent = Collections.synchronizedMap(new HashMap<Long, AtomicLong>());
         }
 
@@ -357,14 +432,55 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
         {
             m_expectedEOFs.incrementAndGet();
             m_bytesSent.put(targetId, new AtomicLong());
+            m_rawBytesSent.put(targetId, new AtomicLong());
             m_worksSent.put(targetId, new AtomicLong());
         }
 
-        public void offer(SendWork work)
+        public void offer(final SendWork work)
         {
+            if (!work.m_isEmpty) {
+                work.m_compressed = m_compressionPool.submit(new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() throws Exception {
+                        return work.compress(m_codec);
+                    }
+                });
+            }
             m_workQueue.offer(work);
         }
 
+        /**
+         * Wait until the block fits in the window. A block is always let through
+         * when nothing is in flight so a block larger than the window can't stall.
+         */
+        void acquireWindow(int bytes) throws InterruptedException {
+            synchronized (m_windowLock) {
+                if (m_inFlightBytes == 0 || m_inFlightBytes + bytes <= WINDOW_BYTES) {
+                    m_inFlightBytes += bytes;
+                    return;
+                }
+                final long start = System.nanoTime();
+                while (m_inFlightBytes > 0 && m_inFlightBytes + bytes > WINDOW_BYTES) {
+                    m_windowLock.wait();
+                }
+                m_inFlightBytes += bytes;
+                m_windowStallNanos.addAndGet(System.nanoTime() - start);
+            }
+        }
+
+        void releaseWindow(int bytes) {
+            synchronized (m_windowLock) {
+                m_inFlightBytes -= bytes;
+                m_windowLock.notifyAll();
+            }
+        }
+
+        long getInFlightBytes() {
+            synchronized (m_windowLock) {
+                return m_inFlightBytes;
+            }
+        }
+
         @Override
         public void run() {
             rejoinLog.trace("Starting stream sender thread");
@@ -391,7 +507,23 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
                         }
                     }
 
-                    m_bytesSent.get(work.m_targetId).addAndGet(work.doWork(m_mb, m_msgFactory));
+                    byte[] data;
+                    try {
+                        data = work.m_compressed.get();
+                    } catch (ExecutionException e) {
+                        work.m_future.set(true);
+                        throw new IOException("Failed to compress a recovery stream block", e.getCause());
+                    }
+                    if (data != null) {
+                        acquireWindow(data.length);
+                    }
+                    final int sent = work.doWork(m_mb, m_msgFactory, this, data);
+                    if (data != null && sent == 0) {
+                        // discarded while waiting for the window, nothing is in flight
+                        releaseWindow(data.length);
+                    }
+                    m_bytesSent.get(work.m_targetId).addAndGet(sent);
+                    m_rawBytesSent.get(work.m_targetId).addAndGet(sent == 0 ? 0 : work.m_rawBytes);
                     m_worksSent.get(work.m_targetId).incrementAndGet();
                 }
                 catch (Exception e) {
@@ -399,7 +531,7 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
                     rejoinLog.error("Error sending a recovery stream message", e);
                 }
             }
-            CompressionService.releaseThreadLocal();
+            m_compressionPool.shutdown();
             rejoinLog.trace("Stream sender thread exiting");
         }
     }
@@ -534,6 +666,14 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
             // Terminate the sender thread after the last block
             m_sender.offer(new SendWork());
 
+            final long elapsedMs = Math.max(1, System.currentTimeMillis() - m_startTime);
+            final long rawBytes = m_sender.m_rawBytesSent.get(m_targetId).get();
+            final long bytes = getBytesWritten();
+            rejoinLog.info(String.format("Sent %d bytes of table data as %d %s compressed bytes to site %s " +
+                    "in %.1f seconds (%.1f MB/s).",
+                    rawBytes, bytes, m_sender.m_codec, CoreUtils.hsIdToString(m_destHSId),
+                    elapsedMs / 1000.0, rawBytes / (1024.0 * 1024.0) / (elapsedMs / 1000.0)));
+
             // locked so m_closed is true when the ack thread dies
             synchronized(this) {
                 m_closed.set(true);
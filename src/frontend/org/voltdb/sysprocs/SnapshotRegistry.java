@@ -136,19 +136,37 @@ public class SnapshotRegistry {
             public final String filename;
             public final long size;
             public final Throwable error;
+            // Compression throughput, only known for native snapshot targets
+            public final String compression;
+            public final long rawSize;
+            public final long compressNanos;
+            public final long writeNanos;
 
             private Table(String name, String filename) {
                 this.name = name;
                 this.filename = filename;
                 size = 0;
                 error = null;
+                compression = "";
+                rawSize = 0;
+                compressNanos = 0;
+                writeNanos = 0;
             }
 
             public Table(Table t, long size, Throwable error) {
+                this(t, size, error, "", 0, 0, 0);
+            }
+
+            public Table(Table t, long size, Throwable error,
+                         String compression, long rawSize, long compressNanos, long writeNanos) {
                 this.name = t.name;
                 this.filename = t.filename;
                 this.size = size;
                 this.error = error;
+                this.compression = compression;
+                this.rawSize = rawSize;
+                this.compressNanos = compressNanos;
+                this.writeNanos = writeNanos;
             }
         }
     }
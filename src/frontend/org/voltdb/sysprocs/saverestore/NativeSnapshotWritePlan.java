@@ -22,7 +22,9 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -41,11 +43,15 @@ import org.voltdb.TheHashinator;
 import org.voltdb.TheHashinator.HashinatorType;
 import org.voltdb.VoltDB;
 import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+import org.voltdb.catalog.Column;
 import org.voltdb.catalog.Table;
 import org.voltdb.dtxn.SiteTracker;
 import org.voltdb.export.ExportManager;
+import org.voltdb.expressions.HashRangeExpression;
 import org.voltdb.sysprocs.SnapshotRegistry;
 import org.voltdb.utils.CatalogUtil;
+import org.voltdb.utils.CompressionCodec;
 
 import com.google_voltpatches.common.collect.Maps;
 
@@ -54,11 +60,20 @@ import com.google_voltpatches.common.collect.Maps;
  * write every table at every site on every node to disk, with one file per
  * table per node.  Replicated tables are written on every node, but the
  * responsibility for writing them is spread round-robin across the sites on a
- * node.  Partitioned tables are written to the same target per table by every
- * site on a node.
+ * node.  Each replicated table is split into hash ranges of one of its columns
+ * so several sites scan their own copy of it into the same target at once.
+ * Partitioned tables are written to the same target per table by every site on
+ * a node.
  */
 public class NativeSnapshotWritePlan extends SnapshotWritePlan
 {
+    /**
+     * Maximum number of sites on a node that scan each replicated table, capped by the
+     * number of local sites. 1 writes every replicated table from a single site.
+     */
+    static final int REPLICATED_TABLE_SHARDS =
+            Math.max(1, Integer.getInteger("SNAPSHOT_REPLICATED_TABLE_SHARDS", Integer.MAX_VALUE));
+
     @Override
     public Callable<Boolean> createSetup(String file_path,
                                             String file_nonce,
@@ -117,19 +132,22 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
             new ArrayList<SnapshotTableTask>();
         final ArrayList<SnapshotTableTask> replicatedSnapshotTasks =
             new ArrayList<SnapshotTableTask>();
+        final List<Long> localSites = tracker.getSitesForHost(context.getHostId());
+        final int replicatedShards = Math.min(REPLICATED_TABLE_SHARDS, localSites.size());
         for (final Table table : tableArray) {
-            final SnapshotTableTask task =
-                    new SnapshotTableTask(
-                            table,
-                            new SnapshotDataFilter[0],
-                            null,
-                            false);
-
-            SNAP_LOG.debug("ADDING TASK: " + task);
-
             if (table.getIsreplicated()) {
-                replicatedSnapshotTasks.add(task);
+                for (SnapshotTableTask task : createReplicatedTableTasks(table, replicatedShards)) {
+                    SNAP_LOG.debug("ADDING TASK: " + task);
+                    replicatedSnapshotTasks.add(task);
+                }
             } else {
+                final SnapshotTableTask task =
+                        new SnapshotTableTask(
+                                table,
+                                new SnapshotDataFilter[0],
+                                null,
+                                false);
+                SNAP_LOG.debug("ADDING TASK: " + task);
                 partitionedSnapshotTasks.add(task);
             }
 
@@ -145,9 +163,11 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
         }
 
         // Native snapshots place the partitioned tasks on every site and round-robin the
-        // replicated tasks across all the sites on every host
-        placePartitionedTasks(partitionedSnapshotTasks, tracker.getSitesForHost(context.getHostId()));
-        placeReplicatedTasks(replicatedSnapshotTasks, tracker.getSitesForHost(context.getHostId()));
+        // replicated tasks across all the sites on every host. The shards of a replicated
+        // table are adjacent and there are no more of them than sites, so each lands on a
+        // different site.
+        placePartitionedTasks(partitionedSnapshotTasks, localSites);
+        placeReplicatedTasks(replicatedSnapshotTasks, localSites);
 
         boolean isTruncationSnapshot = true;
         if (jsData != null) {
@@ -158,7 +178,95 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
         return createDeferredSetup(file_path, file_nonce, txnId, partitionTransactionIds,
                 context, extraSnapshotData, tracker, hashinatorData, timestamp,
                 newPartitionCount, tableArray, m_snapshotRecord, partitionedSnapshotTasks,
-                replicatedSnapshotTasks, isTruncationSnapshot);
+                replicatedSnapshotTasks, isTruncationSnapshot,
+                config.codec == null ? DefaultSnapshotDataTarget.DEFAULT_CODEC : config.codec);
+    }
+
+    /**
+     * Create the tasks that snapshot a replicated table. With more than one shard each task
+     * selects one hash range of a column, the ranges cover the whole hash ring and share the
+     * table's target, which is closed when the last of them finishes. Tables without a column
+     * the EE can hash get a single task.
+     */
+    static List<SnapshotTableTask> createReplicatedTableTasks(Table table, int shards)
+    {
+        final Column hashColumn = shards > 1 ? getShardingColumn(table) : null;
+        if (hashColumn == null) {
+            return Arrays.asList(new SnapshotTableTask(table, new SnapshotDataFilter[0], null, false));
+        }
+
+        final AtomicInteger pendingShards = new AtomicInteger(shards);
+        final List<SnapshotTableTask> tasks = new ArrayList<SnapshotTableTask>(shards);
+        for (Map<Integer, Integer> range : splitHashRing(shards)) {
+            final HashRangeExpression predicate = new HashRangeExpression();
+            predicate.setRanges(range);
+            predicate.setHashColumnIndex(hashColumn.getIndex());
+            tasks.add(new SnapshotTableTask(table, new SnapshotDataFilter[0], predicate, false, pendingShards));
+        }
+        return tasks;
+    }
+
+    /**
+     * Split the 32-bit murmur hash ring into contiguous inclusive ranges of nearly equal size,
+     * in the form HashRangeExpression takes them.
+     */
+    static List<Map<Integer, Integer>> splitHashRing(int shards)
+    {
+        final long ringSize = 1L << 32;
+        final List<Map<Integer, Integer>> ranges = new ArrayList<Map<Integer, Integer>>(shards);
+        for (int ii = 0; ii < shards; ii++) {
+            final long start = Integer.MIN_VALUE + (ringSize * ii) / shards;
+            final long end = Integer.MIN_VALUE + (ringSize * (ii + 1)) / shards - 1;
+            final Map<Integer, Integer> range = new TreeMap<Integer, Integer>();
+            range.put((int)start, (int)end);
+            ranges.add(range);
+        }
+        return ranges;
+    }
+
+    /**
+     * Pick the column whose hash splits a replicated table. Prefer the primary key because it
+     * is distinct per row, otherwise take the first fixed width column, otherwise the first
+     * string that can't be null. The EE can't hash a NULL string, NULL numbers hash fine.
+     * @return null if no column qualifies
+     */
+    static Column getShardingColumn(Table table)
+    {
+        for (Column column : CatalogUtil.getPrimaryKeyColumns(table)) {
+            if (isHashable(column, true)) {
+                return column;
+            }
+        }
+        final List<Column> columns = CatalogUtil.getSortedCatalogItems(table.getColumns(), "index");
+        for (Column column : columns) {
+            if (isHashable(column, false)) {
+                return column;
+            }
+        }
+        for (Column column : columns) {
+            if (isHashable(column, true)) {
+                return column;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isHashable(Column column, boolean allowStrings)
+    {
+        switch (VoltType.get((byte)column.getType())) {
+        case TINYINT:
+        case SMALLINT:
+        case INTEGER:
+        case BIGINT:
+        case FLOAT:
+        case TIMESTAMP:
+            return true;
+        case STRING:
+        case VARBINARY:
+            return allowStrings && !column.getNullable();
+        default:
+            return false;
+        }
     }
 
     private Callable<Boolean> createDeferredSetup(final String file_path,
@@ -175,7 +283,8 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
                                                   final SnapshotRegistry.Snapshot snapshotRecord,
                                                   final ArrayList<SnapshotTableTask> partitionedSnapshotTasks,
                                                   final ArrayList<SnapshotTableTask> replicatedSnapshotTasks,
-                                                  final boolean isTruncationSnapshot)
+                                                  final boolean isTruncationSnapshot,
+                                                  final CompressionCodec codec)
     {
         return new Callable<Boolean>() {
             private final HashMap<Integer, SnapshotDataTarget> m_createdTargets = Maps.newHashMap();
@@ -233,7 +342,7 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
                             context.getHostId(), context.getCluster().getTypeName(),
                             context.getDatabase().getTypeName(), context.getNumberOfPartitions(),
                             context.getDatabase().getIsactiveactivedred(),
-                            tracker, timestamp, numTables, snapshotRecord);
+                            tracker, timestamp, numTables, snapshotRecord, codec);
                     m_createdTargets.put(task.m_table.getRelativeIndex(), target);
                 }
                 return target;
@@ -253,7 +362,8 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
                                                         SiteTracker tracker,
                                                         long timestamp,
                                                         AtomicInteger numTables,
-                                                        SnapshotRegistry.Snapshot snapshotRecord)
+                                                        SnapshotRegistry.Snapshot snapshotRecord,
+                                                        CompressionCodec codec)
             throws IOException
     {
         SnapshotDataTarget sdt;
@@ -276,7 +386,8 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
                     tracker.getPartitionsForHost(hostId),
                     CatalogUtil.getVoltTable(table, CatalogUtil.DR_HIDDEN_COLUMN_INFO),
                     txnId,
-                    timestamp);
+                    timestamp,
+                    codec);
         }
         else {
             sdt = new DefaultSnapshotDataTarget(saveFilePath,
@@ -289,7 +400,8 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
                     tracker.getPartitionsForHost(hostId),
                     CatalogUtil.getVoltTable(table),
                     txnId,
-                    timestamp);
+                    timestamp,
+                    codec);
         }
 
         m_targets.add(sdt);
@@ -28,6 +28,7 @@ import org.json_voltpatches.JSONStringer;
 import org.voltcore.logging.VoltLogger;
 import org.voltdb.catalog.Database;
 import org.voltdb.catalog.Table;
+import org.voltdb.utils.CompressionCodec;
 
 import com.google_voltpatches.common.base.Joiner;
 import com.google_voltpatches.common.base.Preconditions;
@@ -37,6 +38,11 @@ public class SnapshotRequestConfig {
     protected static final VoltLogger SNAP_LOG = new VoltLogger("SNAPSHOT");
 
     public final Table[] tables;
+    /**
+     * Codec for the table chunks, only used by native snapshots. Null if the
+     * request didn't name one.
+     */
+    public final CompressionCodec codec;
 
     /**
      * @param tables    Tables to snapshot, cannot be null.
@@ -45,11 +51,21 @@ public class SnapshotRequestConfig {
     {
         Preconditions.checkNotNull(tables);
         this.tables = tables.toArray(new Table[0]);
+        this.codec = null;
     }
 
     public SnapshotRequestConfig(JSONObject jsData, Database catalogDatabase)
     {
         tables = getTablesToInclude(jsData, catalogDatabase);
+        codec = getCodec(jsData);
+    }
+
+    private static CompressionCodec getCodec(JSONObject jsData)
+    {
+        if (jsData == null || !jsData.has("compression")) {
+            return null;
+        }
+        return CompressionCodec.fromString(jsData.optString("compression"));
     }
 
     private static Table[] getTablesToInclude(JSONObject jsData,
@@ -131,5 +147,8 @@ public class SnapshotRequestConfig {
             }
             stringer.endArray();
         }
+        if (codec != null) {
+            stringer.key("compression").value(codec.name());
+        }
     }
 }
@@ -30,6 +30,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.json_voltpatches.JSONObject;
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.utils.CoreUtils;
+import org.voltdb.DefaultSnapshotDataTarget;
 import org.voltdb.DevNullSnapshotTarget;
 import org.voltdb.ExtensibleSnapshotDigestData;
 import org.voltdb.SnapshotDataTarget;
@@ -100,6 +101,17 @@ public abstract class SnapshotWritePlan
                         @Override
                         public SnapshotRegistry.Snapshot.Table update(
                             SnapshotRegistry.Snapshot.Table registryTable) {
+                            if (m_sdt instanceof DefaultSnapshotDataTarget) {
+                                final DefaultSnapshotDataTarget nativeTarget = (DefaultSnapshotDataTarget) m_sdt;
+                                return m_snapshotRecord.new Table(
+                                    registryTable,
+                                    nativeTarget.getBytesWritten(),
+                                    nativeTarget.getLastWriteException(),
+                                    nativeTarget.getCodec().name(),
+                                    nativeTarget.getRawBytes(),
+                                    nativeTarget.getCompressNanos(),
+                                    nativeTarget.getWriteNanos());
+                            }
                             return m_snapshotRecord.new Table(
                                 registryTable,
                                 m_sdt.getBytesWritten(),
@@ -228,7 +240,7 @@ public abstract class SnapshotWritePlan
             ArrayList<Long> robin = new ArrayList<Long>();
             robin.add(hsids.get(siteIndex));
             placeTask(task, robin);
-            siteIndex = siteIndex++ % hsids.size();
+            siteIndex = (siteIndex + 1) % hsids.size();
         }
     }
 }
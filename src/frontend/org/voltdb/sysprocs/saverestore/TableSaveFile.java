@@ -26,9 +26,14 @@ import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Semaphore;
 import java.util.zip.Checksum;
 
@@ -40,13 +45,21 @@ import org.json_voltpatches.JSONObject;
 import org.voltcore.TransactionIdManager;
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.utils.Bits;
+import org.voltcore.utils.CoreUtils;
 import org.voltcore.utils.DBBPool;
 import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltdb.DefaultSnapshotDataTarget;
 import org.voltdb.EELibraryLoader;
 import org.voltdb.messaging.FastDeserializer;
+import org.voltdb.utils.CompressionCodec;
 import org.voltdb.utils.CompressionService;
 import org.voltdb.utils.PosixAdvise;
 
+import com.google_voltpatches.common.util.concurrent.Futures;
+import com.google_voltpatches.common.util.concurrent.ListenableFuture;
+import com.google_voltpatches.common.util.concurrent.ListeningExecutorService;
+import com.google_voltpatches.common.util.concurrent.MoreExecutors;
+
 /**
  * An abstraction around a table's save file for restore.  Deserializes the
  * meta-data that was stored when the table was saved and makes it available
@@ -91,6 +104,40 @@ public class TableSaveFile
     private static final int DEFAULT_CHUNKSIZE =
             org.voltdb.SnapshotSiteProcessor.m_snapshotBufferLength + (1024 * 256);
 
+    /**
+     * Large enough for a chunk compressed by any of the codecs
+     */
+    private static final int COMPRESSED_CHUNKSIZE = CompressionService.maxCompressedLength(DEFAULT_CHUNKSIZE);
+
+    /**
+     * Size of the sequential reads of version 2 files, rounded to whole pages. Several
+     * chunks are pulled in per read instead of two small reads per chunk.
+     */
+    private static final int READ_BUFFER_SIZE;
+    static {
+        final int requested = Math.max(Integer.getInteger("SNAPSHOT_RESTORE_READ_BYTES", 1024 * 1024 * 8),
+                                       Bits.pageSize());
+        READ_BUFFER_SIZE = (requested / Bits.pageSize()) * Bits.pageSize();
+    }
+
+    private static final VoltLogger SNAP_LOG = new VoltLogger("SNAPSHOT");
+
+    /**
+     * Default number of chunks read ahead of the consumer, configurable so restores
+     * of large files can keep the decoder pool and the disk busy.
+     */
+    public static final int DEFAULT_READ_AHEAD_CHUNKS = Integer.getInteger("SNAPSHOT_RESTORE_READ_AHEAD", 16);
+
+    /*
+     * Chunks of version 2 files are checksummed and decompressed on this pool, shared by
+     * all the save files being read, while each file's reader thread keeps reading.
+     * Chunks are still handed out in file order.
+     */
+    private static final ListeningExecutorService m_decoders = MoreExecutors.listeningDecorator(
+            Executors.newFixedThreadPool(
+                    Integer.getInteger("SNAPSHOT_RESTORE_THREADS", Math.max(2, CoreUtils.availableProcessors())),
+                    CoreUtils.getThreadFactory("Snapshot restore decoder")));
+
     public TableSaveFile(
             FileInputStream fis,
             int readAheadChunks,
@@ -245,6 +292,7 @@ public class TableSaveFile
                 m_isReplicated = fd.readBoolean();
                 m_isCompressed = false;
                 m_checksumType = ChecksumType.CRC32;
+                m_codec = CompressionCodec.SNAPPY;
                 if (!m_isReplicated) {
                     m_partitionIds = (int[])fd.readArray(int.class);
                     if (!m_completed) {
@@ -262,7 +310,9 @@ public class TableSaveFile
                 }
                 m_hasVersion2FormatChunks = false;
             } else {
-                assert(m_versionNum[3] == 1 || m_versionNum[3] == 2);
+                if (m_versionNum[3] > DefaultSnapshotDataTarget.CODEC_FILE_VERSION) {
+                    throw new IOException("Unsupported table save file version " + m_versionNum[3]);
+                }
                 if (m_versionNum[3] >= 2) {
                     m_hasVersion2FormatChunks = true;
                 } else {
@@ -290,6 +340,13 @@ public class TableSaveFile
                 m_isReplicated = obj.getBoolean("isReplicated");
                 m_isCompressed = obj.optBoolean("isCompressed", false);
                 m_checksumType = ChecksumType.valueOf(obj.optString("checksumType", "CRC32"));
+                //Snapshots written before the codec was configurable are always Snappy
+                m_codec = CompressionCodec.valueOf(obj.optString("compressionCodec", "SNAPPY"));
+                if (m_codec != CompressionCodec.SNAPPY &&
+                        m_versionNum[3] < DefaultSnapshotDataTarget.CODEC_FILE_VERSION) {
+                    throw new IOException("Table save file version " + m_versionNum[3] +
+                            " can't have chunks compressed with " + m_codec);
+                }
                 if (!m_isReplicated) {
                     JSONArray partitionIds = obj.getJSONArray("partitionIds");
                     m_partitionIds = new int[partitionIds.length()];
@@ -369,6 +426,10 @@ public class TableSaveFile
         return m_isCompressed;
     }
 
+    public CompressionCodec getCompressionCodec() {
+        return m_codec;
+    }
+
     public int getTotalPartitions() {
         return m_totalPartitions;
     }
@@ -401,12 +462,27 @@ public class TableSaveFile
             }
         }
 
+        /*
+         * Chunks still being decoded have to finish before their buffers can be freed
+         */
+        final ArrayList<ListenableFuture<Container>> pending;
         synchronized (this) {
-            while (!m_availableChunks.isEmpty()) {
-                m_availableChunks.poll().discard();
-            }
+            pending = new ArrayList<ListenableFuture<Container>>(m_pendingChunks);
+            m_pendingChunks.clear();
             notifyAll();
         }
+        for (ListenableFuture<Container> f : pending) {
+            try {
+                final Container c = f.get();
+                if (c != null) {
+                    c.discard();
+                }
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            } catch (ExecutionException e) {
+                // Already reported to the consumer or not of interest once closed
+            }
+        }
 
         /*
          * Free buffers used to pull snapshot data in process
@@ -415,6 +491,11 @@ public class TableSaveFile
         while ((cont = m_buffers.poll()) != null) {
             cont.discard();
         }
+        synchronized (this) {
+            while ((cont = m_inputBuffers.poll()) != null) {
+                cont.discard();
+            }
+        }
     }
 
     public Set<Integer> getCorruptedPartitionIds() {
@@ -431,36 +512,51 @@ public class TableSaveFile
         if (m_chunkReaderException != null) {
             throw m_chunkReaderException;
         }
-        if (!m_hasMoreChunks) {
-            final Container c = m_availableChunks.poll();
-            return c;
-        }
 
-        if (m_chunkReader == null) {
+        if (m_hasMoreChunks && m_chunkReader == null) {
             m_chunkReader = new ChunkReader();
             m_chunkReaderThread = new Thread(m_chunkReader, "ChunkReader");
             m_chunkReaderThread.start();
         }
 
-        Container c = null;
-        while (c == null && (m_hasMoreChunks || !m_availableChunks.isEmpty())) {
-            c = m_availableChunks.poll();
-            if (c == null) {
-                try {
+        while (m_hasMoreChunks || !m_pendingChunks.isEmpty()) {
+            final ListenableFuture<Container> next = m_pendingChunks.peek();
+            try {
+                // Decoders notify when they finish, so wait for the chunk at the head
+                // of the file even if later ones are already done
+                if (next == null || !next.isDone()) {
                     wait();
-                } catch (InterruptedException e) {
-                    throw new IOException(e);
+                    if (m_chunkReaderException != null) {
+                        throw m_chunkReaderException;
+                    }
+                    continue;
                 }
+            } catch (InterruptedException e) {
+                throw new IOException(e);
             }
-        }
-        if (c != null) {
+
+            m_pendingChunks.poll();
             m_chunkReads.release();
-        } else {
-            if (m_chunkReaderException != null) {
+            final Container c;
+            try {
+                c = next.get();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            } catch (ExecutionException e) {
+                m_chunkReaderException = e.getCause() instanceof IOException ?
+                        (IOException) e.getCause() : new IOException(e.getCause());
                 throw m_chunkReaderException;
             }
+            // Skipped or tolerated corrupt chunks decode to null
+            if (c != null) {
+                return c;
+            }
         }
-        return c;
+
+        if (m_chunkReaderException != null) {
+            throw m_chunkReaderException;
+        }
+        return null;
     }
 
     public synchronized boolean hasMoreChunks() throws IOException
@@ -468,7 +564,7 @@ public class TableSaveFile
         if (m_chunkReaderException != null) {
             throw m_chunkReaderException;
         }
-        return m_hasMoreChunks || !m_availableChunks.isEmpty();
+        return m_hasMoreChunks || !m_pendingChunks.isEmpty();
     }
 
     private final FileChannel m_saveFile;
@@ -489,9 +585,24 @@ public class TableSaveFile
     private final long m_timestamp;
     private boolean m_hasMoreChunks = true;
     private ConcurrentLinkedQueue<BBContainer> m_buffers = new ConcurrentLinkedQueue<BBContainer>();
-    private final ArrayDeque<Container> m_availableChunks = new ArrayDeque<Container>();
+    /*
+     * Chunks in file order, each one holding a read ahead permit until it is consumed
+     */
+    private final ArrayDeque<ListenableFuture<Container>> m_pendingChunks =
+            new ArrayDeque<ListenableFuture<Container>>();
+    // Compressed input buffers for version 2 chunks, guarded by this
+    private final ArrayDeque<BBContainer> m_inputBuffers = new ArrayDeque<BBContainer>();
+    private final Runnable m_notifyConsumer = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (TableSaveFile.this) {
+                TableSaveFile.this.notifyAll();
+            }
+        }
+    };
     private final HashSet<Integer> m_relevantPartitionIds;
     private final ChecksumType m_checksumType;
+    private final CompressionCodec m_codec;
 
     /*
      * In version 2 the layout of chunks was rejiggered to do less work
@@ -504,7 +615,7 @@ public class TableSaveFile
      * Maintain a list of corrupted partitions. It is possible for uncorrupted partitions
      * to be recovered from a save file in the future
      */
-    private final HashSet<Integer> m_corruptedPartitions = new HashSet<Integer>();
+    private final Set<Integer> m_corruptedPartitions = Collections.synchronizedSet(new HashSet<Integer>());
 
     /**
      * Ignore corrupted chunks and continue validation of the rest of the chunks.
@@ -520,264 +631,360 @@ public class TableSaveFile
     private Thread m_chunkReaderThread = null;
     private IOException m_chunkReaderException = null;
 
+    private BBContainer getInputBuffer() {
+        synchronized (this) {
+            final BBContainer c = m_inputBuffers.poll();
+            if (c != null) {
+                return c;
+            }
+        }
+        return DBBPool.allocateDirect(COMPRESSED_CHUNKSIZE);
+    }
+
+    private void releaseInputBuffer(BBContainer c) {
+        synchronized (this) {
+            if (m_hasMoreChunks) {
+                m_inputBuffers.offer(c);
+                return;
+            }
+        }
+        c.discard();
+    }
+
     /**
-     * Thread to read chunks from the disk
+     * Reads the file sequentially through a large direct buffer so that the chunk
+     * headers and payloads don't each cost a system call.
      */
-    private class ChunkReader implements Runnable {
+    private class ChunkInput {
+        private final BBContainer m_bufferC = DBBPool.allocateDirect(READ_BUFFER_SIZE);
+        private final ByteBuffer m_buffer = m_bufferC.b();
 
-        /*
-         * The old method was out of hand. Going to start a new one with a different format
-         * that should be easier to understand and validate.
-         */
-        private void readChunksV2() {
-            //For reading the compressed input.
-            final BBContainer fileInputBufferC =
-                    DBBPool.allocateDirect(CompressionService.maxCompressedLength(DEFAULT_CHUNKSIZE));
-            final ByteBuffer fileInputBuffer = fileInputBufferC.b();
-            long sinceLastFAdvise = Long.MAX_VALUE;
-            long positionAtLastFAdvise = 0;
-            while (m_hasMoreChunks) {
-                if (sinceLastFAdvise > 1024 * 1024 * 48) {
-                    sinceLastFAdvise = 0;
-                    VoltLogger log = new VoltLogger("SNAPSHOT");
-                    try {
-                        final long position = m_saveFile.position();
-                        long retval = PosixAdvise.fadvise(
-                                m_fd,
-                                position,
-                                position + 1024 * 1024 * 64,
-                                PosixAdvise.POSIX_FADV_WILLNEED);
-                        if (retval != 0) {
-                            log.info("Failed to fadvise in TableSaveFile, this is harmless: " + retval);
-                        }
+        ChunkInput() {
+            m_buffer.limit(0);
+        }
 
-                        //Get aligned start and end position
-                        final long fadviseStart = positionAtLastFAdvise;
-                        //-1 because we don't want to drop the last page because
-                        //We will be reading it soon
-                        positionAtLastFAdvise = ((position / Bits.pageSize()) - 1) * Bits.pageSize();
-                        final long length = positionAtLastFAdvise - fadviseStart;
-                        if (length > 0) {
-                            retval = PosixAdvise.fadvise(
-                                    m_fd,
-                                    fadviseStart,
-                                    length,
-                                    PosixAdvise.POSIX_FADV_DONTNEED);
-                        }
-                        if (retval != 0) {
-                            log.info("Failed to fadvise in TableSaveFile, this is harmless: " + retval);
+        /**
+         * Fill the remaining space of dst
+         * @return the number of bytes read
+         */
+        int readFully(ByteBuffer dst) throws IOException {
+            final int wanted = dst.remaining();
+            while (dst.hasRemaining()) {
+                if (!m_buffer.hasRemaining()) {
+                    // Nothing buffered and a big read, skip the copy
+                    if (dst.remaining() >= m_buffer.capacity()) {
+                        if (m_saveFile.read(dst) == -1) {
+                            throw new EOFException();
                         }
-                        positionAtLastFAdvise = position;
-                    } catch (Throwable t) {
-                        log.info("Exception attempting fadvise", t);
+                        continue;
+                    }
+                    m_buffer.clear();
+                    final int read = m_saveFile.read(m_buffer);
+                    m_buffer.flip();
+                    if (read == -1) {
+                        throw new EOFException();
                     }
                 }
+                final int toCopy = Math.min(dst.remaining(), m_buffer.remaining());
+                final ByteBuffer slice = m_buffer.slice();
+                slice.limit(toCopy);
+                dst.put(slice);
+                m_buffer.position(m_buffer.position() + toCopy);
+            }
+            return wanted;
+        }
 
-                /*
-                 * Limit the number of chunk materialized into memory at one time
-                 */
-                try {
-                    m_chunkReads.acquire();
-                } catch (InterruptedException e) {
-                    return;
+        void discard() {
+            m_bufferC.discard();
+        }
+    }
+
+    /**
+     * Validates and decompresses one version 2 chunk into a table buffer. Returns null
+     * for chunks that are skipped or corrupt when corruption is tolerated.
+     */
+    private class ChunkDecoder implements Callable<Container> {
+        private final BBContainer m_compressed;
+        private final int m_partitionId;
+        private final int m_crc;
+
+        ChunkDecoder(BBContainer compressed, int partitionId, int crc) {
+            m_compressed = compressed;
+            m_partitionId = partitionId;
+            m_crc = crc;
+        }
+
+        @Override
+        public Container call() throws IOException {
+            try {
+                return decode();
+            } catch (BufferUnderflowException e) {
+                throw new IOException(e);
+            } catch (BufferOverflowException e) {
+                throw new IOException(e);
+            } catch (IndexOutOfBoundsException e) {
+                throw new IOException(e);
+            } finally {
+                releaseInputBuffer(m_compressed);
+            }
+        }
+
+        private Container decode() throws IOException {
+            final ByteBuffer fileInputBuffer = m_compressed.b();
+
+            /*
+             * Validate the rest of the chunk. This can fail if the data is corrupted
+             * or the length value was corrupted.
+             */
+            final int calculatedCRC =
+                    DBBPool.getBufferCRC32C(fileInputBuffer, 0, fileInputBuffer.remaining());
+            if (calculatedCRC != m_crc) {
+                m_corruptedPartitions.add(m_partitionId);
+                if (m_continueOnCorruptedChunk) {
+                    return null;
+                } else {
+                    throw new IOException("CRC mismatch in saved table chunk");
                 }
-                boolean expectedAnotherChunk = false;
-                Container c = null;
-                try {
+            }
 
-                    /*
-                     * Get the length of the next chunk, partition id, crc for partition id, and length prefix,
-                     * and then the CRC of the compressed payload
-                     */
-                    ByteBuffer chunkLengthB = ByteBuffer.allocate(16);
-                    while (chunkLengthB.hasRemaining()) {
-                        final int read = m_saveFile.read(chunkLengthB);
-                        if (read == -1) {
-                            throw new EOFException();
-                        }
-                        sinceLastFAdvise += read;
-                    }
-                    int nextChunkLength = chunkLengthB.getInt(0);
-                    expectedAnotherChunk = true;
+            /*
+             * Skip irrelevant chunks after CRC is calculated. Always calulate the CRC
+             * in case it is the length value that is corrupted
+             */
+            if (m_relevantPartitionIds != null) {
+                if (!m_relevantPartitionIds.contains(m_partitionId)) {
+                    return null;
+                }
+            }
 
-                    /*
-                     * Get the partition id and its CRC (CRC now covers length prefix) and validate it. Validating the
-                     * partition ID for the chunk separately makes it possible to
-                     * continue processing chunks from other partitions if only one partition
-                     * has corrupt chunks in the file.
-                     */
-                    assert(m_checksumType == ChecksumType.CRC32C);
-                    final Checksum partitionIdCRC = new PureJavaCrc32C();
-                    final int nextChunkPartitionId = chunkLengthB.getInt(4);
-                    final int nextChunkPartitionIdCRC = chunkLengthB.getInt(8);
+            /*
+             * Use the uncompressed size to set up the table buffer,
+             * the code ahead that constructs the volt table is expecting
+             * the uncompressed size/data since it is producing an uncompressed table
+             */
+            final int uncompressedLength = m_codec.uncompressedLength(fileInputBuffer);
 
-                    partitionIdCRC.update(chunkLengthB.array(), 0, 8);
-                    int generatedValue = (int)partitionIdCRC.getValue();
-                    if (generatedValue != nextChunkPartitionIdCRC) {
-                        chunkLengthB.position(0);
-                        for (int partitionId : m_partitionIds) {
-                            m_corruptedPartitions.add(partitionId);
-                        }
-                        throw new IOException("Chunk partition ID CRC check failed. " +
-                                "This corrupts all partitions in this file");
-                    }
+            /*
+             * Now allocate space to store the chunk using the VoltTable serialization representation.
+             * The chunk will contain an integer row count preceding it so it can
+             * be sucked straight in.
+             */
+            Container c = getOutputBuffer(m_partitionId);
 
-                    /*
-                     * CRC for the data portion of the chunk
-                     */
-                    final int nextChunkCRC = chunkLengthB.getInt(12);
+            /*
+             * If the length value is wrong or not all data made it to disk this read will
+             * not complete correctly. There could be overflow, underflow etc.
+             * so catch the failure to indicate that all partitions are now corrupt.
+             */
+            try {
+                final ByteBuffer buf = c.b();
+                /*
+                 * Assemble a VoltTable out of the chunk of tuples.
+                 * Put in the header that was cached in the constructor,
+                 * then copy the tuple data.
+                 */
+                buf.clear();
+                buf.limit(uncompressedLength + m_tableHeader.capacity());
+                final ByteBuffer tableHeader = m_tableHeader.duplicate();
+                tableHeader.position(0);
+                buf.put(tableHeader);
+                //Doesn't move buffer position, does change the limit
+                m_codec.decompress(fileInputBuffer, buf);
+            } catch (IOException | RuntimeException e) {
+                c.discard();
+                for (int partitionId : m_partitionIds) {
+                    m_corruptedPartitions.add(partitionId);
+                }
+                if (m_continueOnCorruptedChunk) {
+                    SNAP_LOG.warn("Skipping corrupted chunk of saved table", e);
+                    return null;
+                }
+                throw new IOException("Failed decompression of saved table chunk", e);
+            }
 
-                    /*
-                     * Sanity check the length value to ensure there isn't
-                     * a runtime exception or OOM.
-                     */
-                    if (nextChunkLength < 0) {
-                        throw new IOException("Corrupted TableSaveFile chunk has negative chunk length");
-                    }
+            /*
+             * VoltTable wants the buffer at the home position 0
+             */
+            c.b().position(0);
+            return c;
+        }
+    }
 
-                    if (nextChunkLength > fileInputBuffer.capacity()) {
-                        throw new IOException("Corrupted TableSaveFile chunk has unreasonable length " +
-                                "> DEFAULT_CHUNKSIZE bytes");
-                    }
+    private Container getOutputBuffer(final int nextChunkPartitionId) {
+        BBContainer c = m_buffers.poll();
+        if (c == null) {
+            final BBContainer originContainer = DBBPool.allocateDirect(DEFAULT_CHUNKSIZE);
+            final ByteBuffer b = originContainer.b();
+            final Container retcont = new Container(b, originContainer, nextChunkPartitionId);
+            return retcont;
+        }
+        /*
+         * Need to reconstruct the container with the partition id of the next
+         * chunk so it can be a final public field. The buffer, address, and origin
+         * container remain the same.
+         */
+        final Container retcont = new Container(c.b(), c, nextChunkPartitionId);
+        return retcont;
+    }
 
-                    /*
-                     * Go fetch the compressed data so that the uncompressed size is known
-                     * and use that to set nextChunkLength to be the uncompressed length,
-                     * the code ahead that constructs the volt table is expecting
-                     * the uncompressed size/data since it is producing an uncompressed table
-                     */
-                    fileInputBuffer.clear();
-                    fileInputBuffer.limit(nextChunkLength);
-                    while (fileInputBuffer.hasRemaining()) {
-                        final int read = m_saveFile.read(fileInputBuffer);
-                        if (read == -1) {
-                            throw new EOFException();
+    /**
+     * Thread to read chunks from the disk
+     */
+    private class ChunkReader implements Runnable {
+
+        /*
+         * The old method was out of hand. Going to start a new one with a different format
+         * that should be easier to understand and validate.
+         */
+        private void readChunksV2() {
+            final ChunkInput input = new ChunkInput();
+            long sinceLastFAdvise = Long.MAX_VALUE;
+            long positionAtLastFAdvise = 0;
+            try {
+                while (m_hasMoreChunks) {
+                    if (sinceLastFAdvise > 1024 * 1024 * 48) {
+                        sinceLastFAdvise = 0;
+                        try {
+                            final long position = m_saveFile.position();
+                            long retval = PosixAdvise.fadvise(
+                                    m_fd,
+                                    position,
+                                    position + 1024 * 1024 * 64,
+                                    PosixAdvise.POSIX_FADV_WILLNEED);
+                            if (retval != 0) {
+                                SNAP_LOG.info("Failed to fadvise in TableSaveFile, this is harmless: " + retval);
+                            }
+
+                            //Get aligned start and end position
+                            final long fadviseStart = positionAtLastFAdvise;
+                            //-1 because we don't want to drop the last page because
+                            //We will be reading it soon
+                            positionAtLastFAdvise = ((position / Bits.pageSize()) - 1) * Bits.pageSize();
+                            final long length = positionAtLastFAdvise - fadviseStart;
+                            if (length > 0) {
+                                retval = PosixAdvise.fadvise(
+                                        m_fd,
+                                        fadviseStart,
+                                        length,
+                                        PosixAdvise.POSIX_FADV_DONTNEED);
+                            }
+                            if (retval != 0) {
+                                SNAP_LOG.info("Failed to fadvise in TableSaveFile, this is harmless: " + retval);
+                            }
+                            positionAtLastFAdvise = position;
+                        } catch (Throwable t) {
+                            SNAP_LOG.info("Exception attempting fadvise", t);
                         }
-                        sinceLastFAdvise += read;
                     }
-                    fileInputBuffer.flip();
-                    nextChunkLength = CompressionService.uncompressedLength(fileInputBuffer);
 
                     /*
-                     * Validate the rest of the chunk. This can fail if the data is corrupted
-                     * or the length value was corrupted.
+                     * Limit the number of chunk materialized into memory at one time
                      */
-                    final int calculatedCRC =
-                            DBBPool.getBufferCRC32C(fileInputBuffer, 0, fileInputBuffer.remaining());
-                    if (calculatedCRC != nextChunkCRC) {
-                        m_corruptedPartitions.add(nextChunkPartitionId);
-                        if (m_continueOnCorruptedChunk) {
-                            m_chunkReads.release();
-                            continue;
-                        } else {
-                            throw new IOException("CRC mismatch in saved table chunk");
-                        }
+                    try {
+                        m_chunkReads.acquire();
+                    } catch (InterruptedException e) {
+                        return;
                     }
+                    boolean expectedAnotherChunk = false;
+                    BBContainer compressed = null;
+                    try {
 
-                    /*
-                     * Now allocate space to store the chunk using the VoltTable serialization representation.
-                     * The chunk will contain an integer row count preceding it so it can
-                     * be sucked straight in. There is a little funny business to overwrite the
-                     * partition id that is not part of the serialization format
-                     */
-                    c = getOutputBuffer(nextChunkPartitionId);
+                        /*
+                         * Get the length of the next chunk, partition id, crc for partition id, and length prefix,
+                         * and then the CRC of the compressed payload
+                         */
+                        ByteBuffer chunkLengthB = ByteBuffer.allocate(16);
+                        sinceLastFAdvise += input.readFully(chunkLengthB);
+                        int nextChunkLength = chunkLengthB.getInt(0);
+                        expectedAnotherChunk = true;
 
-                    /*
-                     * If the length value is wrong or not all data made it to disk this read will
-                     * not complete correctly. There could be overflow, underflow etc.
-                     * so use a try finally block to indicate that all partitions are now corrupt.
-                     * The enclosing exception handlers will do the right thing WRT to
-                     * propagating the error and closing the file.
-                     */
-                    boolean completedRead = false;
-                    try {
-                        final ByteBuffer buf = c.b();
                         /*
-                         * Assemble a VoltTable out of the chunk of tuples.
-                         * Put in the header that was cached in the constructor,
-                         * then copy the tuple data.
+                         * Get the partition id and its CRC (CRC now covers length prefix) and validate it. Validating the
+                         * partition ID for the chunk separately makes it possible to
+                         * continue processing chunks from other partitions if only one partition
+                         * has corrupt chunks in the file.
                          */
-                        buf.clear();
-                        buf.limit(nextChunkLength  + m_tableHeader.capacity());
-                        m_tableHeader.position(0);
-                        buf.put(m_tableHeader);
-                        //Doesn't move buffer position, does change the limit
-                        CompressionService.decompressBuffer(fileInputBuffer, buf);
-                        completedRead = true;
-                    } finally {
-                        if (!completedRead) {
+                        assert(m_checksumType == ChecksumType.CRC32C);
+                        final Checksum partitionIdCRC = new PureJavaCrc32C();
+                        final int nextChunkPartitionId = chunkLengthB.getInt(4);
+                        final int nextChunkPartitionIdCRC = chunkLengthB.getInt(8);
+
+                        partitionIdCRC.update(chunkLengthB.array(), 0, 8);
+                        int generatedValue = (int)partitionIdCRC.getValue();
+                        if (generatedValue != nextChunkPartitionIdCRC) {
+                            chunkLengthB.position(0);
                             for (int partitionId : m_partitionIds) {
                                 m_corruptedPartitions.add(partitionId);
                             }
-                            if (m_continueOnCorruptedChunk) {
-                                m_chunkReads.release();
-                                continue;
-                            } else {
-                                throw new IOException("Failed decompression of saved table chunk");
-                            }
+                            throw new IOException("Chunk partition ID CRC check failed. " +
+                                    "This corrupts all partitions in this file");
                         }
-                    }
 
-                    /*
-                     * Skip irrelevant chunks after CRC is calculated. Always calulate the CRC
-                     * in case it is the length value that is corrupted
-                     */
-                    if (m_relevantPartitionIds != null) {
-                        if (!m_relevantPartitionIds.contains(nextChunkPartitionId)) {
-                            m_chunkReads.release();
-                            continue;
+                        /*
+                         * CRC for the data portion of the chunk
+                         */
+                        final int nextChunkCRC = chunkLengthB.getInt(12);
+
+                        /*
+                         * Sanity check the length value to ensure there isn't
+                         * a runtime exception or OOM.
+                         */
+                        if (nextChunkLength < 0) {
+                            throw new IOException("Corrupted TableSaveFile chunk has negative chunk length");
                         }
-                    }
 
-                    /*
-                     * VoltTable wants the buffer at the home position 0
-                     */
-                    c.b().position(0);
+                        if (nextChunkLength > COMPRESSED_CHUNKSIZE) {
+                            throw new IOException("Corrupted TableSaveFile chunk has unreasonable length " +
+                                    "> DEFAULT_CHUNKSIZE bytes");
+                        }
 
-                    synchronized (TableSaveFile.this) {
-                        m_availableChunks.offer(c);
-                        c = null;
-                        TableSaveFile.this.notifyAll();
-                    }
-                } catch (EOFException eof) {
-                    synchronized (TableSaveFile.this) {
-                        m_hasMoreChunks = false;
-                        if (expectedAnotherChunk) {
-                            m_chunkReaderException = new IOException(
-                                    "Expected to find another chunk but reached end of file instead");
+                        /*
+                         * Go fetch the compressed data, the CRC check and decompression
+                         * are done by the decoder pool while the next chunk is read
+                         */
+                        compressed = getInputBuffer();
+                        final ByteBuffer fileInputBuffer = compressed.b();
+                        fileInputBuffer.clear();
+                        fileInputBuffer.limit(nextChunkLength);
+                        sinceLastFAdvise += input.readFully(fileInputBuffer);
+                        fileInputBuffer.flip();
+
+                        final ListenableFuture<Container> decoded = m_decoders.submit(
+                                new ChunkDecoder(compressed, nextChunkPartitionId, nextChunkCRC));
+                        compressed = null;
+                        decoded.addListener(m_notifyConsumer, CoreUtils.SAMETHREADEXECUTOR);
+                        synchronized (TableSaveFile.this) {
+                            m_pendingChunks.offer(decoded);
+                            TableSaveFile.this.notifyAll();
+                        }
+                    } catch (EOFException eof) {
+                        synchronized (TableSaveFile.this) {
+                            m_hasMoreChunks = false;
+                            if (expectedAnotherChunk) {
+                                m_chunkReaderException = new IOException(
+                                        "Expected to find another chunk but reached end of file instead");
+                            }
+                            TableSaveFile.this.notifyAll();
+                        }
+                    } catch (IOException e) {
+                        synchronized (TableSaveFile.this) {
+                            // A read interrupted by close() closes the channel, that is not an error
+                            if (m_hasMoreChunks) {
+                                SNAP_LOG.error("Failed to read chunk of saved table", e);
+                                m_hasMoreChunks = false;
+                                m_chunkReaderException = e;
+                            }
+                            TableSaveFile.this.notifyAll();
+                        }
+                    } finally {
+                        if (compressed != null) {
+                            releaseInputBuffer(compressed);
                         }
-                        TableSaveFile.this.notifyAll();
-                    }
-                } catch (IOException e) {
-                    e.printStackTrace();
-                    synchronized (TableSaveFile.this) {
-                        m_hasMoreChunks = false;
-                        m_chunkReaderException = e;
-                        TableSaveFile.this.notifyAll();
-                    }
-                } catch (BufferUnderflowException e) {
-                    synchronized (TableSaveFile.this) {
-                        m_hasMoreChunks = false;
-                        m_chunkReaderException = new IOException(e);
-                        TableSaveFile.this.notifyAll();
-                    }
-                } catch (BufferOverflowException e) {
-                    synchronized (TableSaveFile.this) {
-                        m_hasMoreChunks = false;
-                        m_chunkReaderException = new IOException(e);
-                        TableSaveFile.this.notifyAll();
-                    }
-                } catch (IndexOutOfBoundsException e) {
-                    synchronized (TableSaveFile.this) {
-                        m_hasMoreChunks = false;
-                        m_chunkReaderException = new IOException(e);
-                        TableSaveFile.this.notifyAll();
                     }
-                } finally {
-                    if (c != null) c.discard();
                 }
+            } finally {
+                input.discard();
             }
-            fileInputBufferC.discard();
         }
 
         private void readChunks() {
@@ -999,7 +1206,7 @@ public class TableSaveFile
                     }
 
                     synchronized (TableSaveFile.this) {
-                        m_availableChunks.offer(c);
+                        m_pendingChunks.offer(Futures.immediateFuture(c));
                         c = null;
                         TableSaveFile.this.notifyAll();
                     }
@@ -1042,22 +1249,6 @@ public class TableSaveFile
             }
             fileInputBufferC.discard();
         }
-        private Container getOutputBuffer(final int nextChunkPartitionId) {
-            BBContainer c = m_buffers.poll();
-            if (c == null) {
-                final BBContainer originContainer = DBBPool.allocateDirect(DEFAULT_CHUNKSIZE);
-                final ByteBuffer b = originContainer.b();
-                final Container retcont = new Container(b, originContainer, nextChunkPartitionId);
-                return retcont;
-            }
-            /*
-             * Need to reconstruct the container with the partition id of the next
-             * chunk so it can be a final public field. The buffer, address, and origin
-             * container remain the same.
-             */
-            final Container retcont = new Container(c.b(), c, nextChunkPartitionId);
-            return retcont;
-        }
 
         @Override
         public void run() {
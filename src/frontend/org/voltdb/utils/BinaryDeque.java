@@ -18,6 +18,8 @@ package org.voltdb.utils;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
 
 import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltcore.utils.DeferredSerialization;
@@ -83,6 +85,20 @@ public interface BinaryDeque {
      */
     public void sync() throws IOException;
 
+    /**
+     * First half of an asynchronous sync. Returns the channels with data written since the last sync,
+     * forcing them afterwards persists everything that was in the queue at the time of the call.
+     * Implementations that can't be forced from another thread sync in place and return no channels.
+     * @throws IOException
+     */
+    public List<FileChannel> prepareSync() throws IOException;
+
+    /**
+     * Second half of an asynchronous sync, report that the channels returned by
+     * {@link #prepareSync()} were forced so closing their segments doesn't force them again.
+     */
+    public void syncCompleted(List<FileChannel> channels);
+
     /**
      * Release all resources (open files) held by the back store of the queue. Continuing to use the deque
      * will result in an exception
@@ -57,7 +57,6 @@ class CSVFileReader implements Runnable {
     private final CSVDataLoader m_loader;
     private final BulkLoaderErrorHandler m_errHandler;
     private final VoltType[] m_columnTypes;
-    private final int m_columnCount;
 
     static {
         m_blankStrings.put(VoltType.TINYINT, "0");
@@ -81,7 +80,6 @@ class CSVFileReader implements Runnable {
         m_loader = loader;
         m_errHandler = errorHandler;
         m_columnTypes = m_loader.getColumnTypes();
-        m_columnCount = m_columnTypes.length;
     }
 
     @Override
@@ -162,8 +160,17 @@ class CSVFileReader implements Runnable {
     }
 
     private String checkparams_trimspace(String[] lineValues) {
-        if (lineValues.length != m_columnCount) {
-            return String.format(COLUMN_COUNT_ERROR, lineValues.length, m_columnCount);
+        return checkparams_trimspace(lineValues, m_columnTypes);
+    }
+
+    /**
+     * Validate the column count and apply the blank, whitespace and null
+     * settings to the tokenized values in place.
+     * @return the error message for the line, or null if it is usable
+     */
+    static String checkparams_trimspace(String[] lineValues, VoltType[] columnTypes) {
+        if (lineValues.length != columnTypes.length) {
+            return String.format(COLUMN_COUNT_ERROR, lineValues.length, columnTypes.length);
         }
 
         for (int i = 0; i<lineValues.length; i++) {
@@ -172,7 +179,7 @@ class CSVFileReader implements Runnable {
                 if (m_config.blank.equalsIgnoreCase("error")) {
                     return String.format(BLANK_ERROR, i + 1);
                 } else if (m_config.blank.equalsIgnoreCase("empty")) {
-                    lineValues[i] = m_blankStrings.get(m_columnTypes[i]);
+                    lineValues[i] = m_blankStrings.get(columnTypes[i]);
                 }
                 //else m_config.blank == null which is already the case
             } // trim white space in this correctedLine. SuperCSV preserves all the whitespace by default
@@ -24,6 +24,7 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.List;
 import java.util.TimeZone;
 import java.util.concurrent.LinkedBlockingQueue;
 
@@ -53,6 +54,9 @@ import org.voltdb.client.ClientResponse;
  * Its a threshold but since processors are processing in parallel we may process rows beyond
  * maxerror and additional errors may occur. Only first maxerror indicated errors will be reported.
  *
+ * With --parsers the input is split into chunks that are tokenized and converted on that many
+ * threads, see CSVParallelFileReader, and the throughput of each stage is added to the report.
+ *
  */
 public class CSVLoader implements BulkLoaderErrorHandler {
 
@@ -307,6 +311,9 @@ public class CSVLoader implements BulkLoaderErrorHandler {
 
         @Option(desc = "Use upsert instead of insert", hasArg = false)
         boolean update = DEFAULT_UPSERT_MODE;
+
+        @Option(desc = "number of threads parsing chunks of the input in parallel, 0 parses on the reader thread (default: 0)")
+        int parsers = 0;
         /**
          * Validate command line options.
          */
@@ -330,6 +337,9 @@ public class CSVLoader implements BulkLoaderErrorHandler {
             if (batch < 0) {
                 exitWithMessageAndUsage("batch size number must be >= 0");
             }
+            if (parsers < 0) {
+                exitWithMessageAndUsage("parsers must be >= 0");
+            }
             if(!customNullString.isEmpty() && !blank.equals("error")){
                 blank = "empty";
             }
@@ -398,8 +408,16 @@ public class CSVLoader implements BulkLoaderErrorHandler {
         configuration();
         final Tokenizer tokenizer;
         ICsvListReader listReader = null;
+        BufferedReader chunkInput = null;
         try {
-            if (CSVLoader.standin) {
+            if (config.parsers > 0) {
+                // Chunks are tokenized by the parsers, the splitter only needs lines
+                if (CSVLoader.standin) {
+                    chunkInput = new BufferedReader(new InputStreamReader(System.in));
+                } else {
+                    chunkInput = new BufferedReader(new FileReader(config.file));
+                }
+            } else if (CSVLoader.standin) {
                 tokenizer = new Tokenizer(new BufferedReader(new InputStreamReader(System.in)), csvPreference,
                         config.strictquotes, config.escape, config.columnsizelimit,
                         config.skip);
@@ -449,8 +467,17 @@ public class CSVLoader implements BulkLoaderErrorHandler {
 
             CSVFileReader.initializeReader(cfg, csvClient, listReader);
 
-            CSVFileReader csvReader = new CSVFileReader(dataLoader, errHandler);
-            Thread readerThread = new Thread(csvReader);
+            CSVFileReader csvReader = null;
+            CSVParallelFileReader parallelReader = null;
+            Thread readerThread;
+            if (chunkInput != null) {
+                parallelReader = new CSVParallelFileReader(dataLoader, errHandler, chunkInput,
+                        csvPreference, config.parsers);
+                readerThread = new Thread(parallelReader);
+            } else {
+                csvReader = new CSVFileReader(dataLoader, errHandler);
+                readerThread = new Thread(csvReader);
+            }
             readerThread.setName("CSVFileReader");
             readerThread.setDaemon(true);
 
@@ -464,14 +491,25 @@ public class CSVLoader implements BulkLoaderErrorHandler {
 
             errHandler.waitForErrorFlushComplete();
 
-            readerTime = (csvReader.m_parsingTime) / 1000000;
+            List<String> stageReport = null;
+            if (parallelReader != null) {
+                stageReport = parallelReader.getStageReport();
+                readerTime = 0;
+            } else {
+                readerTime = (csvReader.m_parsingTime) / 1000000;
+            }
             insertCount = dataLoader.getProcessedRows();
             ackCount = insertCount - dataLoader.getFailedRows();
             rowsQueued = CSVFileReader.m_totalRowCount.get();
 
             //Close the reader.
             try {
-               listReader.close();
+                if (listReader != null) {
+                    listReader.close();
+                }
+                if (chunkInput != null) {
+                    chunkInput.close();
+                }
             } catch (Exception ex) {
                 m_log.error("Error closing reader: " + ex);
             } finally {
@@ -483,11 +521,17 @@ public class CSVLoader implements BulkLoaderErrorHandler {
                            + config.maxerrors);
             }
 
-            m_log.debug("Parsing CSV file took " + readerTime + " milliseconds.");
-            m_log.debug("Inserting Data took " + ((insertTimeEnd - insertTimeStart) - readerTime) + " milliseconds.");
+            if (stageReport != null) {
+                for (String stage : stageReport) {
+                    m_log.info(stage);
+                }
+            } else {
+                m_log.debug("Parsing CSV file took " + readerTime + " milliseconds.");
+                m_log.debug("Inserting Data took " + ((insertTimeEnd - insertTimeStart) - readerTime) + " milliseconds.");
+            }
             m_log.info("Read " + insertCount + " rows from file and successfully inserted "
                        + ackCount + " rows (final)");
-            errHandler.produceFiles(ackCount, insertCount);
+            errHandler.produceFiles(ackCount, insertCount, stageReport);
             close_cleanup();
             //In test junit mode we let it continue for reuse
             if (!CSVLoader.testMode) {
@@ -561,7 +605,7 @@ public class CSVLoader implements BulkLoaderErrorHandler {
         return client;
     }
 
-    private void produceFiles(long ackCount, long insertCount) {
+    private void produceFiles(long ackCount, long insertCount, List<String> stageReport) {
         long latency = System.currentTimeMillis() - start;
         m_log.info("Elapsed time: " + latency / 1000F
                 + " seconds");
@@ -605,6 +649,11 @@ public class CSVLoader implements BulkLoaderErrorHandler {
                     + m_errorCount + "\n");
             out_reportfile.write("CSVLoader rate: " + insertCount
                     / elapsedTimeSec + " row/s\n");
+            if (stageReport != null) {
+                for (String stage : stageReport) {
+                    out_reportfile.write(stage + "\n");
+                }
+            }
 
             m_log.info("Invalid row file: " + pathInvalidrowfile);
             m_log.info("Log file: " + pathLogfile);
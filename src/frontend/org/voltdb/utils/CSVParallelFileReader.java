@@ -0,0 +1,438 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.supercsv.exception.SuperCsvException;
+import org.supercsv.io.CsvListReader;
+import org.supercsv.io.ICsvListReader;
+import org.supercsv.prefs.CsvPreference;
+import org.supercsv_voltpatches.tokenizer.Tokenizer;
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.CoreUtils;
+import org.voltdb.ParameterConverter;
+import org.voltdb.VoltType;
+import org.voltdb.VoltTypeException;
+
+/**
+ *
+ * Split-and-parse alternative to CSVFileReader for large inputs. A splitter thread
+ * cuts the input into chunks of whole records, a pool of parser threads tokenizes,
+ * validates and type converts the chunks, and the thread running this reader hands
+ * the parsed rows to the CSVDataLoader in input order, so line numbers, limitrows
+ * and error reporting behave exactly like the single threaded reader.
+ *
+ */
+class CSVParallelFileReader implements Runnable {
+    private static final VoltLogger m_log = new VoltLogger("CSVLOADER");
+
+    // Target size of a chunk in characters, a chunk only ends on a record boundary
+    private static final int CHUNK_CHARS = Integer.getInteger("CSVLOADER_CHUNK_CHARS", 1024 * 256);
+
+    private final CSVDataLoader m_loader;
+    private final BulkLoaderErrorHandler m_errHandler;
+    private final VoltType[] m_columnTypes;
+    private final BufferedReader m_input;
+    private final CsvPreference m_preference;
+    private final int m_parserCount;
+    // Only the bulk loader converts on the client, procedures get the strings as before
+    private final boolean m_convert;
+
+    // Parsed chunks in input order, ending with an EndOfInput that has no rows
+    private final BlockingQueue<Future<ParsedChunk>> m_chunks;
+    private volatile boolean m_stopped = false;
+
+    // Per-stage counters for the throughput report
+    private long m_splitNanos = 0;
+    private long m_splitChars = 0;
+    private long m_splitLines = 0;
+    private long m_splitChunks = 0;
+    private final AtomicLong m_parseNanos = new AtomicLong(0);
+    private final AtomicLong m_parsedRows = new AtomicLong(0);
+    private long m_insertNanos = 0;
+    private long m_insertedRows = 0;
+    private long m_runNanos = 0;
+
+    /**
+     * A record parsed from a chunk, either values ready for the loader or the
+     * error to report for it. The line number is absolute in the input.
+     */
+    private static class ParsedRow {
+        final long m_endLine;
+        final String m_rawLine;
+        final Object[] m_values;
+        final String m_error;
+
+        ParsedRow(long endLine, String rawLine, Object[] values, String error) {
+            m_endLine = endLine;
+            m_rawLine = rawLine;
+            m_values = values;
+            m_error = error;
+        }
+    }
+
+    private static class ParsedChunk {
+        final List<ParsedRow> m_rows;
+        final long m_lastLine;
+
+        ParsedChunk(List<ParsedRow> rows, long lastLine) {
+            m_rows = rows;
+            m_lastLine = lastLine;
+        }
+    }
+
+    private class ChunkParser implements Callable<ParsedChunk> {
+        private final String m_text;
+        private final long m_firstLine;
+        private final long m_lastLine;
+
+        ChunkParser(String text, long firstLine, long lastLine) {
+            m_text = text;
+            m_firstLine = firstLine;
+            m_lastLine = lastLine;
+        }
+
+        @Override
+        public ParsedChunk call() throws Exception {
+            final long start = System.nanoTime();
+            final CSVLoader.CSVConfig config = CSVFileReader.m_config;
+            // Lines to skip were dropped by the splitter, chunk line numbers are relative
+            final Tokenizer tokenizer = new Tokenizer(new StringReader(m_text), m_preference,
+                    config.strictquotes, config.escape, config.columnsizelimit, 0);
+            final ICsvListReader reader = new CsvListReader(tokenizer, m_preference);
+            final long base = m_firstLine - 1;
+            final List<ParsedRow> rows = new ArrayList<ParsedRow>();
+            try {
+                while (!m_stopped) {
+                    try {
+                        List<String> lineList = reader.read();
+                        if (lineList == null) {
+                            break;
+                        }
+                        if (lineList.isEmpty()) {
+                            rows.add(new ParsedRow(base + reader.getLineNumber(), null, null, null));
+                            continue;
+                        }
+                        String[] lineValues = lineList.toArray(new String[0]);
+                        String lineCheckResult = CSVFileReader.checkparams_trimspace(lineValues, m_columnTypes);
+                        rows.add(new ParsedRow(base + reader.getLineNumber(),
+                                reader.getUntokenizedRow(),
+                                lineCheckResult == null ? convert(lineValues) : null,
+                                lineCheckResult));
+                    } catch (SuperCsvException e) {
+                        //Catch rows that can not be read by superCSV reader.
+                        // e.g. items without quotes when strictquotes is enabled.
+                        rows.add(new ParsedRow(base + reader.getLineNumber(),
+                                reader.getUntokenizedRow(), null, e.getMessage()));
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+            m_parsedRows.addAndGet(rows.size());
+            m_parseNanos.addAndGet(System.nanoTime() - start);
+            return new ParsedChunk(rows, m_lastLine);
+        }
+
+        /**
+         * Convert to the column types here rather than on the partition threads of the
+         * bulk loader. A value that doesn't convert leaves the row as strings, so the
+         * loader reports the failure and counts the row the same way it always has.
+         */
+        private Object[] convert(String[] lineValues) {
+            if (!m_convert) {
+                return lineValues;
+            }
+            final Object[] values = new Object[lineValues.length];
+            try {
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = ParameterConverter.tryToMakeCompatible(m_columnTypes[i].classFromType(),
+                            lineValues[i]);
+                }
+            } catch (VoltTypeException e) {
+                return lineValues;
+            }
+            return values;
+        }
+    }
+
+    /**
+     * Reads the input line by line and submits chunks ending on record boundaries
+     * to the parsers. A chunk can only end where the line isn't inside a quoted
+     * value, otherwise a multi-line value would be split across two chunks.
+     */
+    private class ChunkSplitter implements Runnable {
+        private final ExecutorService m_parsers;
+
+        ChunkSplitter(ExecutorService parsers) {
+            m_parsers = parsers;
+        }
+
+        @Override
+        public void run() {
+            final CSVLoader.CSVConfig config = CSVFileReader.m_config;
+            final long start = System.nanoTime();
+            long lineNumber = 0;
+            try {
+                String line;
+                while (lineNumber < config.skip && !m_stopped && m_input.readLine() != null) {
+                    lineNumber++;
+                }
+
+                StringBuilder chunk = new StringBuilder(CHUNK_CHARS + 1024);
+                long firstLine = lineNumber + 1;
+                boolean inQuote = false;
+                while (!m_stopped && (line = m_input.readLine()) != null) {
+                    lineNumber++;
+                    m_splitChars += line.length() + 1;
+                    chunk.append(line).append('\n');
+                    inQuote = scanQuotes(line, inQuote, config);
+                    // An unterminated quote would otherwise pull the rest of the input into
+                    // one chunk, let the tokenizer report it once the column limit is reached.
+                    if (chunk.length() >= CHUNK_CHARS &&
+                            (!inQuote || chunk.length() >= CHUNK_CHARS + config.columnsizelimit)) {
+                        submit(chunk.toString(), firstLine, lineNumber);
+                        chunk.setLength(0);
+                        firstLine = lineNumber + 1;
+                        inQuote = false;
+                    }
+                }
+                if (chunk.length() > 0 && !m_stopped) {
+                    submit(chunk.toString(), firstLine, lineNumber);
+                }
+            } catch (IOException e) {
+                m_log.error("Failed to read CSV line from file: " + e);
+            } catch (InterruptedException e) {
+                m_log.error("CSVLoader interrupted: " + e);
+            } finally {
+                m_splitLines = lineNumber;
+                m_splitNanos = System.nanoTime() - start;
+                try {
+                    m_chunks.put(new EndOfInput(lineNumber));
+                } catch (InterruptedException e) {
+                    m_log.error("CSVLoader interrupted: " + e);
+                }
+            }
+        }
+
+        private void submit(String text, long firstLine, long lastLine) throws InterruptedException {
+            m_splitChunks++;
+            m_chunks.put(m_parsers.submit(new ChunkParser(text, firstLine, lastLine)));
+        }
+    }
+
+    /**
+     * Completed future queued after the last chunk. The reader keeps draining the
+     * queue until the splitter has exited, so queueing it never blocks for long.
+     */
+    private static class EndOfInput implements Future<ParsedChunk> {
+        private final ParsedChunk m_chunk;
+
+        EndOfInput(long lastLine) {
+            m_chunk = new ParsedChunk(null, lastLine);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean isDone() {
+            return true;
+        }
+
+        @Override
+        public ParsedChunk get() {
+            return m_chunk;
+        }
+
+        @Override
+        public ParsedChunk get(long timeout, TimeUnit unit) {
+            return m_chunk;
+        }
+    }
+
+    /**
+     * Track whether the end of the line is inside a quoted value, following the
+     * tokenizer's rules that outside quotes an escape character protects the next
+     * character unless it starts the \N null marker, and that inside quotes only
+     * the quote character matters ("" toggles twice).
+     */
+    static boolean scanQuotes(String line, boolean inQuote, CSVLoader.CSVConfig config) {
+        final char quote = config.quotechar;
+        final char escape = config.escape;
+        final int length = line.length();
+        for (int i = 0; i < length; i++) {
+            final char c = line.charAt(i);
+            if (!inQuote && c == escape && i + 1 < length && line.charAt(i + 1) != 'N') {
+                i++;
+            } else if (c == quote && quote != '\u0000') {
+                inQuote = !inQuote;
+            }
+        }
+        return inQuote;
+    }
+
+    public CSVParallelFileReader(CSVDataLoader loader, BulkLoaderErrorHandler errorHandler,
+            BufferedReader input, CsvPreference preference, int parserCount) {
+        m_loader = loader;
+        m_errHandler = errorHandler;
+        m_columnTypes = m_loader.getColumnTypes();
+        m_input = input;
+        m_preference = preference;
+        m_parserCount = parserCount;
+        m_convert = loader instanceof CSVBulkDataLoader;
+        // One chunk being split, one being dispatched and one in flight per parser
+        m_chunks = new ArrayBlockingQueue<Future<ParsedChunk>>(parserCount * 2 + 1);
+    }
+
+    @Override
+    public void run() {
+        final long start = System.nanoTime();
+        final CSVLoader.CSVConfig config = CSVFileReader.m_config;
+        final ExecutorService parsers = Executors.newFixedThreadPool(m_parserCount,
+                CoreUtils.getThreadFactory("CSVParser"));
+        final Thread splitter = new Thread(new ChunkSplitter(parsers), "CSVChunkSplitter");
+        splitter.setDaemon(true);
+        splitter.start();
+
+        CSVFileReader.m_totalLineCount.set(config.skip);
+        long lastEndLine = config.skip;
+        try {
+            dispatch:
+            while (true) {
+                final ParsedChunk chunk = m_chunks.take().get();
+                if (chunk.m_rows == null) {
+                    // Mirrors the single threaded reader which consumes a row of the limit on EOF
+                    config.limitrows--;
+                    CSVFileReader.m_totalLineCount.set(lastEndLine);
+                    if (CSVFileReader.m_totalLineCount.get() > chunk.m_lastLine) {
+                        CSVFileReader.m_totalLineCount.set(chunk.m_lastLine);
+                    }
+                    break;
+                }
+                for (ParsedRow row : chunk.m_rows) {
+                    if (!(config.limitrows-- > 0) || m_errHandler.hasReachedErrorLimit()) {
+                        break dispatch;
+                    }
+                    // Like the single threaded reader, count the lines up to the end of the
+                    // previous row and report errors on the line following it
+                    CSVFileReader.m_totalLineCount.set(lastEndLine);
+                    final long errorLine = lastEndLine + 1;
+                    lastEndLine = row.m_endLine;
+                    CSVFileReader.m_totalRowCount.incrementAndGet();
+                    if (row.m_values == null && row.m_error == null) {
+                        continue;
+                    }
+                    if (row.m_error != null) {
+                        final RowWithMetaData metaData = new RowWithMetaData(row.m_rawLine, errorLine);
+                        if (m_errHandler.handleError(metaData, null, row.m_error)) {
+                            break dispatch;
+                        }
+                        continue;
+                    }
+                    final long insertStart = System.nanoTime();
+                    m_loader.insertRow(new RowWithMetaData(row.m_rawLine, row.m_endLine), row.m_values);
+                    m_insertNanos += System.nanoTime() - insertStart;
+                    m_insertedRows++;
+                }
+            }
+        } catch (ExecutionException e) {
+            m_log.error("Failed to parse CSV input: " + e.getCause());
+        } catch (InterruptedException e) {
+            m_log.error("CSVLoader interrupted: " + e);
+        }
+
+        stop(splitter, parsers);
+
+        //Now wait for processors to see endOfData and count down. After that drain to finish all callbacks
+        try {
+            m_log.debug("Waiting for CSVDataLoader to finish.");
+            m_loader.close();
+            m_log.debug("CSVDataLoader Done.");
+        } catch (Exception ex) {
+            m_log.warn("Stopped processing because of connection error. "
+                    + "A report will be generated with what we processed so far. Error: " + ex);
+        }
+        m_runNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Stop the splitter and parsers when the reader finished early, draining the
+     * chunk queue so the splitter isn't left blocked on a full queue.
+     */
+    private void stop(Thread splitter, ExecutorService parsers) {
+        m_stopped = true;
+        try {
+            while (splitter.isAlive()) {
+                Future<ParsedChunk> pending = m_chunks.poll(10, TimeUnit.MILLISECONDS);
+                if (pending != null) {
+                    pending.cancel(true);
+                }
+            }
+            m_chunks.clear();
+            parsers.shutdownNow();
+            parsers.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            m_log.error("CSVLoader interrupted: " + e);
+        }
+    }
+
+    /**
+     * @return one line per stage with its throughput, for the log and the report file
+     */
+    List<String> getStageReport() {
+        List<String> report = new ArrayList<String>();
+        report.add(String.format("Split stage: %d lines, %d chunks, %.1f MB in %d ms (%s lines/s)",
+                m_splitLines, m_splitChunks, m_splitChars / (1024.0 * 1024.0),
+                TimeUnit.NANOSECONDS.toMillis(m_splitNanos), rate(m_splitLines, m_splitNanos)));
+        report.add(String.format("Parse stage: %d rows on %d threads, %d ms busy (%s rows/s per thread)",
+                m_parsedRows.get(), m_parserCount, TimeUnit.NANOSECONDS.toMillis(m_parseNanos.get()),
+                rate(m_parsedRows.get(), m_parseNanos.get())));
+        report.add(String.format("Insert stage: %d rows queued, %d ms blocked in the loader (%s rows/s overall)",
+                m_insertedRows, TimeUnit.NANOSECONDS.toMillis(m_insertNanos), rate(m_insertedRows, m_runNanos)));
+        return report;
+    }
+
+    private static String rate(long count, long nanos) {
+        if (nanos <= 0) {
+            return "-";
+        }
+        return String.format("%.0f", count * 1e9 / nanos);
+    }
+}
@@ -0,0 +1,210 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+import org.xerial.snappy.Snappy;
+
+/**
+ * Block codecs for chunked data such as snapshot table chunks. All of them
+ * follow the Snappy direct buffer conventions used by {@link CompressionService}:
+ * output is written starting at the position of the output buffer, the limit
+ * of the output buffer is set to the end of the written data, and positions
+ * are left unchanged.
+ */
+public enum CompressionCodec {
+    /**
+     * Chunks are stored as is, trading disk bandwidth for CPU.
+     */
+    NONE {
+        @Override
+        public int maxCompressedLength(int uncompressedSize) {
+            return uncompressedSize;
+        }
+
+        @Override
+        public int compress(ByteBuffer input, ByteBuffer output) {
+            final int length = input.remaining();
+            final ByteBuffer dst = output.duplicate();
+            dst.put(input.duplicate());
+            output.limit(output.position() + length);
+            return length;
+        }
+
+        @Override
+        public int uncompressedLength(ByteBuffer compressed) {
+            return compressed.remaining();
+        }
+
+        @Override
+        public int decompress(ByteBuffer compressed, ByteBuffer output) {
+            return compress(compressed, output);
+        }
+    },
+
+    SNAPPY {
+        @Override
+        public int maxCompressedLength(int uncompressedSize) {
+            return Snappy.maxCompressedLength(uncompressedSize);
+        }
+
+        @Override
+        public int compress(ByteBuffer input, ByteBuffer output) throws IOException {
+            return CompressionService.compressBuffer(input, output);
+        }
+
+        @Override
+        public int uncompressedLength(ByteBuffer compressed) throws IOException {
+            return CompressionService.uncompressedLength(compressed);
+        }
+
+        @Override
+        public int decompress(ByteBuffer compressed, ByteBuffer output) throws IOException {
+            return CompressionService.decompressBuffer(compressed, output);
+        }
+    },
+
+    /**
+     * LZ4 block format preceded by the 4-byte uncompressed length, which the
+     * raw block format doesn't record. Faster than Snappy at a similar ratio.
+     * The bundled LZ4 only works with arrays, so direct buffers are staged
+     * through per-thread scratch arrays.
+     */
+    LZ4 {
+        @Override
+        public int maxCompressedLength(int uncompressedSize) {
+            return 4 + m_lz4Compressor.maxCompressedLength(uncompressedSize);
+        }
+
+        @Override
+        public int compress(ByteBuffer input, ByteBuffer output) throws IOException {
+            final int length = input.remaining();
+            final int maxLength = m_lz4Compressor.maxCompressedLength(length);
+            final byte[] in = scratch(m_lz4Input, length);
+            final byte[] out = scratch(m_lz4Output, maxLength);
+            input.duplicate().get(in, 0, length);
+            final int compressedLength;
+            try {
+                compressedLength = m_lz4Compressor.compress(in, 0, length, out, 0, maxLength);
+            } catch (LZ4Exception e) {
+                throw new IOException(e);
+            }
+            final ByteBuffer dst = output.duplicate();
+            dst.putInt(length);
+            dst.put(out, 0, compressedLength);
+            output.limit(output.position() + 4 + compressedLength);
+            return 4 + compressedLength;
+        }
+
+        @Override
+        public int uncompressedLength(ByteBuffer compressed) throws IOException {
+            if (compressed.remaining() < 4) {
+                throw new IOException("LZ4 block is too short to contain its length");
+            }
+            return compressed.getInt(compressed.position());
+        }
+
+        @Override
+        public int decompress(ByteBuffer compressed, ByteBuffer output) throws IOException {
+            final int uncompressedLength = uncompressedLength(compressed);
+            final int compressedLength = compressed.remaining() - 4;
+            if (uncompressedLength < 0 || uncompressedLength > output.remaining()) {
+                throw new IOException("LZ4 block has an invalid uncompressed length " + uncompressedLength);
+            }
+            final byte[] in = scratch(m_lz4Input, compressedLength);
+            final byte[] out = scratch(m_lz4Output, uncompressedLength);
+            final ByteBuffer src = compressed.duplicate();
+            src.position(src.position() + 4);
+            src.get(in, 0, compressedLength);
+            try {
+                final int read = m_lz4Decompressor.decompress(in, 0, out, 0, uncompressedLength);
+                if (read != compressedLength) {
+                    throw new IOException("LZ4 block length mismatch, expected " +
+                            compressedLength + " bytes but consumed " + read);
+                }
+            } catch (LZ4Exception e) {
+                throw new IOException(e);
+            }
+            output.duplicate().put(out, 0, uncompressedLength);
+            output.limit(output.position() + uncompressedLength);
+            return uncompressedLength;
+        }
+    };
+
+    private static final LZ4Compressor m_lz4Compressor = LZ4Factory.fastestInstance().fastCompressor();
+    private static final LZ4FastDecompressor m_lz4Decompressor = LZ4Factory.fastestInstance().fastDecompressor();
+
+    private static final ThreadLocal<byte[][]> m_lz4Input = new ThreadLocal<byte[][]>() {
+        @Override
+        protected byte[][] initialValue() {
+            return new byte[][] { new byte[1024 * 32] };
+        }
+    };
+    private static final ThreadLocal<byte[][]> m_lz4Output = new ThreadLocal<byte[][]>() {
+        @Override
+        protected byte[][] initialValue() {
+            return new byte[][] { new byte[1024 * 32] };
+        }
+    };
+
+    private static byte[] scratch(ThreadLocal<byte[][]> holder, int length) {
+        final byte[][] ref = holder.get();
+        if (ref[0].length < length) {
+            ref[0] = new byte[Math.max(ref[0].length * 2, length)];
+        }
+        return ref[0];
+    }
+
+    public abstract int maxCompressedLength(int uncompressedSize);
+
+    /**
+     * Compress the remaining bytes of input into output at its position.
+     * @return the number of compressed bytes written
+     */
+    public abstract int compress(ByteBuffer input, ByteBuffer output) throws IOException;
+
+    /**
+     * @return the uncompressed length of the block remaining in compressed
+     */
+    public abstract int uncompressedLength(ByteBuffer compressed) throws IOException;
+
+    /**
+     * Decompress the block remaining in compressed into output at its position.
+     * @return the number of uncompressed bytes written
+     */
+    public abstract int decompress(ByteBuffer compressed, ByteBuffer output) throws IOException;
+
+    /**
+     * Case insensitive lookup that reports the valid choices when the name is unknown.
+     */
+    public static CompressionCodec fromString(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown compression codec " + name +
+                    ", should be one of [\"none\" | \"snappy\" | \"lz4\"]");
+        }
+    }
+}
@@ -20,6 +20,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
 
 import org.voltcore.logging.VoltLogger;
@@ -56,6 +57,9 @@ class PBDMMapSegment extends PBDSegment {
     //ID of this segment
     private final Long m_index;
 
+    //Copy uncompressed objects out of the mapping instead of returning slices of it
+    private final boolean m_copyOnPoll;
+
     private boolean m_closed = true;
 
     //How many entries that have been polled have from this file have been discarded.
@@ -63,8 +67,17 @@ class PBDMMapSegment extends PBDSegment {
     private int m_discardCount;
 
     public PBDMMapSegment(Long index, File file) {
+        this(index, file, false);
+    }
+
+    /**
+     * @param copyOnPoll  Return copies of uncompressed objects so that polled containers stay
+     *                    valid after the segment is closed and unmapped
+     */
+    PBDMMapSegment(Long index, File file, boolean copyOnPoll) {
         super(file);
         m_index = index;
+        m_copyOnPoll = copyOnPoll;
         reset();
         if (LOG.isDebugEnabled()) {
             LOG.debug("Creating Segment: " + file.getName() + " At Index: " + m_index);
@@ -147,8 +160,11 @@ class PBDMMapSegment extends PBDSegment {
         m_fc = m_ras.getChannel();
 
         if (forWrite) {
-            //If this is for writing, map the chunk size RW and put the buf positions at the start
-            m_buf = DBBPool.wrapMBB(m_fc.map(MapMode.READ_WRITE, 0, CHUNK_SIZE));
+            //If this is for writing, map the chunk size RW and put the buf positions at the start.
+            //Truncation opens existing segments for write without emptying them and never appends,
+            //map only what is there so the file doesn't grow to the chunk size
+            final long size = truncate ? CHUNK_SIZE : Math.max(m_fc.size(), SEGMENT_HEADER_BYTES);
+            m_buf = DBBPool.wrapMBB(m_fc.map(MapMode.READ_WRITE, 0, size));
             m_buf.b().position(SIZE_OFFSET + 4);
             m_readBuf = m_buf.b().duplicate();
             if (truncate) {
@@ -207,6 +223,13 @@ class PBDMMapSegment extends PBDSegment {
         m_syncedSinceLastEdit = true;
     }
 
+    @Override
+    FileChannel prepareSync() throws IOException {
+        //Forcing the mapping races with unmapping it on close, sync in place
+        sync();
+        return null;
+    }
+
     @Override
     public boolean hasMoreEntries() throws IOException {
         if (m_closed) throw new IOException("closed");
@@ -318,6 +341,15 @@ class PBDMMapSegment extends PBDSegment {
             final long destAddr = retcont.address();
             Snappy.rawUncompress(sourceAddr, nextCompressedLength, destAddr);
             m_readBuf.position(m_readBuf.position() + nextCompressedLength);
+        } else if (m_copyOnPoll) {
+            retcont = factory.getContainer(nextUncompressedLength);
+            final ByteBuffer retbuf = retcont.b();
+            retbuf.limit(nextUncompressedLength);
+            final int oldLimit = m_readBuf.limit();
+            m_readBuf.limit(m_readBuf.position() + nextUncompressedLength);
+            retbuf.put(m_readBuf);
+            m_readBuf.limit(oldLimit);
+            retbuf.flip();
         } else {
             //Return a slice
             final int oldLimit = m_readBuf.limit();
@@ -200,11 +200,17 @@ public class PBDRegularSegment extends PBDSegment {
     public void close() throws IOException {
         try {
             if (m_fc != null) {
+                if (m_pendingSyncs > 0) {
+                    //The sync that collected this channel fails with ClosedChannelException
+                    //once it is closed, force it here so that sync still reaches the disk
+                    m_fc.force(true);
+                }
                 m_fc.close();
             }
         } finally {
             m_ras = null;
             m_fc = null;
+            m_pendingSyncs = 0;
             m_closed = true;
             reset();
         }
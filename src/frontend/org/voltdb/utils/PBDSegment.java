@@ -42,6 +42,8 @@ public abstract class PBDSegment {
     protected FileChannel m_fc;
     //Avoid unecessary sync with this flag
     protected boolean m_syncedSinceLastEdit = true;
+    //Channels handed out by prepareSync() that have not been reported forced yet, close has to force them
+    protected int m_pendingSyncs = 0;
 
     public PBDSegment(File file)
     {
@@ -77,6 +79,31 @@ public abstract class PBDSegment {
 
     abstract void sync() throws IOException;
 
+    /**
+     * Mark the segment as synced and return the channel that has to be forced to make
+     * that true, so the caller can force it without holding the deque locks.
+     * @return null if nothing was written since the last sync
+     */
+    FileChannel prepareSync() throws IOException {
+        if (m_closed) throw new IOException("Segment closed");
+        if (m_syncedSinceLastEdit) {
+            return null;
+        }
+        m_syncedSinceLastEdit = true;
+        m_pendingSyncs++;
+        return m_fc;
+    }
+
+    /**
+     * Called once a channel returned by {@link #prepareSync()} was forced, so close
+     * doesn't have to force it again. Ignores channels of an earlier open of the segment.
+     */
+    void syncCompleted(FileChannel fc) {
+        if (fc == m_fc && m_pendingSyncs > 0) {
+            m_pendingSyncs--;
+        }
+    }
+
     abstract boolean hasMoreEntries() throws IOException;
 
     abstract boolean isEmpty() throws IOException;
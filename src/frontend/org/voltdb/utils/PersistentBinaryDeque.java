@@ -20,13 +20,19 @@ import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Deque;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.utils.DBBPool;
@@ -47,6 +53,11 @@ import com.google_voltpatches.common.base.Throwables;
  * once all objects from the segment have been polled and all the containers returned by poll have been discarded.
  * Push is implemented by creating new segments at the head of the deque containing the objects to be pushed.
  *
+ * Offers only touch the tail segment and are serialized by a write lock of their own. Everything else,
+ * including polls and changes to the list of segments, synchronizes on the deque and also takes the
+ * write lock whenever it touches the tail segment, so a consumer working through older segments doesn't
+ * block the producer. Segments that are done being written are read through a read only mapping, and
+ * sync can force the segment files without holding either lock, see {@link #prepareSync()}.
  */
 public class PersistentBinaryDeque implements BinaryDeque {
     private static final VoltLogger LOG = new VoltLogger("HOST");
@@ -87,7 +98,10 @@ public class PersistentBinaryDeque implements BinaryDeque {
     //Segments that are no longer being written to and can be polled
     //These segments are "immutable". They will not be modified until deletion
     private final Deque<PBDSegment> m_segments = new ArrayDeque<PBDSegment>();
-    private int m_numObjects = 0;
+    //The last segment, the only one offers write to. Changed with both locks held.
+    private volatile PBDSegment m_tail;
+    private final ReentrantLock m_writeLock = new ReentrantLock();
+    private final AtomicInteger m_numObjects = new AtomicInteger(0);
     private volatile boolean m_closed = false;
 
     /**
@@ -158,7 +172,7 @@ public class PersistentBinaryDeque implements BinaryDeque {
                             return false;
                         }
                         Long index = Long.valueOf(seqNum);
-                        PBDSegment qs = newSegment( index, pathname );
+                        PBDSegment qs = newReadSegment( index, pathname );
                         try {
                             qs.open(false);
                             m_initializedFromExistingFiles = true;
@@ -172,7 +186,7 @@ public class PersistentBinaryDeque implements BinaryDeque {
                                     return false;
                                 }
                             }
-                            m_numObjects += qs.getNumEntries();
+                            m_numObjects.addAndGet(qs.getNumEntries());
                             if (m_usageSpecificLog.isDebugEnabled()) {
                                 m_usageSpecificLog.debug("Segment " + qs.file() + " has been recovered");
                             }
@@ -226,6 +240,7 @@ public class PersistentBinaryDeque implements BinaryDeque {
                     new VoltFile(m_path, m_nonce + "." + writeSegmentIndex + ".pbd"));
         m_segments.offer(writeSegment);
         writeSegment.open(true);
+        m_tail = writeSegment;
         assertions();
     }
 
@@ -238,62 +253,124 @@ public class PersistentBinaryDeque implements BinaryDeque {
         }
     }
 
+    /*
+     * Segments that will only be read from again are mapped, a poll is then a decompression
+     * straight out of the page cache instead of two reads into scratch buffers
+     */
+    private final boolean m_mmapReads = Boolean.getBoolean("PBD_MMAP_READS");
+    private PBDSegment newReadSegment(long segmentId, File file) {
+        if (m_mmapReads) {
+            // Polled objects may outlive the mapping when the deque is closed, so copy them out
+            return new PBDMMapSegment(segmentId, file, true);
+        } else {
+            return newSegment(segmentId, file);
+        }
+    }
+
     /**
      * Close the tail segment if it's not being read from currently, then offer the new segment.
+     * A closed tail is done being written and is swapped for a read segment.
      * @throws IOException
      */
     private void closeTailAndOffer(PBDSegment newSegment) throws IOException {
         final PBDSegment last = m_segments.peekLast();
         if (last != null && !last.isBeingPolled()) {
             last.close();
+            if (m_mmapReads && !(last instanceof PBDMMapSegment)) {
+                m_segments.pollLast();
+                m_segments.offer(newReadSegment(last.segmentId(), last.file()));
+            }
         }
         m_segments.offer(newSegment);
+        m_tail = newSegment;
     }
 
     @Override
-    public synchronized void offer(BBContainer object) throws IOException {
+    public void offer(BBContainer object) throws IOException {
         offer(object, true);
     }
 
     @Override
-    public synchronized void offer(BBContainer object, boolean allowCompression) throws IOException {
-        assertions();
-        if (m_closed) {
-            throw new IOException("Closed");
+    public void offer(BBContainer object, boolean allowCompression) throws IOException {
+        final boolean compress = object.b().isDirect() && allowCompression;
+        m_writeLock.lock();
+        try {
+            if (m_closed) {
+                throw new IOException("Closed");
+            }
+            if (m_tail.offer(object, compress)) {
+                incrementNumObjects();
+                return;
+            }
+        } finally {
+            m_writeLock.unlock();
         }
 
-        PBDSegment tail = m_segments.peekLast();
-        final boolean compress = object.b().isDirect() && allowCompression;
-        if (!tail.offer(object, compress)) {
-            tail = addSegment(tail);
-            final boolean success = tail.offer(object, compress);
-            if (!success) {
-                throw new IOException("Failed to offer object in PBD");
+        //The tail is full, adding a segment changes the segment list
+        synchronized (this) {
+            m_writeLock.lock();
+            try {
+                assertions();
+                if (m_closed) {
+                    throw new IOException("Closed");
+                }
+
+                PBDSegment tail = m_tail;
+                if (!tail.offer(object, compress)) {
+                    tail = addSegment(tail);
+                    final boolean success = tail.offer(object, compress);
+                    if (!success) {
+                        throw new IOException("Failed to offer object in PBD");
+                    }
+                }
+                incrementNumObjects();
+                assertions();
+            } finally {
+                m_writeLock.unlock();
             }
         }
-        incrementNumObjects();
-        assertions();
     }
 
     @Override
-    public synchronized int offer(DeferredSerialization ds) throws IOException {
-        assertions();
-        if (m_closed) {
-            throw new IOException("Closed");
+    public int offer(DeferredSerialization ds) throws IOException {
+        m_writeLock.lock();
+        try {
+            if (m_closed) {
+                throw new IOException("Closed");
+            }
+            final int written = m_tail.offer(ds);
+            if (written >= 0) {
+                incrementNumObjects();
+                return written;
+            }
+        } finally {
+            m_writeLock.unlock();
         }
 
-        PBDSegment tail = m_segments.peekLast();
-        int written = tail.offer(ds);
-        if (written < 0) {
-            tail = addSegment(tail);
-            written = tail.offer(ds);
-            if (written < 0) {
-                throw new IOException("Failed to offer object in PBD");
+        synchronized (this) {
+            m_writeLock.lock();
+            try {
+                assertions();
+                if (m_closed) {
+                    throw new IOException("Closed");
+                }
+
+                PBDSegment tail = m_tail;
+                int written = tail.offer(ds);
+                if (written < 0) {
+                    tail = addSegment(tail);
+                    written = tail.offer(ds);
+                    if (written < 0) {
+                        throw new IOException("Failed to offer object in PBD");
+                    }
+                }
+                incrementNumObjects();
+                assertions();
+                return written;
+            } finally {
+                m_writeLock.unlock();
             }
         }
-        incrementNumObjects();
-        assertions();
-        return written;
     }
 
     private PBDSegment addSegment(PBDSegment tail) throws IOException {
@@ -372,11 +449,13 @@ public class PersistentBinaryDeque implements BinaryDeque {
             }
 
             // Don't close the last one, it'll be used for writes
-            if (!m_segments.isEmpty()) {
+            if (m_segments.isEmpty()) {
+                m_segments.push(writeSegment);
+                m_tail = writeSegment;
+            } else {
                 writeSegment.close();
+                m_segments.push(m_mmapReads ? newReadSegment(writeSegment.segmentId(), writeSegment.file()) : writeSegment);
             }
-
-            m_segments.push(writeSegment);
         }
         assertions();
     }
@@ -392,6 +471,20 @@ public class PersistentBinaryDeque implements BinaryDeque {
         PBDSegment segment = null;
 
         for (PBDSegment s : m_segments) {
+            if (s == m_tail) {
+                //Only the tail is shared with the producer
+                m_writeLock.lock();
+                try {
+                    if (s.hasMoreEntries()) {
+                        segment = s;
+                        retcont = segment.poll(ocf);
+                    }
+                } finally {
+                    m_writeLock.unlock();
+                }
+                break;
+            }
+
             if (s.isClosed()) {
                 s.open(false);
             }
@@ -429,14 +522,12 @@ public class PersistentBinaryDeque implements BinaryDeque {
 
                     //Segment is potentially ready for deletion
                     try {
-                        if (segment.isEmpty()) {
-                            if (segment != m_segments.peekLast()) {
-                                m_segments.remove(segment);
-                                if (m_usageSpecificLog.isDebugEnabled()) {
-                                    m_usageSpecificLog.debug("Segment " + segment.file() + " has been closed and deleted after discarding last buffer");
-                                }
-                                segment.closeAndDelete();
+                        if (segment != m_tail && segment.isEmpty()) {
+                            m_segments.remove(segment);
+                            if (m_usageSpecificLog.isDebugEnabled()) {
+                                m_usageSpecificLog.debug("Segment " + segment.file() + " has been closed and deleted after discarding last buffer");
                             }
+                            segment.closeAndDelete();
                         }
                     } catch (IOException e) {
                         LOG.error("Exception closing and deleting PBD segment", e);
@@ -447,27 +538,73 @@ public class PersistentBinaryDeque implements BinaryDeque {
     }
 
     @Override
-    public synchronized void sync() throws IOException {
-        if (m_closed) {
-            throw new IOException("Closed");
+    public void sync() throws IOException {
+        final List<FileChannel> channels = prepareSync();
+        for (FileChannel fc : channels) {
+            try {
+                fc.force(true);
+            } catch (ClosedChannelException e) {
+                //Segment was closed after being collected, close() forces a segment with a pending sync
+            }
         }
-        for (PBDSegment segment : m_segments) {
-            if (!segment.isClosed()) {
-                segment.sync();
+        syncCompleted(channels);
+    }
+
+    @Override
+    public synchronized List<FileChannel> prepareSync() throws IOException {
+        m_writeLock.lock();
+        try {
+            if (m_closed) {
+                throw new IOException("Closed");
             }
+            List<FileChannel> channels = new ArrayList<FileChannel>();
+            for (PBDSegment segment : m_segments) {
+                if (!segment.isClosed()) {
+                    FileChannel fc = segment.prepareSync();
+                    if (fc != null) {
+                        channels.add(fc);
+                    }
+                }
+            }
+            return channels;
+        } finally {
+            m_writeLock.unlock();
         }
     }
 
     @Override
-    public synchronized void close() throws IOException {
-        if (m_closed) {
+    public synchronized void syncCompleted(List<FileChannel> channels) {
+        if (channels.isEmpty()) {
             return;
         }
-        m_closed = true;
-        for (PBDSegment segment : m_segments) {
-            segment.close();
+        m_writeLock.lock();
+        try {
+            for (PBDSegment segment : m_segments) {
+                if (!segment.isClosed()) {
+                    for (FileChannel fc : channels) {
+                        segment.syncCompleted(fc);
+                    }
+                }
+            }
+        } finally {
+            m_writeLock.unlock();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        m_writeLock.lock();
+        try {
+            if (m_closed) {
+                return;
+            }
+            m_closed = true;
+            for (PBDSegment segment : m_segments) {
+                segment.close();
+            }
+        } finally {
+            m_writeLock.unlock();
         }
-        m_closed = true;
     }
 
     @Override
@@ -477,16 +614,21 @@ public class PersistentBinaryDeque implements BinaryDeque {
             throw new IOException("Closed");
         }
 
-        for (PBDSegment s : m_segments) {
-            final boolean wasClosed = s.isClosed();
-            try {
-                if (wasClosed) s.open(false);
-                if (s.hasMoreEntries()) return false;
-            } finally {
-                if (wasClosed) {
-                    s.close();
+        m_writeLock.lock();
+        try {
+            for (PBDSegment s : m_segments) {
+                final boolean wasClosed = s.isClosed();
+                try {
+                    if (wasClosed) s.open(false);
+                    if (s.hasMoreEntries()) return false;
+                } finally {
+                    if (wasClosed) {
+                        s.close();
+                    }
                 }
             }
+        } finally {
+            m_writeLock.unlock();
         }
         return true;
     }
@@ -500,24 +642,34 @@ public class PersistentBinaryDeque implements BinaryDeque {
     public synchronized long sizeInBytes() throws IOException {
         assertions();
         long size = 0;
-        for (PBDSegment segment : m_segments) {
-            final boolean wasClosed = segment.isClosed();
-            if (wasClosed) segment.open(false);
-            size += segment.uncompressedBytesToRead();
-            if (wasClosed) {
-                segment.close();
+        m_writeLock.lock();
+        try {
+            for (PBDSegment segment : m_segments) {
+                final boolean wasClosed = segment.isClosed();
+                if (wasClosed) segment.open(false);
+                size += segment.uncompressedBytesToRead();
+                if (wasClosed) {
+                    segment.close();
+                }
             }
+        } finally {
+            m_writeLock.unlock();
         }
         return size;
     }
 
     @Override
     public synchronized void closeAndDelete() throws IOException {
-        if (m_closed) return;
-        m_closed = true;
-        for (PBDSegment qs : m_segments) {
-            m_usageSpecificLog.debug("Segment " + qs.file() + " has been closed and deleted due to delete all");
-            qs.closeAndDelete();
+        m_writeLock.lock();
+        try {
+            if (m_closed) return;
+            m_closed = true;
+            for (PBDSegment qs : m_segments) {
+                m_usageSpecificLog.debug("Segment " + qs.file() + " has been closed and deleted due to delete all");
+                qs.closeAndDelete();
+            }
+        } finally {
+            m_writeLock.unlock();
         }
     }
 
@@ -570,6 +722,16 @@ public class PersistentBinaryDeque implements BinaryDeque {
 
     @Override
     public synchronized void parseAndTruncate(BinaryDequeTruncator truncator) throws IOException {
+        //The tail is closed and may be replaced, keep producers out until it is writable again
+        m_writeLock.lock();
+        try {
+            parseAndTruncateInternal(truncator);
+        } finally {
+            m_writeLock.unlock();
+        }
+    }
+
+    private void parseAndTruncateInternal(BinaryDequeTruncator truncator) throws IOException {
         assertions();
         if (m_segments.isEmpty()) {
             m_usageSpecificLog.debug("PBD " + m_nonce + " has no finished segments");
@@ -639,26 +801,27 @@ public class PersistentBinaryDeque implements BinaryDeque {
             m_usageSpecificLog.debug("Segment " + newSegment.file() + " has been created by PBD truncator");
         }
         m_segments.offer(newSegment);
+        m_tail = newSegment;
         assertions();
     }
 
     private void addToNumObjects(int num) {
-        assert(m_numObjects >= 0);
-        m_numObjects += num;
+        final int numObjects = m_numObjects.addAndGet(num);
+        assert(numObjects >= 0);
     }
     private void incrementNumObjects() {
-        assert(m_numObjects >= 0);
-         m_numObjects++;
+        final int numObjects = m_numObjects.incrementAndGet();
+        assert(numObjects > 0);
     }
 
     private void decrementNumObjects() {
-        m_numObjects--;
-        assert(m_numObjects >= 0);
+        final int numObjects = m_numObjects.decrementAndGet();
+        assert(numObjects >= 0);
     }
 
     @Override
     public int getNumObjects() {
-        return m_numObjects;
+        return m_numObjects.get();
     }
 
     @Override
@@ -673,8 +836,21 @@ public class PersistentBinaryDeque implements BinaryDeque {
         assertionsOn = assertOn;
     }
 
+    /*
+     * Must hold the monitor, takes the write lock so the tail's entry count and the
+     * object count can't move underneath it
+     */
     private void assertions() {
         if (!assertionsOn || m_closed) return;
+        m_writeLock.lock();
+        try {
+            assertionsInternal();
+        } finally {
+            m_writeLock.unlock();
+        }
+    }
+
+    private void assertionsInternal() {
         int numObjects = 0;
         for (PBDSegment segment : m_segments) {
             final boolean wasClosed = segment.isClosed();
@@ -691,6 +867,6 @@ public class PersistentBinaryDeque implements BinaryDeque {
                 }
             }
         }
-        assert numObjects == m_numObjects : numObjects + " != " + m_numObjects;
+        assert numObjects == m_numObjects.get() : numObjects + " != " + m_numObjects.get();
     }
 }
@@ -0,0 +1,99 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Partition lookup through the elastic hashinator, done for every single
+ * partition invocation by the client affinity code and the initiator.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ElasticHashinatorBenchmark {
+
+    @Param({"8", "64"})
+    public int partitions;
+
+    private static final int KEYS = 1024;
+
+    private ElasticHashinator m_hashinator;
+    private final long[] m_longKeys = new long[KEYS];
+    private final String[] m_stringKeys = new String[KEYS];
+    private final byte[][] m_bytesKeys = new byte[KEYS][];
+    private int m_next = 0;
+
+    @Setup
+    public void setup() {
+        m_hashinator = new ElasticHashinator(
+                ElasticHashinator.getConfigureBytes(partitions, ElasticHashinator.DEFAULT_TOTAL_TOKENS), false);
+        Random r = new Random(0);
+        for (int i = 0; i < KEYS; i++) {
+            m_longKeys[i] = r.nextLong();
+            m_stringKeys[i] = "customer-" + r.nextInt(1000000);
+            m_bytesKeys[i] = m_stringKeys[i].getBytes();
+        }
+    }
+
+    private int nextKey() {
+        return m_next = (m_next + 1) & (KEYS - 1);
+    }
+
+    @Benchmark
+    public int hashLong() {
+        return m_hashinator.pHashinateLong(m_longKeys[nextKey()]);
+    }
+
+    @Benchmark
+    public int hashBytes() {
+        return m_hashinator.pHashinateBytes(m_bytesKeys[nextKey()]);
+    }
+
+    @Benchmark
+    public int partitionForBigint() {
+        return m_hashinator.getHashedPartitionForParameter(VoltType.BIGINT.getValue(), m_longKeys[nextKey()]);
+    }
+
+    @Benchmark
+    public int partitionForString() {
+        return m_hashinator.getHashedPartitionForParameter(VoltType.STRING.getValue(), m_stringKeys[nextKey()]);
+    }
+}
@@ -0,0 +1,126 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.json_voltpatches.JSONWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.types.TimestampType;
+
+/**
+ * Building the JSON of a large procedure response as a string, as the HTTP
+ * interface used to, against streaming it through a JSONWriter, plain and
+ * gzipped. Run with -prof gc to compare the bytes allocated per response.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JSONResponseBenchmark {
+
+    @Param({"1000", "100000"})
+    public int rows;
+
+    /** Discards the output, returning its size so the work can't be optimized away */
+    static class CountingOutputStream extends OutputStream {
+        long m_count = 0;
+
+        @Override
+        public void write(int b) {
+            m_count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            m_count += len;
+        }
+    }
+
+    private ClientResponseImpl m_response;
+
+    @Setup
+    public void setup() {
+        VoltTable table = new VoltTable(
+                new VoltTable.ColumnInfo("id", VoltType.BIGINT),
+                new VoltTable.ColumnInfo("name", VoltType.STRING),
+                new VoltTable.ColumnInfo("balance", VoltType.FLOAT),
+                new VoltTable.ColumnInfo("updated", VoltType.TIMESTAMP));
+        for (int i = 0; i < rows; i++) {
+            table.addRow(i, "customer name " + i, i * 1.5, new TimestampType(i * 1000L));
+        }
+        m_response = new ClientResponseImpl(ClientResponse.SUCCESS, new VoltTable[] { table }, null);
+    }
+
+    private void stream(OutputStream out) throws Exception {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 8 * 1024);
+        m_response.toJSONWriter(new JSONWriter(writer));
+        writer.flush();
+    }
+
+    @Benchmark
+    public long string() throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        writer.write(m_response.toJSONString());
+        writer.flush();
+        return out.m_count;
+    }
+
+    @Benchmark
+    public long stream() throws Exception {
+        CountingOutputStream out = new CountingOutputStream();
+        stream(out);
+        return out.m_count;
+    }
+
+    @Benchmark
+    public long streamGzip() throws Exception {
+        CountingOutputStream out = new CountingOutputStream();
+        GZIPOutputStream gzip = new HTTPClientInterface.FastGZIPOutputStream(out);
+        stream(gzip);
+        gzip.finish();
+        return out.m_count;
+    }
+}
@@ -0,0 +1,110 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.voltdb.types.TimestampType;
+
+/**
+ * Serialization of stored procedure parameters, which every invocation goes
+ * through on the client and again when the initiator forwards it to a site.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParameterSetBenchmark {
+
+    /**
+     * "scalars" is the typical key/value procedure, "arrays" adds the array
+     * parameters used by bulk procedures.
+     */
+    @Param({"scalars", "arrays"})
+    public String shape;
+
+    private Object[] m_values;
+    private ParameterSet m_params;
+    private ByteBuffer m_buffer;
+    private ByteBuffer m_serialized;
+
+    @Setup
+    public void setup() throws IOException {
+        if (shape.equals("scalars")) {
+            m_params = ParameterSet.fromArrayNoCopy(
+                    42L, 7, "a customer name of typical length",
+                    new TimestampType(), new BigDecimal("1234.567800000000"), 3.14159);
+        }
+        else {
+            long[] longs = new long[128];
+            String[] strings = new String[32];
+            for (int i = 0; i < longs.length; i++) {
+                longs[i] = i * 31L;
+            }
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = "value" + i;
+            }
+            m_params = ParameterSet.fromArrayNoCopy(42L, longs, strings, new byte[512]);
+        }
+        m_values = m_params.toArray();
+        m_buffer = ByteBuffer.allocate(m_params.getSerializedSize());
+        m_serialized = ByteBuffer.allocate(m_params.getSerializedSize());
+        m_params.flattenToBuffer(m_serialized);
+        m_serialized.flip();
+    }
+
+    @Benchmark
+    public ByteBuffer serialize() throws IOException {
+        m_buffer.clear();
+        m_params.flattenToBuffer(m_buffer);
+        return m_buffer;
+    }
+
+    @Benchmark
+    public ParameterSet construct() {
+        // Construction walks all of the parameters to compute the serialized size
+        return ParameterSet.fromArrayNoCopy(m_values);
+    }
+
+    @Benchmark
+    public ParameterSet deserialize() throws IOException {
+        return ParameterSet.fromByteBuffer(m_serialized.duplicate());
+    }
+}
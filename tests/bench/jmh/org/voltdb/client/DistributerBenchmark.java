@@ -0,0 +1,237 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.client;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.voltdb.ClientResponseImpl;
+import org.voltdb.StoredProcedureInvocation;
+import org.voltdb.VoltTable;
+
+/**
+ * Queueing invocations through the client Distributer: handle allocation,
+ * connection selection, serialization onto the write stream and callback
+ * dispatch when the response comes back. The server side is a loopback stub
+ * that answers every invocation with an empty success, so the numbers are
+ * dominated by the client and not by a cluster. At most {@code outstanding}
+ * invocations are in flight, like a well behaved asynchronous client.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DistributerBenchmark {
+
+    @Param({"1", "3"})
+    public int connections;
+
+    @Param({"1000"})
+    public int outstanding;
+
+    private final List<LoopbackServer> m_servers = new ArrayList<LoopbackServer>();
+    private Distributer m_distributer;
+    private final AtomicLong m_handle = new AtomicLong();
+    private Semaphore m_permits;
+    private ProcedureCallback m_callback;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        m_distributer = new Distributer();
+        for (int i = 0; i < connections; i++) {
+            LoopbackServer server = new LoopbackServer();
+            server.start();
+            m_servers.add(server);
+            m_distributer.createConnection("localhost", "", "", server.getPort(), ClientAuthScheme.HASH_SHA256);
+        }
+        m_permits = new Semaphore(outstanding);
+        m_callback = new ProcedureCallback() {
+            @Override
+            public void clientCallback(ClientResponse clientResponse) {
+                m_permits.release();
+            }
+        };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        m_distributer.drain();
+        m_distributer.shutdown();
+        for (LoopbackServer server : m_servers) {
+            server.shutdown();
+        }
+    }
+
+    @Benchmark
+    public boolean queue() throws Exception {
+        m_permits.acquire();
+        // Handles are allocated by ClientImpl and must be unique per invocation
+        ProcedureInvocation invocation = new ProcedureInvocation(m_handle.getAndIncrement(), "Insert", 42L, "a string value", 3.5);
+        return m_distributer.queue(invocation, m_callback, true, System.nanoTime(),
+                ClientConfig.DEFAULT_PROCEDURE_TIMOUT_NANOS);
+    }
+
+    /**
+     * Accepts client connections, completes the login handshake and answers
+     * every invocation on the connection's own thread.
+     */
+    private static class LoopbackServer extends Thread {
+        private final ServerSocketChannel m_socket;
+        private final List<SocketChannel> m_channels = new ArrayList<SocketChannel>();
+        private volatile boolean m_shutdown = false;
+
+        LoopbackServer() throws IOException {
+            super("Distributer benchmark server");
+            setDaemon(true);
+            m_socket = ServerSocketChannel.open();
+            m_socket.socket().bind(new InetSocketAddress("localhost", 0));
+        }
+
+        int getPort() {
+            return m_socket.socket().getLocalPort();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!m_shutdown) {
+                    final SocketChannel client = m_socket.accept();
+                    client.socket().setTcpNoDelay(true);
+                    synchronized (m_channels) {
+                        m_channels.add(client);
+                    }
+                    Thread responder = new Thread("Distributer benchmark responder") {
+                        @Override
+                        public void run() {
+                            try {
+                                login(client);
+                                respond(client);
+                            } catch (IOException e) {
+                                // Connection closed by the client or by shutdown
+                            }
+                        }
+                    };
+                    responder.setDaemon(true);
+                    responder.start();
+                }
+            } catch (IOException e) {
+                if (!m_shutdown) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        private static ByteBuffer readMessage(SocketChannel client) throws IOException {
+            ByteBuffer length = ByteBuffer.allocate(4);
+            readFully(client, length);
+            ByteBuffer message = ByteBuffer.allocate(length.getInt(0));
+            readFully(client, message);
+            message.flip();
+            return message;
+        }
+
+        private static void readFully(SocketChannel client, ByteBuffer buf) throws IOException {
+            while (buf.hasRemaining()) {
+                if (client.read(buf) == -1) {
+                    throw new IOException("Connection closed");
+                }
+            }
+        }
+
+        private static void writeFully(SocketChannel client, ByteBuffer buf) throws IOException {
+            while (buf.hasRemaining()) {
+                client.write(buf);
+            }
+        }
+
+        private static void login(SocketChannel client) throws IOException {
+            // The credentials aren't checked, accept anyone
+            readMessage(client);
+            ByteBuffer response = ByteBuffer.allocate(34);
+            response.putInt(30);
+            response.put((byte) 0);  // version
+            response.put((byte) 0);  // success
+            response.putInt(0);      // host id
+            response.putLong(0);     // connection id
+            response.putLong(0);     // instance id timestamp
+            response.putInt(0);      // instance id leader address
+            response.putInt(0);      // empty build string
+            response.flip();
+            writeFully(client, response);
+        }
+
+        private static void respond(SocketChannel client) throws IOException {
+            final VoltTable[] results = new VoltTable[0];
+            final StoredProcedureInvocation invocation = new StoredProcedureInvocation();
+            while (true) {
+                invocation.initFromBuffer(readMessage(client));
+                ClientResponseImpl response = new ClientResponseImpl(ClientResponse.SUCCESS, results, null,
+                        invocation.getClientHandle());
+                ByteBuffer buf = ByteBuffer.allocate(4 + response.getSerializedSize());
+                buf.putInt(buf.capacity() - 4);
+                response.flattenToBuffer(buf);
+                buf.flip();
+                writeFully(client, buf);
+            }
+        }
+
+        void shutdown() throws InterruptedException {
+            m_shutdown = true;
+            try {
+                m_socket.close();
+            } catch (IOException ignored) {}
+            synchronized (m_channels) {
+                for (SocketChannel channel : m_channels) {
+                    try {
+                        channel.close();
+                    } catch (IOException ignored) {}
+                }
+            }
+            join();
+        }
+    }
+}
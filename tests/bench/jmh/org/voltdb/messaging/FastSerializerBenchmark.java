@@ -0,0 +1,117 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.messaging;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Writing and reading a message-sized record of mixed fields with the
+ * serializers used by the messaging and catalog code.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FastSerializerBenchmark {
+
+    private static final String NAME = "a string field of moderate length";
+    private final byte[] m_bytes = new byte[256];
+    private final long[] m_longs = new long[32];
+
+    private FastSerializer m_heapSerializer;
+    private FastSerializer m_directSerializer;
+    private ByteBuffer m_serialized;
+
+    @Setup
+    public void setup() throws IOException {
+        m_heapSerializer = new FastSerializer();
+        m_directSerializer = new FastSerializer(true, true);
+        for (int i = 0; i < m_longs.length; i++) {
+            m_longs[i] = i;
+        }
+        FastSerializer fs = new FastSerializer();
+        writeRecord(fs);
+        m_serialized = ByteBuffer.wrap(fs.getBytes());
+        fs.discard();
+    }
+
+    @TearDown
+    public void tearDown() {
+        m_heapSerializer.discard();
+        m_directSerializer.discard();
+    }
+
+    private void writeRecord(FastSerializer fs) throws IOException {
+        fs.writeLong(42L);
+        fs.writeInt(7);
+        fs.writeByte(1);
+        fs.writeString(NAME);
+        fs.writeVarbinary(m_bytes);
+        fs.writeArray(m_longs);
+        fs.writeDouble(2.5);
+    }
+
+    @Benchmark
+    public int serializeHeap() throws IOException {
+        m_heapSerializer.clear();
+        writeRecord(m_heapSerializer);
+        return m_heapSerializer.size();
+    }
+
+    @Benchmark
+    public int serializeDirect() throws IOException {
+        m_directSerializer.clear();
+        writeRecord(m_directSerializer);
+        return m_directSerializer.size();
+    }
+
+    @Benchmark
+    public void deserialize(Blackhole bh) throws IOException {
+        FastDeserializer fds = new FastDeserializer(m_serialized.duplicate());
+        bh.consume(fds.readLong());
+        bh.consume(fds.readInt());
+        bh.consume(fds.readByte());
+        bh.consume(fds.readString());
+        bh.consume(fds.readVarbinary());
+        bh.consume(fds.readArray(long.class));
+        bh.consume(fds.readDouble());
+    }
+}
@@ -0,0 +1,105 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+
+/**
+ * Offer and poll through the persistent binary deque that backs export and
+ * DR overflow. Each invocation offers one object and polls one back, so the
+ * deque stays short and the numbers reflect the steady state of a consumer
+ * that keeps up, including the segment file writes and reads.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersistentBinaryDequeBenchmark {
+
+    @Param({"1024", "65536"})
+    public int objectSize;
+
+    @Param({"true", "false"})
+    public boolean compress;
+
+    private File m_dir;
+    private PersistentBinaryDeque m_pbd;
+    private ByteBuffer m_payload;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        m_dir = new File(System.getProperty("java.io.tmpdir"), "pbdbench-" + System.nanoTime());
+        if (!m_dir.mkdirs()) {
+            throw new IOException("Unable to create " + m_dir);
+        }
+        m_pbd = new PersistentBinaryDeque("pbdbench", m_dir, new VoltLogger("HOST"));
+        // Compression only kicks in for direct buffers, so fill one with
+        // somewhat compressible data like serialized rows would be
+        m_payload = ByteBuffer.allocateDirect(objectSize);
+        for (int i = 0; m_payload.hasRemaining(); i++) {
+            m_payload.put((byte) (i % 61));
+        }
+        m_payload.flip();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        m_pbd.closeAndDelete();
+        m_dir.delete();
+    }
+
+    @Benchmark
+    public int offerPoll() throws IOException {
+        // The deque consumes the buffer and discards the container
+        m_pbd.offer(DBBPool.dummyWrapBB(m_payload.duplicate()), compress);
+        BBContainer polled = m_pbd.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY);
+        try {
+            return polled.b().remaining();
+        } finally {
+            polled.discard();
+        }
+    }
+}
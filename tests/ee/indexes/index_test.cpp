@@ -384,6 +384,44 @@ public:
                         .op_equals(tuple.getNValue(i)).isTrue());
     }
 
+    /**
+     * Add rows to the table of an index on column 2, half of them sharing the
+     * hot key and the other half with keys of their own, and check the distinct
+     * key estimate of the index.
+     */
+    void checkSkewedDistinctKeyEstimate(TableIndex* index, int64_t hotKey)
+    {
+        // A small index is walked whole: i % 3 has 3 keys
+        EXPECT_EQ(3, index->getDistinctKeyEstimate());
+
+        const int64_t extra = 60000;
+        for (int64_t i = NUM_OF_TUPLES + 1; i <= NUM_OF_TUPLES + extra; ++i) {
+            TableTuple &tuple = table->tempTuple();
+            tuple.setNValue(0, ValueFactory::getBigIntValue(i));
+            tuple.setNValue(1, ValueFactory::getBigIntValue(i % 2));
+            tuple.setNValue(2, ValueFactory::getBigIntValue(i % 2 == 0 ? hotKey : i));
+            tuple.setNValue(3, ValueFactory::getBigIntValue(i + 20));
+            tuple.setNValue(4, ValueFactory::getBigIntValue(i * 11));
+            ASSERT_TRUE(table->insertTuple(tuple));
+        }
+        const int64_t distinct = 3 + 1 + extra / 2;
+        const int64_t estimate = index->getDistinctKeyEstimate();
+        EXPECT_TRUE(estimate > distinct * 8 / 10);
+        EXPECT_TRUE(estimate < distinct * 12 / 10);
+
+        // A few more rows keep the sample that was taken
+        for (int64_t i = NUM_OF_TUPLES + extra + 1; i <= NUM_OF_TUPLES + extra + 100; ++i) {
+            TableTuple &tuple = table->tempTuple();
+            tuple.setNValue(0, ValueFactory::getBigIntValue(i));
+            tuple.setNValue(1, ValueFactory::getBigIntValue(i % 2));
+            tuple.setNValue(2, ValueFactory::getBigIntValue(i));
+            tuple.setNValue(3, ValueFactory::getBigIntValue(i + 20));
+            tuple.setNValue(4, ValueFactory::getBigIntValue(i * 11));
+            ASSERT_TRUE(table->insertTuple(tuple));
+        }
+        EXPECT_EQ(estimate, index->getDistinctKeyEstimate());
+    }
+
 protected:
     PersistentTable* table;
     char* m_exceptionBuffer;
@@ -428,6 +466,36 @@ TEST_F(IndexTest, IntMulti) {
     // TODO
 }
 
+TEST_F(IndexTest, DistinctKeyEstimateHotKeyFirst) {
+    vector<int> column_indices;
+    vector<ValueType> column_types;
+    column_indices.push_back(2);
+    column_types.push_back(VALUE_TYPE_BIGINT);
+    init("skewed",
+         BALANCED_TREE_INDEX,
+         column_indices,
+         column_types,
+         false);
+    TableIndex* index = table->index("skewed");
+    ASSERT_TRUE(index != NULL);
+    checkSkewedDistinctKeyEstimate(index, -1);
+}
+
+TEST_F(IndexTest, DistinctKeyEstimateHotKeyLast) {
+    vector<int> column_indices;
+    vector<ValueType> column_types;
+    column_indices.push_back(2);
+    column_types.push_back(VALUE_TYPE_BIGINT);
+    init("skewed",
+         BALANCED_TREE_INDEX,
+         column_indices,
+         column_types,
+         false);
+    TableIndex* index = table->index("skewed");
+    ASSERT_TRUE(index != NULL);
+    checkSkewedDistinctKeyEstimate(index, INT64_MAX);
+}
+
 TEST_F(IndexTest, IntsUnique) {
     vector<int> ixu_column_indices;
     vector<ValueType> ixu_column_types;
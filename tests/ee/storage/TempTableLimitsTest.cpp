@@ -27,7 +27,10 @@
 #include "common/SQLException.h"
 #include "logging/LogManager.h"
 
+#include <cstdlib>
+#include <cstring>
 #include <sstream>
+#include <unistd.h>
 
 using namespace voltdb;
 
@@ -125,6 +128,55 @@ TEST_F(TempTableLimitsTest, CheckLimitException)
     EXPECT_TRUE(threw);
 }
 
+TEST_F(TempTableLimitsTest, CheckSpillFailure)
+{
+    char dirTemplate[] = "/tmp/temptable-limits-XXXXXX";
+    char* spillDir = mkdtemp(dirTemplate);
+    ASSERT_TRUE(spillDir != NULL);
+    TempTableLimits dut(1024 * 10, -1, spillDir);
+    EXPECT_TRUE(dut.canSpill());
+
+    // A block goes to the file and comes back as it was
+    char block[1024];
+    for (int i = 0; i < sizeof(block); i++) {
+        block[i] = static_cast<char>(i);
+    }
+    int fd = dut.createSpillFile();
+    dut.writeSpilledBlock(fd, sizeof(block), block, sizeof(block));
+    char loaded[1024];
+    dut.readSpilledBlock(fd, sizeof(block), loaded, sizeof(loaded));
+    EXPECT_EQ(0, memcmp(block, loaded, sizeof(block)));
+    EXPECT_EQ(sizeof(block), dut.getSpilledBytes());
+    EXPECT_EQ(sizeof(block), dut.getReloadedBytes());
+
+    // Reading past the end of the file is an I/O error, not running out of memory
+    bool threw = false;
+    try {
+        dut.readSpilledBlock(fd, 4 * sizeof(block), loaded, sizeof(loaded));
+    }
+    catch (SQLException& sqle) {
+        threw = true;
+        EXPECT_EQ(std::string(SQLException::volt_temp_table_spill_failure), sqle.getSqlState());
+    }
+    EXPECT_TRUE(threw);
+    close(fd);
+
+    // So is a spill directory that has gone away
+    rmdir(spillDir);
+    threw = false;
+    try {
+        dut.createSpillFile();
+    }
+    catch (SQLException& sqle) {
+        threw = true;
+        EXPECT_EQ(std::string(SQLException::volt_temp_table_spill_failure), sqle.getSqlState());
+    }
+    EXPECT_TRUE(threw);
+    dut.resetSpillStats();
+    EXPECT_EQ(0, dut.getSpilledBytes());
+    EXPECT_EQ(0, dut.getReloadedBytes());
+}
+
 int main()
 {
     return TestSuite::globalInstance()->runAll();
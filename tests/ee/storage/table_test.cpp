@@ -51,6 +51,7 @@
 
 #include <cstdlib>
 #include <ctime>
+#include <unistd.h>
 #include <string>
 #include "harness.h"
 #include "common/common.h"
@@ -287,6 +288,51 @@ TEST_F(TableTest, TupleUpdate) {
 }
 */
 
+TEST_F(TableTest, TempTableSpill) {
+    //
+    // Fill a temp table well past its limit with a spill directory
+    // configured, and make sure every tuple comes back, in order,
+    // from the blocks that went to disk.
+    //
+    char dirTemplate[] = "/tmp/temptable-spill-XXXXXX";
+    char* spillDir = mkdtemp(dirTemplate);
+    ASSERT_TRUE(spillDir != NULL);
+    TempTableLimits spillLimits(1024 * 1024, -1, spillDir);
+    EXPECT_TRUE(spillLimits.canSpill());
+
+    vector<string> columnNames(1, "column00");
+    vector<ValueType> columnTypes(1, VALUE_TYPE_BIGINT);
+    vector<int32_t> columnLengths(1, NValue::getTupleStorageSize(VALUE_TYPE_BIGINT));
+    vector<bool> columnAllowNull(1, false);
+    TupleSchema *schema = TupleSchema::createTupleSchemaForTest(columnTypes, columnLengths, columnAllowNull);
+    TempTable* spillTable = TableFactory::getTempTable(1000, "test_spill_table", schema, columnNames, &spillLimits);
+
+    const int64_t tupleCount = 200000;
+    TableTuple &tempTuple = spillTable->tempTuple();
+    for (int64_t i = 0; i < tupleCount; i++) {
+        tempTuple.setNValue(0, ValueFactory::getBigIntValue(i));
+        spillTable->insertTempTuple(tempTuple);
+    }
+    EXPECT_GT(spillTable->spilledBlockCount(), 0);
+    EXPECT_GT(spillLimits.getSpilledBytes(), 0);
+    EXPECT_TRUE(spillLimits.getAllocated() <= spillLimits.getMemoryLimit());
+
+    int64_t expected = 0;
+    TableIterator iterator = spillTable->iterator();
+    TableTuple tuple(spillTable->schema());
+    while (iterator.next(tuple)) {
+        EXPECT_EQ(expected, ValuePeeker::peekBigInt(tuple.getNValue(0)));
+        ++expected;
+    }
+    EXPECT_EQ(tupleCount, expected);
+    EXPECT_GT(spillLimits.getReloadedBytes(), 0);
+
+    spillTable->deleteAllTuples(false);
+    EXPECT_EQ(0, spillTable->spilledBlockCount());
+    delete spillTable;
+    rmdir(spillDir);
+}
+
 // I can't for the life of me make this pass using Valgrind.  I
 // suspect that there's an extra reference to the ThreadLocalPool
 // which isn't getting deleted, but I can't find it.  Leaving this
@@ -23,10 +23,13 @@
 
 package org.voltcore.messaging;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
@@ -47,10 +50,25 @@ public class TestHostMessenger {
 
     @After
     public void tearDown() throws Exception {
+        // Shut every messenger down even if one of them fails to, or their threads and ports leak
+        List<Exception> failures = new ArrayList<Exception>();
         for (HostMessenger hm : createdMessengers) {
-            hm.shutdown();
+            try {
+                hm.shutdown();
+            } catch (Exception e) {
+                failures.add(e);
+            }
         }
         createdMessengers.clear();
+        if (!failures.isEmpty()) {
+            AssertionError error = new AssertionError(
+                    failures.size() + " host messenger(s) failed to shut down");
+            error.initCause(failures.get(0));
+            for (Exception e : failures.subList(1, failures.size())) {
+                error.addSuppressed(e);
+            }
+            throw error;
+        }
     }
 
     private HostMessenger createHostMessenger(int index, StartAction action) throws Exception {
@@ -168,4 +186,66 @@ public class TestHostMessenger {
         hm3.waitForGroupJoin(2);
     }
 
+    @Test
+    public void testBatchedMessagesArriveInOrder() throws Exception {
+        final HostMessenger hm1 = createHostMessenger(0, StartAction.CREATE, false);
+        final HostMessenger hm2 = createHostMessenger(1, StartAction.CREATE, false);
+
+        final AtomicReference<Exception> exception = new AtomicReference<Exception>();
+        Thread hm2Start = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    hm2.start();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    exception.set(e);
+                }
+            }
+        };
+        hm1.start();
+        hm2Start.start();
+        hm2Start.join();
+        if (exception.get() != null) {
+            fail(exception.get().toString());
+        }
+
+        Mailbox sender = hm1.createMailbox();
+        Mailbox receiver1 = hm2.createMailbox();
+        Mailbox receiver2 = hm2.createMailbox();
+
+        // A burst from one thread gives the sending ForeignHost a chance to coalesce
+        final int count = 5000;
+        for (int ii = 0; ii < count; ii++) {
+            byte payload[] = ByteBuffer.allocate(4).putInt(ii).array();
+            if (ii % 2 == 0) {
+                sender.send(receiver1.getHSId(), new BinaryPayloadMessage(new byte[0], payload));
+            } else {
+                sender.send(new long[] { receiver1.getHSId(), receiver2.getHSId() },
+                            new BinaryPayloadMessage(new byte[] { 1 }, payload));
+            }
+        }
+
+        int expectedOnSecond = 1;
+        for (int ii = 0; ii < count; ii++) {
+            BinaryPayloadMessage bpm = (BinaryPayloadMessage)receiver1.recvBlocking(10000);
+            assertNotNull(bpm);
+            assertEquals(sender.getHSId(), bpm.m_sourceHSId);
+            assertEquals(ii, ByteBuffer.wrap(bpm.m_payload).getInt());
+            assertArrayEquals(ii % 2 == 0 ? new byte[0] : new byte[] { 1 }, bpm.m_metadata);
+            if (ii % 2 == 1) {
+                bpm = (BinaryPayloadMessage)receiver2.recvBlocking(10000);
+                assertNotNull(bpm);
+                assertEquals(expectedOnSecond, ByteBuffer.wrap(bpm.m_payload).getInt());
+                expectedOnSecond += 2;
+            }
+        }
+
+        // messages sent, frames sent, frames carrying several messages
+        long stats[] = hm1.m_foreignHosts.get(hm2.getHostId()).getBatchingStats();
+        assertTrue(stats[0] >= count);
+        assertTrue(stats[2] <= stats[1]);
+        assertTrue("no message was batched", stats[2] > 0);
+        assertTrue("batching didn't reduce the frame count", stats[0] > stats[1]);
+    }
 }
@@ -29,6 +29,8 @@ import static org.mockito.Mockito.mock;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Test;
 import org.voltcore.network.Connection;
@@ -116,4 +118,76 @@ public class TestClientInterfaceHandleManager {
             assertEquals(31337 + i, inf.m_clientHandle);
         }
     }
+
+    @Test
+    public void testOldestOutstanding() throws Exception
+    {
+        Connection mockConnection = mock(Connection.class);
+        ClientInterfaceHandleManager dut =
+                new ClientInterfaceHandleManager(
+                        false,
+                        mockConnection,
+                        null,
+                        AdmissionControlGroup.getDummy());
+        assertEquals(Long.MAX_VALUE, dut.getOldestOutstandingCreationNanos());
+        long first = dut.getHandle(true, 3, 1, 10, 100l, "foo", 0, false, false);
+        dut.getHandle(true, 4, 2, 10, 200l, "foo", 0, true, false);
+        dut.getHandle(false, 4, 3, 10, 50l, "foo", 0, true, true);
+        assertEquals(3, dut.getOutstandingTxns());
+        assertEquals(50l, dut.getOldestOutstandingCreationNanos());
+        dut.removeHandle(first);
+        assertEquals(2, dut.getOutstandingTxns());
+        assertEquals(50l, dut.getOldestOutstandingCreationNanos());
+    }
+
+    @Test
+    public void testThreadSafeConcurrentPartitions() throws Exception
+    {
+        Connection mockConnection = mock(Connection.class);
+        doReturn(mock(org.voltcore.network.WriteStream.class)).when(mockConnection).writeStream();
+        final ClientInterfaceHandleManager dut =
+                ClientInterfaceHandleManager.makeThreadSafeCIHM(
+                        false,
+                        mockConnection,
+                        null,
+                        AdmissionControlGroup.getDummy());
+        final int threads = 8;
+        final int perThread = 20000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            final int partition = t % 4;
+            final boolean readOnly = t >= 4;
+            Thread worker = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < perThread; i++) {
+                            long handle = dut.getHandle(true, partition, i, 10, 10l, "foo", 0, readOnly, false);
+                            // Another thread may have created and completed later handles on the
+                            // same partition, but a handle is never dropped before it is found.
+                            ClientInterfaceHandleManager.Iv2InFlight inflight = dut.removeHandle(handle);
+                            assertNotNull(inflight);
+                            assertEquals(i, inflight.m_clientHandle);
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            };
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertEquals(0, dut.getOutstandingTxns());
+        assertEquals(Long.MAX_VALUE, dut.getOldestOutstandingCreationNanos());
+    }
 }
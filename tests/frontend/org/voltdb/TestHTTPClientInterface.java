@@ -0,0 +1,185 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.client.ClientResponse;
+
+import com.google_voltpatches.common.io.ByteStreams;
+
+public class TestHTTPClientInterface {
+
+    private HttpServletResponse m_response;
+    private ByteArrayOutputStream m_body;
+
+    @Before
+    public void setUp() throws IOException {
+        m_body = new ByteArrayOutputStream();
+        m_response = mock(HttpServletResponse.class);
+        when(m_response.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                m_body.write(b);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener listener) {
+            }
+        });
+    }
+
+    private static HttpServletRequest request(String acceptEncoding) {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getHeader("Accept-Encoding")).thenReturn(acceptEncoding);
+        return request;
+    }
+
+    private static VoltTable table(int rows) {
+        VoltTable table = new VoltTable(new ColumnInfo("ID", VoltType.INTEGER),
+                                        new ColumnInfo("NAME", VoltType.STRING));
+        for (int i = 0; i < rows; i++) {
+            table.addRow(i, "name \"" + i + "\"");
+        }
+        return table;
+    }
+
+    // The fewest rows whose table reaches the gzip threshold
+    private static int rowsAtThreshold() {
+        int rows = 0;
+        while (table(rows).getSerializedSize() < HTTPClientInterface.GZIP_MIN_BYTES) {
+            rows++;
+        }
+        return rows;
+    }
+
+    private static ClientResponseImpl response(int rows) {
+        return new ClientResponseImpl(ClientResponse.SUCCESS, new VoltTable[] { table(rows) }, "ok");
+    }
+
+    private boolean isGzipped() {
+        byte[] body = m_body.toByteArray();
+        return body.length >= 2 && (body[0] & 0xff) == 0x1f && (body[1] & 0xff) == 0x8b;
+    }
+
+    private String body() throws IOException {
+        if (isGzipped()) {
+            return new String(ByteStreams.toByteArray(
+                    new GZIPInputStream(new ByteArrayInputStream(m_body.toByteArray()))),
+                    StandardCharsets.UTF_8);
+        }
+        return new String(m_body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private void assertPlain() {
+        assertFalse(isGzipped());
+        verify(m_response, never()).setHeader(eq("Content-Encoding"), anyString());
+    }
+
+    private void assertGzipped() {
+        assertTrue(isGzipped());
+        verify(m_response).setHeader("Content-Encoding", "gzip");
+        verify(m_response).setHeader("Vary", "Accept-Encoding");
+    }
+
+    @Test
+    public void testSmallResponseIsNotGzipped() throws IOException {
+        ClientResponseImpl rimpl = response(1);
+        HTTPClientInterface.writeJSONResponse(rimpl, null, request("gzip, deflate"), m_response);
+        assertPlain();
+        // it is the same whatever the request accepts
+        verify(m_response, never()).setHeader(eq("Vary"), anyString());
+        assertEquals(rimpl.toJSONString(), body());
+    }
+
+    @Test
+    public void testGzipThreshold() throws IOException {
+        assumeTrue(HTTPClientInterface.GZIP_MIN_BYTES > 0);
+        int rows = rowsAtThreshold();
+
+        ClientResponseImpl below = response(rows - 1);
+        HTTPClientInterface.writeJSONResponse(below, null, request("gzip"), m_response);
+        assertPlain();
+        assertEquals(below.toJSONString(), body());
+
+        setUp();
+        ClientResponseImpl at = response(rows);
+        HTTPClientInterface.writeJSONResponse(at, null, request("deflate, GZIP"), m_response);
+        assertGzipped();
+        assertEquals(at.toJSONString(), body());
+    }
+
+    @Test
+    public void testLargeResponseWithoutGzip() throws IOException {
+        assumeTrue(HTTPClientInterface.GZIP_MIN_BYTES >= 0);
+        ClientResponseImpl rimpl = response(rowsAtThreshold() * 2);
+        HTTPClientInterface.writeJSONResponse(rimpl, null, request(null), m_response);
+        assertPlain();
+        // caches must tell this body apart from the gzipped one
+        verify(m_response).setHeader("Vary", "Accept-Encoding");
+        assertEquals(rimpl.toJSONString(), body());
+    }
+
+    @Test
+    public void testJsonp() throws IOException {
+        ClientResponseImpl small = response(1);
+        HTTPClientInterface.writeJSONResponse(small, "callback", request(null), m_response);
+        assertEquals("callback( " + small.toJSONString() + " )", body());
+
+        assumeTrue(HTTPClientInterface.GZIP_MIN_BYTES >= 0);
+        setUp();
+        ClientResponseImpl large = response(rowsAtThreshold());
+        HTTPClientInterface.writeJSONResponse(large, "callback", request("gzip"), m_response);
+        assertGzipped();
+        assertEquals("callback( " + large.toJSONString() + " )", body());
+    }
+}
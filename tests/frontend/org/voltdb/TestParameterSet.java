@@ -63,6 +63,7 @@ import org.apache.hadoop_voltpatches.util.PureJavaCrc32C;
 import org.json_voltpatches.JSONException;
 import org.voltdb.types.TimestampType;
 import org.voltdb.types.VoltDecimalHelper;
+import org.voltdb.utils.MiscUtils;
 
 public class TestParameterSet extends TestCase {
     ParameterSet params;
@@ -527,4 +528,28 @@ public class TestParameterSet extends TestCase {
 
         assertTrue(Arrays.deepEquals(pset1array, pset2array));
     }
+
+    public void testInvocationSerializedParamsMatchRoundTrip() throws IOException {
+        Object[] fields = new Object[] { 1, "two", 3.0, new byte[] { 4 }, null, new String[] { "five" } };
+
+        StoredProcedureInvocation roundTripped = new StoredProcedureInvocation();
+        roundTripped.setProcName("Insert");
+        roundTripped.setParams(fields);
+        roundTripped = MiscUtils.roundTripForCL(roundTripped);
+
+        StoredProcedureInvocation direct = new StoredProcedureInvocation();
+        direct.setProcName("Insert");
+        direct.setParamsSerialized(fields);
+
+        assertEquals(roundTripped.getSerializedParams(), direct.getSerializedParams());
+        assertEquals(roundTripped.getSerializedSize(), direct.getSerializedSize());
+        assertEquals("two", direct.getParameterAtIndex(1));
+        assertTrue(Arrays.deepEquals(roundTripped.getParams().toArray(), direct.getParams().toArray()));
+
+        ByteBuffer expected = ByteBuffer.allocate(roundTripped.getSerializedSize());
+        roundTripped.flattenToBuffer(expected);
+        ByteBuffer actual = ByteBuffer.allocate(direct.getSerializedSize());
+        direct.flattenToBuffer(actual);
+        assertTrue(Arrays.equals(expected.array(), actual.array()));
+    }
 }
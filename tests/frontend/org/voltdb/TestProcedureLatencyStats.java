@@ -0,0 +1,212 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram_voltpatches.AbstractHistogram;
+import org.HdrHistogram_voltpatches.Histogram;
+import org.junit.Test;
+import org.voltcore.utils.CompressionStrategySnappy;
+import org.voltdb.VoltTable.ColumnInfo;
+
+public class TestProcedureLatencyStats {
+
+    private static VoltTable poll(ProcedureLatencyStats dut, boolean interval) {
+        ArrayList<ColumnInfo> columns = dut.getColumnSchema();
+        VoltTable table = new VoltTable(columns.toArray(new ColumnInfo[columns.size()]));
+        for (Object[] row : dut.getStatsRows(interval, System.currentTimeMillis())) {
+            table.addRow(row);
+        }
+        return table;
+    }
+
+    private static boolean advanceTo(VoltTable table, String procedure, String statement) {
+        table.resetRowPosition();
+        while (table.advanceRow()) {
+            if (table.getString("PROCEDURE").equals(procedure) &&
+                    table.getString("STATEMENT").equals(statement)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testPercentiles() throws Exception {
+        ProcedureLatencyStats dut = new ProcedureLatencyStats();
+        ProcedureLatencyStats.ProcedureLatency latency = dut.createProcedureLatency("Insert");
+        for (int i = 1; i <= 1000; i++) {
+            latency.recordProcedure(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+        latency.recordStatement("insert", TimeUnit.MILLISECONDS.toNanos(5));
+
+        VoltTable stats = poll(dut, false);
+        assertEquals(2, stats.getRowCount());
+        assertTrue(advanceTo(stats, "Insert", ProcedureLatencyStats.WHOLE_PROCEDURE));
+        assertEquals(1000, stats.getLong("INVOCATIONS"));
+        // two significant digits, so within one percent
+        assertEquals(500, stats.getLong("P50"), 5);
+        assertEquals(990, stats.getLong("P99"), 10);
+        assertEquals(1000, stats.getLong("MAX"), 10);
+        assertTrue(advanceTo(stats, "Insert", "insert"));
+        assertEquals(1, stats.getLong("INVOCATIONS"));
+        assertEquals(5000, stats.getLong("MAX"), 50);
+    }
+
+    @Test
+    public void testIntervalAndCumulative() throws Exception {
+        ProcedureLatencyStats dut = new ProcedureLatencyStats();
+        ProcedureLatencyStats.ProcedureLatency latency = dut.createProcedureLatency("Select");
+        latency.recordProcedure(TimeUnit.MICROSECONDS.toNanos(100));
+
+        VoltTable stats = poll(dut, true);
+        assertTrue(advanceTo(stats, "Select", ProcedureLatencyStats.WHOLE_PROCEDURE));
+        assertEquals(1, stats.getLong("INVOCATIONS"));
+
+        // a cumulative poll in between must not lose values from the next interval
+        latency.recordProcedure(TimeUnit.MICROSECONDS.toNanos(200));
+        stats = poll(dut, false);
+        assertTrue(advanceTo(stats, "Select", ProcedureLatencyStats.WHOLE_PROCEDURE));
+        assertEquals(2, stats.getLong("INVOCATIONS"));
+
+        latency.recordProcedure(TimeUnit.MICROSECONDS.toNanos(300));
+        stats = poll(dut, true);
+        assertTrue(advanceTo(stats, "Select", ProcedureLatencyStats.WHOLE_PROCEDURE));
+        assertEquals(2, stats.getLong("INVOCATIONS"));
+
+        // nothing ran since the last interval
+        assertEquals(0, poll(dut, true).getRowCount());
+        assertEquals(1, poll(dut, false).getRowCount());
+    }
+
+    @Test
+    public void testMergeAcrossHosts() throws Exception {
+        ProcedureLatencyStats host1 = new ProcedureLatencyStats();
+        ProcedureLatencyStats host2 = new ProcedureLatencyStats();
+        ProcedureLatencyStats.ProcedureLatency latency = host1.createProcedureLatency("Update");
+        for (int i = 0; i < 99; i++) {
+            latency.recordProcedure(TimeUnit.MICROSECONDS.toNanos(10));
+        }
+        host2.createProcedureLatency("Update").recordProcedure(TimeUnit.SECONDS.toNanos(2));
+
+        Histogram merged = new Histogram(60L * 60L * 1000000L, 2);
+        for (ProcedureLatencyStats host : new ProcedureLatencyStats[] { host1, host2 }) {
+            VoltTable stats = poll(host, false);
+            assertTrue(advanceTo(stats, "Update", ProcedureLatencyStats.WHOLE_PROCEDURE));
+            merged.add(AbstractHistogram.fromCompressedBytes(
+                    stats.getVarbinary("HISTOGRAM"), CompressionStrategySnappy.INSTANCE));
+        }
+        assertEquals(100, merged.getTotalCount());
+        assertEquals(10, merged.getValueAtPercentile(50.0));
+        // the decoded histogram does not carry its max, read it from the counts
+        assertEquals(2000000, merged.getValueAtPercentile(100.0), 20000);
+    }
+
+    @Test
+    public void testSitesAreMergedIntoOneRow() throws Exception {
+        ProcedureLatencyStats dut = new ProcedureLatencyStats();
+        ProcedureLatencyStats.ProcedureLatency site1 = dut.createProcedureLatency("Lookup");
+        ProcedureLatencyStats.ProcedureLatency site2 = dut.createProcedureLatency("Lookup");
+        assertNotSame(site1, site2);
+        for (int i = 0; i < 10; i++) {
+            site1.recordProcedure(TimeUnit.MICROSECONDS.toNanos(10));
+            site2.recordProcedure(TimeUnit.MICROSECONDS.toNanos(1000));
+        }
+        site1.recordStatement("select", TimeUnit.MICROSECONDS.toNanos(5));
+        site2.recordStatement("select", TimeUnit.MICROSECONDS.toNanos(500));
+
+        VoltTable stats = poll(dut, true);
+        assertEquals(2, stats.getRowCount());
+        assertTrue(advanceTo(stats, "Lookup", ProcedureLatencyStats.WHOLE_PROCEDURE));
+        assertEquals(20, stats.getLong("INVOCATIONS"));
+        assertEquals(10, stats.getLong("P50"), 1);
+        assertEquals(1000, stats.getLong("MAX"), 10);
+        assertTrue(advanceTo(stats, "Lookup", "select"));
+        assertEquals(2, stats.getLong("INVOCATIONS"));
+        assertEquals(500, stats.getLong("MAX"), 5);
+
+        // the next interval only has what the sites recorded since
+        site2.recordProcedure(TimeUnit.MICROSECONDS.toNanos(2000));
+        stats = poll(dut, true);
+        assertTrue(advanceTo(stats, "Lookup", ProcedureLatencyStats.WHOLE_PROCEDURE));
+        assertEquals(1, stats.getLong("INVOCATIONS"));
+        stats = poll(dut, false);
+        assertTrue(advanceTo(stats, "Lookup", ProcedureLatencyStats.WHOLE_PROCEDURE));
+        assertEquals(21, stats.getLong("INVOCATIONS"));
+    }
+
+    @Test
+    public void testMultiStatementBatchesHaveTheirOwnRow() throws Exception {
+        ProcedureLatencyStats dut = new ProcedureLatencyStats();
+        ProcedureLatencyStats.ProcedureLatency latency = dut.createProcedureLatency("Transfer");
+        latency.recordStatement("debit", TimeUnit.MICROSECONDS.toNanos(100));
+        latency.recordBatch(TimeUnit.MICROSECONDS.toNanos(700));
+
+        VoltTable stats = poll(dut, false);
+        assertEquals(2, stats.getRowCount());
+        assertTrue(advanceTo(stats, "Transfer", "debit"));
+        assertEquals(1, stats.getLong("INVOCATIONS"));
+        assertEquals(100, stats.getLong("MAX"), 1);
+        assertTrue(advanceTo(stats, "Transfer", ProcedureLatencyStats.MULTI_STATEMENT_BATCH));
+        assertEquals(1, stats.getLong("INVOCATIONS"));
+        assertEquals(700, stats.getLong("MAX"), 7);
+    }
+
+    @Test
+    public void testClearDropsEntries() throws Exception {
+        ProcedureLatencyStats dut = new ProcedureLatencyStats();
+        ProcedureLatencyStats.ProcedureLatency before = dut.createProcedureLatency("Dropped");
+        before.recordProcedure(TimeUnit.MICROSECONDS.toNanos(10));
+        before.recordStatement("select", TimeUnit.MICROSECONDS.toNanos(10));
+        assertEquals(2, poll(dut, false).getRowCount());
+
+        dut.clear();
+        assertEquals(0, poll(dut, false).getRowCount());
+        assertEquals(0, poll(dut, true).getRowCount());
+        // a runner still holding the old entry no longer shows up
+        before.recordProcedure(TimeUnit.MICROSECONDS.toNanos(10));
+        assertEquals(0, poll(dut, false).getRowCount());
+
+        ProcedureLatencyStats.ProcedureLatency after = dut.createProcedureLatency("Dropped");
+        assertNotSame(before, after);
+        after.recordProcedure(TimeUnit.MICROSECONDS.toNanos(20));
+        VoltTable stats = poll(dut, false);
+        assertEquals(1, stats.getRowCount());
+        assertTrue(advanceTo(stats, "Dropped", ProcedureLatencyStats.WHOLE_PROCEDURE));
+        assertEquals(1, stats.getLong("INVOCATIONS"));
+    }
+
+    @Test
+    public void testLatenciesBeyondTheTrackableRangeAreClamped() throws Exception {
+        ProcedureLatencyStats dut = new ProcedureLatencyStats();
+        dut.createProcedureLatency("Slow").recordProcedure(TimeUnit.HOURS.toNanos(2));
+        VoltTable stats = poll(dut, false);
+        assertTrue(advanceTo(stats, "Slow", ProcedureLatencyStats.WHOLE_PROCEDURE));
+        assertEquals(TimeUnit.HOURS.toMicros(1), stats.getLong("MAX"), TimeUnit.HOURS.toMicros(1) / 100);
+    }
+}
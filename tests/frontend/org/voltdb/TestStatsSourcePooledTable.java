@@ -0,0 +1,119 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.voltdb;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltdb.VoltTable.ColumnInfo;
+
+public class TestStatsSourcePooledTable {
+
+    private static VoltTable statsTable(long tupleCount) {
+        VoltTable table = new VoltTable(new ColumnInfo("TABLE_NAME", VoltType.STRING),
+                                        new ColumnInfo("TUPLE_COUNT", VoltType.BIGINT));
+        table.addRow("T", tupleCount);
+        return table;
+    }
+
+    /**
+     * Copy a table into a direct buffer the way the EE's pooled stats path does and
+     * wrap it in a container that counts discards.
+     */
+    private static BBContainer pooledCopy(VoltTable table, final AtomicInteger discards) {
+        final ByteBuffer heap = table.getBuffer();
+        final BBContainer origin = DBBPool.allocateDirect(heap.remaining());
+        origin.b().put(heap);
+        origin.b().flip();
+        return new BBContainer(origin.b()) {
+            @Override
+            public void discard() {
+                checkDoubleFree();
+                discards.incrementAndGet();
+                origin.discard();
+            }
+        };
+    }
+
+    @Test
+    public void testPooledTableIsDiscardedWhenReplaced() {
+        TableStats stats = new TableStats(0);
+        AtomicInteger discards = new AtomicInteger();
+
+        BBContainer first = pooledCopy(statsTable(42), discards);
+        stats.setStatsTable(PrivateVoltTableFactory.createVoltTableFromBuffer(first.b(), true), first);
+        VoltTable beforeReplace = stats.getStatsTable();
+
+        BBContainer second = pooledCopy(statsTable(43), discards);
+        stats.setStatsTable(PrivateVoltTableFactory.createVoltTableFromBuffer(second.b(), true), second);
+        assertEquals(1, discards.get());
+
+        // Readers get a heap copy that outlives the pooled buffer it was taken from
+        beforeReplace.advanceRow();
+        assertEquals(42, beforeReplace.getLong("TUPLE_COUNT"));
+
+        VoltTable afterReplace = stats.getStatsTable();
+        afterReplace.advanceRow();
+        assertEquals(43, afterReplace.getLong("TUPLE_COUNT"));
+
+        stats.resetStatsTable();
+        assertEquals(2, discards.get());
+        assertEquals(0, stats.getStatsTable().getRowCount());
+    }
+
+    @Test
+    public void testPollingReadsPooledTableInPlace() {
+        TableStats stats = new TableStats(0);
+        AtomicInteger discards = new AtomicInteger();
+
+        BBContainer pooled = pooledCopy(statsTable(42), discards);
+        stats.setStatsTable(PrivateVoltTableFactory.createVoltTableFromBuffer(pooled.b(), true), pooled);
+        VoltTable copy = stats.getStatsTable();
+
+        VoltTable result = new VoltTable(stats.getStatsTableSchema());
+        stats.appendStatsTable(result);
+
+        // The tuple count is the last column of the only row, change it where the EE put it
+        final ByteBuffer buf = pooled.b();
+        buf.putLong(buf.limit() - 8, 44);
+        stats.appendStatsTable(result);
+
+        // Both polls read the pooled buffer itself rather than a copy of it
+        assertEquals(2, result.getRowCount());
+        result.advanceRow();
+        assertEquals(42, result.getLong("TUPLE_COUNT"));
+        result.advanceRow();
+        assertEquals(44, result.getLong("TUPLE_COUNT"));
+
+        copy.advanceRow();
+        assertEquals(42, copy.getLong("TUPLE_COUNT"));
+
+        stats.resetStatsTable();
+        assertEquals(1, discards.get());
+    }
+}
@@ -24,14 +24,17 @@
 package org.voltdb;
 
 import java.io.IOException;
+import java.io.StringWriter;
 import java.math.BigDecimal;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Random;
 
 import org.json_voltpatches.JSONException;
+import org.json_voltpatches.JSONWriter;
 import org.voltdb.TableHelper.RandomTable;
 import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.client.ClientResponse;
 import org.voltdb.types.GeographyPointValue;
 import org.voltdb.types.GeographyValue;
 import org.voltdb.types.TimestampType;
@@ -1157,6 +1160,17 @@ public class TestVoltTable extends TestCase {
         VoltTable t2 = VoltTable.fromJSONString(json);
 
         assertTrue(t1.equals(t2));
+
+        // streaming the table and a response holding it gives the same text
+        StringWriter writer = new StringWriter();
+        t1.toJSONWriter(new JSONWriter(writer));
+        assertEquals(json, writer.toString());
+
+        ClientResponseImpl response = new ClientResponseImpl(ClientResponse.SUCCESS,
+                new VoltTable[] { t1, LONG_FIVE }, "status \"quoted\"");
+        writer = new StringWriter();
+        response.toJSONWriter(new JSONWriter(writer));
+        assertEquals(response.toJSONString(), writer.toString());
     }
 
     /**
@@ -35,6 +35,7 @@ import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import junit.framework.TestCase;
 
@@ -952,5 +953,118 @@ public class TestDistributer extends TestCase {
         }
     }
 
-}
+    /**
+     * Connections are added while several threads route calls, so queue() keeps
+     * reading routing tables that are being replaced under it.
+     */
+    public void testRoutingWhileConnectionsChange() throws Exception {
+        final int threads = 4;
+        final int callsAfterChange = 200;
+        MockVolt volts[] = new MockVolt[4];
+        final Distributer dist = new Distributer();
+        try {
+            for (int ii = 0; ii < volts.length; ii++) {
+                volts[ii] = new MockVolt(20000 + ii);
+                volts[ii].start();
+            }
+            dist.createConnection("localhost", "", "", 20000, ClientAuthScheme.HASH_SHA1);
 
+            final AtomicInteger queued = new AtomicInteger();
+            final AtomicInteger responses = new AtomicInteger();
+            final AtomicBoolean connectionsAdded = new AtomicBoolean(false);
+            final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+            final ProcedureCallback counter = new ProcedureCallback() {
+                @Override
+                public void clientCallback(ClientResponse clientResponse) {
+                    responses.incrementAndGet();
+                }
+            };
+            Thread callers[] = new Thread[threads];
+            for (int ii = 0; ii < threads; ii++) {
+                callers[ii] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            int remaining = callsAfterChange;
+                            while (remaining > 0) {
+                                if (connectionsAdded.get()) {
+                                    remaining--;
+                                }
+                                int handle = queued.incrementAndGet();
+                                dist.queue(new ProcedureInvocation(handle, "i1", new Integer(1)),
+                                        counter, true, System.nanoTime(), 0);
+                            }
+                        } catch (Throwable t) {
+                            failure.compareAndSet(null, t);
+                        }
+                    }
+                };
+                callers[ii].start();
+            }
+
+            for (int ii = 1; ii < volts.length; ii++) {
+                dist.createConnection("localhost", "", "", 20000 + ii, ClientAuthScheme.HASH_SHA1);
+            }
+            connectionsAdded.set(true);
+            for (Thread caller : callers) {
+                caller.join();
+            }
+            dist.drain();
+
+            assertNull(failure.get());
+            assertEquals(queued.get(), responses.get());
+            int roundTrips = 0;
+            for (MockVolt volt : volts) {
+                // every connection ends up in the table the callers route with
+                assertTrue(volt.handler.roundTrips.get() > 0);
+                roundTrips += volt.handler.roundTrips.get();
+            }
+            assertEquals(queued.get(), roundTrips);
+        }
+        finally {
+            dist.shutdown();
+            for (MockVolt volt : volts) {
+                if (volt != null) {
+                    volt.shutdown();
+                }
+            }
+        }
+    }
+
+    public void testAffinityCountersFromManyThreads() throws Exception {
+        final int threads = 8;
+        final int increments = 10000;
+        final Distributer.AffinityCounters counters = new Distributer.AffinityCounters();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread updaters[] = new Thread[threads];
+        for (int ii = 0; ii < threads; ii++) {
+            // each thread bumps a different mix of the counters
+            final int counter = ii % 4;
+            updaters[ii] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int jj = 0; jj < increments; jj++) {
+                        counters.increment(counter);
+                        counters.increment(Distributer.AffinityCounters.AFFINITY_READS);
+                    }
+                }
+            };
+            updaters[ii].start();
+        }
+        start.countDown();
+        for (Thread updater : updaters) {
+            updater.join();
+        }
+
+        ClientAffinityStats stats = counters.snapshot(0);
+        assertEquals(2 * increments, stats.getAffinityWrites());
+        assertEquals(2 * increments, stats.getRrWrites());
+        assertEquals(threads * increments + 2 * increments, stats.getAffinityReads());
+        assertEquals(2 * increments, stats.getRrReads());
+    }
+}
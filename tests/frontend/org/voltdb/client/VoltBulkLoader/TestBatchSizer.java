@@ -0,0 +1,97 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.client.VoltBulkLoader;
+
+import junit.framework.TestCase;
+
+import org.voltdb.client.VoltBulkLoader.PerPartitionTable.BatchSizer;
+
+public class TestBatchSizer extends TestCase {
+
+    // 100 MB/s
+    private static final double BYTES_PER_NANO = 0.1;
+
+    /*
+     * Feed the sizer batches of its current target whose round trip takes a fixed
+     * latency plus the transfer time, and return the smallest and largest target
+     * it settled between over the last few epochs.
+     */
+    private static int[] settle(BatchSizer sizer, long fixedNanos) {
+        int min = Integer.MAX_VALUE;
+        int max = 0;
+        for (int epoch = 0; epoch < 200; epoch++) {
+            for (int i = 0; i < BatchSizer.EPOCH_BATCHES; i++) {
+                final int bytes = sizer.target();
+                sizer.recordRoundTrip(bytes, fixedNanos + (long) (bytes / BYTES_PER_NANO));
+            }
+            if (epoch >= 150) {
+                min = Math.min(min, sizer.target());
+                max = Math.max(max, sizer.target());
+            }
+        }
+        return new int[] { min, max };
+    }
+
+    public void testHighFixedLatencyGrowsBatches() {
+        // 50ms per call dwarfs the transfer time, the size has to grow well past the
+        // point where a batch takes 20ms instead of collapsing to the minimum
+        int[] range = settle(new BatchSizer(), 50 * 1000 * 1000);
+        assertTrue(range[0] > 4 * 1024 * 1024);
+        assertTrue(range[1] <= PerPartitionTable.MAX_BATCH_BYTES);
+    }
+
+    public void testLowFixedLatencyStopsGrowing() {
+        // With 0.5ms per call, batches past a few hundred KB buy almost nothing,
+        // so the size must not run away to the maximum
+        int[] range = settle(new BatchSizer(), 500 * 1000);
+        assertTrue(range[0] > 64 * 1024);
+        assertTrue(range[1] < 512 * 1024);
+    }
+
+    public void testNegligibleLatencyShrinksBatches() {
+        int[] range = settle(new BatchSizer(), 10 * 1000);
+        assertEquals(PerPartitionTable.MIN_BATCH_BYTES, range[0]);
+        assertTrue(range[1] < 64 * 1024);
+    }
+
+    public void testFollowsLatencyChanges() {
+        BatchSizer sizer = new BatchSizer();
+        int[] range = settle(sizer, 500 * 1000);
+        assertTrue(range[1] < 512 * 1024);
+        range = settle(sizer, 50 * 1000 * 1000);
+        assertTrue(range[0] > 4 * 1024 * 1024);
+        range = settle(sizer, 500 * 1000);
+        assertTrue(range[1] < 512 * 1024);
+    }
+
+    public void testTargetOnlyMovesOncePerEpoch() {
+        BatchSizer sizer = new BatchSizer();
+        for (int i = 0; i < BatchSizer.EPOCH_BATCHES - 1; i++) {
+            sizer.recordRoundTrip(1024, 1000 * 1000 * 1000);
+            assertEquals(BatchSizer.INITIAL_BATCH_BYTES, sizer.target());
+        }
+        sizer.recordRoundTrip(1024, 1000 * 1000 * 1000);
+        assertTrue(sizer.target() != BatchSizer.INITIAL_BATCH_BYTES);
+    }
+}
@@ -0,0 +1,140 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.voltdb.ParameterSet;
+import org.voltdb.VoltType;
+import org.voltdb.common.Constants;
+import org.voltdb.planner.BoundPlan;
+import org.voltdb.planner.CorePlan;
+
+public class TestAdHocCompilerCache {
+
+    private static AdHocPlannedStatement makePlan(String sql) {
+        CorePlan core = new CorePlan(sql.getBytes(Constants.UTF8ENCODING), null,
+                new byte[20], null, false, true, new VoltType[0], new byte[20]);
+        return new AdHocPlannedStatement(sql.getBytes(Constants.UTF8ENCODING), core,
+                ParameterSet.emptyParameterSet(), null);
+    }
+
+    private static void put(AdHocCompilerCache cache, String sql) {
+        cache.put(sql, "token:" + sql, makePlan(sql), null, false, false);
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        AdHocCompilerCache cache = new AdHocCompilerCache(10, 10);
+        assertNull(cache.getWithSQL("select * from t"));
+        assertNull(cache.getWithParsedToken("token:select * from t"));
+
+        put(cache, "select * from t");
+        AdHocPlannedStatement plan = cache.getWithSQL("select * from t");
+        assertNotNull(plan);
+        List<BoundPlan> variants = cache.getWithParsedToken("token:select * from t");
+        assertNotNull(variants);
+        assertEquals(1, variants.size());
+        assertSame(plan.core, variants.get(0).m_core);
+
+        // putting the same plan again does not add another variant or literal
+        put(cache, "select * from t");
+        assertEquals(1, cache.getWithParsedToken("token:select * from t").size());
+        assertEquals(1, cache.getLiteralCacheSize());
+        assertEquals(1, cache.getCoreCacheSize());
+
+        assertEquals(1, cache.getLiteralCacheStats().hitCount());
+        assertEquals(1, cache.getLiteralCacheStats().missCount());
+        assertEquals(2, cache.getCoreCacheStats().hitCount());
+        assertEquals(1, cache.getCoreCacheStats().missCount());
+        assertEquals(1, cache.getLiteralInsertions());
+        assertEquals(1, cache.getCoreInsertions());
+    }
+
+    @Test
+    public void testEvictionByEntries() {
+        AdHocCompilerCache cache = new AdHocCompilerCache(1, 1);
+        put(cache, "select a from t");
+        put(cache, "select b from t");
+        assertEquals(1, cache.getLiteralCacheSize());
+        assertEquals(1, cache.getCoreCacheSize());
+        assertEquals(1, cache.getLiteralCacheStats().evictionCount());
+        assertEquals(1, cache.getCoreCacheStats().evictionCount());
+        assertNotNull(cache.getWithSQL("select b from t"));
+    }
+
+    @Test
+    public void testEvictionByBytes() {
+        StringBuilder sb = new StringBuilder("select a from t where b in (0");
+        for (int i = 1; i < 200; i++) {
+            sb.append(", ").append(i);
+        }
+        String bigQuery = sb.toString();
+        int planBytes = makePlan(bigQuery).getSerializedSize();
+
+        // room for roughly 50 of the literal plans, while the core cache is bounded by count
+        AdHocCompilerCache cache = new AdHocCompilerCache(1000, 1000, 50 * planBytes, 0);
+        for (int i = 0; i < 500; i++) {
+            put(cache, bigQuery + ") and c = " + i);
+        }
+        assertTrue(cache.getLiteralCacheSize() > 0);
+        assertTrue(cache.getLiteralCacheSize() <= 50);
+        assertEquals(500 - cache.getLiteralCacheSize(), cache.getLiteralCacheStats().evictionCount());
+        assertEquals(500, cache.getCoreCacheSize());
+    }
+
+    @Test
+    public void testInvalidateOncePerEstimatesGeneration() {
+        AdHocCompilerCache cache = new AdHocCompilerCache(10, 10);
+        put(cache, "select a from t");
+        cache.invalidatePlansBefore(0);
+        assertNotNull(cache.getWithSQL("select a from t"));
+
+        // the first planner to see generation 1 drops the plans
+        cache.invalidatePlansBefore(1);
+        assertNull(cache.getWithSQL("select a from t"));
+        assertEquals(0, cache.getCoreCacheSize());
+
+        // the other planners of the catalog see the same generation and keep the new plans
+        put(cache, "select b from t");
+        cache.invalidatePlansBefore(1);
+        cache.invalidatePlansBefore(1);
+        assertNotNull(cache.getWithSQL("select b from t"));
+
+        // a planner still on an older generation does not drop them either
+        cache.invalidatePlansBefore(0);
+        assertNotNull(cache.getWithSQL("select b from t"));
+
+        cache.invalidatePlansBefore(2);
+        assertNull(cache.getWithSQL("select b from t"));
+        assertEquals(0, cache.getLiteralCacheSize());
+    }
+}
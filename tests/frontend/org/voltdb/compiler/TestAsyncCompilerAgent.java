@@ -25,12 +25,18 @@ package org.voltdb.compiler;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -41,6 +47,8 @@ import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.voltcore.messaging.HostMessenger;
 import org.voltcore.messaging.LocalObjectMessage;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltTable.ColumnInfo;
 import org.voltdb.compiler.AsyncCompilerWork.AsyncCompilerWorkCompletionHandler;
 import org.voltdb.licensetool.LicenseApi;
 import org.voltdb.utils.MiscUtils;
@@ -91,15 +99,17 @@ public class TestAsyncCompilerAgent {
         m_agent.m_mailbox = spy(m_agent.m_mailbox);
 
         /*
-         * send max + 2 messages to the agent. The first one will be executed
-         * immediately so it doesn't consume queue capacity, the next max number
-         * of messages will use up all the capacity, the last one will be
-         * rejected.
+         * send (max + 1) messages per planner worker plus one more to the agent.
+         * The first one on each worker will be executed immediately so it
+         * doesn't consume queue capacity, the next max number of messages will
+         * use up all the capacity, the last one will be rejected.
          */
+        final int workers = m_agent.getPlannerThreadCount();
+        final int requests = workers * (AsyncCompilerAgent.MAX_QUEUE_DEPTH + 1) + 1;
         final AtomicInteger completedRequests = new AtomicInteger();
         final AtomicReference<AsyncCompilerResult> result = new AtomicReference<AsyncCompilerResult>();
         final long threadId = Thread.currentThread().getId();
-        for (int i = 0; i < AsyncCompilerAgent.MAX_QUEUE_DEPTH + 2; ++i) {
+        for (int i = 0; i < requests; ++i) {
             AsyncCompilerWorkCompletionHandler handler = new AsyncCompilerWorkCompletionHandler() {
                 @Override
                 public void onCompletion(AsyncCompilerResult compilerResult) {
@@ -127,10 +137,78 @@ public class TestAsyncCompilerAgent {
         assertNotNull(result.get().errorMsg);
 
         // let all requests return
-        blockingAnswer.flag.release(AsyncCompilerAgent.MAX_QUEUE_DEPTH + 5);
+        blockingAnswer.flag.release(requests + 5);
 
         // check if all previous requests finish
         m_agent.shutdown();
-        assertEquals(AsyncCompilerAgent.MAX_QUEUE_DEPTH + 2, completedRequests.get());
+        assertEquals(requests, completedRequests.get());
+    }
+
+    /**
+     * Checks that DDL and catalog changes are always routed to the first
+     * planner worker while DML spreads across the pool.
+     */
+    @Test
+    public void testCatalogWorkGoesToFirstWorker() throws InterruptedException {
+        m_agent.shutdown();
+        m_agent = new AsyncCompilerAgent(m_licenseApi, 3);
+        AsyncCompilerWorkCompletionHandler handler = mock(AsyncCompilerWorkCompletionHandler.class);
+
+        AdHocPlannerWork ddl = AdHocPlannerWork.makeStoredProcAdHocPlannerWork(100,
+                "create table foo (a int);", null, false, null, handler);
+        assertSame(m_agent.m_workers[0], m_agent.pickWorker(ddl));
+
+        // Load up the first worker and make sure queries go elsewhere.
+        m_agent.m_workers[0].m_outstanding.incrementAndGet();
+        AdHocPlannerWork dml = AdHocPlannerWork.makeStoredProcAdHocPlannerWork(100,
+                "select * from a", null, false, null, handler);
+        assertNotSame(m_agent.m_workers[0], m_agent.pickWorker(dml));
+        assertSame(m_agent.m_workers[0], m_agent.pickWorker(ddl));
+        m_agent.m_workers[0].m_outstanding.decrementAndGet();
+    }
+
+    /**
+     * Checks that planner time reported from a worker thread shows up in the
+     * FULL_PLAN columns of that worker only.
+     */
+    @Test
+    public void testFullPlanningTimeIsReportedPerWorker() throws Exception {
+        m_agent.shutdown();
+        m_agent = new AsyncCompilerAgent(m_licenseApi, 2);
+        // not on a worker thread, ignored
+        AsyncCompilerAgent.PlannerWorker.recordFullPlanningTime(5000);
+
+        final CountDownLatch done = new CountDownLatch(2);
+        for (final long nanos : new long[] { 1000, 3000 }) {
+            m_agent.m_workers[1].submit(new Runnable() {
+                @Override
+                public void run() {
+                    AsyncCompilerAgent.PlannerWorker.recordFullPlanningTime(nanos);
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        m_agent.shutdown();
+
+        AdHocPlannerWorkerStats stats = m_agent.getWorkerStats();
+        ArrayList<ColumnInfo> columns = stats.getColumnSchema();
+        VoltTable table = new VoltTable(columns.toArray(new ColumnInfo[columns.size()]));
+        for (Object[] row : stats.getStatsRows(false, System.currentTimeMillis())) {
+            table.addRow(row);
+        }
+        assertEquals(2, table.getRowCount());
+        while (table.advanceRow()) {
+            if (table.getLong("WORKER_ID") == 1) {
+                assertEquals(2, table.getLong("INVOCATIONS"));
+                assertEquals(2, table.getLong("FULL_PLANS"));
+                assertEquals(3000, table.getLong("FULL_PLAN_TIME_MAX"));
+                assertEquals(2000, table.getLong("FULL_PLAN_TIME_AVG"));
+            }
+            else {
+                assertEquals(0, table.getLong("FULL_PLANS"));
+                assertEquals(0, table.getLong("FULL_PLAN_TIME_AVG"));
+            }
+        }
     }
 }
@@ -0,0 +1,129 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+import org.voltdb.compiler.DatabaseEstimates.IndexEstimates;
+import org.voltdb.compiler.DatabaseEstimates.TableEstimates;
+
+public class TestCollectedEstimates {
+
+    private static VoltTable tableStats(Object... nameAndCount) {
+        VoltTable stats = new VoltTable(new ColumnInfo("TABLE_NAME", VoltType.STRING),
+                                        new ColumnInfo("TUPLE_COUNT", VoltType.BIGINT));
+        for (int i = 0; i < nameAndCount.length; i += 2) {
+            stats.addRow(nameAndCount[i], nameAndCount[i + 1]);
+        }
+        return stats;
+    }
+
+    private static VoltTable indexStats(String table, String index, long entries, long distinct) {
+        VoltTable stats = new VoltTable(new ColumnInfo("INDEX_NAME", VoltType.STRING),
+                                        new ColumnInfo("TABLE_NAME", VoltType.STRING),
+                                        new ColumnInfo("ENTRY_COUNT", VoltType.BIGINT),
+                                        new ColumnInfo("DISTINCT_KEY_ESTIMATE", VoltType.BIGINT));
+        stats.addRow(index, table, entries, distinct);
+        return stats;
+    }
+
+    @Test
+    public void testEstimatesAreTheLargestPartition() {
+        CollectedEstimates collected = new CollectedEstimates();
+        collected.updateTableStats(1, tableStats("T", 100, "R", 7));
+        collected.updateTableStats(2, tableStats("T", 300, "R", 7));
+        collected.updateIndexStats(1, indexStats("T", "T_IDX", 100, 10));
+        collected.updateIndexStats(2, indexStats("T", "T_IDX", 300, 40));
+
+        DatabaseEstimates estimates = collected.getEstimates(CollectedEstimates.REFRESH_INTERVAL_MS);
+        TableEstimates t = estimates.getEstimatesForTable("T");
+        assertEquals(300, t.maxTuples);
+        assertEquals(100, t.minTuples);
+        assertEquals(7, estimates.getEstimatesForTable("R").maxTuples);
+
+        IndexEstimates idx = t.getEstimatesForIndex("T_IDX");
+        assertNotNull(idx);
+        assertEquals(300, idx.entries);
+        assertEquals(40, idx.distinctKeys);
+        assertNull(t.getEstimatesForIndex("NOT_AN_INDEX"));
+
+        // tables nobody reported keep the defaults
+        assertEquals(new TableEstimates().maxTuples, estimates.getEstimatesForTable("UNKNOWN").maxTuples);
+    }
+
+    @Test
+    public void testRefreshInterval() {
+        final long interval = CollectedEstimates.REFRESH_INTERVAL_MS;
+        CollectedEstimates collected = new CollectedEstimates();
+        collected.updateTableStats(1, tableStats("T", 100));
+        assertEquals(100, collected.getEstimates(interval).getEstimatesForTable("T").maxTuples);
+
+        // reports are not picked up until the interval has passed
+        collected.updateTableStats(1, tableStats("T", 200));
+        assertEquals(100, collected.getEstimates(interval + interval / 2).getEstimatesForTable("T").maxTuples);
+        assertEquals(200, collected.getEstimates(2 * interval).getEstimatesForTable("T").maxTuples);
+    }
+
+    @Test
+    public void testGenerationFollowsLargeChanges() {
+        final long interval = CollectedEstimates.REFRESH_INTERVAL_MS;
+        final long big = CollectedEstimates.REPLAN_MIN_TUPLES * 10;
+        CollectedEstimates collected = new CollectedEstimates();
+        assertEquals(0, collected.getGeneration());
+
+        // far from the defaults plans were costed with before any report
+        collected.updateTableStats(1, tableStats("T", big));
+        collected.getEstimates(interval);
+        assertEquals(1, collected.getGeneration());
+
+        // small drift keeps the cached plans
+        collected.updateTableStats(1, tableStats("T", big + big / 4));
+        collected.getEstimates(2 * interval);
+        assertEquals(1, collected.getGeneration());
+
+        // growing by the replan factor from the planned count replans
+        collected.updateTableStats(1, tableStats("T", big * CollectedEstimates.REPLAN_FACTOR));
+        collected.getEstimates(3 * interval);
+        assertEquals(2, collected.getGeneration());
+
+        // so does shrinking
+        collected.updateTableStats(1, tableStats("T", big / CollectedEstimates.REPLAN_FACTOR));
+        collected.getEstimates(4 * interval);
+        assertEquals(3, collected.getGeneration());
+
+        // a new table replaces the defaults, but once reported tiny tables never replan
+        collected.updateTableStats(1, tableStats("T", big / CollectedEstimates.REPLAN_FACTOR, "TINY", 1));
+        collected.getEstimates(5 * interval);
+        assertEquals(4, collected.getGeneration());
+        collected.updateTableStats(1, tableStats("T", big / CollectedEstimates.REPLAN_FACTOR, "TINY", 100));
+        collected.getEstimates(6 * interval);
+        assertEquals(4, collected.getGeneration());
+    }
+}
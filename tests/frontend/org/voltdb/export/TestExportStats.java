@@ -0,0 +1,153 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.voltdb.export;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.voltdb.VoltTable;
+import org.voltdb.export.ExportStats.StatName;
+import org.voltdb.utils.VoltFile;
+
+public class TestExportStats {
+
+    private final static File TEST_DIR = new File("/tmp/" + System.getProperty("user.name") + "/export_stats");
+
+    private final List<ExportGeneration> m_generations = new ArrayList<ExportGeneration>();
+    private ExportStats m_stats;
+
+    private static ExportDataSource mockSource(String signature, long backlogBytes, long syncNanos) {
+        ExportDataSource source = mock(ExportDataSource.class);
+        doReturn(signature).when(source).getSignature();
+        doReturn("TABLE_" + signature).when(source).getTableName();
+        doReturn(backlogBytes).when(source).getBacklogBytes();
+        doReturn((int) (backlogBytes / 1024)).when(source).getBacklogBuffers();
+        doReturn(0L).when(source).getOldestPendingMillis();
+        doReturn(syncNanos).when(source).getLastSyncNanos();
+        return source;
+    }
+
+    private int column(StatName name) {
+        return new VoltTable(m_stats.getStatsTableSchema()).getColumnIndex(name.name());
+    }
+
+    @Test
+    public void testRowPerSourceAcrossGenerations() throws Exception {
+        ExportGeneration first = new ExportGeneration(1L, TEST_DIR, false);
+        ExportGeneration second = new ExportGeneration(2L, TEST_DIR, false);
+        m_generations.add(first);
+        m_generations.add(second);
+        first.addDataSource(mockSource("a", 2048, TimeUnit.MILLISECONDS.toNanos(3)));
+        first.addDataSource(mockSource("b", 0, 0));
+        second.addDataSource(mockSource("c", 4096, TimeUnit.MILLISECONDS.toNanos(7)));
+
+        Object[][] rows = m_stats.getStatsRows(false, System.currentTimeMillis());
+        assertEquals(3, rows.length);
+        Map<String, Object[]> bySource = new HashMap<String, Object[]>();
+        for (Object[] row : rows) {
+            bySource.put((String) row[column(StatName.SOURCE_NAME)], row);
+        }
+        assertEquals(2048L, bySource.get("TABLE_a")[column(StatName.BACKLOG_BYTES)]);
+        assertEquals(2, bySource.get("TABLE_a")[column(StatName.BACKLOG_BUFFERS)]);
+        assertEquals(3L, bySource.get("TABLE_a")[column(StatName.LAST_SYNC_TIME)]);
+        assertEquals(0L, bySource.get("TABLE_b")[column(StatName.OLDEST_PENDING_AGE)]);
+        assertEquals(4096L, bySource.get("TABLE_c")[column(StatName.BACKLOG_BYTES)]);
+        assertEquals(7L, bySource.get("TABLE_c")[column(StatName.LAST_SYNC_TIME)]);
+    }
+
+    @Test
+    public void testNoExportManager() throws Exception {
+        ExportManager.setInstanceForTest(null);
+        assertEquals(0, m_stats.getStatsRows(false, System.currentTimeMillis()).length);
+    }
+
+    /*
+     * Sources are added by export and catalog update threads while @Statistics reads them
+     */
+    @Test
+    public void testStatsWhileSourcesAreAdded() throws Exception {
+        final ExportGeneration generation = new ExportGeneration(1L, TEST_DIR, false);
+        m_generations.add(generation);
+        final int total = 2000;
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread reader = new Thread("Stats reader") {
+            @Override
+            public void run() {
+                try {
+                    while (!done.get()) {
+                        m_stats.getStatsRows(false, System.currentTimeMillis());
+                    }
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            }
+        };
+        reader.start();
+        try {
+            for (int ii = 0; ii < total; ii++) {
+                generation.addDataSource(mockSource(Integer.toString(ii), ii, 0));
+            }
+        } finally {
+            done.set(true);
+            reader.join();
+        }
+        assertNull(failure.get());
+        assertEquals(total, m_stats.getStatsRows(false, System.currentTimeMillis()).length);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        if (TEST_DIR.exists()) {
+            VoltFile.recursivelyDelete(TEST_DIR);
+        }
+        TEST_DIR.mkdirs();
+        ExportManager manager = mock(ExportManager.class);
+        doReturn(m_generations).when(manager).getGenerations();
+        ExportManager.setInstanceForTest(manager);
+        m_stats = new ExportStats();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ExportManager.setInstanceForTest(null);
+        m_generations.clear();
+        if (TEST_DIR.exists()) {
+            VoltFile.recursivelyDelete(TEST_DIR);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.voltdb.export;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google_voltpatches.common.util.concurrent.ListenableFuture;
+
+public class TestExportSyncService {
+
+    private final ExportSyncService m_service = ExportSyncService.instance();
+
+    @Test
+    public void testSyncForcesAndRunsCallback() throws Exception {
+        FileChannel fc = mock(FileChannel.class);
+        final AtomicBoolean synced = new AtomicBoolean(false);
+        ListenableFuture<?> fut = m_service.sync(Arrays.asList(fc, fc), new Runnable() {
+            @Override
+            public void run() {
+                synced.set(true);
+            }
+        });
+        fut.get(10, TimeUnit.SECONDS);
+        assertTrue(synced.get());
+        // A channel requested twice in a round is forced once
+        verify(fc, times(1)).force(true);
+    }
+
+    @Test
+    public void testIOExceptionFailsRequest() throws Exception {
+        FileChannel fc = mock(FileChannel.class);
+        IOException failure = new IOException("injected");
+        doThrow(failure).when(fc).force(true);
+        final AtomicBoolean synced = new AtomicBoolean(false);
+        try {
+            m_service.sync(Collections.singletonList(fc), new Runnable() {
+                @Override
+                public void run() {
+                    synced.set(true);
+                }
+            }).get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertSame(failure, e.getCause());
+        }
+        assertFalse(synced.get());
+    }
+
+    /*
+     * Anything else thrown during a round fails that round and leaves the thread running
+     */
+    @Test
+    public void testRuntimeExceptionFailsRoundAndThreadSurvives() throws Exception {
+        FileChannel broken = mock(FileChannel.class);
+        RuntimeException failure = new IllegalStateException("injected");
+        doThrow(failure).when(broken).force(true);
+        try {
+            m_service.sync(Collections.singletonList(broken)).get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertSame(failure, e.getCause());
+        }
+
+        FileChannel fc = mock(FileChannel.class);
+        m_service.sync(Collections.singletonList(fc)).get(10, TimeUnit.SECONDS);
+        verify(fc, times(1)).force(true);
+    }
+
+    @Test
+    public void testSyncAfterShutdownRunsInline() throws Exception {
+        m_service.shutdown();
+        FileChannel fc = mock(FileChannel.class);
+        ListenableFuture<?> fut = m_service.sync(Collections.singletonList(fc));
+        assertTrue(fut.isDone());
+        fut.get();
+        verify(fc, times(1)).force(true);
+    }
+
+    @Before
+    public void setUp() {
+        m_service.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        m_service.shutdown();
+    }
+}
@@ -0,0 +1,160 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.voltdb.export;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.voltcore.utils.DBBPool;
+import org.voltdb.utils.VoltFile;
+
+public class TestStreamBlockQueue {
+
+    private final static File TEST_DIR = new File("/tmp/" + System.getProperty("user.name") + "/sbq");
+    private static final String TEST_NONCE = "sbq_nonce";
+
+    private StreamBlockQueue m_sbq;
+
+    private static StreamBlock getStreamBlock(long uso, int dataBytes) {
+        ByteBuffer buf = ByteBuffer.allocateDirect(StreamBlock.HEADER_SIZE + dataBytes);
+        while (buf.remaining() > 7) {
+            buf.putLong(uso);
+        }
+        buf.clear();
+        return new StreamBlock(DBBPool.wrapBB(buf), uso, false);
+    }
+
+    /*
+     * Two blocks stay in memory, the rest go to the persistent deque. The size is kept
+     * as blocks move between the two and is the same as sizing the deque from the files.
+     */
+    @Test
+    public void testSizeInBytesTracksOffersAndPolls() throws Exception {
+        long expectedSize = 0;
+        long uso = 0;
+        for (int ii = 0; ii < 6; ii++) {
+            final int dataBytes = 1024 * (ii + 1);
+            m_sbq.offer(getStreamBlock(uso, dataBytes));
+            uso += dataBytes;
+            expectedSize += dataBytes;
+            assertEquals(expectedSize, m_sbq.sizeInBytes());
+            assertEquals(ii + 1, m_sbq.blockCount());
+        }
+
+        long expectedUso = 0;
+        for (int ii = 0; ii < 6; ii++) {
+            StreamBlock sb = m_sbq.poll();
+            assertEquals(expectedUso, sb.uso());
+            expectedUso += sb.totalUso();
+            expectedSize -= sb.totalUso();
+            sb.discard();
+            assertEquals(expectedSize, m_sbq.sizeInBytes());
+            assertEquals(5 - ii, m_sbq.blockCount());
+        }
+        assertNull(m_sbq.poll());
+        assertTrue(m_sbq.isEmpty());
+        assertEquals(0, m_sbq.sizeInBytes());
+    }
+
+    @Test
+    public void testSizeInBytesAfterSyncAndReopen() throws Exception {
+        long expectedSize = 0;
+        long uso = 0;
+        for (int ii = 0; ii < 5; ii++) {
+            final int dataBytes = 4096 + ii;
+            m_sbq.offer(getStreamBlock(uso, dataBytes));
+            uso += dataBytes;
+            expectedSize += dataBytes;
+        }
+
+        // Pushing the memory blocks to disk doesn't change the size
+        m_sbq.sync(true);
+        assertEquals(expectedSize, m_sbq.sizeInBytes());
+        assertEquals(5, m_sbq.blockCount());
+
+        // Neither does sizing it from the files when it is reopened
+        m_sbq.close();
+        m_sbq = new StreamBlockQueue(TEST_DIR.getPath(), TEST_NONCE);
+        assertEquals(expectedSize, m_sbq.sizeInBytes());
+        assertEquals(5, m_sbq.blockCount());
+
+        // A peeked block is loaded into memory and still counted once
+        StreamBlock sb = m_sbq.peek();
+        assertEquals(0, sb.uso());
+        assertEquals(expectedSize, m_sbq.sizeInBytes());
+        assertEquals(5, m_sbq.blockCount());
+    }
+
+    @Test
+    public void testPrepareSync() throws Exception {
+        for (int ii = 0; ii < 3; ii++) {
+            m_sbq.offer(getStreamBlock(ii * 1024, 1024));
+        }
+        m_sbq.sync(true);
+
+        List<FileChannel> channels = m_sbq.prepareSync();
+        assertFalse(channels.isEmpty());
+        for (FileChannel fc : channels) {
+            fc.force(true);
+        }
+        m_sbq.syncCompleted(channels);
+
+        // Nothing was written since
+        assertTrue(m_sbq.prepareSync().isEmpty());
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        if (TEST_DIR.exists()) {
+            VoltFile.recursivelyDelete(TEST_DIR);
+        }
+        TEST_DIR.mkdirs();
+        m_sbq = new StreamBlockQueue(TEST_DIR.getPath(), TEST_NONCE);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try {
+            m_sbq.close();
+        } catch (Exception e) {}
+        try {
+            if (TEST_DIR.exists()) {
+                VoltFile.recursivelyDelete(TEST_DIR);
+            }
+        } finally {
+            m_sbq = null;
+        }
+        System.gc();
+        System.runFinalization();
+    }
+}
@@ -0,0 +1,267 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.importclient.kafka;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * Acks offsets into the gap tracker of {@link KafkaTopicPartitionImporter} out of
+ * order, from one and from many threads, and checks the commit point it reports.
+ */
+public class TestKafkaGap {
+
+    private static final int THREADS = 8;
+
+    /**
+     * Remembers where the commit point was moved to when an ack overflowed the ring
+     */
+    private static class RecordingGap extends KafkaTopicPartitionImporter.Gap {
+        final List<long[]> m_moves = Collections.synchronizedList(new ArrayList<long[]>());
+
+        RecordingGap(int leeway) {
+            super(leeway);
+        }
+
+        @Override
+        void commitPointMoved(long from, long to) {
+            m_moves.add(new long[] { from, to });
+        }
+    }
+
+    private static List<Long> offsets(long first, long last) {
+        List<Long> offsets = new ArrayList<Long>();
+        for (long offset = first; offset <= last; offset++) {
+            offsets.add(offset);
+        }
+        return offsets;
+    }
+
+    private static void submit(KafkaTopicPartitionImporter.Gap gap, long first, long last) {
+        for (long offset = first; offset <= last; offset++) {
+            gap.submit(offset);
+        }
+    }
+
+    /**
+     * Ack every offset from {@code THREADS} threads at once, each thread taking
+     * every THREADS-th offset of the shuffled list
+     */
+    private static void ackConcurrently(final KafkaTopicPartitionImporter.Gap gap, List<Long> acks)
+            throws Exception {
+        final List<Long> shuffled = new ArrayList<Long>(acks);
+        Collections.shuffle(shuffled, new Random(acks.size()));
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService es = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> done = new ArrayList<Future<?>>();
+            for (int t = 0; t < THREADS; t++) {
+                final int thread = t;
+                done.add(es.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        start.await();
+                        long last = -1L;
+                        for (int i = thread; i < shuffled.size(); i += THREADS) {
+                            final long commit = gap.commit(shuffled.get(i));
+                            // a thread never sees the commit point go backwards
+                            assertTrue(commit >= last);
+                            last = commit;
+                        }
+                        return null;
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<?> f : done) {
+                f.get();
+            }
+        } finally {
+            es.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testOutOfOrderCommit() {
+        RecordingGap gap = new RecordingGap(16);
+        gap.resetTo(100);
+        submit(gap, 101, 110);
+
+        assertEquals(100, gap.commit(103));
+        assertEquals(100, gap.commit(102));
+        assertEquals(103, gap.commit(101));
+        assertEquals(103, gap.commit(-1L));
+        assertEquals(103, gap.commit(110));
+        // acks past the highest submitted offset are ignored
+        assertEquals(103, gap.commit(111));
+        for (long offset = 109; offset > 104; offset--) {
+            assertEquals(103, gap.commit(offset));
+        }
+        assertEquals(110, gap.commit(104));
+        assertEquals(110, gap.commit(-1L));
+        assertTrue(gap.m_moves.isEmpty());
+    }
+
+    @Test
+    public void testCommitWrapsAroundTheRing() {
+        final int leeway = 16;
+        RecordingGap gap = new RecordingGap(leeway);
+        gap.resetTo(0);
+        Random random = new Random(leeway);
+        // many times around the ring, acking each block out of order
+        for (long first = 1; first < 100 * leeway; first += leeway - 1) {
+            final long last = first + leeway - 2;
+            submit(gap, first, last);
+            List<Long> acks = offsets(first, last);
+            Collections.shuffle(acks, random);
+            boolean[] acked = new boolean[acks.size()];
+            int contiguous = 0;
+            for (long offset : acks) {
+                acked[(int)(offset - first)] = true;
+                while (contiguous < acked.length && acked[contiguous]) {
+                    contiguous++;
+                }
+                assertEquals(first - 1 + contiguous, gap.commit(offset));
+            }
+            assertEquals(last, gap.commit(-1L));
+        }
+        assertTrue(gap.m_moves.isEmpty());
+    }
+
+    @Test
+    public void testCommitPointMovesWhenTheRingOverflows() {
+        final int leeway = 8;
+        RecordingGap gap = new RecordingGap(leeway);
+        gap.resetTo(0);
+        submit(gap, 1, 100);
+
+        // too far ahead to track the offsets after 0, the oldest ones are given up
+        assertEquals(100 - leeway + 1, gap.commit(100));
+        assertEquals(1, gap.m_moves.size());
+        assertEquals(0, gap.m_moves.get(0)[0]);
+        assertEquals(100 - leeway + 1, gap.m_moves.get(0)[1]);
+
+        // a late ack of a given up offset does not move the commit point back
+        assertEquals(100 - leeway + 1, gap.commit(5));
+        for (long offset = 100 - leeway + 2; offset < 99; offset++) {
+            assertEquals(offset, gap.commit(offset));
+        }
+        assertEquals(100, gap.commit(99));
+        assertEquals(1, gap.m_moves.size());
+    }
+
+    @Test
+    public void testResetTo() {
+        RecordingGap gap = new RecordingGap(8);
+        gap.resetTo(10);
+        submit(gap, 11, 15);
+        assertEquals(10, gap.commit(12));
+
+        // e.g. after a leader change the fetcher restarts from the last committed offset
+        gap.resetTo(50);
+        assertEquals(50, gap.commit(-1L));
+        // acks from before the reset are ignored
+        assertEquals(50, gap.commit(11));
+        submit(gap, 51, 52);
+        assertEquals(50, gap.commit(52));
+        assertEquals(52, gap.commit(51));
+    }
+
+    @Test
+    public void testConcurrentOutOfOrderCommit() throws Exception {
+        final int count = 200_000;
+        // room for every offset after the commit point
+        RecordingGap gap = new RecordingGap(count + 1);
+        gap.resetTo(0);
+        submit(gap, 1, count);
+
+        ackConcurrently(gap, offsets(1, count));
+        assertEquals(count, gap.commit(-1L));
+        assertTrue(gap.m_moves.isEmpty());
+    }
+
+    @Test
+    public void testConcurrentCommitStopsAtTheFirstMissingAck() throws Exception {
+        final int count = 100_000;
+        final long missing = count / 3;
+        for (int attempt = 0; attempt < 5; attempt++) {
+            // room for every offset after the commit point
+            RecordingGap gap = new RecordingGap(count + 1);
+            gap.resetTo(0);
+            submit(gap, 1, count);
+
+            List<Long> acks = offsets(1, count);
+            acks.remove(Long.valueOf(missing));
+            ackConcurrently(gap, acks);
+            // the safe offset to commit to kafka is the one before the missing ack
+            assertEquals(missing - 1, gap.commit(-1L));
+
+            assertEquals(count, gap.commit(missing));
+            assertEquals(count, gap.commit(-1L));
+            assertTrue(gap.m_moves.isEmpty());
+        }
+    }
+
+    @Test
+    public void testConcurrentCommitWithOverflow() throws Exception {
+        final int leeway = 64;
+        final int count = 50_000;
+        RecordingGap gap = new RecordingGap(leeway);
+        gap.resetTo(0);
+        submit(gap, 1, count);
+
+        // acks are spread over the whole range, so most of them overflow the ring
+        ackConcurrently(gap, offsets(1, count));
+        final long commit = gap.commit(-1L);
+        assertTrue("commit point " + commit, commit > count - leeway && commit <= count);
+        assertTrue(!gap.m_moves.isEmpty());
+
+        long last = 0;
+        synchronized (gap.m_moves) {
+            for (long[] move : gap.m_moves) {
+                assertTrue(move[1] > move[0]);
+                last = Math.max(last, move[1]);
+            }
+        }
+        assertTrue(last <= commit);
+
+        // everything after the final commit point is still tracked
+        for (long offset = commit + 1; offset <= count; offset++) {
+            gap.commit(offset);
+        }
+        assertEquals(count, gap.commit(-1L));
+    }
+}
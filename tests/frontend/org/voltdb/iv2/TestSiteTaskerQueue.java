@@ -0,0 +1,112 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.iv2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.voltdb.StarvationTracker;
+
+public class TestSiteTaskerQueue {
+
+    private static class NoopTask extends SiteTasker.SiteTaskerRunnable {
+        @Override
+        void run() {}
+    }
+
+    private static SiteTaskerQueue getQueue() {
+        SiteTaskerQueue queue = new SiteTaskerQueue();
+        queue.setStarvationTracker(new StarvationTracker(0));
+        return queue;
+    }
+
+    @Test
+    public void testTakeBatchKeepsOrderAndBound() throws InterruptedException {
+        SiteTaskerQueue queue = getQueue();
+        List<SiteTasker> offered = new ArrayList<SiteTasker>();
+        for (int ii = 0; ii < 10; ii++) {
+            SiteTasker task = new NoopTask();
+            offered.add(task);
+            queue.offer(task);
+        }
+
+        List<SiteTasker> batch = new ArrayList<SiteTasker>();
+        assertEquals(4, queue.takeBatch(batch, 4));
+        assertEquals(offered.subList(0, 4), batch);
+
+        batch.clear();
+        assertEquals(1, queue.takeBatch(batch, 1));
+        assertSame(offered.get(4), batch.get(0));
+
+        batch.clear();
+        assertEquals(5, queue.takeBatch(batch, 16));
+        assertEquals(offered.subList(5, 10), batch);
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testTakeBatchBlocksForFirstTask() throws Exception {
+        final SiteTaskerQueue queue = getQueue();
+        final SiteTasker task = new NoopTask();
+        final List<SiteTasker> batch = new ArrayList<SiteTasker>();
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread taker = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    queue.takeBatch(batch, 16);
+                    done.countDown();
+                } catch (InterruptedException e) {}
+            }
+        };
+        taker.start();
+        assertEquals(false, done.await(50, TimeUnit.MILLISECONDS));
+        queue.offer(task);
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        taker.join();
+        assertEquals(1, batch.size());
+        assertSame(task, batch.get(0));
+    }
+
+    @Test
+    public void testStarvationAverageTracksWaits() throws Exception {
+        StarvationTracker tracker = new StarvationTracker(0);
+        assertEquals(0, tracker.getRecentStarvationNanos());
+        for (int ii = 0; ii < 32; ii++) {
+            tracker.beginStarvation();
+            Thread.sleep(1);
+            tracker.endStarvation();
+        }
+        // A site that waits milliseconds for work should be well past any sensible spin budget
+        assertTrue(tracker.getRecentStarvationNanos() > TimeUnit.MICROSECONDS.toNanos(50));
+        assertTrue(tracker.getRecentStarvationNanos() > SiteTaskerQueue.MAX_SPIN_NANOS);
+    }
+}
@@ -23,6 +23,7 @@
 
 package org.voltdb.jdbc;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -32,6 +33,7 @@ import java.io.File;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.math.MathContext;
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.Date;
@@ -704,6 +706,48 @@ public class TestJDBCQueries {
 
     }
 
+    @Test
+    public void testPipelinedQueryBatch() throws Exception
+    {
+        Connection pipelined = DriverManager.getConnection("jdbc:voltdb://localhost:21212?" +
+                JDBC4Connection.PIPELINE_BATCH + "=true");
+        try {
+            String q = String.format("insert into %s(id) values(?)", data[2].tablename);
+            PreparedStatement pStmt = pipelined.prepareStatement(q);
+            for (int i = 100; i < 600; i++) {
+                pStmt.setInt(1, i);
+                pStmt.addBatch();
+            }
+            int[] resultCodes = pStmt.executeBatch();
+            assertEquals(500, resultCodes.length);
+            for (int resultCode : resultCodes) {
+                assertEquals(1, resultCode);
+            }
+            assertEquals(500, pStmt.getUpdateCount());
+
+            // every command runs, the failed one is reported in place
+            Statement batch = pipelined.createStatement();
+            batch.addBatch(String.format("insert into %s(id) values(601)", data[2].tablename));
+            batch.addBatch(String.format("insert into %s(id) values('%s')", data[0].tablename, data[0].bad[0]));
+            batch.addBatch(String.format("insert into %s(id) values(602)", data[2].tablename));
+            try {
+                batch.executeBatch();
+                fail("expected a BatchUpdateException");
+            }
+            catch (BatchUpdateException e) {
+                assertArrayEquals(new int[] {1, Statement.EXECUTE_FAILED, 1}, e.getUpdateCounts());
+            }
+
+            ResultSet rs = pipelined.createStatement().executeQuery(
+                    String.format("select count(*) from %s", data[2].tablename));
+            assertTrue(rs.next());
+            assertEquals(data[2].good.length + 502, rs.getInt(1));
+        }
+        finally {
+            pipelined.close();
+        }
+    }
+
     @Test
     public void testParameterizedQueries() throws Exception
     {
@@ -0,0 +1,147 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.jni;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import org.voltdb.LegacyHashinator;
+import org.voltdb.ParameterSet;
+import org.voltdb.TheHashinator.HashinatorConfig;
+import org.voltdb.TheHashinator.HashinatorType;
+import org.voltdb.VoltDB;
+import org.voltdb.VoltTable;
+import org.voltdb.catalog.Catalog;
+import org.voltdb.catalog.Database;
+import org.voltdb.catalog.PlanFragment;
+import org.voltdb.catalog.Statement;
+import org.voltdb.compiler.VoltProjectBuilder;
+import org.voltdb.planner.ActivePlanRepository;
+import org.voltdb.utils.BuildDirectoryUtils;
+import org.voltdb.utils.CatalogUtil;
+import org.voltdb.utils.Encoder;
+
+/**
+ * Base for tests that compile a catalog, load tables into a single
+ * partition EE and run the plan fragment of a procedure's SELECT in it.
+ */
+public abstract class JNIFragmentTestCase extends TestCase {
+
+    protected static final long READ_ONLY_TOKEN = Long.MAX_VALUE;
+    protected static final long WRITE_TOKEN = 0;
+
+    protected Catalog m_catalog;
+    protected Database m_database;
+    protected ExecutionEngine m_ee;
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        if (m_ee != null) {
+            m_ee.release();
+            m_ee = null;
+        }
+    }
+
+    protected void compileCatalog(VoltProjectBuilder builder, String jarName) throws Exception {
+        VoltDB.instance().readBuildInfo("Test");
+        String catalogJar = BuildDirectoryUtils.getBuildDirectoryPath() + File.separator + jarName;
+        m_catalog = builder.compile(catalogJar, 1, 1, 0, null);
+        assertNotNull(m_catalog);
+        m_database = m_catalog.getClusters().get("cluster").getDatabases().get("database");
+    }
+
+    protected void startEngine(int tempTableMB) throws Exception {
+        startEngine(tempTableMB, ExecutionEngineJNI.EE_TEMP_TABLE_SPILL_DIRECTORY);
+    }
+
+    /**
+     * Replace the engine with a new one holding the compiled catalog and
+     * no rows, spilling temp tables under the given directory if not empty.
+     */
+    protected void startEngine(int tempTableMB, String spillDirectory) throws Exception {
+        if (m_ee != null) {
+            m_ee.release();
+        }
+        m_ee = new ExecutionEngineJNI(
+                2,
+                1,
+                0,
+                0,
+                "",
+                0,
+                tempTableMB,
+                new HashinatorConfig(HashinatorType.LEGACY,
+                                     LegacyHashinator.getConfigureBytes(1),
+                                     0,
+                                     0), false,
+                spillDirectory);
+        m_ee.loadCatalog(0, m_catalog.serialize());
+    }
+
+    protected void loadTable(String tableName, VoltTable rows) throws Exception {
+        m_ee.loadTable(m_database.getTables().get(tableName).getRelativeIndex(), rows,
+                       0, 0, 0, 0, false, false, WRITE_TOKEN);
+    }
+
+    protected VoltTable execute(String procName, String expectedPlan) throws Exception {
+        return execute(procName, expectedPlan, ParameterSet.emptyParameterSet());
+    }
+
+    /**
+     * Run the last fragment of the procedure's SELECT, after checking that
+     * its plan has the expected part.
+     */
+    @SuppressWarnings("deprecation")
+    protected VoltTable execute(String procName, String expectedPlan, ParameterSet params) throws Exception {
+        Statement stmt = null;
+        for (Statement s : m_database.getProcedures().getIgnoreCase(procName).getStatements()) {
+            if (s.getSqltext().startsWith("SELECT")) {
+                stmt = s;
+            }
+        }
+        assertNotNull(procName + " has no SELECT", stmt);
+        String explain = Encoder.hexDecodeToString(stmt.getExplainplan());
+        assertTrue(explain, explain.contains(expectedPlan));
+        PlanFragment frag = null;
+        for (PlanFragment f : stmt.getFragments()) {
+            frag = f;
+        }
+        long fragId = CatalogUtil.getUniqueIdForFragment(frag);
+        ActivePlanRepository.clear();
+        ActivePlanRepository.addFragmentForTest(
+                fragId,
+                Encoder.decodeBase64AndDecompressToBytes(frag.getPlannodetree()),
+                stmt.getSqltext());
+        VoltTable[] results = m_ee.executePlanFragments(
+                1,
+                new long[] { fragId },
+                null,
+                new ParameterSet[] { params },
+                new String[] { stmt.getSqltext() },
+                3, 3, 2, 42, READ_ONLY_TOKEN);
+        return results[0];
+    }
+}
@@ -0,0 +1,211 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.jni;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+import org.voltdb.compiler.VoltProjectBuilder;
+
+/**
+ * Runs hash join fragments straight in the EE, with a temp table limit large
+ * enough to hash the inner table at once and with one that takes several passes.
+ */
+public class TestHashJoinExecutor extends JNIFragmentTestCase {
+
+    private static final int ROWS = 30000;
+    // Small enough for the inner table to be hashed in several passes
+    private static final int SMALL_TEMP_TABLE_MB = 2;
+    // Still several passes, with room for the joined rows of every pass and the result
+    private static final int ROWS_TEMP_TABLE_MB = 3;
+    private static final int LARGE_TEMP_TABLE_MB = 100;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        VoltProjectBuilder builder = new VoltProjectBuilder();
+        builder.addLiteralSchema(
+                "CREATE TABLE R (ID INTEGER NOT NULL, A INTEGER);\n" +
+                "CREATE TABLE S (ID INTEGER NOT NULL, A INTEGER);\n");
+        builder.addStmtProcedure("InnerCount",
+                "SELECT COUNT(*), SUM(R.ID), SUM(S.ID) FROM R JOIN S ON R.A = S.A");
+        builder.addStmtProcedure("LeftCount",
+                "SELECT COUNT(*), COUNT(S.ID), SUM(R.ID), SUM(S.ID) FROM R LEFT JOIN S ON R.A = S.A");
+        builder.addStmtProcedure("LeftRows",
+                "SELECT R.ID, S.ID FROM R LEFT JOIN S ON R.A = S.A");
+        // Hash joins are off unless asked for
+        System.setProperty("PLANNER_HASH_JOIN", "true");
+        try {
+            compileCatalog(builder, "hashjoin-jni.jar");
+        } finally {
+            System.clearProperty("PLANNER_HASH_JOIN");
+        }
+    }
+
+    private static Integer keyOfR(int id) {
+        return id % 11 == 0 ? null : id % 20000;
+    }
+
+    private static Integer keyOfS(int id) {
+        return id % 13 == 0 ? null : (id * 7) % 25000;
+    }
+
+    private void startEngineWithRows(int tempTableMB) throws Exception {
+        startEngine(tempTableMB);
+
+        VoltTable r = new VoltTable(new VoltTable.ColumnInfo("ID", VoltType.INTEGER),
+                                    new VoltTable.ColumnInfo("A", VoltType.INTEGER));
+        VoltTable s = new VoltTable(new VoltTable.ColumnInfo("ID", VoltType.INTEGER),
+                                    new VoltTable.ColumnInfo("A", VoltType.INTEGER));
+        for (int i = 0; i < ROWS; i++) {
+            r.addRow(i, keyOfR(i));
+            s.addRow(i, keyOfS(i));
+        }
+        loadTable("R", r);
+        loadTable("S", s);
+    }
+
+    /**
+     * The ids of the S rows that each key of S maps to
+     */
+    private static Map<Integer, List<Integer>> hashS() {
+        Map<Integer, List<Integer>> matches = new HashMap<Integer, List<Integer>>();
+        for (int i = 0; i < ROWS; i++) {
+            Integer key = keyOfS(i);
+            if (key == null) {
+                continue;
+            }
+            List<Integer> ids = matches.get(key);
+            if (ids == null) {
+                ids = new ArrayList<Integer>();
+                matches.put(key, ids);
+            }
+            ids.add(i);
+        }
+        return matches;
+    }
+
+    private void checkCounts() throws Exception {
+        Map<Integer, List<Integer>> matches = hashS();
+        long innerCount = 0, leftCount = 0, rSum = 0, leftRSum = 0, sSum = 0;
+        for (int i = 0; i < ROWS; i++) {
+            Integer key = keyOfR(i);
+            List<Integer> ids = key == null ? null : matches.get(key);
+            if (ids == null) {
+                leftCount++;
+                leftRSum += i;
+                continue;
+            }
+            for (int id : ids) {
+                innerCount++;
+                rSum += i;
+                sSum += id;
+            }
+        }
+
+        VoltTable inner = execute("InnerCount", "HASH INNER JOIN");
+        assertTrue(inner.advanceRow());
+        assertEquals(innerCount, inner.getLong(0));
+        assertEquals(rSum, inner.getLong(1));
+        assertEquals(sSum, inner.getLong(2));
+
+        // NULL keys never match, the R rows that hold them are null extended
+        VoltTable left = execute("LeftCount", "HASH LEFT JOIN");
+        assertTrue(left.advanceRow());
+        assertEquals(innerCount + leftCount, left.getLong(0));
+        assertEquals(innerCount, left.getLong(1));
+        assertEquals(rSum + leftRSum, left.getLong(2));
+        assertEquals(sSum, left.getLong(3));
+    }
+
+    public void testOnePass() throws Exception {
+        startEngineWithRows(LARGE_TEMP_TABLE_MB);
+        checkCounts();
+    }
+
+    public void testSeveralPasses() throws Exception {
+        // The hash table of the inner table is bigger than a quarter of the limit
+        assertTrue(ROWS * 64L > SMALL_TEMP_TABLE_MB * 1024L * 1024L / 4);
+        startEngineWithRows(SMALL_TEMP_TABLE_MB);
+        checkCounts();
+    }
+
+    public void testSeveralPassesKeepOuterOrder() throws Exception {
+        startEngineWithRows(LARGE_TEMP_TABLE_MB);
+        VoltTable onePass = execute("LeftRows", "HASH LEFT JOIN");
+        assertTrue(ROWS * 64L > ROWS_TEMP_TABLE_MB * 1024L * 1024L / 4);
+        startEngineWithRows(ROWS_TEMP_TABLE_MB);
+        VoltTable severalPasses = execute("LeftRows", "HASH LEFT JOIN");
+
+        // Joined rows come out in the order of the outer rows either way,
+        // only the order of the matches of one outer row may differ
+        assertEquals(onePass.getRowCount(), severalPasses.getRowCount());
+        Map<Long, Map<Long, Integer>> expected = new HashMap<Long, Map<Long, Integer>>();
+        List<Long> outerOrder = new ArrayList<Long>();
+        while (onePass.advanceRow()) {
+            long rId = onePass.getLong(0);
+            if (outerOrder.isEmpty() || outerOrder.get(outerOrder.size() - 1) != rId) {
+                outerOrder.add(rId);
+            }
+            Map<Long, Integer> sIds = expected.get(rId);
+            if (sIds == null) {
+                sIds = new HashMap<Long, Integer>();
+                expected.put(rId, sIds);
+            }
+            long sId = onePass.getLong(1);
+            Integer count = sIds.get(sId);
+            sIds.put(sId, count == null ? 1 : count + 1);
+        }
+        assertEquals(ROWS, outerOrder.size());
+
+        int outer = -1;
+        long lastRId = -1;
+        while (severalPasses.advanceRow()) {
+            long rId = severalPasses.getLong(0);
+            if (rId != lastRId) {
+                outer++;
+                assertEquals(outerOrder.get(outer).longValue(), rId);
+                lastRId = rId;
+            }
+            Map<Long, Integer> sIds = expected.get(rId);
+            long sId = severalPasses.getLong(1);
+            Integer count = sIds.get(sId);
+            assertNotNull("Unexpected match " + rId + ", " + sId, count);
+            if (count == 1) {
+                sIds.remove(sId);
+            }
+            else {
+                sIds.put(sId, count - 1);
+            }
+        }
+        assertEquals(ROWS - 1, outer);
+        for (Map<Long, Integer> sIds : expected.values()) {
+            assertTrue(sIds.isEmpty());
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.jni;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.voltdb.ParameterSet;
+import org.voltdb.SQLStmt;
+import org.voltdb.VoltProcedure;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+import org.voltdb.compiler.VoltProjectBuilder;
+
+/**
+ * Runs ORDER BY ... LIMIT ... OFFSET fragments straight in the EE, with the
+ * top tuples kept by a separate ORDER BY and by one inlined into a sequential
+ * or an index scan, and checks the order and the contents of the results.
+ */
+public class TestOrderByTopN extends JNIFragmentTestCase {
+
+    private static final int ROWS = 1000;
+
+    // Sorting on A DESC, B leaves about 33 tied rows for each sort key
+    private static final String ORDER_BY = " ORDER BY A DESC, B LIMIT ? OFFSET ?";
+
+    // Its INSERT makes the procedure read-write, which plans the SELECT with
+    // the scan turned into a primary key index scan for determinism
+    public static class IndexScanTopN extends VoltProcedure {
+
+        public final SQLStmt select = new SQLStmt("SELECT ID, A, B FROM R" + ORDER_BY);
+        public final SQLStmt insert = new SQLStmt("INSERT INTO R VALUES (?, ?, ?)");
+
+        public long run() {
+            return 0;
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        VoltProjectBuilder builder = new VoltProjectBuilder();
+        builder.addLiteralSchema(
+                "CREATE TABLE R (ID INTEGER NOT NULL, A INTEGER, B INTEGER, PRIMARY KEY (ID));\n" +
+                "CREATE TABLE S (ID INTEGER NOT NULL, A INTEGER, B INTEGER);\n" +
+                "CREATE TABLE U (B INTEGER NOT NULL);\n");
+        builder.addStmtProcedure("SeqScanTopN", "SELECT ID, A, B FROM S" + ORDER_BY);
+        // The join keeps the ORDER BY out of the scans
+        builder.addStmtProcedure("JoinTopN",
+                "SELECT S.ID, S.A, S.B FROM S JOIN U ON S.B = U.B ORDER BY S.A DESC, S.B LIMIT ? OFFSET ?");
+        builder.addProcedures(IndexScanTopN.class);
+        // ORDER BY ... LIMIT is only inlined into scans when asked for
+        System.setProperty("PLANNER_ORDER_BY_INTO_SCAN", "true");
+        try {
+            compileCatalog(builder, "orderby-topn-jni.jar");
+        } finally {
+            System.clearProperty("PLANNER_ORDER_BY_INTO_SCAN");
+        }
+        startEngine(100);
+
+        VoltTable rows = new VoltTable(new VoltTable.ColumnInfo("ID", VoltType.INTEGER),
+                                       new VoltTable.ColumnInfo("A", VoltType.INTEGER),
+                                       new VoltTable.ColumnInfo("B", VoltType.INTEGER));
+        for (int i = 0; i < ROWS; i++) {
+            rows.addRow(i, aOf(i), bOf(i));
+        }
+        loadTable("R", rows);
+        loadTable("S", rows);
+        VoltTable u = new VoltTable(new VoltTable.ColumnInfo("B", VoltType.INTEGER));
+        for (int b = 0; b < 3; b++) {
+            u.addRow(b);
+        }
+        loadTable("U", u);
+    }
+
+    private static int aOf(int id) {
+        return (id * 7) % 10;
+    }
+
+    private static int bOf(int id) {
+        return id % 3;
+    }
+
+    // Sort keys of all the rows, in the order of A DESC, B
+    private static List<Integer> sortedKeys() {
+        List<Integer> keys = new ArrayList<Integer>();
+        for (int i = 0; i < ROWS; i++) {
+            keys.add(i);
+        }
+        Collections.sort(keys, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer x, Integer y) {
+                if (aOf(x) != aOf(y)) {
+                    return aOf(y) - aOf(x);
+                }
+                return bOf(x) - bOf(y);
+            }
+        });
+        for (int i = 0; i < ROWS; i++) {
+            keys.set(i, aOf(keys.get(i)) * 10 + bOf(keys.get(i)));
+        }
+        return keys;
+    }
+
+    private void checkTopN(String procName, String expectedPlan, int limit, int offset) throws Exception {
+        String message = procName + " LIMIT " + limit + " OFFSET " + offset;
+        VoltTable result = execute(procName, expectedPlan, ParameterSet.fromArrayNoCopy(limit, offset));
+        List<Integer> keys = sortedKeys();
+        int expectedRows = Math.max(0, Math.min(limit, ROWS - offset));
+        assertEquals(message, expectedRows, result.getRowCount());
+
+        // Any of the rows tied on the sort key may be picked, but each
+        // row must be a row of the table and be picked only once
+        Set<Integer> seen = new HashSet<Integer>();
+        int position = offset;
+        while (result.advanceRow()) {
+            int id = (int) result.getLong(0);
+            int a = (int) result.getLong(1);
+            int b = (int) result.getLong(2);
+            assertEquals(message, aOf(id), a);
+            assertEquals(message, bOf(id), b);
+            assertEquals(message + " row " + position, keys.get(position).intValue(), a * 10 + b);
+            assertTrue(message, seen.add(id));
+            position++;
+        }
+    }
+
+    private void checkLimitsAndOffsets(String procName, String expectedPlan) throws Exception {
+        // The last rows kept are tied with rows left out
+        checkTopN(procName, expectedPlan, 5, 0);
+        checkTopN(procName, expectedPlan, 50, 0);
+        checkTopN(procName, expectedPlan, 10, 37);
+        checkTopN(procName, expectedPlan, 1, ROWS - 1);
+        // The whole table, and more than the whole table
+        checkTopN(procName, expectedPlan, ROWS, 0);
+        checkTopN(procName, expectedPlan, ROWS + 50, 0);
+        checkTopN(procName, expectedPlan, ROWS + 50, ROWS - 20);
+        // Nothing at all
+        checkTopN(procName, expectedPlan, 0, 0);
+        checkTopN(procName, expectedPlan, 0, 10);
+        checkTopN(procName, expectedPlan, 5, ROWS);
+        checkTopN(procName, expectedPlan, 5, ROWS + 10);
+    }
+
+    public void testOrderByExecutor() throws Exception {
+        checkLimitsAndOffsets("JoinTopN", "ORDER BY (SORT)\n  inline LIMIT with parameter\n  NEST LOOP INNER JOIN");
+    }
+
+    public void testInlineOrderByInSeqScan() throws Exception {
+        checkLimitsAndOffsets("SeqScanTopN", "SEQUENTIAL SCAN of \"S\"\n  inline ORDER BY (SORT)");
+    }
+
+    public void testInlineOrderByInIndexScan() throws Exception {
+        // Procedure classes are named after their class, nested in this one
+        checkLimitsAndOffsets("TestOrderByTopN$IndexScanTopN",
+                "INDEX SCAN of \"R\" using its primary key index (for deterministic order only)\n  inline ORDER BY (SORT)");
+    }
+}
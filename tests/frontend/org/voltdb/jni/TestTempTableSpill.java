@@ -0,0 +1,182 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.jni;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+import org.voltdb.compiler.VoltProjectBuilder;
+import org.voltdb.exceptions.SQLException;
+import org.voltdb.utils.VoltFile;
+
+/**
+ * Runs queries whose temp tables take several times the temp table limit,
+ * with and without a directory to spill them to.
+ */
+public class TestTempTableSpill extends JNIFragmentTestCase {
+
+    private static final int ROWS = 100000;
+    // The scanned rows take about 7 MB
+    private static final int TEMP_TABLE_MB = 6;
+    private static final String PADDING = "padding-padding";
+
+    private File m_spillDirectory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        VoltProjectBuilder builder = new VoltProjectBuilder();
+        builder.addLiteralSchema(
+                "CREATE TABLE R (ID INTEGER NOT NULL, A INTEGER, P VARCHAR(15));\n" +
+                "CREATE TABLE S (ID INTEGER NOT NULL, A INTEGER, P VARCHAR(15));\n");
+        // The filters keep the scans from handing their persistent tables on as they are
+        builder.addStmtProcedure("SortR",
+                "SELECT ID, A, P FROM R WHERE ID >= 0 ORDER BY A DESC, ID");
+        builder.addStmtProcedure("JoinRS",
+                "SELECT COUNT(*), SUM(R.ID), SUM(S.ID), MAX(S.P) FROM R JOIN S ON R.A = S.A AND R.ID >= 0 AND S.ID >= 0");
+        // Hash joins are off unless asked for
+        System.setProperty("PLANNER_HASH_JOIN", "true");
+        try {
+            compileCatalog(builder, "temptable-spill-jni.jar");
+        } finally {
+            System.clearProperty("PLANNER_HASH_JOIN");
+        }
+        m_spillDirectory = Files.createTempDirectory("TestTempTableSpill").toFile();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        VoltFile.recursivelyDelete(m_spillDirectory);
+    }
+
+    private static int keyOfR(int id) {
+        return id % 30011;
+    }
+
+    private static int keyOfS(int id) {
+        return (id * 7) % 40009;
+    }
+
+    private void startEngineWithRows(String spillDirectory) throws Exception {
+        startEngine(TEMP_TABLE_MB, spillDirectory);
+
+        VoltTable r = new VoltTable(new VoltTable.ColumnInfo("ID", VoltType.INTEGER),
+                                    new VoltTable.ColumnInfo("A", VoltType.INTEGER),
+                                    new VoltTable.ColumnInfo("P", VoltType.STRING));
+        VoltTable s = new VoltTable(new VoltTable.ColumnInfo("ID", VoltType.INTEGER),
+                                    new VoltTable.ColumnInfo("A", VoltType.INTEGER),
+                                    new VoltTable.ColumnInfo("P", VoltType.STRING));
+        for (int i = 0; i < ROWS; i++) {
+            r.addRow(i, keyOfR(i), PADDING);
+            s.addRow(i, keyOfS(i), PADDING);
+        }
+        loadTable("R", r);
+        loadTable("S", s);
+    }
+
+    /** Bytes spilled, bytes read back and ms spent on spill files by the engine so far */
+    private long[] spillTotals() {
+        long[] totals = new long[3];
+        m_ee.getTempTableSpillStats(totals);
+        return totals;
+    }
+
+    private void checkTooLargeWithoutSpilling(String procName, String expectedPlan) throws Exception {
+        startEngineWithRows("");
+        try {
+            execute(procName, expectedPlan);
+            fail("Expected " + procName + " to run out of temp table memory");
+        }
+        catch (SQLException e) {
+            assertEquals("V0002", e.getSQLState());
+        }
+    }
+
+    public void testExternalSort() throws Exception {
+        checkTooLargeWithoutSpilling("SortR", "ORDER BY (SORT)");
+
+        startEngineWithRows(m_spillDirectory.getPath());
+        assertEquals(0, spillTotals()[0]);
+        VoltTable result = execute("SortR", "ORDER BY (SORT)");
+        assertEquals(ROWS, result.getRowCount());
+        // the site totals reported in @Statistics MEMORY
+        long[] totals = spillTotals();
+        assertTrue(totals[0] > 0);
+        assertTrue(totals[1] > 0);
+        assertTrue(totals[2] >= 0);
+        Map<Integer, Integer> seen = new HashMap<Integer, Integer>();
+        long lastA = Long.MAX_VALUE;
+        long lastId = -1;
+        while (result.advanceRow()) {
+            int id = (int) result.getLong(0);
+            long a = result.getLong(1);
+            assertEquals(keyOfR(id), a);
+            assertEquals(PADDING, result.getString(2));
+            assertTrue(a <= lastA);
+            if (a == lastA) {
+                assertTrue(id > lastId);
+            }
+            lastA = a;
+            lastId = id;
+            assertNull(seen.put(id, id));
+        }
+        assertEquals(ROWS, seen.size());
+    }
+
+    public void testHashJoinOfSpilledInner() throws Exception {
+        checkTooLargeWithoutSpilling("JoinRS", "HASH INNER JOIN");
+
+        Map<Integer, Long> sIdSums = new HashMap<Integer, Long>();
+        Map<Integer, Integer> sCounts = new HashMap<Integer, Integer>();
+        for (int i = 0; i < ROWS; i++) {
+            int key = keyOfS(i);
+            Long sum = sIdSums.get(key);
+            sIdSums.put(key, sum == null ? i : sum + i);
+            Integer count = sCounts.get(key);
+            sCounts.put(key, count == null ? 1 : count + 1);
+        }
+        long count = 0, rSum = 0, sSum = 0;
+        for (int i = 0; i < ROWS; i++) {
+            Integer matches = sCounts.get(keyOfR(i));
+            if (matches != null) {
+                count += matches;
+                rSum += (long) i * matches;
+                sSum += sIdSums.get(keyOfR(i));
+            }
+        }
+
+        startEngineWithRows(m_spillDirectory.getPath());
+        VoltTable result = execute("JoinRS", "HASH INNER JOIN");
+        assertTrue(result.advanceRow());
+        assertEquals(count, result.getLong(0));
+        assertEquals(rSum, result.getLong(1));
+        assertEquals(sSum, result.getLong(2));
+        assertEquals(PADDING, result.getString(3));
+    }
+}
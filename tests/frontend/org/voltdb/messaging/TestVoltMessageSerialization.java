@@ -25,6 +25,7 @@ package org.voltdb.messaging;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import junit.framework.TestCase;
 
@@ -40,6 +41,8 @@ import org.voltdb.VoltTable;
 import org.voltdb.VoltType;
 import org.voltdb.client.ClientResponse;
 import org.voltdb.exceptions.EEException;
+import org.voltdb.rejoin.RejoinDataMessage;
+import org.voltdb.utils.CompressionCodec;
 
 import com.google_voltpatches.common.collect.Sets;
 
@@ -460,6 +463,30 @@ public class TestVoltMessageSerialization extends TestCase {
         assertEquals(r1.getHashinatorVersionedConfig().getFirst(),new Long(2));
     }
 
+    public void testRejoinDataMessage() throws IOException
+    {
+        byte[] data = new byte[] { 1, 2, 3, 4, 5, 6, 7 };
+        for (CompressionCodec codec : CompressionCodec.values()) {
+            RejoinDataMessage rdm = new RejoinDataMessage(37, codec, data);
+            assertEquals(rdm.getSerializedSize(), flattenedSize(rdm));
+            RejoinDataMessage rdm2 = (RejoinDataMessage) checkVoltMessage(rdm);
+
+            assertEquals(37, rdm2.getTargetId());
+            assertEquals(codec, rdm2.getCodec());
+            assertTrue(Arrays.equals(data, rdm2.getData()));
+        }
+
+        // An empty block round trips too
+        RejoinDataMessage empty = new RejoinDataMessage(-1, CompressionCodec.NONE, new byte[0]);
+        assertEquals(0, ((RejoinDataMessage) checkVoltMessage(empty)).getData().length);
+    }
+
+    private static int flattenedSize(VoltMessage msg) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(msg.getSerializedSize() + 64);
+        msg.flattenToBuffer(buf);
+        return buf.position();
+    }
+
     public void testInvalidTableCount() throws Exception
     {
         int size = 1 // version
@@ -62,6 +62,7 @@ public class PlannerTestAideDeCamp {
     int compileCounter = 0;
 
     private CompiledPlan m_currentPlan = null;
+    private String m_joinOrderSummary = null;
 
     /**
      * Loads the schema at ddlurl and setups a voltcompiler / hsql instance.
@@ -86,6 +87,14 @@ public class PlannerTestAideDeCamp {
         return db;
     }
 
+    /**
+     * How the join order of the last statement compiled was picked, or null
+     * if it joined few enough tables to try every permutation.
+     */
+    String getJoinOrderSummary() {
+        return m_joinOrderSummary;
+    }
+
     /**
      * Compile a statement and return the head of the plan.
      * @param sql
@@ -151,6 +160,7 @@ public class PlannerTestAideDeCamp {
         planner.parse();
         plan = planner.plan();
         assert(plan != null);
+        m_joinOrderSummary = planner.m_joinOrderSummary;
 
         // Partitioning optionally inferred from the planning process.
         if (partitioning.isInferred()) {
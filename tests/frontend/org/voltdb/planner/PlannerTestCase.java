@@ -241,6 +241,10 @@ public class PlannerTestCase extends TestCase {
         return m_aide.getDatabase();
     }
 
+    String getJoinOrderSummary() {
+        return m_aide.getJoinOrderSummary();
+    }
+
     protected void printExplainPlan(List<AbstractPlanNode> planNodes) {
         for (AbstractPlanNode apn: planNodes) {
             System.out.println(apn.toExplainPlanString());
@@ -23,9 +23,11 @@
 
 package org.voltdb.planner;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 
+import org.voltdb.plannodes.AbstractJoinPlanNode;
 import org.voltdb.plannodes.AbstractPlanNode;
 import org.voltdb.plannodes.IndexScanPlanNode;
 import org.voltdb.plannodes.NestLoopPlanNode;
@@ -252,14 +254,14 @@ public class TestJoinOrder extends PlannerTestCase {
         AbstractPlanNode n = pn.getChild(0).getChild(0);
         String joinOrder[] = {"T2", "T1", "T3", "T4", "T5", "T7", "T6"};
         for (int i = 6; i > 0; i--) {
-            assertTrue(n instanceof NestLoopPlanNode);
+            assertTrue(n instanceof AbstractJoinPlanNode);
             assertTrue(n.getChild(1) instanceof SeqScanPlanNode);
             SeqScanPlanNode s = (SeqScanPlanNode) n.getChild(1);
             if (i == 1) {
                 assertTrue(n.getChild(0) instanceof SeqScanPlanNode);
                 assertTrue(joinOrder[i-1].equals(((SeqScanPlanNode) n.getChild(0)).getTargetTableName()));
             } else {
-                assertTrue(n.getChild(0) instanceof NestLoopPlanNode);
+                assertTrue(n.getChild(0) instanceof AbstractJoinPlanNode);
                 n = n.getChild(0);
             }
             assertTrue(joinOrder[i].equals(s.getTargetTableName()));
@@ -318,7 +320,7 @@ public class TestJoinOrder extends PlannerTestCase {
                         || ((SeqScanPlanNode)n.getChild(1)).getTargetTableName().endsWith(Integer.toString(ii - 1)));
                 break;
             } else {
-                NestLoopPlanNode node = (NestLoopPlanNode)n;
+                AbstractJoinPlanNode node = (AbstractJoinPlanNode)n;
                 if (mySets.contains(Integer.valueOf(ii))) {
                     assertTrue(((SeqScanPlanNode)n.getChild(0)).getTargetTableName().endsWith(Integer.toString(ii)));
                     n = node.getChild(1);
@@ -368,7 +370,9 @@ public class TestJoinOrder extends PlannerTestCase {
         AbstractPlanNode pn;
         sql = "select * FROM T1, T2, (select T4.D from T3 right outer join T4 on T4.D = T3.C) TM1 LEFT OUTER JOIN T5 on T5.E = TM1.D, T6, T7";
         pn = compile(sql);
-        validJoinOrder(pn.toExplainPlanString(), "T1", "T2",  "T4", "T3", "T5", "T6", "T7");
+        // The subquery is estimated smaller than the tables, so the join order
+        // enumerator starts the cross product with it.
+        validJoinOrder(pn.toExplainPlanString(), "T4", "T3", "T1", "T2", "T5", "T6", "T7");
         /*
         NEST LOOP INNER JOIN
          NEST LOOP INNER JOIN
@@ -376,13 +380,13 @@ public class TestJoinOrder extends PlannerTestCase {
            filter by (T5.E = TM1.D)
            NEST LOOP INNER JOIN
             NEST LOOP INNER JOIN
+             SEQUENTIAL SCAN of "TM1"
+              NEST LOOP LEFT JOIN
+               filter by (T4.D = T3.C)
+               SEQUENTIAL SCAN of "T4"
+               SEQUENTIAL SCAN of "T3"
              SEQUENTIAL SCAN of "T1"
-             SEQUENTIAL SCAN of "T2"
-            SEQUENTIAL SCAN of "TM1"
-             NEST LOOP LEFT JOIN
-              filter by (T4.D = T3.C)
-              SEQUENTIAL SCAN of "T4"
-              SEQUENTIAL SCAN of "T3"
+            SEQUENTIAL SCAN of "T2"
            SEQUENTIAL SCAN of "T5"
           SEQUENTIAL SCAN of "T6"
          SEQUENTIAL SCAN of "T7"
@@ -398,6 +402,74 @@ public class TestJoinOrder extends PlannerTestCase {
 
     }
 
+    public void testMoreThan5TablesJoinOrderedByEstimates() {
+        String sql;
+        AbstractPlanNode pn;
+
+        // The filtered table is estimated the smallest, so the cross product starts from it
+        // instead of following the FROM clause.
+        sql = "select * FROM T1, T2, T3, T4, T5, T6, T7 where T7.G = 1";
+        pn = compile(sql);
+        validJoinOrder(pn.toExplainPlanString(), "T7", "T1", "T2", "T3", "T4", "T5", "T6");
+
+        // An explicit join order is still followed
+        pn = compileSPWithJoinOrder(sql, "T1,T2,T3,T4,T5,T6,T7");
+        validJoinOrder(pn.toExplainPlanString(), "T1", "T2", "T3", "T4", "T5", "T6", "T7");
+
+        // Equi-joins keep the table with the filter next to the one it joins
+        sql = "select * FROM T1, T2, T3, T4, T5, T6, I7 where T1.A = 1 and I7.G = T1.A";
+        pn = compile(sql);
+        validJoinOrder(pn.toExplainPlanString(), "I7", "T1", "T2", "T3", "T4", "T5", "T6");
+    }
+
+    public void testManyTablesJoinOrderedGreedily() {
+        // More tables than are ordered by dynamic programming
+        final int tables = JoinOrderEnumerator.MAX_DYNAMIC_PROGRAMMING_TABLES + 2;
+        StringBuilder sql = new StringBuilder("select * FROM T1 X1");
+        for (int i = 2; i <= tables; i++) {
+            sql.append(", T1 X").append(i);
+        }
+        sql.append(" where X").append(tables).append(".A = 1 and X3.A = X").append(tables).append(".A");
+        AbstractPlanNode pn = compile(sql.toString());
+        assertTrue(getJoinOrderSummary(), getJoinOrderSummary().contains("greedily"));
+
+        // Starts from the filtered table, joins the one it equi-joins next
+        // and then the others in the order they were written
+        List<String> joinOrder = new ArrayList<>();
+        joinOrder.add("T1 (X" + tables + ")");
+        joinOrder.add("T1 (X3)");
+        for (int i = 1; i < tables; i++) {
+            if (i != 3) {
+                joinOrder.add("T1 (X" + i + ")");
+            }
+        }
+        validJoinOrder(pn.toExplainPlanString(), joinOrder.toArray(new String[0]));
+    }
+
+    public void testOuterJoinInsideLargeInnerJoin() {
+        String sql;
+        AbstractPlanNode pn;
+
+        // The outer join stands in the inner join for all its tables, and is
+        // sized as its largest one, not as the smaller subquery. The filtered
+        // table is smaller, so it leads.
+        sql = "select * FROM (select A from T1) TM1, T2 LEFT JOIN T3 ON T2.B = T3.C, T4, T5, T6, T7 where T7.G > 1";
+        pn = compile(sql);
+        assertTrue(getJoinOrderSummary(), getJoinOrderSummary().contains("dynamic programming"));
+        // The join of the subquery and T2 under the outer join is ordered by itself
+        validJoinOrder(pn.toExplainPlanString(), "T7", "TM1", "T2", "T3", "T4", "T5", "T6");
+
+        // Every table is still joined when a permutation of a few tables
+        // puts the outer join between two others
+        sql = "select * FROM T1 LEFT JOIN T2 ON T1.A = T2.B, T3, T4 where T3.C = T4.D";
+        pn = compile(sql);
+        assertNull(getJoinOrderSummary());
+        String explain = pn.toExplainPlanString();
+        for (String table : new String[] { "T1", "T2", "T3", "T4" }) {
+            assertTrue(explain, explain.contains("\"" + table + "\""));
+        }
+    }
+
     @Override
     protected void setUp() throws Exception {
         setupSchema(true, TestJoinOrder.class.getResource("testjoinorder-ddl.sql"), "testjoinorder");
@@ -25,6 +25,7 @@ package org.voltdb.planner;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 
 import junit.framework.TestCase;
 
@@ -163,4 +164,28 @@ public class TestPlannerTool extends TestCase {
         // would return a Stream Closed error
         m_pt.planSqlForTest("select * from A;");
     }
+
+    public void testUpdateKeepsCollectedEstimates() throws IOException
+    {
+        VoltProjectBuilder builder = new VoltProjectBuilder();
+        builder.addLiteralSchema("CREATE TABLE A (C1 BIGINT NOT NULL, PRIMARY KEY(C1));");
+        builder.addPartitionInfo("A", "C1");
+
+        final File jar = new File("testestimates-oop.jar");
+        jar.deleteOnExit();
+        builder.compile("testestimates-oop.jar");
+        byte[] bytes = MiscUtils.fileToBytes(new File("testestimates-oop.jar"));
+        String serializedCatalog = CatalogUtil.getSerializedCatalogStringFromJar(CatalogUtil.loadAndUpgradeCatalogFromJar(bytes).getFirst());
+        Catalog c = new Catalog();
+        c.execute(serializedCatalog);
+        CatalogContext context = new CatalogContext(0, 0, c, bytes, new byte[] {}, 0);
+
+        // A deployment only update keeps the catalog hash, and so the plan cache.
+        // The estimates must go on with it or their generation would start over
+        // below the one the cache has already seen and never invalidate it again.
+        CatalogContext updated = context.update(1, 1, null, "", false, new byte[] {});
+        assertTrue(Arrays.equals(context.getCatalogHash(), updated.getCatalogHash()));
+        assertSame(context.m_estimates, updated.m_estimates);
+        assertEquals(context.m_estimates.getGeneration(), updated.m_estimates.getGeneration());
+    }
 }
@@ -35,6 +35,7 @@ import org.voltdb.plannodes.MergeReceivePlanNode;
 import org.voltdb.plannodes.OrderByPlanNode;
 import org.voltdb.plannodes.ProjectionPlanNode;
 import org.voltdb.plannodes.ReceivePlanNode;
+import org.voltdb.plannodes.SeqScanPlanNode;
 import org.voltdb.types.JoinType;
 import org.voltdb.types.PlanNodeType;
 
@@ -186,6 +187,61 @@ public class TestPlansLimit extends PlannerTestCase {
         checkInlineLimitWithOrderby(pns, false);
     }
 
+    public void testPushDownOrderByIntoScan() {
+        List<AbstractPlanNode> pns;
+        AbstractPlanNode p;
+
+        // ORDER BY ... LIMIT stays above the scan unless asked for
+        pns = compileToFragments("select A1, B1 from R1 where C1 > 0 order by B1 limit 3 offset 2");
+        p = pns.get(0).getChild(0);
+        if (p instanceof ProjectionPlanNode) {
+            p = p.getChild(0);
+        }
+        assertTrue(p instanceof OrderByPlanNode);
+        assertNull(p.getChild(0).getInlinePlanNode(PlanNodeType.ORDERBY));
+
+        System.setProperty("PLANNER_ORDER_BY_INTO_SCAN", "true");
+        try {
+            // the scan keeps only the top LIMIT + OFFSET tuples
+            pns = compileToFragments("select A1, B1 from R1 where C1 > 0 order by B1 limit 3 offset 2");
+            assertEquals(1, pns.size());
+            p = pns.get(0).getChild(0);
+            if (p instanceof ProjectionPlanNode) {
+                p = p.getChild(0);
+            }
+            assertTrue(p instanceof AbstractScanPlanNode);
+            // the limit is the sort's, it does not cut the scan short
+            assertNull(p.getInlinePlanNode(PlanNodeType.LIMIT));
+            p = p.getInlinePlanNode(PlanNodeType.ORDERBY);
+            assertTrue(p instanceof OrderByPlanNode);
+            LimitPlanNode limit = (LimitPlanNode)p.getInlinePlanNode(PlanNodeType.LIMIT);
+            assertEquals(3, limit.getLimit());
+            assertEquals(2, limit.getOffset());
+
+            // without a limit the whole input is sorted anyway
+            pns = compileToFragments("select A1, B1 from R1 order by B1");
+            p = pns.get(0).getChild(0);
+            if (p instanceof ProjectionPlanNode) {
+                p = p.getChild(0);
+            }
+            assertTrue(p instanceof OrderByPlanNode);
+            assertNull(p.getChild(0).getInlinePlanNode(PlanNodeType.ORDERBY));
+
+            // partitions return their top tuples in order for the coordinator to merge
+            pns = compileToFragments("select A1 from T1 order by A1 limit 5");
+            assertEquals(2, pns.size());
+            p = pns.get(0).getChild(0);
+            if (p instanceof ProjectionPlanNode) {
+                p = p.getChild(0);
+            }
+            assertTrue(p instanceof MergeReceivePlanNode);
+            p = pns.get(1).getChild(0);
+            assertTrue(p instanceof SeqScanPlanNode);
+            checkOrderByWithInlineLimit(p);
+        } finally {
+            System.clearProperty("PLANNER_ORDER_BY_INTO_SCAN");
+        }
+    }
 
     private void checkInlineLimitWithOrderby(List<AbstractPlanNode> pns, boolean pushdown) {
         AbstractPlanNode p;
@@ -200,21 +256,28 @@ public class TestPlansLimit extends PlannerTestCase {
                 assertNotNull(aggr.getInlinePlanNode(PlanNodeType.LIMIT));
             }
         } else {
-            assertTrue(p instanceof OrderByPlanNode);
-            assertNotNull(p.getInlinePlanNode(PlanNodeType.LIMIT));
+            checkOrderByWithInlineLimit(p);
         }
 
         if (pushdown) {
             assertEquals(2, pns.size());
             p = pns.get(1).getChild(0);
-            assertTrue(p instanceof OrderByPlanNode);
-            assertNotNull(p.getInlinePlanNode(PlanNodeType.LIMIT));
+            checkOrderByWithInlineLimit(p);
         } else if (pns.size() == 2) {
             p = pns.get(1).getChild(0);
             assertFalse(p.toExplainPlanString().toLowerCase().contains("limit"));
         }
     }
 
+    // An ORDER BY with an inline LIMIT, on its own or inlined into a sequential scan
+    private void checkOrderByWithInlineLimit(AbstractPlanNode p) {
+        if (p instanceof SeqScanPlanNode) {
+            p = p.getInlinePlanNode(PlanNodeType.ORDERBY);
+        }
+        assertTrue(p instanceof OrderByPlanNode);
+        assertNotNull(p.getInlinePlanNode(PlanNodeType.LIMIT));
+    }
+
     private void checkInlineLimitAndOrderbyWithReceive(List<AbstractPlanNode> pns, boolean pushdown) {
         AbstractPlanNode p;
 
@@ -228,8 +291,7 @@ public class TestPlansLimit extends PlannerTestCase {
         if (pushdown) {
             assertEquals(2, pns.size());
             p = pns.get(1).getChild(0);
-            assertTrue(p instanceof OrderByPlanNode);
-            assertNotNull(p.getInlinePlanNode(PlanNodeType.LIMIT));
+            checkOrderByWithInlineLimit(p);
         } else if (pns.size() == 2) {
             p = pns.get(1).getChild(0);
             assertFalse(p.toExplainPlanString().toLowerCase().contains("limit"));
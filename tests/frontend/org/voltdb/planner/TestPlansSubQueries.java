@@ -33,10 +33,12 @@ import org.voltdb.expressions.ComparisonExpression;
 import org.voltdb.expressions.ConstantValueExpression;
 import org.voltdb.expressions.ParameterValueExpression;
 import org.voltdb.expressions.TupleValueExpression;
+import org.voltdb.plannodes.AbstractJoinPlanNode;
 import org.voltdb.plannodes.AbstractPlanNode;
 import org.voltdb.plannodes.AbstractScanPlanNode;
 import org.voltdb.plannodes.AggregatePlanNode;
 import org.voltdb.plannodes.HashAggregatePlanNode;
+import org.voltdb.plannodes.HashJoinPlanNode;
 import org.voltdb.plannodes.IndexScanPlanNode;
 import org.voltdb.plannodes.MergeReceivePlanNode;
 import org.voltdb.plannodes.NestLoopIndexPlanNode;
@@ -57,9 +59,19 @@ import org.voltdb.types.PlanNodeType;
 public class TestPlansSubQueries extends PlannerTestCase {
     @Override
     protected void setUp() throws Exception {
+        // These plans are checked with hash joins on and ORDER BY ... LIMIT inlined into scans
+        System.setProperty(SelectSubPlanAssembler.HASH_JOIN_PROPERTY, "true");
+        System.setProperty("PLANNER_ORDER_BY_INTO_SCAN", "true");
         setupSchema(TestPlansSubQueries.class.getResource("testplans-subqueries-ddl.sql"), "ddl", false);
     }
 
+    @Override
+    protected void tearDown() throws Exception {
+        System.clearProperty(SelectSubPlanAssembler.HASH_JOIN_PROPERTY);
+        System.clearProperty("PLANNER_ORDER_BY_INTO_SCAN");
+        super.tearDown();
+    }
+
     public void testSelectOnlyGuard() {
         // Can only have expression subqueries in SELECT statements
 
@@ -430,7 +442,7 @@ public class TestPlansSubQueries extends PlannerTestCase {
         assertTrue(pn instanceof SendPlanNode);
         //* enable to debug */ System.out.println(pn.toExplainPlanString());
         nlpn = pn.getChild(0);
-        assertTrue(nlpn instanceof NestLoopPlanNode);
+        assertTrue(nlpn instanceof HashJoinPlanNode);
         pn = nlpn.getChild(0);
         checkSeqScan(pn, "T1", "A");
         pn = pn.getChild(0);
@@ -453,7 +465,7 @@ public class TestPlansSubQueries extends PlannerTestCase {
         assertTrue(pn instanceof SendPlanNode);
 
         nlpn = pn.getChild(0);
-        assertTrue(nlpn instanceof NestLoopPlanNode);
+        assertTrue(nlpn instanceof HashJoinPlanNode);
 
         pn = nlpn.getChild(1);
         checkSeqScan(pn, "T1", "A");
@@ -504,14 +516,13 @@ public class TestPlansSubQueries extends PlannerTestCase {
         pn = pn.getChild(0);
         assertTrue(pn instanceof ProjectionPlanNode);
         pn = pn.getChild(0);
-        // inline limit with order by
-        assertTrue(pn instanceof OrderByPlanNode);
-        assertNotNull(pn.getInlinePlanNode(PlanNodeType.LIMIT));
-        pn = pn.getChild(0);
         checkSeqScan(pn, "R1",  "A", "D" );
         checkPredicateComparisonExpression(pn, "R1");
-        assertEquals(((SeqScanPlanNode) pn).getInlinePlanNodes().size(), 1);
+        assertEquals(((SeqScanPlanNode) pn).getInlinePlanNodes().size(), 2);
         assertNotNull(((SeqScanPlanNode) pn).getInlinePlanNode(PlanNodeType.PROJECTION));
+        // inline order by with its inline limit
+        assertNotNull(((SeqScanPlanNode) pn).getInlinePlanNode(PlanNodeType.ORDERBY));
+        assertNotNull(pn.getInlinePlanNode(PlanNodeType.ORDERBY).getInlinePlanNode(PlanNodeType.LIMIT));
 
         AbstractPlanNode aggNode;
 
@@ -524,14 +535,13 @@ public class TestPlansSubQueries extends PlannerTestCase {
         pn = pn.getChild(0);
         assertTrue(pn instanceof ProjectionPlanNode);
         pn = pn.getChild(0);
-        // inline limit with order by
-        assertTrue(pn instanceof OrderByPlanNode);
-        assertNotNull(pn.getInlinePlanNode(PlanNodeType.LIMIT));
-        pn = pn.getChild(0);
         checkSeqScan(pn, "R1",  "A", "D" );
         checkPredicateComparisonExpression(pn, "R1");
-        assertEquals(((SeqScanPlanNode) pn).getInlinePlanNodes().size(), 1);
+        assertEquals(((SeqScanPlanNode) pn).getInlinePlanNodes().size(), 2);
         assertNotNull(((SeqScanPlanNode) pn).getInlinePlanNode(PlanNodeType.PROJECTION));
+        // inline order by with its inline limit
+        assertNotNull(((SeqScanPlanNode) pn).getInlinePlanNode(PlanNodeType.ORDERBY));
+        assertNotNull(pn.getInlinePlanNode(PlanNodeType.ORDERBY).getInlinePlanNode(PlanNodeType.LIMIT));
 
 
         pn = compile("select A, SUM(D)*COUNT(*) FROM (SELECT A, D FROM R1 WHERE A > 3 ORDER BY D Limit 3 ) T1 Group by A HAVING SUM(D) < 3");
@@ -546,14 +556,13 @@ public class TestPlansSubQueries extends PlannerTestCase {
         pn = pn.getChild(0);
         assertTrue(pn instanceof ProjectionPlanNode);
         pn = pn.getChild(0);
-        // inline limit with order by
-        assertTrue(pn instanceof OrderByPlanNode);
-        assertNotNull(pn.getInlinePlanNode(PlanNodeType.LIMIT));
-        pn = pn.getChild(0);
         checkSeqScan(pn, "R1",  "A", "D" );
         checkPredicateComparisonExpression(pn, "R1");
-        assertEquals(((SeqScanPlanNode) pn).getInlinePlanNodes().size(), 1);
+        assertEquals(((SeqScanPlanNode) pn).getInlinePlanNodes().size(), 2);
         assertNotNull(((SeqScanPlanNode) pn).getInlinePlanNode(PlanNodeType.PROJECTION));
+        // inline order by with its inline limit
+        assertNotNull(((SeqScanPlanNode) pn).getInlinePlanNode(PlanNodeType.ORDERBY));
+        assertNotNull(pn.getInlinePlanNode(PlanNodeType.ORDERBY).getInlinePlanNode(PlanNodeType.LIMIT));
 
 
 
@@ -569,14 +578,13 @@ public class TestPlansSubQueries extends PlannerTestCase {
         pn = pn.getChild(0);
         assertTrue(pn instanceof ProjectionPlanNode);
         pn = pn.getChild(0);
-        // inline limit with order by
-        assertTrue(pn instanceof OrderByPlanNode);
-        assertNotNull(pn.getInlinePlanNode(PlanNodeType.LIMIT));
-        pn = pn.getChild(0);
         checkSeqScan(pn, "R1",  "A", "D" );
         checkPredicateComparisonExpression(pn, "R1");
-        assertEquals(((SeqScanPlanNode) pn).getInlinePlanNodes().size(), 1);
+        assertEquals(((SeqScanPlanNode) pn).getInlinePlanNodes().size(), 2);
         assertNotNull(((SeqScanPlanNode) pn).getInlinePlanNode(PlanNodeType.PROJECTION));
+        // inline order by with its inline limit
+        assertNotNull(((SeqScanPlanNode) pn).getInlinePlanNode(PlanNodeType.ORDERBY));
+        assertNotNull(pn.getInlinePlanNode(PlanNodeType.ORDERBY).getInlinePlanNode(PlanNodeType.LIMIT));
 
 
 
@@ -739,7 +747,7 @@ public class TestPlansSubQueries extends PlannerTestCase {
         pn = planNodes.get(0).getChild(0);
         assertTrue(pn instanceof ProjectionPlanNode);
         nlpn = pn.getChild(0);
-        assertTrue(nlpn instanceof NestLoopPlanNode);
+        assertTrue(nlpn instanceof HashJoinPlanNode);
         pn = nlpn.getChild(1);
         checkSeqScan(pn, "R1");
         pn = nlpn.getChild(0);
@@ -1382,15 +1390,18 @@ public class TestPlansSubQueries extends PlannerTestCase {
         }
     }
 
-    private void checkPushedDownJoins(int nestLoopCount, String joinQuery) {
+    private void checkPushedDownJoins(int joinCount, String joinQuery) {
         List<AbstractPlanNode> planNodes = compileToFragments(joinQuery);
         assertEquals(2, planNodes.size());
         //* enable to debug */ System.out.println(planNodes.get(0).toExplainPlanString());
         checkJoinNode(planNodes.get(0), PlanNodeType.NESTLOOP, 0);
         checkJoinNode(planNodes.get(0), PlanNodeType.NESTLOOPINDEX, 0);
-        // Join on distributed node
+        checkJoinNode(planNodes.get(0), PlanNodeType.HASHJOIN, 0);
+        // Join on distributed node, the unindexed equi-joins are hash joins
         //* enable to debug */ System.out.println(planNodes.get(1).toExplainPlanString());
-        checkJoinNode(planNodes.get(1), PlanNodeType.NESTLOOP, nestLoopCount);
+        assertEquals(joinCount,
+                planNodes.get(1).findAllNodesOfType(PlanNodeType.NESTLOOP).size() +
+                planNodes.get(1).findAllNodesOfType(PlanNodeType.HASHJOIN).size());
     }
 
     public void testPartitionedLimitOffset() {
@@ -1425,11 +1436,11 @@ public class TestPlansSubQueries extends PlannerTestCase {
         assertNotNull(pn.getInlinePlanNode(PlanNodeType.ORDERBY));
 
         pn = planNodes.get(1).getChild(0);
-        // inline limit with order by
-        assertTrue(pn instanceof OrderByPlanNode);
-        assertNotNull(pn.getInlinePlanNode(PlanNodeType.LIMIT));
-        pn = pn.getChild(0);
         checkPrimaryKeyIndexScan(pn, "SP4");
+        // inline order by with its inline limit
+        pn = pn.getInlinePlanNode(PlanNodeType.ORDERBY);
+        assertNotNull(pn);
+        assertNotNull(pn.getInlinePlanNode(PlanNodeType.LIMIT));
 
 
         planNodes = compileToFragments(
@@ -1636,7 +1647,7 @@ public class TestPlansSubQueries extends PlannerTestCase {
         pn = planNodes.get(1).getChild(0);
         // this join can be pushed down.
         //* enable to debug */ System.out.println(pn.toExplainPlanString());
-        assertTrue(pn.toExplainPlanString().contains("LOOP INNER JOIN"));
+        assertTrue(pn.toExplainPlanString().contains("HASH INNER JOIN"));
         pn = pn.getChild(0);
         // This is a trivial subquery result scan.
         assertTrue(pn instanceof SeqScanPlanNode);
@@ -1708,7 +1719,7 @@ public class TestPlansSubQueries extends PlannerTestCase {
 
         assertTrue(planNodes.get(1).toExplainPlanString().contains("AGGREGATION"));
         assertTrue(planNodes.get(1).toExplainPlanString().contains("INDEX INNER JOIN"));
-        assertTrue(planNodes.get(1).toExplainPlanString().contains("LOOP INNER JOIN"));
+        assertTrue(planNodes.get(1).toExplainPlanString().contains("HASH INNER JOIN"));
 
         // Distinct without GROUP BY
         String sql1, sql2;
@@ -1739,7 +1750,7 @@ public class TestPlansSubQueries extends PlannerTestCase {
 
         assertTrue(planNodes.get(1).toExplainPlanString().contains("AGGREGATION"));
         assertTrue(planNodes.get(1).toExplainPlanString().contains("INDEX INNER JOIN"));
-        assertTrue(planNodes.get(1).toExplainPlanString().contains("LOOP INNER JOIN"));
+        assertTrue(planNodes.get(1).toExplainPlanString().contains("HASH INNER JOIN"));
 
         failToCompile(
                 "SELECT * FROM (SELECT DISTINCT A FROM P1 GROUP BY A, C) T1, P2 " +
@@ -1820,7 +1831,7 @@ public class TestPlansSubQueries extends PlannerTestCase {
         assertTrue(pn instanceof ProjectionPlanNode);
 
         nlpn = pn.getChild(0);
-        assertTrue(nlpn instanceof NestLoopPlanNode);
+        assertTrue(nlpn instanceof HashJoinPlanNode);
         assertEquals(2, nlpn.getChildCount());
         pn = nlpn.getChild(0);
         checkSeqScan(pn, "T1",  "A");
@@ -1839,7 +1850,7 @@ public class TestPlansSubQueries extends PlannerTestCase {
         assertTrue(pn instanceof ProjectionPlanNode);
 
         nlpn = pn.getChild(0);
-        assertTrue(nlpn instanceof NestLoopPlanNode);
+        assertTrue(nlpn instanceof HashJoinPlanNode);
         assertEquals(2, nlpn.getChildCount());
         pn = nlpn.getChild(0);
         checkSeqScan(pn, "T1",  "A");
@@ -1863,8 +1874,8 @@ public class TestPlansSubQueries extends PlannerTestCase {
         pn = planNodes.get(0).getChild(0);
         assertTrue(pn instanceof ProjectionPlanNode);
         nlpn = pn.getChild(0);
-        assertTrue(nlpn instanceof NestLoopPlanNode);
-        assertEquals(JoinType.LEFT, ((NestLoopPlanNode) nlpn).getJoinType());
+        assertTrue(nlpn instanceof HashJoinPlanNode);
+        assertEquals(JoinType.LEFT, ((AbstractJoinPlanNode) nlpn).getJoinType());
         pn = nlpn.getChild(0);
         checkSeqScan(pn, "R1", "A", "C");
         pn = nlpn.getChild(1);
@@ -1880,8 +1891,8 @@ public class TestPlansSubQueries extends PlannerTestCase {
         pn = planNodes.get(0).getChild(0);
         assertTrue(pn instanceof ProjectionPlanNode);
         nlpn = pn.getChild(0);
-        assertTrue(nlpn instanceof NestLoopPlanNode);
-        assertEquals(JoinType.LEFT, ((NestLoopPlanNode) nlpn).getJoinType());
+        assertTrue(nlpn instanceof HashJoinPlanNode);
+        assertEquals(JoinType.LEFT, ((AbstractJoinPlanNode) nlpn).getJoinType());
         pn = nlpn.getChild(0);
         checkSeqScan(pn, "R1", "A", "C");
         pn = nlpn.getChild(1);
@@ -1931,8 +1942,8 @@ public class TestPlansSubQueries extends PlannerTestCase {
         pn = planNodes.get(1);
         assertTrue(pn instanceof SendPlanNode);
         nlpn = pn.getChild(0);
-        assertTrue(nlpn instanceof NestLoopPlanNode);
-        assertEquals(JoinType.LEFT, ((NestLoopPlanNode) nlpn).getJoinType());
+        assertTrue(nlpn instanceof HashJoinPlanNode);
+        assertEquals(JoinType.LEFT, ((AbstractJoinPlanNode) nlpn).getJoinType());
 
         pn = nlpn.getChild(0);
         checkPrimaryKeyIndexScan(pn, "P1");
@@ -2004,8 +2015,8 @@ public class TestPlansSubQueries extends PlannerTestCase {
         pn = planNodes.get(1);
         assertTrue(pn instanceof SendPlanNode);
         nlpn = pn.getChild(0);
-        assertTrue(nlpn instanceof NestLoopPlanNode);
-        assertEquals(JoinType.INNER, ((NestLoopPlanNode) nlpn).getJoinType());
+        assertTrue(nlpn instanceof HashJoinPlanNode);
+        assertEquals(JoinType.INNER, ((AbstractJoinPlanNode) nlpn).getJoinType());
         pn = nlpn.getChild(0);
         checkSeqScan(pn, "R1", "A", "C");
         pn = nlpn.getChild(1);
@@ -2027,8 +2038,8 @@ public class TestPlansSubQueries extends PlannerTestCase {
         pn = planNodes.get(1);
         assertTrue(pn instanceof SendPlanNode);
         nlpn = pn.getChild(0);
-        assertTrue(nlpn instanceof NestLoopPlanNode);
-        assertEquals(JoinType.INNER, ((NestLoopPlanNode) nlpn).getJoinType());
+        assertTrue(nlpn instanceof HashJoinPlanNode);
+        assertEquals(JoinType.INNER, ((AbstractJoinPlanNode) nlpn).getJoinType());
         pn = nlpn.getChild(0);
         checkSeqScan(pn, "T1", "A");
         pn = pn.getChild(0);
@@ -2051,7 +2062,7 @@ public class TestPlansSubQueries extends PlannerTestCase {
         pn = pn.getChild(0);
         assertTrue(pn instanceof ProjectionPlanNode);
         nlpn = pn.getChild(0);
-        assertTrue(nlpn instanceof NestLoopPlanNode);
+        assertTrue(nlpn instanceof HashJoinPlanNode);
         pn = nlpn.getChild(0);
         checkSeqScan(pn, "T1", "A");
         pn = pn.getChild(0);
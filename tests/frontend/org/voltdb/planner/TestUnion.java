@@ -26,8 +26,8 @@ package org.voltdb.planner;
 import org.voltdb.expressions.AbstractExpression;
 import org.voltdb.expressions.TupleValueExpression;
 import org.voltdb.plannodes.AbstractPlanNode;
+import org.voltdb.plannodes.HashJoinPlanNode;
 import org.voltdb.plannodes.LimitPlanNode;
-import org.voltdb.plannodes.NestLoopPlanNode;
 import org.voltdb.plannodes.OrderByPlanNode;
 import org.voltdb.plannodes.ProjectionPlanNode;
 import org.voltdb.plannodes.ReceivePlanNode;
@@ -222,7 +222,7 @@ public class TestUnion extends PlannerTestCase {
         pn = pn.getChild(0);
         assertTrue(pn.getChildCount() == 2);
         assertTrue(pn.getChild(0) instanceof ProjectionPlanNode);
-        assertTrue(pn.getChild(0).getChild(0) instanceof NestLoopPlanNode);
+        assertTrue(pn.getChild(0).getChild(0) instanceof HashJoinPlanNode);
         assertTrue(pn.getChild(1) instanceof SeqScanPlanNode);
 
         // BOTH sides are single-partitioned  for the same partition
@@ -251,9 +251,10 @@ public class TestUnion extends PlannerTestCase {
                 ") AS n ORDER BY distance LIMIT ?;"
                 );
         assertTrue(pn.getChild(0) instanceof ProjectionPlanNode);
-        assertTrue(pn.getChild(0).getChild(0) instanceof OrderByPlanNode);
-        assertTrue(pn.getChild(0).getChild(0).getChild(0) instanceof SeqScanPlanNode);
-        assertTrue(pn.getChild(0).getChild(0).getChild(0).getChild(0) instanceof UnionPlanNode);
+        // ORDER BY with LIMIT inlined into the subquery scan
+        assertTrue(pn.getChild(0).getChild(0) instanceof SeqScanPlanNode);
+        assertNotNull(pn.getChild(0).getChild(0).getInlinePlanNode(PlanNodeType.ORDERBY));
+        assertTrue(pn.getChild(0).getChild(0).getChild(0) instanceof UnionPlanNode);
 
     }
 
@@ -542,6 +543,16 @@ public class TestUnion extends PlannerTestCase {
 
     @Override
     protected void setUp() throws Exception {
+        // These plans are checked with hash joins on and ORDER BY ... LIMIT inlined into scans
+        System.setProperty(SelectSubPlanAssembler.HASH_JOIN_PROPERTY, "true");
+        System.setProperty("PLANNER_ORDER_BY_INTO_SCAN", "true");
         setupSchema(TestUnion.class.getResource("testplans-union-ddl.sql"), "testunion", false);
     }
+
+    @Override
+    protected void tearDown() throws Exception {
+        System.clearProperty(SelectSubPlanAssembler.HASH_JOIN_PROPERTY);
+        System.clearProperty("PLANNER_ORDER_BY_INTO_SCAN");
+        super.tearDown();
+    }
 }
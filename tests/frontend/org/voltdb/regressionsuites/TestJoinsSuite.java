@@ -863,6 +863,111 @@ public class TestJoinsSuite extends RegressionSuite {
     }
 
 
+    /**
+     * Equi-joins without an index on the inner table, planned as hash joins
+     * @throws NoConnectionsException
+     * @throws IOException
+     * @throws ProcCallException
+     */
+    public void testHashJoins() throws NoConnectionsException, IOException, ProcCallException
+    {
+        Client client = getClient();
+        clearSeqTables(client);
+        subtestHashJoinNullKeys(client);
+        clearSeqTables(client);
+        subtestHashJoinStringKeys(client);
+    }
+
+    private static void checkHashJoin(Client client, String procName, String join)
+            throws NoConnectionsException, IOException, ProcCallException
+    {
+        VoltTable explain = client.callProcedure("@ExplainProc", procName).getResults()[0];
+        assertTrue(explain.advanceRow());
+        final String plan = explain.getString("EXECUTION_PLAN");
+        assertTrue(plan, plan.contains(join));
+    }
+
+    private void subtestHashJoinNullKeys(Client client)
+            throws NoConnectionsException, IOException, ProcCallException
+    {
+        final long NULL = Long.MIN_VALUE;
+        client.callProcedure("InsertR1", 1, 10, 1);
+        client.callProcedure("InsertR1", 2, 20, 2);
+        client.callProcedure("InsertR1", 3, 30, null);
+        client.callProcedure("InsertR1", 4, 40, 2);
+        client.callProcedure("InsertR1", 5, 50, 5);
+        client.callProcedure("InsertR2", 1, 1);
+        client.callProcedure("InsertR2", 2, 2);
+        client.callProcedure("InsertR2", 3, 2);
+        client.callProcedure("InsertR2", 4, null);
+        client.callProcedure("InsertR2", 5, 7);
+        client.callProcedure("InsertP1", 1, 2);
+        client.callProcedure("InsertP1", 2, 7);
+        client.callProcedure("InsertP1", 3, 3);
+
+        // NULL keys on either side match nothing, duplicate keys match every row
+        if ( ! isHSQL()) {
+            checkHashJoin(client, "HashInnerJoinR1R2", "HASH INNER JOIN");
+        }
+        VoltTable result = client.callProcedure("HashInnerJoinR1R2").getResults()[0];
+        validateTableOfLongs(result, new long[][]{{1, 1}, {2, 2}, {2, 3}, {4, 2}, {4, 3}});
+
+        // Outer rows with a NULL key or no match are padded with nulls
+        if ( ! isHSQL()) {
+            checkHashJoin(client, "HashLeftJoinR1R2", "HASH LEFT JOIN");
+        }
+        result = client.callProcedure("HashLeftJoinR1R2").getResults()[0];
+        validateTableOfLongs(result, new long[][]{{1, 1}, {2, 2}, {2, 3}, {3, NULL}, {4, 2}, {4, 3}, {5, NULL}});
+
+        String sql = "SELECT COUNT(*) FROM R1 JOIN R2 ON R1.D = R2.C;";
+        validateTableOfLongs(client, sql, new long[][]{{5}});
+
+        sql = "SELECT R1.A, R2.A FROM R1 LEFT JOIN R2 ON R1.D = R2.C AND R2.A > 2 ORDER BY R1.A, R2.A;";
+        validateTableOfLongs(client, sql, new long[][]{{1, NULL}, {2, 3}, {3, NULL}, {4, 3}, {5, NULL}});
+
+        sql = "SELECT R1.A FROM R1 LEFT JOIN R2 ON R1.D = R2.C WHERE R2.A IS NULL ORDER BY R1.A;";
+        validateTableOfLongs(client, sql, new long[][]{{3}, {5}});
+
+        // Two key columns
+        sql = "SELECT R1.A FROM R1 JOIN R2 ON R1.A = R2.A AND R1.D = R2.C ORDER BY R1.A;";
+        validateTableOfLongs(client, sql, new long[][]{{1}, {2}});
+
+        sql = "SELECT R1.A, R2.A FROM R1 JOIN R2 ON R1.D = R2.C ORDER BY R1.A, R2.A LIMIT 2 OFFSET 2;";
+        validateTableOfLongs(client, sql, new long[][]{{2, 3}, {4, 2}});
+
+        // Partitioned outer rows probing the replicated inner rows on each partition
+        sql = "SELECT P1.A, R2.A FROM P1 LEFT JOIN R2 ON P1.C = R2.C ORDER BY P1.A, R2.A;";
+        validateTableOfLongs(client, sql, new long[][]{{1, 2}, {1, 3}, {2, 5}, {3, NULL}});
+    }
+
+    private void subtestHashJoinStringKeys(Client client)
+            throws NoConnectionsException, IOException, ProcCallException
+    {
+        final long NULL = Long.MIN_VALUE;
+        client.callProcedure("@AdHoc", "DELETE FROM HJ1;");
+        client.callProcedure("@AdHoc", "DELETE FROM HJ2;");
+        // Longer than what is stored inline in the tuple
+        final String alpha = "alpha alpha alpha alpha alpha alpha alpha alpha alpha alpha alpha";
+        final String beta = "beta beta beta beta beta beta beta beta beta beta beta beta beta";
+        final String gamma = "gamma gamma gamma gamma gamma gamma gamma gamma gamma gamma gamma";
+        client.callProcedure("HJ1.insert", 1, alpha, new byte[] {1, 2, 3});
+        client.callProcedure("HJ1.insert", 2, beta, new byte[] {4, 5});
+        client.callProcedure("HJ1.insert", 3, null, null);
+        client.callProcedure("HJ1.insert", 4, alpha, new byte[] {4, 5});
+        client.callProcedure("HJ2.insert", 10, alpha, new byte[] {4, 5});
+        client.callProcedure("HJ2.insert", 20, gamma, new byte[] {1, 2});
+        client.callProcedure("HJ2.insert", 30, null, null);
+
+        if ( ! isHSQL()) {
+            checkHashJoin(client, "HashLeftJoinStrings", "HASH LEFT JOIN");
+        }
+        VoltTable result = client.callProcedure("HashLeftJoinStrings").getResults()[0];
+        validateTableOfLongs(result, new long[][]{{1, 10}, {2, NULL}, {3, NULL}, {4, 10}});
+
+        String sql = "SELECT HJ1.ID, HJ2.ID FROM HJ1 JOIN HJ2 ON HJ1.B = HJ2.B ORDER BY HJ1.ID, HJ2.ID;";
+        validateTableOfLongs(client, sql, new long[][]{{2, 10}, {4, 10}});
+    }
+
     static public junit.framework.Test suite()
     {
         VoltServerConfig config = null;
@@ -876,14 +981,30 @@ public class TestJoinsSuite extends RegressionSuite {
         project.addStmtProcedure("InsertP1", "INSERT INTO P1 VALUES(?, ?);");
         project.addStmtProcedure("InsertP2", "INSERT INTO P2 VALUES(?, ?);");
         project.addStmtProcedure("InsertP3", "INSERT INTO P3 VALUES(?, ?);");
+        // Planned with hash joins on and the default table size estimates, so these are hash joins
+        project.addStmtProcedure("HashInnerJoinR1R2",
+                "SELECT R1.A, R2.A FROM R1 JOIN R2 ON R1.D = R2.C ORDER BY R1.A, R2.A;");
+        project.addStmtProcedure("HashLeftJoinR1R2",
+                "SELECT R1.A, R2.A FROM R1 LEFT JOIN R2 ON R1.D = R2.C ORDER BY R1.A, R2.A;");
+        project.addStmtProcedure("HashLeftJoinStrings",
+                "SELECT HJ1.ID, HJ2.ID FROM HJ1 LEFT JOIN HJ2 ON HJ1.S = HJ2.S ORDER BY HJ1.ID, HJ2.ID;");
         /*
         config = new LocalCluster("testunion-onesite.jar", 1, 1, 0, BackendTarget.NATIVE_EE_JNI);
         if (!config.compile(project)) fail();
         builder.addServerConfig(config);
         */
-        // Cluster
-        config = new LocalCluster("testunion-cluster.jar", 2, 3, 1, BackendTarget.NATIVE_EE_JNI);
-        if (!config.compile(project)) fail();
+        // Cluster, planning hash joins for the procedures and for ad hoc queries
+        System.setProperty("PLANNER_HASH_JOIN", "true");
+        try {
+            LocalCluster cluster = new LocalCluster("testjoins-hashjoin-cluster.jar", 2, 3, 1, BackendTarget.NATIVE_EE_JNI);
+            cluster.setJavaProperty("PLANNER_HASH_JOIN", "true");
+            // Every host has to be a process of its own to get the property
+            cluster.setHasLocalServer(false);
+            config = cluster;
+            if (!config.compile(project)) fail();
+        } finally {
+            System.clearProperty("PLANNER_HASH_JOIN");
+        }
         builder.addServerConfig(config);
 
         // HSQLDB
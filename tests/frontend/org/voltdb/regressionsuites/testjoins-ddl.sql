@@ -37,6 +37,19 @@ CREATE TABLE P3 (
 );
 PARTITION TABLE P3 ON COLUMN A;
 
+-- Hash join keys stored out of line
+CREATE TABLE HJ1 (
+	ID INTEGER NOT NULL,
+	S VARCHAR(100),
+	B VARBINARY(100)
+);
+
+CREATE TABLE HJ2 (
+	ID INTEGER NOT NULL,
+	S VARCHAR(100),
+	B VARBINARY(100)
+);
+
 -- ENG-8692
 CREATE TABLE t1(i1 INTEGER);
 CREATE TABLE t2(i2 INTEGER);
@@ -0,0 +1,233 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.voltdb.rejoin;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.voltcore.messaging.Mailbox;
+import org.voltcore.messaging.VoltMessage;
+import org.voltcore.utils.DBBPool;
+import org.voltdb.rejoin.StreamSnapshotBase.DefaultMessageFactory;
+import org.voltdb.rejoin.StreamSnapshotDataTarget.SendWork;
+import org.voltdb.rejoin.StreamSnapshotDataTarget.SnapshotSender;
+import org.voltdb.utils.CompressionCodec;
+
+import com.google_voltpatches.common.util.concurrent.SettableFuture;
+
+public class TestSnapshotSender {
+
+    private static final long TARGET_ID = 1;
+    private static final long DEST_HSID = 2;
+
+    private static byte[] getPayload(int size, long seed) {
+        final byte[] payload = new byte[size];
+        final Random r = new Random(seed);
+        // Repeat a short random run so the blocks compress
+        for (int ii = 0; ii < size; ii++) {
+            payload[ii] = (byte) (ii % 64 == 0 ? r.nextInt() : payload[ii - (ii % 64)]);
+        }
+        return payload;
+    }
+
+    private static SendWork getSendWork(byte[] payload) {
+        return new SendWork(TARGET_ID, DEST_HSID, DBBPool.wrapBB(ByteBuffer.wrap(payload)),
+                SettableFuture.<Boolean>create());
+    }
+
+    private static byte[] decompress(CompressionCodec codec, byte[] data) throws Exception {
+        final ByteBuffer compressed = ByteBuffer.allocateDirect(data.length);
+        compressed.put(data);
+        compressed.flip();
+        final ByteBuffer output = ByteBuffer.allocateDirect(codec.uncompressedLength(compressed));
+        final int length = codec.decompress(compressed, output);
+        final byte[] result = new byte[length];
+        for (int ii = 0; ii < length; ii++) {
+            result[ii] = output.get(ii);
+        }
+        return result;
+    }
+
+    /*
+     * Blocks are compressed on the pool and still sent in the order they were offered
+     */
+    @Test
+    public void testCompressedBlocksAreSentInOfferOrder() throws Exception {
+        Mailbox mb = mock(Mailbox.class);
+        SnapshotSender sender = new SnapshotSender(mb);
+        sender.registerDataTarget(TARGET_ID);
+
+        final int blocks = 32;
+        final List<byte[]> payloads = new ArrayList<byte[]>();
+        final List<SendWork> works = new ArrayList<SendWork>();
+        for (int ii = 0; ii < blocks; ii++) {
+            // Alternate large and small blocks so later blocks tend to finish compressing first
+            final byte[] payload = getPayload(ii % 2 == 0 ? 512 * 1024 : 1024, ii);
+            payloads.add(payload);
+            SendWork work = getSendWork(payload);
+            works.add(work);
+            sender.offer(work);
+        }
+        sender.offer(new SendWork());
+
+        Thread senderThread = new Thread(sender);
+        senderThread.start();
+        senderThread.join(TimeUnit.MINUTES.toMillis(1));
+        assertFalse(senderThread.isAlive());
+        assertEquals(null, sender.m_lastException);
+
+        ArgumentCaptor<VoltMessage> sent = ArgumentCaptor.forClass(VoltMessage.class);
+        verify(mb, times(blocks)).send(anyLong(), sent.capture());
+        long compressedBytes = 0;
+        for (int ii = 0; ii < blocks; ii++) {
+            RejoinDataMessage msg = (RejoinDataMessage) sent.getAllValues().get(ii);
+            assertEquals(TARGET_ID, msg.getTargetId());
+            assertSame(sender.m_codec, msg.getCodec());
+            assertArrayEquals(payloads.get(ii), decompress(msg.getCodec(), msg.getData()));
+            assertTrue(works.get(ii).m_future.isDone());
+            compressedBytes += msg.getData().length;
+        }
+        assertEquals(compressedBytes, sender.m_bytesSent.get(TARGET_ID).get());
+        assertEquals(blocks, sender.m_worksSent.get(TARGET_ID).get());
+
+        // Sent blocks hold the window until they are acked and discarded
+        assertEquals(compressedBytes, sender.getInFlightBytes());
+        for (SendWork work : works) {
+            work.discard();
+        }
+        assertEquals(0, sender.getInFlightBytes());
+    }
+
+    @Test
+    public void testWindowBlocksUntilReleased() throws Exception {
+        final SnapshotSender sender = new SnapshotSender(mock(Mailbox.class));
+        final int almostFull = (int) StreamSnapshotDataTarget.WINDOW_BYTES - 10;
+        sender.acquireWindow(almostFull);
+        assertEquals(almostFull, sender.getInFlightBytes());
+
+        final CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiter = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    sender.acquireWindow(100);
+                    acquired.countDown();
+                } catch (InterruptedException e) {}
+            }
+        };
+        waiter.start();
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+
+        sender.releaseWindow(almostFull);
+        assertTrue(acquired.await(10, TimeUnit.SECONDS));
+        waiter.join();
+        assertEquals(100, sender.getInFlightBytes());
+        assertTrue(sender.m_windowStallNanos.get() > 0);
+    }
+
+    @Test
+    public void testBlockLargerThanWindowPassesWhenNothingIsInFlight() throws Exception {
+        SnapshotSender sender = new SnapshotSender(mock(Mailbox.class));
+        final int oversized = (int) StreamSnapshotDataTarget.WINDOW_BYTES + 1;
+        sender.acquireWindow(oversized);
+        assertEquals(oversized, sender.getInFlightBytes());
+        sender.releaseWindow(oversized);
+        assertEquals(0, sender.getInFlightBytes());
+    }
+
+    @Test
+    public void testDiscardReturnsWindowOnce() throws Exception {
+        Mailbox mb = mock(Mailbox.class);
+        SnapshotSender sender = new SnapshotSender(mb);
+        SendWork work = getSendWork(getPayload(1024, 0));
+        final byte[] data = work.compress(sender.m_codec);
+
+        sender.acquireWindow(data.length);
+        assertEquals(data.length, work.doWork(mb, new DefaultMessageFactory(), sender, data));
+        assertEquals(data.length, sender.getInFlightBytes());
+
+        work.discard();
+        assertEquals(0, sender.getInFlightBytes());
+        work.discard();
+        assertEquals(0, sender.getInFlightBytes());
+    }
+
+    @Test
+    public void testDiscardedWorkIsNotSent() throws Exception {
+        Mailbox mb = mock(Mailbox.class);
+        SnapshotSender sender = new SnapshotSender(mb);
+        SendWork work = getSendWork(getPayload(1024, 0));
+        final byte[] data = work.compress(sender.m_codec);
+        work.discard();
+
+        assertEquals(0, work.doWork(mb, new DefaultMessageFactory(), sender, data));
+        verify(mb, times(0)).send(anyLong(), any(VoltMessage.class));
+        assertEquals(0, sender.getInFlightBytes());
+    }
+
+    /*
+     * A block that fails to send is never acked, its window bytes are returned right away
+     */
+    @Test
+    public void testFailedSendReturnsWindow() throws Exception {
+        Mailbox mb = mock(Mailbox.class);
+        RuntimeException failure = new IllegalStateException("injected");
+        doThrow(failure).when(mb).send(anyLong(), any(VoltMessage.class));
+        SnapshotSender sender = new SnapshotSender(mb);
+        SendWork work = getSendWork(getPayload(1024, 0));
+        final byte[] data = work.compress(sender.m_codec);
+
+        sender.acquireWindow(data.length);
+        try {
+            work.doWork(mb, new DefaultMessageFactory(), sender, data);
+            fail();
+        } catch (IllegalStateException e) {
+            assertSame(failure, e);
+        }
+        assertEquals(0, sender.getInFlightBytes());
+        assertTrue(work.m_future.isDone());
+
+        // Clearing the outstanding work later doesn't return the bytes twice
+        work.discard();
+        assertEquals(0, sender.getInFlightBytes());
+    }
+}
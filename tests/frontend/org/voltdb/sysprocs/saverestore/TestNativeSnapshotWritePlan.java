@@ -0,0 +1,56 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.sysprocs.saverestore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class TestNativeSnapshotWritePlan {
+
+    @Test
+    public void testSplitHashRingCoversRing() {
+        for (int shards = 1; shards <= 17; shards++) {
+            List<Map<Integer, Integer>> ranges = NativeSnapshotWritePlan.splitHashRing(shards);
+            assertEquals(shards, ranges.size());
+
+            long expectedStart = Integer.MIN_VALUE;
+            for (Map<Integer, Integer> range : ranges) {
+                assertEquals(1, range.size());
+                Map.Entry<Integer, Integer> e = range.entrySet().iterator().next();
+                // contiguous, inclusive and no wider than one hash more than the others
+                assertEquals(expectedStart, (long)e.getKey());
+                assertTrue(e.getKey() <= e.getValue());
+                long width = (long)e.getValue() - e.getKey() + 1;
+                assertTrue(Math.abs(width - (1L << 32) / shards) <= 1);
+                expectedStart = (long)e.getValue() + 1;
+            }
+            assertEquals((long)Integer.MAX_VALUE + 1, expectedStart);
+        }
+    }
+}
@@ -0,0 +1,361 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.sysprocs.saverestore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltdb.DefaultSnapshotDataTarget;
+import org.voltdb.EELibraryLoader;
+import org.voltdb.PrivateVoltTableFactory;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+import org.voltdb.utils.CompressionCodec;
+
+import com.google_voltpatches.common.util.concurrent.Callables;
+
+/**
+ * Reads save files written by {@link DefaultSnapshotDataTarget} through
+ * the chunk decoder pool of {@link TableSaveFile}.
+ */
+public class TestTableSaveFile {
+
+    private static final int CHUNKS = 24;
+    // Even chunks are large and odd chunks tiny, so the decoders finish out of file order
+    private static final int LARGE_CHUNK_ROWS = 8000;
+    private static final int SMALL_CHUNK_ROWS = 1;
+
+    private File m_file;
+    // file offset of each chunk, the header is at offset 0
+    private final List<Long> m_chunkOffsets = new ArrayList<Long>();
+
+    @Before
+    public void setUp() throws Exception {
+        // the snapshot target checksums chunks natively
+        EELibraryLoader.loadExecutionEngineLibrary(true);
+        m_file = File.createTempFile("TestTableSaveFile", ".vpt");
+        m_chunkOffsets.clear();
+    }
+
+    @After
+    public void tearDown() {
+        m_file.delete();
+    }
+
+    private static VoltTable emptyTable() {
+        return new VoltTable(new ColumnInfo("ID", VoltType.BIGINT),
+                             new ColumnInfo("PAYLOAD", VoltType.STRING));
+    }
+
+    private static int partitionOf(int chunk) {
+        return chunk % 2;
+    }
+
+    private static int rowsIn(int chunk) {
+        return chunk % 2 == 0 ? LARGE_CHUNK_ROWS : SMALL_CHUNK_ROWS;
+    }
+
+    /**
+     * Chunk data as the EE hands it to the snapshot target: the partition id
+     * followed by the row count and the rows.
+     */
+    private static BBContainer chunkData(int chunk, long firstId) {
+        VoltTable rows = emptyTable();
+        final int schemaLength = PrivateVoltTableFactory.getSchemaBytes(rows).length;
+        for (int i = 0; i < rowsIn(chunk); i++) {
+            rows.addRow(firstId + i, "chunk " + chunk + " row " + i);
+        }
+        ByteBuffer serialized = PrivateVoltTableFactory.getTableDataReference(rows);
+        serialized.limit(PrivateVoltTableFactory.getUnderlyingBufferSize(rows));
+        serialized.position(schemaLength);
+
+        BBContainer data = DBBPool.allocateDirect(4 + serialized.remaining());
+        data.b().putInt(partitionOf(chunk));
+        data.b().put(serialized);
+        data.b().flip();
+        return data;
+    }
+
+    private void writeSaveFile() throws Exception {
+        writeSaveFile(CompressionCodec.SNAPPY);
+    }
+
+    private void writeSaveFile(CompressionCodec codec) throws Exception {
+        DefaultSnapshotDataTarget target = new DefaultSnapshotDataTarget(
+                m_file, 0, "cluster", "database", "T", 2, false, Arrays.asList(0, 1),
+                emptyTable(), 1, System.currentTimeMillis(), codec);
+        long firstId = 0;
+        for (int chunk = 0; chunk < CHUNKS; chunk++) {
+            m_chunkOffsets.add(target.getBytesWritten());
+            // one write at a time so the chunks land in the file in order
+            target.write(Callables.returning(chunkData(chunk, firstId)), 0).get();
+            firstId += rowsIn(chunk);
+        }
+        target.close();
+    }
+
+    /**
+     * Flip a byte in the compressed payload of a chunk, after its 16 byte header
+     */
+    private void corruptChunk(int chunk) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(m_file, "rw");
+        try {
+            final long position = m_chunkOffsets.get(chunk) + 16 + 8;
+            raf.seek(position);
+            final int b = raf.read();
+            raf.seek(position);
+            raf.write(b ^ 0xff);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Check the rows of a chunk and return the id expected at the start of the next one
+     */
+    private static long checkChunk(BBContainer c, int chunk, long firstId) {
+        assertEquals(partitionOf(chunk), ((TableSaveFile.Container) c).partitionId);
+        VoltTable rows = PrivateVoltTableFactory.createVoltTableFromBuffer(c.b(), true);
+        assertEquals(rowsIn(chunk), rows.getRowCount());
+        long id = firstId;
+        while (rows.advanceRow()) {
+            assertEquals(id, rows.getLong(0));
+            assertEquals("chunk " + chunk + " row " + (id - firstId), rows.getString(1));
+            id++;
+        }
+        return id;
+    }
+
+    @Test
+    public void testMultiChunkFileIsReadInOrder() throws Exception {
+        writeSaveFile();
+        // a small and a large read ahead, the second one keeps many decoders busy at once
+        for (int readAhead : new int[] { 1, CHUNKS }) {
+            TableSaveFile saveFile = new TableSaveFile(new FileInputStream(m_file), readAhead, null);
+            try {
+                assertTrue(saveFile.getCompleted());
+                assertEquals("T", saveFile.getTableName());
+                long nextId = 0;
+                int chunk = 0;
+                while (saveFile.hasMoreChunks()) {
+                    BBContainer c = saveFile.getNextChunk();
+                    if (c == null) {
+                        continue;
+                    }
+                    try {
+                        nextId = checkChunk(c, chunk++, nextId);
+                    } finally {
+                        c.discard();
+                    }
+                }
+                assertEquals(CHUNKS, chunk);
+                assertTrue(saveFile.getCorruptedPartitionIds().isEmpty());
+            } finally {
+                saveFile.close();
+            }
+        }
+    }
+
+    @Test
+    public void testFileVersionFollowsCodec() throws Exception {
+        for (CompressionCodec codec : CompressionCodec.values()) {
+            writeSaveFile(codec);
+            TableSaveFile saveFile = new TableSaveFile(new FileInputStream(m_file), CHUNKS, null);
+            try {
+                // only Snappy files can be read by version 2 readers
+                assertEquals(codec == CompressionCodec.SNAPPY ?
+                                DefaultSnapshotDataTarget.SNAPPY_FILE_VERSION :
+                                DefaultSnapshotDataTarget.CODEC_FILE_VERSION,
+                             saveFile.getVersionNumber()[3]);
+                long nextId = 0;
+                int chunk = 0;
+                while (saveFile.hasMoreChunks()) {
+                    BBContainer c = saveFile.getNextChunk();
+                    if (c == null) {
+                        continue;
+                    }
+                    try {
+                        nextId = checkChunk(c, chunk++, nextId);
+                    } finally {
+                        c.discard();
+                    }
+                }
+                assertEquals(CHUNKS, chunk);
+            } finally {
+                saveFile.close();
+            }
+            m_chunkOffsets.clear();
+        }
+    }
+
+    @Test
+    public void testRelevantPartitionsOnly() throws Exception {
+        writeSaveFile();
+        TableSaveFile saveFile = new TableSaveFile(new FileInputStream(m_file), 4, new Integer[] { 1 });
+        try {
+            int chunk = 1;
+            long nextId = LARGE_CHUNK_ROWS;
+            while (saveFile.hasMoreChunks()) {
+                BBContainer c = saveFile.getNextChunk();
+                if (c == null) {
+                    continue;
+                }
+                try {
+                    checkChunk(c, chunk, nextId);
+                    nextId += rowsIn(chunk) + rowsIn(chunk + 1);
+                    chunk += 2;
+                } finally {
+                    c.discard();
+                }
+            }
+            assertEquals(CHUNKS + 1, chunk);
+        } finally {
+            saveFile.close();
+        }
+    }
+
+    @Test
+    public void testDecodeErrorMidStream() throws Exception {
+        writeSaveFile();
+        final int corrupt = CHUNKS / 2;
+        corruptChunk(corrupt);
+
+        TableSaveFile saveFile = new TableSaveFile(new FileInputStream(m_file), CHUNKS, null);
+        try {
+            long nextId = 0;
+            for (int chunk = 0; chunk < corrupt; chunk++) {
+                BBContainer c = saveFile.getNextChunk();
+                try {
+                    nextId = checkChunk(c, chunk, nextId);
+                } finally {
+                    c.discard();
+                }
+            }
+            // chunks decoded after the bad one are not handed out
+            try {
+                saveFile.getNextChunk();
+                fail("Expected the CRC mismatch of chunk " + corrupt);
+            } catch (IOException expected) {
+                assertTrue(expected.getMessage(), expected.getMessage().contains("CRC mismatch"));
+            }
+            try {
+                saveFile.hasMoreChunks();
+                fail("The decode error should stick");
+            } catch (IOException expected) {}
+            assertTrue(saveFile.getCorruptedPartitionIds().contains(partitionOf(corrupt)));
+        } finally {
+            saveFile.close();
+        }
+    }
+
+    @Test
+    public void testDecodeErrorSkippedWhenContinuingOnCorruption() throws Exception {
+        writeSaveFile();
+        final int corrupt = CHUNKS / 2;
+        corruptChunk(corrupt);
+
+        TableSaveFile saveFile = new TableSaveFile(new FileInputStream(m_file), CHUNKS, null, true);
+        try {
+            long nextId = 0;
+            int chunk = 0;
+            while (saveFile.hasMoreChunks()) {
+                BBContainer c = saveFile.getNextChunk();
+                if (c == null) {
+                    continue;
+                }
+                if (chunk == corrupt) {
+                    nextId += rowsIn(chunk++);
+                }
+                try {
+                    nextId = checkChunk(c, chunk++, nextId);
+                } finally {
+                    c.discard();
+                }
+            }
+            assertEquals(CHUNKS, chunk);
+            assertEquals(1, saveFile.getCorruptedPartitionIds().size());
+            assertTrue(saveFile.getCorruptedPartitionIds().contains(partitionOf(corrupt)));
+        } finally {
+            saveFile.close();
+        }
+    }
+
+    @Test
+    public void testCloseWhileDecodersAreRunning() throws Exception {
+        writeSaveFile();
+        for (int attempt = 0; attempt < 10; attempt++) {
+            // with a short read ahead the reader is also blocked waiting for permits
+            final int readAhead = attempt % 2 == 0 ? 2 : CHUNKS;
+            TableSaveFile saveFile = new TableSaveFile(new FileInputStream(m_file), readAhead, null);
+            // starts the reader, which queues the rest of the file on the decoders
+            BBContainer first = saveFile.getNextChunk();
+            checkChunk(first, 0, 0);
+            // close with the first chunk still held and others being decoded
+            saveFile.close();
+            assertFalse(saveFile.hasMoreChunks());
+            assertNull(saveFile.getNextChunk());
+            // frees the buffer now that no more chunks are coming
+            first.discard();
+        }
+
+        // the shared decoder pool is still usable
+        TableSaveFile saveFile = new TableSaveFile(new FileInputStream(m_file), CHUNKS, null);
+        try {
+            long nextId = 0;
+            int chunk = 0;
+            while (saveFile.hasMoreChunks()) {
+                BBContainer c = saveFile.getNextChunk();
+                if (c == null) {
+                    continue;
+                }
+                try {
+                    nextId = checkChunk(c, chunk++, nextId);
+                } finally {
+                    c.discard();
+                }
+            }
+            assertEquals(CHUNKS, chunk);
+        } finally {
+            saveFile.close();
+        }
+    }
+}
@@ -33,6 +33,10 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
@@ -65,6 +69,11 @@ public class TestCSVLoader {
     protected static String path_csv = String.format("%s/%s", reportDir, "test.csv");
     protected static String dbName = String.format("mydb_%s", userName);
 
+    static {
+        // Small chunks so the --parsers tests spread their input over many chunks
+        System.setProperty("CSVLOADER_CHUNK_CHARS", "1024");
+    }
+
     public static void prepare() {
         if (!reportDir.endsWith("/"))
             reportDir += "/";
@@ -988,6 +997,122 @@ public class TestCSVLoader {
         assertEquals(TimeUnit.MICROSECONDS.toHours(diff), 7);
     }
 
+    private static String[] parserOptions(String... extra) {
+        List<String> options = new ArrayList<String>();
+        options.add("-f" + path_csv);
+        options.add("--reportdir=" + reportDir);
+        options.add("--user=");
+        options.add("--password=");
+        options.add("--port=");
+        options.add("--separator=,");
+        options.add("--quotechar=\"");
+        options.add("--escape=\\");
+        options.add("--skip=1");
+        options.add("--parsers=3");
+        for (String option : extra) {
+            options.add(option);
+        }
+        options.add("BlAh");
+        return options.toArray(new String[options.size()]);
+    }
+
+    private static String parserRow(int key, String string, String currentTime) {
+        return key + "," + (key % 100) + ",1," + key + "," + string + ",1.10,1.11," + currentTime;
+    }
+
+    //Test that --parsers hands the rows to the loader in input order, the last upsert of a key wins
+    @Test
+    public void testParsersKeepRowOrder() throws Exception {
+        String currentTime = new TimestampType().toString();
+        final int rows = 3000;
+        final int keys = 50;
+        String[] myData = new String[rows + 1];
+        myData[0] = "header";
+        for (int i = 0; i < rows; i++) {
+            myData[i + 1] = parserRow(i % keys, "v" + i, currentTime);
+        }
+        test_Interface(parserOptions("--maxerrors=50", "--update"), myData, 0, rows, rows - keys, new String[0]);
+
+        VoltTable result = client.callProcedure("@AdHoc",
+                "SELECT clm_integer, clm_string FROM BLAH ORDER BY clm_integer;").getResults()[0];
+        assertEquals(keys, result.getRowCount());
+        while (result.advanceRow()) {
+            final int key = (int) result.getLong(0);
+            assertEquals("v" + (rows - keys + key), result.getString(1));
+        }
+    }
+
+    //Test that errors found by the parsers and by the database report the line of the input they are on
+    @Test
+    public void testParsersReportLineNumbers() throws Exception {
+        String currentTime = new TimestampType().toString();
+        List<String> myData = new ArrayList<String>();
+        Set<Long> expectedErrorLines = new HashSet<Long>();
+        myData.add("header");
+        long line = 1;
+        int valid = 0;
+        for (int i = 0; i < 2000; i++) {
+            if (i % 7 == 0) {
+                // quoted value over two lines, so line numbers run ahead of row numbers
+                myData.add(parserRow(i, "\"multi\nline\"", currentTime));
+                line += 2;
+                valid++;
+            }
+            else if (i % 97 == 1) {
+                // too few columns, found by the parsers
+                myData.add(i + ",1,1");
+                expectedErrorLines.add(++line);
+            }
+            else if (i % 97 == 2) {
+                // not a number, found by the loader
+                myData.add(parserRow(i, "bad", currentTime).replaceFirst(",1,", ",n ull,"));
+                expectedErrorLines.add(++line);
+            }
+            else if (i % 97 == 3) {
+                // duplicate of the key of the previous multi-line row, found by the database
+                myData.add(parserRow(i - 3 - ((i - 3) % 7), "duplicate", currentTime));
+                expectedErrorLines.add(++line);
+            }
+            else {
+                myData.add(parserRow(i, "row" + i, currentTime));
+                line++;
+                valid++;
+            }
+        }
+        test_Interface(parserOptions("--maxerrors=1000"), myData.toArray(new String[myData.size()]),
+                expectedErrorLines.size(), valid);
+
+        Set<Long> reportedErrorLines = new HashSet<Long>();
+        BufferedReader log = new BufferedReader(new FileReader(CSVLoader.pathLogfile));
+        try {
+            final String prefix = "Invalid input on line ";
+            String logLine;
+            while ((logLine = log.readLine()) != null) {
+                if (logLine.startsWith(prefix)) {
+                    reportedErrorLines.add(Long.parseLong(
+                            logLine.substring(prefix.length(), logLine.indexOf('.', prefix.length()))));
+                }
+            }
+        } finally {
+            log.close();
+        }
+        assertEquals(expectedErrorLines, reportedErrorLines);
+    }
+
+    //Test that --parsers stops dispatching rows once maxerrors is reached
+    @Test
+    public void testParsersStopAtMaxErrors() throws Exception {
+        String currentTime = new TimestampType().toString();
+        final int rows = 3000;
+        String[] myData = new String[rows + 1];
+        myData[0] = "header";
+        for (int i = 1; i <= rows; i++) {
+            myData[i] = i % 10 == 0 ? i + ",1,1" : parserRow(i, "row" + i, currentTime);
+        }
+        // the fifth error is on row 50, nothing after it is loaded
+        test_Interface(parserOptions("--maxerrors=5"), myData, 5, 45);
+    }
+
     public void test_Interface(String[] my_options, String[] my_data, int invalidLineCnt,
             int validLineCnt) throws Exception {
         test_Interface(my_options, my_data, invalidLineCnt, validLineCnt, 0, new String[0]);
@@ -0,0 +1,100 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestCompressionCodec {
+
+    private static ByteBuffer makeInput(int length) {
+        // Half random, half repeated so the compressing codecs have something to do
+        final Random r = new Random(length);
+        final ByteBuffer input = ByteBuffer.allocateDirect(length);
+        while (input.hasRemaining()) {
+            input.put(input.position() % 2 == 0 ? (byte) r.nextInt() : (byte) 42);
+        }
+        input.flip();
+        return input;
+    }
+
+    private static void checkRoundTrip(CompressionCodec codec, int length) throws IOException {
+        final ByteBuffer input = makeInput(length);
+        final ByteBuffer compressed = ByteBuffer.allocateDirect(codec.maxCompressedLength(length) + 8);
+        compressed.position(8);
+
+        final int compressedLength = codec.compress(input, compressed);
+        assertEquals(0, input.position());
+        assertEquals(8, compressed.position());
+        assertEquals(8 + compressedLength, compressed.limit());
+        assertTrue(compressedLength <= codec.maxCompressedLength(length));
+        assertEquals(length, codec.uncompressedLength(compressed));
+
+        final ByteBuffer output = ByteBuffer.allocateDirect(length + 4);
+        output.position(4);
+        assertEquals(length, codec.decompress(compressed, output));
+        assertEquals(4, output.position());
+        assertEquals(4 + length, output.limit());
+        assertEquals(input, output);
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        for (CompressionCodec codec : CompressionCodec.values()) {
+            for (int length : new int[] { 0, 1, 1000, 1024 * 1024 * 2 }) {
+                checkRoundTrip(codec, length);
+            }
+        }
+    }
+
+    @Test
+    public void testFromString() {
+        assertEquals(CompressionCodec.LZ4, CompressionCodec.fromString(" lz4"));
+        assertEquals(CompressionCodec.NONE, CompressionCodec.fromString("None"));
+        try {
+            CompressionCodec.fromString("gzip");
+            fail();
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("gzip"));
+        }
+    }
+
+    @Test
+    public void testCorruptLZ4Length() throws IOException {
+        final ByteBuffer compressed = ByteBuffer.allocateDirect(CompressionCodec.LZ4.maxCompressedLength(100));
+        CompressionCodec.LZ4.compress(makeInput(100), compressed);
+        compressed.putInt(0, 1 << 30);
+        try {
+            CompressionCodec.LZ4.decompress(compressed, ByteBuffer.allocateDirect(100));
+            fail();
+        } catch (IOException expected) {}
+    }
+}
@@ -25,6 +25,7 @@ package org.voltdb.utils;
 import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNotNull;
 import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
 import static junit.framework.Assert.fail;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -32,9 +33,17 @@ import static org.junit.Assert.assertTrue;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
 import java.util.Random;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicReference;
 
 import junit.framework.Assert;
 
@@ -909,6 +918,265 @@ public class TestPersistentBinaryDeque {
         assert(files[0].getName().equals("pbd_nonce.1.pbd"));
     }
 
+    /*
+     * Counts forces and otherwise hands everything to the segment's real channel
+     */
+    private static class ForceCountingChannel extends FileChannel {
+        private final FileChannel m_fc;
+        private int m_forces = 0;
+
+        ForceCountingChannel(FileChannel fc) {
+            m_fc = fc;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            m_forces++;
+            m_fc.force(metaData);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException { return m_fc.read(dst); }
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException { return m_fc.read(dsts, offset, length); }
+        @Override
+        public int write(ByteBuffer src) throws IOException { return m_fc.write(src); }
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException { return m_fc.write(srcs, offset, length); }
+        @Override
+        public long position() throws IOException { return m_fc.position(); }
+        @Override
+        public FileChannel position(long newPosition) throws IOException { m_fc.position(newPosition); return this; }
+        @Override
+        public long size() throws IOException { return m_fc.size(); }
+        @Override
+        public FileChannel truncate(long size) throws IOException { m_fc.truncate(size); return this; }
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException { return m_fc.transferTo(position, count, target); }
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException { return m_fc.transferFrom(src, position, count); }
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException { return m_fc.read(dst, position); }
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException { return m_fc.write(src, position); }
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException { return m_fc.map(mode, position, size); }
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException { return m_fc.lock(position, size, shared); }
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException { return m_fc.tryLock(position, size, shared); }
+        @Override
+        protected void implCloseChannel() throws IOException { m_fc.close(); }
+    }
+
+    @Test
+    public void testSegmentCloseForcesPendingSync() throws Exception {
+        System.out.println("Running testSegmentCloseForcesPendingSync");
+        PBDRegularSegment segment = new PBDRegularSegment(0L, new File(TEST_DIR, "pending_sync.pbd"));
+        segment.open(true);
+        segment.offer(defaultContainer(), false);
+        ForceCountingChannel counting = new ForceCountingChannel(segment.m_fc);
+        segment.m_fc = counting;
+
+        // The sync collects the channel but has not forced it yet when the segment is closed
+        FileChannel fc = segment.prepareSync();
+        assertSame(counting, fc);
+        assertEquals(0, counting.m_forces);
+        segment.close();
+        assertEquals(1, counting.m_forces);
+
+        // The force the sync then does fails, and the data is already on disk
+        try {
+            fc.force(true);
+            fail();
+        } catch (ClosedChannelException expected) {}
+
+        // A segment without a pending sync is closed without a force
+        segment = new PBDRegularSegment(1L, new File(TEST_DIR, "no_pending_sync.pbd"));
+        segment.open(true);
+        segment.offer(defaultContainer(), false);
+        counting = new ForceCountingChannel(segment.m_fc);
+        segment.m_fc = counting;
+        segment.close();
+        assertEquals(0, counting.m_forces);
+    }
+
+    @Test
+    public void testSyncRacesWithTailClose() throws Exception {
+        System.out.println("Running testSyncRacesWithTailClose");
+        final int total = 47;      // Number of buffers it takes to fill a segment
+        for (int i = 0; i < total; i++) {
+            m_pbd.offer(defaultContainer());
+        }
+        List<FileChannel> channels = m_pbd.prepareSync();
+        assertEquals(1, channels.size());
+
+        // Rolls to a new segment, closing the tail the sync collected
+        m_pbd.offer(defaultContainer());
+        assertFalse(channels.get(0).isOpen());
+
+        // Forcing it fails, close already forced it
+        try {
+            channels.get(0).force(true);
+            fail();
+        } catch (ClosedChannelException expected) {}
+        m_pbd.syncCompleted(channels);
+        m_pbd.sync();
+
+        m_pbd.close();
+        m_pbd = new PersistentBinaryDeque( TEST_NONCE, TEST_DIR, logger );
+        int polled = 0;
+        BBContainer cont;
+        while ((cont = m_pbd.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY)) != null) {
+            try {
+                assertEquals(42, cont.b().getLong(0));
+            } finally {
+                cont.discard();
+            }
+            polled++;
+        }
+        assertEquals(total + 1, polled);
+    }
+
+    @Test
+    public void testSyncCompletedClearsPendingSync() throws Exception {
+        System.out.println("Running testSyncCompletedClearsPendingSync");
+        PBDRegularSegment segment = new PBDRegularSegment(0L, new File(TEST_DIR, "completed_sync.pbd"));
+        segment.open(true);
+        segment.offer(defaultContainer(), false);
+        ForceCountingChannel counting = new ForceCountingChannel(segment.m_fc);
+        segment.m_fc = counting;
+
+        // Two syncs are collected before either is forced, the first completing leaves the second pending
+        FileChannel first = segment.prepareSync();
+        segment.offer(defaultContainer(), false);
+        FileChannel second = segment.prepareSync();
+        assertSame(first, second);
+        first.force(true);
+        segment.syncCompleted(first);
+        assertEquals(1, counting.m_forces);
+
+        // Once both completed close has nothing left to force
+        second.force(true);
+        segment.syncCompleted(second);
+        segment.close();
+        assertEquals(2, counting.m_forces);
+    }
+
+    @Test
+    public void testSyncCompletedIgnoresReopenedSegment() throws Exception {
+        System.out.println("Running testSyncCompletedIgnoresReopenedSegment");
+        PBDRegularSegment segment = new PBDRegularSegment(0L, new File(TEST_DIR, "reopened_sync.pbd"));
+        segment.open(true);
+        segment.offer(defaultContainer(), false);
+        FileChannel stale = segment.prepareSync();
+        segment.close();
+
+        // A channel of an earlier open doesn't clear a sync collected from the current one
+        segment.open(true);
+        segment.offer(defaultContainer(), false);
+        ForceCountingChannel counting = new ForceCountingChannel(segment.m_fc);
+        segment.m_fc = counting;
+        assertSame(counting, segment.prepareSync());
+        segment.syncCompleted(stale);
+        segment.close();
+        assertEquals(1, counting.m_forces);
+    }
+
+    @Test
+    public void testConcurrentOfferAndPoll() throws Exception {
+        System.out.println("Running testConcurrentOfferAndPoll");
+        // Enough buffers to roll over several segments while the consumer is reading them
+        final int total = 150;
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread producer = new Thread("PBD producer") {
+            @Override
+            public void run() {
+                try {
+                    for (int ii = 0; ii < total; ii++) {
+                        m_pbd.offer(DBBPool.wrapBB(getFilledBuffer(ii)));
+                    }
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            }
+        };
+        producer.start();
+
+        int polled = 0;
+        while (polled < total && failure.get() == null) {
+            BBContainer cont = m_pbd.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY);
+            if (cont == null) {
+                if (!producer.isAlive() && m_pbd.getNumObjects() == 0) {
+                    break;
+                }
+                Thread.yield();
+                continue;
+            }
+            try {
+                assertEquals(polled, cont.b().getLong(0));
+            } finally {
+                cont.discard();
+            }
+            polled++;
+        }
+        producer.join();
+        assertNull(failure.get());
+        assertEquals(total, polled);
+        assertNull(m_pbd.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY));
+    }
+
+    @Test
+    public void testMmapReadsAfterRoll() throws Exception {
+        System.out.println("Running testMmapReadsAfterRoll");
+        m_pbd.close();
+        System.setProperty("PBD_MMAP_READS", "true");
+        try {
+            m_pbd = new PersistentBinaryDeque( TEST_NONCE, TEST_DIR, logger );
+            // Three segments, the first two are swapped for mapped read segments as the tail rolls
+            final int total = 100;
+            for (int ii = 0; ii < total; ii++) {
+                m_pbd.offer(DBBPool.wrapBB(getFilledBuffer(ii)));
+            }
+            assertEquals(3, TEST_DIR.listFiles().length);
+
+            // Read half, then reopen so every finished segment is mapped from the start
+            int polled = 0;
+            for (; polled < total / 2; polled++) {
+                BBContainer cont = m_pbd.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY);
+                try {
+                    assertEquals(polled, cont.b().getLong(0));
+                } finally {
+                    cont.discard();
+                }
+            }
+            m_pbd.sync();
+            m_pbd.close();
+            m_pbd = new PersistentBinaryDeque( TEST_NONCE, TEST_DIR, logger );
+
+            // A reopened deque starts over at the beginning of the first segment that wasn't deleted
+            BBContainer cont;
+            long last = -1;
+            int remaining = 0;
+            while ((cont = m_pbd.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY)) != null) {
+                try {
+                    final long value = cont.b().getLong(0);
+                    if (last >= 0) {
+                        assertEquals(last + 1, value);
+                    }
+                    last = value;
+                } finally {
+                    cont.discard();
+                }
+                remaining++;
+            }
+            assertEquals(total - 1, last);
+            assertTrue(remaining >= total - polled);
+        } finally {
+            System.clearProperty("PBD_MMAP_READS");
+        }
+    }
+
     @Before
     public void setUp() throws Exception {
         if (TEST_DIR.exists()) {